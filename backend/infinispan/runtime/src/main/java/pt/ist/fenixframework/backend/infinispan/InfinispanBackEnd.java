@@ -125,7 +125,7 @@ public class InfinispanBackEnd implements BackEnd {
     }
 
     protected IdentityMap getIdentityMap() {
-        return SharedIdentityMap.getCache();
+        return SharedIdentityMap.getIdentityMap();
     }
 
     /**
@@ -7,7 +7,12 @@
  */
 package pt.ist.fenixframework.backend.jvstm.cluster;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -25,15 +30,20 @@ import com.hazelcast.core.MessageListener;
 public class ClusterUtils {
 
     private static final Logger logger = LoggerFactory.getLogger(ClusterUtils.class);
-    private static final String FF_GLOBAL_LOCK_NAME = "ff.hzl.global.lock";
-    private static final String FF_GLOBAL_LOCK_NUMBER_NAME = "ff.hzl.global.lock.number";
-    private static final long FF_GLOBAL_LOCK_LOCKED_VALUE = -1;
     private static final String FF_COMMIT_TOPIC_NAME = "ff.hzl.commits";
+    private static final String FF_STARTUP_TOPIC_NAME = "ff.hzl.startup";
+    private static final String FF_INIT_MARKER_NAME = "initMarker";
 
     private static HazelcastInstance HAZELCAST_INSTANCE;
+    private static CommitSequencer COMMIT_SEQUENCER;
 
     // remote commits that have not been applied yet
     private static final ConcurrentLinkedQueue<RemoteCommit> REMOTE_COMMITS = new ConcurrentLinkedQueue<RemoteCommit>();
+    // notified whenever remote commits are enqueued
+    private static final Object REMOTE_COMMITS_ARRIVAL = new Object();
+    // the tx number of the most recent remote commit enqueued. Only written by the topic's listener, which gets the messages
+    // in order
+    private static volatile int LAST_RECEIVED_TX_NUMBER = 0;
 
     private ClusterUtils() {
     }
@@ -41,35 +51,34 @@ public class ClusterUtils {
     public static void initializeGroupCommunication(JvstmClusterConfig thisConfig) {
         com.hazelcast.config.Config hzlCfg = thisConfig.getHazelcastConfig();
         HAZELCAST_INSTANCE = Hazelcast.newHazelcastInstance(hzlCfg);
+        COMMIT_SEQUENCER = new CommitSequencer(HAZELCAST_INSTANCE);
 
         // register listener for remote commits
         registerListenerForRemoteCommits();
     }
 
     private static void registerListenerForRemoteCommits() {
-        ITopic<RemoteCommit> topic = getHazelcastInstance().getTopic(FF_COMMIT_TOPIC_NAME);
+        ITopic<RemoteCommitBatch> topic = getHazelcastInstance().getTopic(FF_COMMIT_TOPIC_NAME);
 
-        topic.addMessageListener(new MessageListener<RemoteCommit>() {
+        topic.addMessageListener(new MessageListener<RemoteCommitBatch>() {
 
             @Override
-            public void onMessage(Message<RemoteCommit> message) {
-                RemoteCommit remoteCommit = message.getMessageObject();
+            public void onMessage(Message<RemoteCommitBatch> message) {
+                RemoteCommitBatch batch = message.getMessageObject();
 
-                if (remoteCommit.getServerId() == DomainClassInfo.getServerId()) {
+                if (batch.getServerId() == DomainClassInfo.getServerId()) {
                     logger.debug("Ignoring self commit message.");
                 } else {
-                    logger.debug("Received remote commit message. serverId={}, tx={}", remoteCommit.getServerId(),
-                            remoteCommit.getTxNumber());
-//                    logger.debug("lets take a break");
-//                    try {
-//                        Thread.sleep(5000);
-//                    } catch (InterruptedException e) {
-//                        e.printStackTrace();
-//                        System.exit(-1);
-//                    }
-                    REMOTE_COMMITS.offer(remoteCommit);
-//                    logger.debug("Enqueued remote commit: serverId={}, tx={}", remoteCommit.getServerId(),
-//                            remoteCommit.getTxNumber());
+                    for (RemoteCommit remoteCommit : batch.getCommits()) {
+                        logger.debug("Received remote commit message. serverId={}, tx={}", remoteCommit.getServerId(),
+                                remoteCommit.getTxNumber());
+                        REMOTE_COMMITS.offer(remoteCommit);
+                        LAST_RECEIVED_TX_NUMBER = remoteCommit.getTxNumber();
+                        COMMIT_SEQUENCER.seen(remoteCommit.getTxNumber());
+                    }
+                    synchronized (REMOTE_COMMITS_ARRIVAL) {
+                        REMOTE_COMMITS_ARRIVAL.notifyAll();
+                    }
                 }
 
             }
@@ -77,8 +86,7 @@ public class ClusterUtils {
     }
 
     public static void initGlobalLockNumber(int value) {
-        AtomicNumber lockNumber = getHazelcastInstance().getAtomicNumber(FF_GLOBAL_LOCK_NUMBER_NAME);
-        lockNumber.compareAndSet(0, value);
+        COMMIT_SEQUENCER.init(value);
     }
 
     // the instance should have been initialized in a single thread within the
@@ -88,101 +96,147 @@ public class ClusterUtils {
         return HAZELCAST_INSTANCE;
     }
 
+    /**
+     * Blocks until this thread holds the cluster-wide commit token (see {@link CommitSequencer}).
+     * 
+     * @return The number of the most recent commit in the cluster
+     */
     public static int globalLock() {
         logger.debug("Will get global cluster lock...");
 
         try {
-            AtomicNumber lockNumber = getHazelcastInstance().getAtomicNumber(FF_GLOBAL_LOCK_NUMBER_NAME);
-
-//            int ourLockValue = 0 - DomainClassInfo.getServerId();
-            do {
-                long currentValue = lockNumber.get();
-                boolean unlocked = currentValue != FF_GLOBAL_LOCK_LOCKED_VALUE;
-
-                if (unlocked && lockNumber.compareAndSet(currentValue, FF_GLOBAL_LOCK_LOCKED_VALUE)) {
-                    logger.debug("Acquired global cluster lock. ({} -> {})", currentValue, FF_GLOBAL_LOCK_LOCKED_VALUE);
+            int mostRecentGlobalTxNum = COMMIT_SEQUENCER.acquire();
+            logger.debug("Acquired global cluster lock. (mostRecentGlobalTxNum={})", mostRecentGlobalTxNum);
+            return mostRecentGlobalTxNum;
+        } catch (RuntimeException e) {
+            logger.error("Failed to acquire global lock");
+            throw new TransactionError(e);
+        }
+    }
 
-                    return (int) currentValue;  // transaction counters fit into an integer
-                } else {
-                    logger.debug("Global lock taken. Retrying...");
+    /**
+     * Takes the number of the commit done while holding the cluster-wide commit token (see {@link CommitSequencer#commit(int)}).
+     * Must be invoked before anything of the commit becomes visible outside this node.
+     * 
+     * @param txNum The number of the commit, which follows the number returned by {@link #globalLock()}
+     */
+    public static void globalCommit(int txNum) {
+        logger.debug("Will take commit number {}", txNum);
+        try {
+            COMMIT_SEQUENCER.commit(txNum);
+        } catch (RuntimeException e) {
+            logger.error("Failed to take commit number {}", txNum);
+            throw new TransactionError(e);
+        }
+    }
 
-                    globalLockIsNotYetAvailable();
-                }
-            } while (true);
+    /**
+     * Gives back the number taken by {@link #globalCommit(int)}, when the commit failed before anything of it became visible
+     * outside this node.
+     */
+    public static void globalAbort(int txNum) {
+        logger.debug("Will give back commit number {}", txNum);
+        try {
+            COMMIT_SEQUENCER.abort(txNum);
         } catch (RuntimeException e) {
-            logger.error("Failed to acquire global lock");
+            logger.error("Failed to give back commit number {}", txNum);
             throw new TransactionError(e);
         }
     }
 
-    /* We'll retry later. Several mechanisms can be used here.  Which is the
-    best? For now we try to help a little by spending time checking if the
-    REMOTE_COMMITS queue requires any processing.  Also, this may help other
-    transactions that are starting to go ahead */
-    private static void globalLockIsNotYetAvailable() {
-        // first naive version. just burn cpu
-//        try {
-//            Thread.sleep(3000);
-//        } catch (InterruptedException e) {
-//            // TODO Auto-generated catch block
-//            e.printStackTrace();
-//        }
-        Thread.yield();
-    }
-
-//    public static void globalLock() {
-//        try {
-//            getHazelcastInstance().getLock(FF_GLOBAL_LOCK_NAME).lock();
-//        } catch (RuntimeException e) {
-//            logger.error("Failed to acquire global lock");
-//            throw new TransactionError(e);
-//        }
-//    }
-//    
-    public static void globalUnlock(int txNum) {
-        logger.debug("Will release global cluster lock ( -> {})", txNum);
+    public static void globalUnlock() {
+        logger.debug("Will release global cluster lock");
         try {
-            AtomicNumber lockNumber = getHazelcastInstance().getAtomicNumber(FF_GLOBAL_LOCK_NUMBER_NAME);
-            lockNumber.set(txNum);
+            COMMIT_SEQUENCER.release();
         } catch (RuntimeException e) {
             logger.error("Failed to release global lock");
             throw new TransactionError(e);
         }
     }
 
-//    public static void globalUnlock() {
-//        try {
-//            getHazelcastInstance().getLock(FF_GLOBAL_LOCK_NAME).unlock();
-//        } catch (RuntimeException e) {
-//            logger.error("Failed to release global lock");
-//            throw new TransactionError(e);
-//        }
-//    }
+    /**
+     * Get a lock that excludes the threads that hold it in all the nodes of the cluster. The lock is released if the node that
+     * holds it leaves the cluster.
+     * 
+     * @param name The name of the lock, which is the same in all the nodes
+     */
+    public static Lock getClusterLock(String name) {
+        return getHazelcastInstance().getLock(name);
+    }
 
     public static void notifyStartupComplete() {
+        notifyStartupComplete(getHazelcastInstance());
+    }
+
+    // Package-private for the tests, which run several nodes in the same JVM
+    static void notifyStartupComplete(HazelcastInstance hazelcastInstance) {
         logger.info("Notify other nodes that startup completed");
 
-        AtomicNumber initMarker = getHazelcastInstance().getAtomicNumber("initMarker");
+        AtomicNumber initMarker = hazelcastInstance.getAtomicNumber(FF_INIT_MARKER_NAME);
         initMarker.incrementAndGet();
+
+        // wake up the nodes that are already waiting.  Those that start waiting later will find the marker set
+        ITopic<Boolean> topic = hazelcastInstance.getTopic(FF_STARTUP_TOPIC_NAME);
+        topic.publish(Boolean.TRUE);
     }
 
-    public static void waitForStartupFromFirstNode() {
+    /**
+     * Blocks until the first node notifies that its startup is complete (see {@link #notifyStartupComplete()}).
+     * 
+     * @param timeoutMillis How long to wait for the first node
+     * @throws Error If the first node does not complete its startup in time
+     */
+    public static void waitForStartupFromFirstNode(long timeoutMillis) {
+        waitForStartupFromFirstNode(getHazelcastInstance(), timeoutMillis);
+    }
+
+    // Package-private for the tests, which run several nodes in the same JVM
+    static void waitForStartupFromFirstNode(HazelcastInstance hazelcastInstance, long timeoutMillis) {
         logger.info("Waiting for startup from first node");
 
-        // check initMarker in AtomicNumber (value 1)
-        AtomicNumber initMarker = getHazelcastInstance().getAtomicNumber("initMarker");
+        final CountDownLatch startupComplete = new CountDownLatch(1);
+        MessageListener<Boolean> listener = new MessageListener<Boolean>() {
+            @Override
+            public void onMessage(Message<Boolean> message) {
+                startupComplete.countDown();
+            }
+        };
 
-        while (initMarker.get() == 0) {
-            logger.debug("Waiting for first node to startup...");
-            try {
-                Thread.sleep(1000);
-            } catch (InterruptedException e) {
-                // ignore
+        // listen before checking the marker, so that the notification cannot be missed in between
+        ITopic<Boolean> topic = hazelcastInstance.getTopic(FF_STARTUP_TOPIC_NAME);
+        topic.addMessageListener(listener);
+        try {
+            AtomicNumber initMarker = hazelcastInstance.getAtomicNumber(FF_INIT_MARKER_NAME);
+            if (initMarker.get() == 0) {
+                logger.debug("Waiting for first node to startup...");
+                if (!awaitUninterruptibly(startupComplete, timeoutMillis)) {
+                    throw new Error("The first node did not complete its startup within " + timeoutMillis + " ms");
+                }
             }
+        } finally {
+            topic.removeMessageListener(listener);
         }
         logger.debug("First node startup is complete.  We can proceed.");
     }
 
+    private static boolean awaitUninterruptibly(CountDownLatch latch, long timeoutMillis) {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return latch.await(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
     public static int obtainNewServerId() {
         /* currently does not reuse the server Id value while any server is up.
         This can be changed if needed.  However, we currently depend on the first
@@ -204,19 +258,49 @@ public class ClusterUtils {
     }
 
     public static void sendCommitInfoToOthers(RemoteCommit remoteCommit) {
-        // test for debug, because computing remoteCommit.toString() is expensive
+        sendCommitInfoToOthers(Collections.singletonList(remoteCommit));
+    }
+
+    /**
+     * Send several commits of this server in a single message.
+     * 
+     * @param remoteCommits The commits, in the order of their tx numbers
+     */
+    public static void sendCommitInfoToOthers(List<RemoteCommit> remoteCommits) {
+        RemoteCommitBatch batch = new RemoteCommitBatch(DomainClassInfo.getServerId(), remoteCommits);
+
+        // test for debug, because computing batch.toString() is expensive
         if (logger.isDebugEnabled()) {
-            logger.debug("Send commit info to others: {}", remoteCommit);
+            logger.debug("Send commit info to others: {}", batch);
         }
 
-        ITopic<RemoteCommit> topic = getHazelcastInstance().getTopic(FF_COMMIT_TOPIC_NAME);
-        topic.publish(remoteCommit);
+        ITopic<RemoteCommitBatch> topic = getHazelcastInstance().getTopic(FF_COMMIT_TOPIC_NAME);
+        topic.publish(batch);
     }
 
     public static ConcurrentLinkedQueue<RemoteCommit> getRemoteCommits() {
         return REMOTE_COMMITS;
     }
 
+    /**
+     * @return The tx number of the most recent remote commit received. It is enqueued (see {@link #getRemoteCommits()}), unless
+     *         it was already applied.
+     */
+    public static int getLastReceivedTxNumber() {
+        return LAST_RECEIVED_TX_NUMBER;
+    }
+
+    /**
+     * Waits until there are remote commits to apply, or until the given time elapses.
+     */
+    public static void awaitRemoteCommits(long timeoutMillis) throws InterruptedException {
+        synchronized (REMOTE_COMMITS_ARRIVAL) {
+            if (REMOTE_COMMITS.isEmpty()) {
+                REMOTE_COMMITS_ARRIVAL.wait(timeoutMillis);
+            }
+        }
+    }
+
     public static void shutdown() {
         getHazelcastInstance().getLifecycleService().shutdown();
     }
@@ -0,0 +1,151 @@
+/*
+ * Fenix Framework, a framework to develop Java Enterprise Applications.
+ *
+ * Copyright (C) 2013 Fenix Framework Team and/or its affiliates and other contributors as indicated by the @author tags.
+ *
+ * This file is part of the Fenix Framework.  Read the file COPYRIGHT.TXT for more copyright and licensing information.
+ */
+package pt.ist.fenixframework.backend.jvstm.cluster;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.hazelcast.core.AtomicNumber;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.ILock;
+import com.hazelcast.core.MembershipEvent;
+import com.hazelcast.core.MembershipListener;
+
+/**
+ * Assigns the transaction numbers of the commits of the whole cluster.
+ *
+ * A node may only commit while holding the commit token, a distributed lock that is granted to one node at a time. Nodes
+ * waiting for the token block until it is released, rather than spinning on the cluster. Along with the token, the holder
+ * gets the number of the most recent commit in the cluster, and its own commit (if any) takes the next number, which it
+ * reserves with {@link #commit(int)} before the commit is persisted or sent to the other nodes. So, once any node may see a
+ * commit, its number is taken, even if its node leaves the cluster right away. Hazelcast releases the token if its holder
+ * leaves the cluster. A node that leaves after taking a number, but before sending its commit, leaves the other nodes waiting
+ * for that commit.
+ *
+ * When a node leaves, the shared number may also have lost its most recent updates, if it was kept by that node. So, after
+ * the membership changes, the next holder of the token rebuilds it from the numbers of the commits that this node has seen,
+ * on the commit topic or done by itself, which are never reused.
+ *
+ * The token is held by a thread, so {@link #commit(int)}, {@link #abort(int)} and {@link #release()} must be invoked by the thread that invoked
+ * {@link #acquire()}.
+ */
+class CommitSequencer {
+
+    private static final Logger logger = LoggerFactory.getLogger(CommitSequencer.class);
+
+    static final String FF_COMMIT_TOKEN_NAME = "ff.hzl.global.lock";
+    static final String FF_LAST_COMMITTED_NUMBER_NAME = "ff.hzl.global.lock.number";
+
+    private final ILock commitToken;
+    private final AtomicNumber lastCommittedNumber;
+    // the highest number of the commits seen by this node
+    private final AtomicInteger highestSeenNumber = new AtomicInteger(0);
+    // set when a node leaves the cluster, until the number is rebuilt
+    private volatile boolean rebuildNeeded = false;
+
+    CommitSequencer(HazelcastInstance hazelcastInstance) {
+        this.commitToken = hazelcastInstance.getLock(FF_COMMIT_TOKEN_NAME);
+        this.lastCommittedNumber = hazelcastInstance.getAtomicNumber(FF_LAST_COMMITTED_NUMBER_NAME);
+        hazelcastInstance.getCluster().addMembershipListener(new MembershipListener() {
+            @Override
+            public void memberAdded(MembershipEvent membershipEvent) {
+            }
+
+            @Override
+            public void memberRemoved(MembershipEvent membershipEvent) {
+                rebuildNeeded = true;
+            }
+        });
+    }
+
+    /**
+     * Sets the number of the most recent commit, unless some node has already done it.
+     */
+    void init(int txNumber) {
+        seen(txNumber);
+        this.lastCommittedNumber.compareAndSet(0, txNumber);
+    }
+
+    /**
+     * Records the number of a commit that this node has learned about. The number is never handed out again, even if the shared
+     * number loses it.
+     */
+    void seen(int txNumber) {
+        int highest;
+        do {
+            highest = this.highestSeenNumber.get();
+        } while (txNumber > highest && !this.highestSeenNumber.compareAndSet(highest, txNumber));
+    }
+
+    /**
+     * Blocks until this thread holds the commit token.
+     *
+     * @return The number of the most recent commit in the cluster
+     */
+    int acquire() {
+        this.commitToken.lock();
+        try {
+            if (this.rebuildNeeded) {
+                // cleared before reading, so that a node leaving meanwhile causes another rebuild
+                this.rebuildNeeded = false;
+                rebuild();
+            }
+            return (int) this.lastCommittedNumber.get(); // transaction counters fit into an integer
+        } catch (RuntimeException e) {
+            this.commitToken.unlock();
+            throw e;
+        }
+    }
+
+    // only invoked while holding the token, so the shared number only changes here
+    private void rebuild() {
+        long current = this.lastCommittedNumber.get();
+        int highest = this.highestSeenNumber.get();
+        if (highest > current) {
+            logger.warn("The most recent commit number ({}) was lost. Restoring the number of the most recent commit seen ({})",
+                    current, highest);
+            this.lastCommittedNumber.compareAndSet(current, highest);
+        }
+    }
+
+    /**
+     * Takes the number of the commit done with the token. Must be invoked at most once per acquisition, before anything of the
+     * commit becomes visible outside this node.
+     *
+     * @param txNumber The number of the commit, which must follow the number returned by {@link #acquire()}
+     * @throws IllegalStateException If the number does not follow the most recent commit in the cluster
+     */
+    void commit(int txNumber) {
+        if (!this.lastCommittedNumber.compareAndSet(txNumber - 1, txNumber)) {
+            throw new IllegalStateException("Commit number " + txNumber + " does not follow the most recent commit ("
+                    + this.lastCommittedNumber.get() + ")");
+        }
+        seen(txNumber);
+    }
+
+    /**
+     * Gives back the number taken by {@link #commit(int)}, when the commit failed before anything of it became visible outside
+     * this node.
+     */
+    void abort(int txNumber) {
+        this.lastCommittedNumber.compareAndSet(txNumber, txNumber - 1);
+        int highest;
+        do {
+            highest = this.highestSeenNumber.get();
+        } while (highest == txNumber && !this.highestSeenNumber.compareAndSet(highest, txNumber - 1));
+    }
+
+    /**
+     * Releases the commit token.
+     */
+    void release() {
+        this.commitToken.unlock();
+    }
+}
@@ -7,16 +7,23 @@
  */
 package pt.ist.fenixframework.backend.jvstm.cluster;
 
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
 import jvstm.Transaction;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import pt.ist.fenixframework.FenixFramework;
 import pt.ist.fenixframework.backend.jvstm.JVSTMBackEnd;
 import pt.ist.fenixframework.backend.jvstm.JVSTMConfig;
 import pt.ist.fenixframework.backend.jvstm.pstm.ClusteredPersistentReadOnlyTransaction;
 import pt.ist.fenixframework.backend.jvstm.pstm.ClusteredPersistentTransaction;
+import pt.ist.fenixframework.backend.jvstm.pstm.DomainClassInfo;
 import pt.ist.fenixframework.backend.jvstm.repository.Repository;
+import pt.ist.fenixframework.dml.DomainModel;
 
 public abstract class JvstmClusterBackEnd extends JVSTMBackEnd {
     private static final Logger logger = LoggerFactory.getLogger(JvstmClusterBackEnd.class);
@@ -28,6 +35,10 @@ public abstract class JvstmClusterBackEnd extends JVSTMBackEnd {
     @Override
     public void init(JVSTMConfig jvstmConfig) {
         JvstmClusterConfig thisConfig = (JvstmClusterConfig) jvstmConfig;
+        ClusteredPersistentTransaction.setBackEnd(this);
+
+        // joining the cluster takes a while, so meanwhile get the domain classes ready for initializing the DomainClassInfos
+        FutureTask<Void> domainClassesLoading = startLoadingDomainClasses(FenixFramework.getDomainModel());
 
         logger.info("initializeGroupCommunication()");
         ClusterUtils.initializeGroupCommunication(thisConfig);
@@ -37,6 +48,7 @@ public abstract class JvstmClusterBackEnd extends JVSTMBackEnd {
 
         if (firstNode) {
             logger.info("This is the first node!");
+            awaitDomainClasses(domainClassesLoading);
             localInit(thisConfig, serverId);
             // initialize the global lock value to the most recent commit tx number
             ClusterUtils.initGlobalLockNumber(Transaction.getMostRecentCommitedNumber());
@@ -48,9 +60,50 @@ public abstract class JvstmClusterBackEnd extends JVSTMBackEnd {
             message about startup being complete */
         } else {
             logger.info("This is NOT the first node.");
-            ClusterUtils.waitForStartupFromFirstNode();
+            ClusterUtils.waitForStartupFromFirstNode(thisConfig.getStartupTimeoutMillis());
+            awaitDomainClasses(domainClassesLoading);
             localInit(thisConfig, serverId);
         }
+
+        ClusteredPersistentTransaction.startRemoteCommitApplier(thisConfig.getRemoteCommitApplierThreads());
+    }
+
+    /* the domain model is obtained by the caller: the framework may be
+    initializing within the static initializer of FenixFramework, which other
+    threads cannot access until it completes */
+    private static FutureTask<Void> startLoadingDomainClasses(final DomainModel domainModel) {
+        FutureTask<Void> loading = new FutureTask<Void>(new Callable<Void>() {
+            @Override
+            public Void call() {
+                DomainClassInfo.loadDomainClasses(domainModel);
+                return null;
+            }
+        });
+
+        Thread loader = new Thread(loading, "FenixFramework domain class loader");
+        loader.setDaemon(true);
+        loader.start();
+        return loading;
+    }
+
+    private static void awaitDomainClasses(FutureTask<Void> loading) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    loading.get();
+                    return;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    throw new Error("Failed to load the domain classes", e.getCause());
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
     }
 
     @Override
@@ -75,6 +128,7 @@ public abstract class JvstmClusterBackEnd extends JVSTMBackEnd {
 
     @Override
     public void shutdown() {
+        ClusteredPersistentTransaction.stopRemoteCommitApplier();
         getRepository().closeRepository();
         ClusterUtils.shutdown();
         super.shutdown();
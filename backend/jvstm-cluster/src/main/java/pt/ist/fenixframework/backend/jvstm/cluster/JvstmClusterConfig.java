@@ -10,6 +10,7 @@ package pt.ist.fenixframework.backend.jvstm.cluster;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import pt.ist.fenixframework.ConfigError;
 import pt.ist.fenixframework.backend.jvstm.JVSTMConfig;
 
 import com.hazelcast.config.ClasspathXmlConfig;
@@ -32,10 +33,48 @@ public abstract class JvstmClusterConfig extends JVSTMConfig {
      */
     protected String hazelcastConfigFile = "fenix-framework-hazelcast-default.xml";
 
+    /**
+     * This <strong>optional</strong> parameter specifies how many threads apply the commits received from other nodes. The
+     * boxes written by large batches of remote commits are split among these threads. The default value for this parameter is
+     * the number of available processors.
+     */
+    protected int remoteCommitApplierThreads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * This <strong>optional</strong> parameter specifies how long, in milliseconds, a starting node waits for the first node
+     * of the cluster to complete its startup, before giving up. The default value for this parameter is <code>300000</code>
+     * (five minutes).
+     */
+    protected long startupTimeoutMillis = 300000;
+
     public String getHazelcastConfigFile() {
         return hazelcastConfigFile;
     }
 
+    protected void remoteCommitApplierThreadsFromString(String value) {
+        try {
+            remoteCommitApplierThreads = Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new ConfigError(e);
+        }
+    }
+
+    public int getRemoteCommitApplierThreads() {
+        return remoteCommitApplierThreads;
+    }
+
+    protected void startupTimeoutMillisFromString(String value) {
+        try {
+            startupTimeoutMillis = Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new ConfigError(e);
+        }
+    }
+
+    public long getStartupTimeoutMillis() {
+        return startupTimeoutMillis;
+    }
+
     @Override
     public JvstmClusterBackEnd getBackEnd() {
         return (JvstmClusterBackEnd) this.backEnd;
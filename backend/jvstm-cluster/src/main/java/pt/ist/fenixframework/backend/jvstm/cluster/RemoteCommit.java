@@ -7,51 +7,96 @@
  */
 package pt.ist.fenixframework.backend.jvstm.cluster;
 
+import java.io.ByteArrayOutputStream;
 import java.io.DataInput;
 import java.io.DataOutput;
+import java.io.DataOutputStream;
 import java.io.IOException;
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import pt.ist.fenixframework.backend.jvstm.pstm.OwnedVBox;
 import pt.ist.fenixframework.backend.jvstm.pstm.VBox;
+import pt.ist.fenixframework.core.CompactExternalizationCodec;
 
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
-import com.google.gson.JsonPrimitive;
 import com.hazelcast.nio.DataSerializable;
 
+/**
+ * The boxes written by a transaction committed in some server, which the other servers must invalidate.
+ *
+ * Boxes that have a slot index (see {@link OwnedVBox#getSlotIndex()}) are identified by the oid of their owner and their slot
+ * index. They are sorted by oid and encoded as the varint difference to the previous oid followed by the varint slot index, so
+ * that most boxes take only a few bytes. The remaining boxes are identified by their id.
+ */
 public class RemoteCommit implements DataSerializable {
     private static final long serialVersionUID = 1L;
 
     private static final Logger logger = LoggerFactory.getLogger(RemoteCommit.class);
 
+    private static final Comparator<OwnedVBox> OID_ORDER = new Comparator<OwnedVBox>() {
+        @Override
+        public int compare(OwnedVBox box1, OwnedVBox box2) {
+            long oid1 = box1.getOwnerObject().getOid();
+            long oid2 = box2.getOwnerObject().getOid();
+            if (oid1 != oid2) {
+                return oid1 < oid2 ? -1 : 1;
+            }
+            return box1.getSlotIndex() - box2.getSlotIndex();
+        }
+    };
+
     protected int serverId;
     protected int txNumber;
 
+    // the boxes identified by (oid, slot index), sorted by oid
+    protected long[] oids;
+    protected int[] slotIndexes;
+    // the boxes identified by their id
     protected String[] ids;
 
     public RemoteCommit() {
         // required by Hazelcast's DataSerializable
     }
 
+    RemoteCommit(int serverId, int txNumber) {
+        this.serverId = serverId;
+        this.txNumber = txNumber;
+    }
+
     public RemoteCommit(int serverId, int txNumber, Map<jvstm.VBox, Object> boxesWritten) {
         this.serverId = serverId;
         this.txNumber = txNumber;
+        setBoxesWritten(boxesWritten);
+    }
 
-        int writeSetSize = boxesWritten.size();
-        this.ids = new String[writeSetSize];
+    protected void setBoxesWritten(Map<jvstm.VBox, Object> boxesWritten) {
+        List<OwnedVBox> indexedBoxes = new ArrayList<OwnedVBox>(boxesWritten.size());
+        List<String> otherIds = new ArrayList<String>();
 
-        // construir isto fora do lock e tb o byte array?
-        int pos = 0;
-        for (Map.Entry<jvstm.VBox, Object> entry : boxesWritten.entrySet()) {
-            VBox<?> vbox = (VBox<?>) entry.getKey();
-            ids[pos++] = vbox.getId();
+        for (jvstm.VBox box : boxesWritten.keySet()) {
+            if (box instanceof OwnedVBox && ((OwnedVBox) box).getSlotIndex() != OwnedVBox.NO_SLOT_INDEX) {
+                indexedBoxes.add((OwnedVBox) box);
+            } else {
+                otherIds.add(((VBox<?>) box).getId());
+            }
         }
+
+        OwnedVBox[] sorted = indexedBoxes.toArray(new OwnedVBox[indexedBoxes.size()]);
+        Arrays.sort(sorted, OID_ORDER);
+
+        this.oids = new long[sorted.length];
+        this.slotIndexes = new int[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            this.oids[i] = sorted[i].getOwnerObject().getOid();
+            this.slotIndexes[i] = sorted[i].getSlotIndex();
+        }
+        this.ids = otherIds.toArray(new String[otherIds.size()]);
     }
 
     public int getServerId() {
@@ -62,37 +107,71 @@ public class RemoteCommit implements DataSerializable {
         return this.txNumber;
     }
 
+    /**
+     * @return The oids of the owners of the boxes identified by slot index. The box at each position has the slot index at the
+     *         same position of {@link #getSlotIndexes()}.
+     */
+    public long[] getOids() {
+        return this.oids;
+    }
+
+    public int[] getSlotIndexes() {
+        return this.slotIndexes;
+    }
+
+    /**
+     * @return The ids of the boxes that have no slot index.
+     */
     public String[] getIds() {
         return this.ids;
     }
 
     @Override
     public void writeData(DataOutput out) throws IOException {
-        out.writeInt(this.serverId);
-        out.writeInt(this.txNumber);
-
-        int size = this.ids.length;
-        out.writeInt(size);
+        CompactExternalizationCodec.writeVarInt(this.serverId, out);
+        CompactExternalizationCodec.writeVarInt(this.txNumber, out);
+        writeChanges(out);
+    }
 
-        int commitSize = 4 * 3; // debug
+    @Override
+    public void readData(DataInput in) throws IOException {
+        this.serverId = CompactExternalizationCodec.readVarInt(in);
+        this.txNumber = CompactExternalizationCodec.readVarInt(in);
+        readChanges(in);
+    }
 
+    // writes the boxes, but not the server and tx number, so that they can be shared by the commits of a RemoteCommitBatch
+    protected void writeChanges(DataOutput out) throws IOException {
+        int size = this.oids.length;
+        CompactExternalizationCodec.writeVarInt(size, out);
+        long previousOid = 0;
         for (int i = 0; i < size; i++) {
-            out.writeUTF(ids[i]);
-
-            commitSize += ids[i].length(); // debug: UTF-8 simplification but good enough to get a debug figure
+            // oids are sorted, so the difference is usually small, and zero between boxes of the same object
+            CompactExternalizationCodec.writeVarLong(this.oids[i] - previousOid, out);
+            CompactExternalizationCodec.writeVarInt(this.slotIndexes[i], out);
+            previousOid = this.oids[i];
         }
 
-        logger.debug("RemoteCommit approximate size: {} bytes", commitSize);
+        CompactExternalizationCodec.writeVarInt(this.ids.length, out);
+        for (String id : this.ids) {
+            out.writeUTF(id);
+        }
     }
 
-    @Override
-    public void readData(DataInput in) throws IOException {
-        this.serverId = in.readInt();
-        this.txNumber = in.readInt();
-
-        int size = in.readInt();
-        this.ids = new String[size];
+    protected void readChanges(DataInput in) throws IOException {
+        int size = CompactExternalizationCodec.readVarInt(in);
+        this.oids = new long[size];
+        this.slotIndexes = new int[size];
+        long previousOid = 0;
         for (int i = 0; i < size; i++) {
+            previousOid += CompactExternalizationCodec.readVarLong(in);
+            this.oids[i] = previousOid;
+            this.slotIndexes[i] = CompactExternalizationCodec.readVarInt(in);
+        }
+
+        int idsSize = CompactExternalizationCodec.readVarInt(in);
+        this.ids = new String[idsSize];
+        for (int i = 0; i < idsSize; i++) {
             this.ids[i] = in.readUTF();
         }
     }
@@ -103,12 +182,17 @@ public class RemoteCommit implements DataSerializable {
         str.append("serverId=").append(getServerId());
         str.append(", txNumber=").append(getTxNumber());
         str.append(", changes={");
-        int size = getIds().length;
-        for (int i = 0; i < size; i++) {
+        for (int i = 0; i < this.oids.length; i++) {
             if (i != 0) {
                 str.append(", ");
             }
-            str.append(getIds()[i]);
+            str.append(Long.toHexString(this.oids[i])).append('#').append(this.slotIndexes[i]);
+        }
+        for (int i = 0; i < this.ids.length; i++) {
+            if (i != 0 || this.oids.length != 0) {
+                str.append(", ");
+            }
+            str.append(this.ids[i]);
         }
         str.append("}");
         return str.toString();
@@ -117,14 +201,8 @@ public class RemoteCommit implements DataSerializable {
     public static class SpeculativeRemoteCommit extends RemoteCommit {
         private static final long serialVersionUID = 1L;
 
-        /**
-         * The {@link JsonParser} to be used. Because its instances are
-         * stateless we can reuse the parser.
-         */
-        private static final JsonParser parser = new JsonParser();
-
         // prepared data to send so that during commit lock, things can go faster
-        protected String commitData;
+        protected byte[] commitData;
 
         public SpeculativeRemoteCommit() {
             // required by Hazelcast's DataSerializable
@@ -136,20 +214,18 @@ public class RemoteCommit implements DataSerializable {
 
             // get everything ready to 'just' send
             this.serverId = serverId;
-
-            JsonArray array = new JsonArray();
-            int size = 0;
-            for (Map.Entry<jvstm.VBox, Object> entry : boxesWritten.entrySet()) {
-                VBox<?> vbox = (VBox<?>) entry.getKey();
-                array.add(new JsonPrimitive(vbox.getId()));
-                size++;
+            setBoxesWritten(boxesWritten);
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try {
+                super.writeChanges(new DataOutputStream(bytes));
+            } catch (IOException e) {
+                // cannot happen when writing to memory
+                throw new Error(e);
             }
+            this.commitData = bytes.toByteArray();
 
-            JsonObject topLevel = new JsonObject();
-            topLevel.add("size", new JsonPrimitive(size));
-            topLevel.add("data", array);
-
-            this.commitData = topLevel.toString();
+            logger.debug("RemoteCommit size: {} bytes", this.commitData.length);
         }
 
         public void setTxNumber(int txNumber) {
@@ -157,42 +233,12 @@ public class RemoteCommit implements DataSerializable {
         }
 
         @Override
-        public void writeData(DataOutput out) throws IOException {
-            out.writeInt(this.serverId);
-            out.writeInt(this.txNumber);
-            out.writeUTF(this.commitData);
-        }
-
-        @Override
-        public void readData(DataInput in) throws IOException {
-            this.serverId = in.readInt();
-            this.txNumber = in.readInt();
-            String commitData = in.readUTF();
-
-            JsonObject topLevel = parser.parse(commitData).getAsJsonObject();
-
-            int size = topLevel.get("size").getAsInt();
-            this.ids = new String[size];
-
-            Iterator<JsonElement> it = topLevel.get("data").getAsJsonArray().iterator();
-            for (int i = 0; i < size; i++) {
-
-                this.ids[i] = it.next().getAsString();
-            }
-        }
-
-        @Override
-        public String toString() {
-            // if this is remote commit was received then the oids array is set.  Otherwise, we'll print the JSON array
-            if (getIds() != null) {
-                return super.toString();
+        protected void writeChanges(DataOutput out) throws IOException {
+            if (this.commitData == null) {
+                // this instance was read from the network
+                super.writeChanges(out);
             } else {
-                StringBuilder str = new StringBuilder();
-                str.append("serverId=").append(getServerId());
-                str.append(", txNumber=").append(getTxNumber());
-                str.append(", changes=");
-                str.append(commitData);
-                return str.toString();
+                out.write(this.commitData);
             }
         }
     }
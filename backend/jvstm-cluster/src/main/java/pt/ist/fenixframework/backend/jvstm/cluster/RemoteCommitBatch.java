@@ -0,0 +1,88 @@
+/*
+ * Fenix Framework, a framework to develop Java Enterprise Applications.
+ *
+ * Copyright (C) 2013 Fenix Framework Team and/or its affiliates and other contributors as indicated by the @author tags.
+ *
+ * This file is part of the Fenix Framework.  Read the file COPYRIGHT.TXT for more copyright and licensing information.
+ */
+package pt.ist.fenixframework.backend.jvstm.cluster;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import pt.ist.fenixframework.core.CompactExternalizationCodec;
+
+import com.hazelcast.nio.DataSerializable;
+
+/**
+ * The message that carries {@link RemoteCommit}s between servers. A single message may carry several commits of the same
+ * server, in which case the server id is sent once, and each tx number is sent as the difference to the previous one.
+ */
+public class RemoteCommitBatch implements DataSerializable {
+    private static final long serialVersionUID = 1L;
+
+    private int serverId;
+    private RemoteCommit[] commits;
+
+    public RemoteCommitBatch() {
+        // required by Hazelcast's DataSerializable
+    }
+
+    /**
+     * @param serverId The server where all the commits took place
+     * @param commits The commits, in the order in which they are to be applied
+     */
+    public RemoteCommitBatch(int serverId, List<RemoteCommit> commits) {
+        this.serverId = serverId;
+        this.commits = commits.toArray(new RemoteCommit[commits.size()]);
+        for (RemoteCommit commit : this.commits) {
+            if (commit.getServerId() != serverId) {
+                throw new IllegalArgumentException("Commit from server " + commit.getServerId() + " in a batch of server "
+                        + serverId);
+            }
+        }
+    }
+
+    public int getServerId() {
+        return this.serverId;
+    }
+
+    public List<RemoteCommit> getCommits() {
+        return Arrays.asList(this.commits);
+    }
+
+    @Override
+    public void writeData(DataOutput out) throws IOException {
+        CompactExternalizationCodec.writeVarInt(this.serverId, out);
+        CompactExternalizationCodec.writeVarInt(this.commits.length, out);
+        int previousTxNumber = 0;
+        for (RemoteCommit commit : this.commits) {
+            int txNumberDelta = commit.getTxNumber() - previousTxNumber;
+            CompactExternalizationCodec.writeVarInt(CompactExternalizationCodec.encodeZigZag(txNumberDelta), out);
+            commit.writeChanges(out);
+            previousTxNumber = commit.getTxNumber();
+        }
+    }
+
+    @Override
+    public void readData(DataInput in) throws IOException {
+        this.serverId = CompactExternalizationCodec.readVarInt(in);
+        int size = CompactExternalizationCodec.readVarInt(in);
+        this.commits = new RemoteCommit[size];
+        int txNumber = 0;
+        for (int i = 0; i < size; i++) {
+            txNumber += CompactExternalizationCodec.decodeZigZag(CompactExternalizationCodec.readVarInt(in));
+            RemoteCommit commit = new RemoteCommit(this.serverId, txNumber);
+            commit.readChanges(in);
+            this.commits[i] = commit;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "serverId=" + this.serverId + ", commits=" + Arrays.toString(this.commits);
+    }
+}
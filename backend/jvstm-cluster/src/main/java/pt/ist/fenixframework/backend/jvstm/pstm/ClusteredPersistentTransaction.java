@@ -7,6 +7,9 @@
  */
 package pt.ist.fenixframework.backend.jvstm.pstm;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import jvstm.ActiveTransactionsRecord;
 import jvstm.Transaction;
 import jvstm.VBoxBody;
@@ -15,20 +18,43 @@ import jvstm.util.Cons;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import pt.ist.fenixframework.FenixFramework;
 import pt.ist.fenixframework.backend.jvstm.cluster.ClusterUtils;
 import pt.ist.fenixframework.backend.jvstm.cluster.JvstmClusterBackEnd;
 import pt.ist.fenixframework.backend.jvstm.cluster.RemoteCommit;
 import pt.ist.fenixframework.backend.jvstm.cluster.RemoteCommit.SpeculativeRemoteCommit;
+import pt.ist.fenixframework.core.TransactionError;
 
 public class ClusteredPersistentTransaction extends PersistentTransaction {
 
     private static final Logger logger = LoggerFactory.getLogger(ClusteredPersistentTransaction.class);
+
+    // how long to wait for remote commits before checking the queue again
+    private static final long REMOTE_COMMITS_WAIT_MILLIS = 1000;
+
+    // the most remote commits applied before making them visible
+    private static final int MAX_REMOTE_COMMITS_PER_ROUND = 1024;
+
+    /* the backend whose cached boxes get the versions of the remote commits.
+    It is set before the node runs any transaction, so that remote commits
+    never need FenixFramework, which may still be initializing (with its
+    lock held by the initializing thread) */
+    private static volatile JvstmClusterBackEnd backEnd = null;
+    private static volatile RemoteCommitApplier applier = null;
+    // notified whenever remote commits are made visible
+    private static final Object REMOTE_COMMITS_APPLIED = new Object();
+    /* set when remote commits fail to be applied. From then on, this node's
+    memory misses some commits, so no transaction may begin */
+    private static volatile Throwable remoteCommitsFailure = null;
+
     private SpeculativeRemoteCommit speculativeRemoteCommit;
 
     public ClusteredPersistentTransaction(ActiveTransactionsRecord record) {
         super(record);
-        ActiveTransactionsRecord newRecord = tryToApplyRemoteCommits(record);
+        /* remote commits are applied by the RemoteCommitApplier, so only wait
+        for those already received, so that this transaction sees any commit
+        that, in the cluster, finished before it began */
+        awaitRemoteCommitsApplied(ClusterUtils.getLastReceivedTxNumber());
+        ActiveTransactionsRecord newRecord = findActiveRecordForNumber(record, Transaction.getMostRecentCommitedNumber());
         if (newRecord != this.activeTxRecord) {
             // if a new record is returned, that means that this transaction
             // will belong
@@ -64,8 +90,6 @@ public class ClusteredPersistentTransaction extends PersistentTransaction {
     @Override
     protected Cons<VBoxBody> performValidCommit() {
         int mostRecentGlobalTxNum = ClusterUtils.globalLock();
-
-        boolean commitSuccess = false;
         try {
 
             // re-validate, if needed, after updating local data
@@ -86,21 +110,56 @@ public class ClusteredPersistentTransaction extends PersistentTransaction {
 
             Cons<VBoxBody> temp = super.performValidCommit();
 
-            if (this.speculativeRemoteCommit != null) {
-                this.speculativeRemoteCommit.setTxNumber(this.getNumber());
-                logger.debug("Sending remote commit created before lock");
-                ClusterUtils.sendCommitInfoToOthers(this.speculativeRemoteCommit);
-            } else {
-                logger.debug("Creating remote commit (within lock) to send others");
-                ClusterUtils.sendCommitInfoToOthers(new RemoteCommit(DomainClassInfo.getServerId(), this.getNumber(),
-                        this.boxesWritten));
+            /* with group commit, other nodes may only learn about this commit
+            once it is durable, otherwise they could reload stale values from
+            the repository. In that case, the commit info is sent by
+            afterDurable(), possibly by another thread, after this transaction has
+            finished. So, the remote commit must be made now, while the write-set
+            is still available */
+            if (!isDurabilityPending()) {
+                sendCommitInfoToOthers(this.getNumber());
+            } else if (this.speculativeRemoteCommit == null) {
+                makeSpeculativeRemoteCommit();
             }
-            commitSuccess = true;
 
             return temp;
         } finally {
-            // this tx number has been updated after performing the valid commit
-            ClusterUtils.globalUnlock((commitSuccess ? this.getNumber() : mostRecentGlobalTxNum));
+            ClusterUtils.globalUnlock();
+        }
+    }
+
+    @Override
+    protected Cons<VBoxBody> doCommit(int newTxNumber) {
+        /* the number is taken before the changes are persisted or sent, so
+        that no other node reuses it, even if this one leaves the cluster
+        before finishing the commit */
+        ClusterUtils.globalCommit(newTxNumber);
+        boolean committed = false;
+        try {
+            Cons<VBoxBody> newBodies = super.doCommit(newTxNumber);
+            committed = true;
+            return newBodies;
+        } finally {
+            if (!committed) {
+                // the changes were neither persisted nor sent, so the number may be used by the next commit
+                ClusterUtils.globalAbort(newTxNumber);
+            }
+        }
+    }
+
+    @Override
+    protected void afterDurable(int txNumber) {
+        sendCommitInfoToOthers(txNumber);
+    }
+
+    private void sendCommitInfoToOthers(int txNumber) {
+        if (this.speculativeRemoteCommit != null) {
+            this.speculativeRemoteCommit.setTxNumber(txNumber);
+            logger.debug("Sending remote commit created before lock");
+            ClusterUtils.sendCommitInfoToOthers(this.speculativeRemoteCommit);
+        } else {
+            logger.debug("Creating remote commit to send others");
+            ClusterUtils.sendCommitInfoToOthers(new RemoteCommit(DomainClassInfo.getServerId(), txNumber, this.boxesWritten));
         }
     }
 
@@ -118,54 +177,112 @@ public class ClusteredPersistentTransaction extends PersistentTransaction {
             int mostRecentGlobalTxNum) {
         logger.debug("Must apply commits from {} up to {}", currentCommitRecord.transactionNumber, mostRecentGlobalTxNum);
 
+        boolean interrupted = false;
         while (currentCommitRecord.transactionNumber < mostRecentGlobalTxNum) {
             ActiveTransactionsRecord newCommitRecord = applyRemoteCommits(currentCommitRecord);
             if (newCommitRecord == currentCommitRecord) {
                 logger.debug("There was nothing yet to process");
-//                try {
-//                    Thread.sleep(3000);
-//                } catch (InterruptedException e) {
-//                    // TODO Auto-generated catch block
-//                    e.printStackTrace();
-//                }
-                Thread.yield();
+                // the missing commits are on their way. Wait for them, rather than spinning
+                try {
+                    ClusterUtils.awaitRemoteCommits(REMOTE_COMMITS_WAIT_MILLIS);
+                } catch (InterruptedException e) {
+                    // we cannot give up before applying the commits, so we defer the interruption
+                    interrupted = true;
+                }
             } else {
                 logger.debug("Processed remote commits up to {}", newCommitRecord.transactionNumber);
             }
             currentCommitRecord = newCommitRecord;
         }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
 
         return currentCommitRecord;
     }
 
-    /* this method tries to apply as many remote commits as it finds in the queue. if it fails to get the lock it returns without doing anything */
-    public static ActiveTransactionsRecord tryToApplyRemoteCommits(ActiveTransactionsRecord record) {
-        logger.debug("Try to apply remote commits if any.");
-        // avoid locking if queue is empty
-        if (ClusterUtils.getRemoteCommits().isEmpty()) {
-//            logger.debug("No remote commits to apply. Great.");
-            /* we need to always return the most recent committed number:
-
-            - if inside a commit (already holding the commit lock), this ensures
-            that we're able to detect record advances caused by the processing
-            of the remote commits queue (e.g. while we were waiting to acquire
-            the global lock) 
-            
-            - if starting a new transaction, it attempts to improve on the version
-            we see (here it would be acceptable to just return the record had)
-            */
-            return findActiveRecordForNumber(record, Transaction.getMostRecentCommitedNumber());
-        }
-
-//        COMMIT_LOCK.lock(); // change to tryLock to allow the starting transactions to begin without waiting for a long commit (which in fact may already have processed the queue :-))  
-        if (COMMIT_LOCK.tryLock()) {
-            try {
-                return applyRemoteCommits(record);
-            } finally {
-                COMMIT_LOCK.unlock();
+    /**
+     * Sets the backend in which remote commits are applied. Must be invoked before this node runs any transaction.
+     */
+    public static void setBackEnd(JvstmClusterBackEnd clusterBackEnd) {
+        backEnd = clusterBackEnd;
+    }
+
+    /**
+     * Starts applying the remote commits in the background, as soon as they arrive.
+     * 
+     * @param threads The number of threads among which the boxes of large remote commits are split
+     */
+    public static void startRemoteCommitApplier(int threads) {
+        applier = new RemoteCommitApplier(backEnd, threads);
+        applier.start();
+    }
+
+    public static void stopRemoteCommitApplier() {
+        RemoteCommitApplier current = applier;
+        if (current != null) {
+            current.shutdown();
+            applier = null;
+        }
+    }
+
+    /* returns once the remote commit with the given number (and thus all the
+    previous ones) is visible.  Local commits are only numbered after all the
+    previous remote commits are applied, so a greater number also means that. If
+    the applier takes too long, the waiting thread applies the commits itself */
+    static void awaitRemoteCommitsApplied(int txNumber) {
+        checkRemoteCommitsApplied();
+        if (Transaction.getMostRecentCommitedNumber() >= txNumber) {
+            return;
+        }
+        if (applier == null) {
+            // e.g. while the node is starting up
+            applyPendingRemoteCommits();
+            return;
+        }
+
+        boolean interrupted = false;
+        try {
+            while (Transaction.getMostRecentCommitedNumber() < txNumber) {
+                boolean timedOut = false;
+                synchronized (REMOTE_COMMITS_APPLIED) {
+                    if (Transaction.getMostRecentCommitedNumber() < txNumber) {
+                        try {
+                            long start = System.currentTimeMillis();
+                            REMOTE_COMMITS_APPLIED.wait(REMOTE_COMMITS_WAIT_MILLIS);
+                            timedOut = System.currentTimeMillis() - start >= REMOTE_COMMITS_WAIT_MILLIS;
+                        } catch (InterruptedException e) {
+                            interrupted = true;
+                        }
+                    }
+                }
+                checkRemoteCommitsApplied();
+                if (timedOut) {
+                    applyPendingRemoteCommits();
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
             }
-        } else {
-            return findActiveRecordForNumber(record, Transaction.getMostRecentCommitedNumber());
+        }
+    }
+
+    private static void checkRemoteCommitsApplied() {
+        Throwable failure = remoteCommitsFailure;
+        if (failure != null) {
+            throw new TransactionError(failure);
+        }
+    }
+
+    /* applies all the remote commits in the queue. Invoked by the
+    RemoteCommitApplier when remote commits arrive */
+    static void applyPendingRemoteCommits() {
+        COMMIT_LOCK.lock();
+        try {
+            applyRemoteCommits(Transaction.mostRecentRecord);
+        } finally {
+            COMMIT_LOCK.unlock();
         }
     }
 
@@ -173,6 +290,7 @@ public class ClusteredPersistentTransaction extends PersistentTransaction {
     private static ActiveTransactionsRecord applyRemoteCommits(ActiveTransactionsRecord record) {
         int currentCommittedNumber = Transaction.getMostRecentCommitedNumber();
 
+        List<RemoteCommit> remoteCommits = new ArrayList<RemoteCommit>();
         RemoteCommit remoteCommit;
         while ((remoteCommit = ClusterUtils.getRemoteCommits().poll()) != null) {
             int txNum = remoteCommit.getTxNumber();
@@ -192,51 +310,121 @@ public class ClusteredPersistentTransaction extends PersistentTransaction {
                 System.exit(-1);
                 throw new Error("Inconsistent remote commit. This should not happen");
             } else {
-                logger.debug("remove me :-)");
                 debug_hazelcast_last_commit_seen = txNum;
             }
-            applyRemoteCommit(remoteCommit);
+            remoteCommits.add(remoteCommit);
             currentCommittedNumber = remoteCommit.getTxNumber();
+
+            if (remoteCommits.size() == MAX_REMOTE_COMMITS_PER_ROUND) {
+                applyRemoteCommits(remoteCommits);
+                remoteCommits.clear();
+            }
         }
+        applyRemoteCommits(remoteCommits);
 
         return findActiveRecordForNumber(record, currentCommittedNumber);
     }
 
-    // within commit lock
-    private static void applyRemoteCommit(RemoteCommit remoteCommit) {
-        int serverId = remoteCommit.getServerId();
-        int txNumber = remoteCommit.getTxNumber();
+    /* within commit lock.  The remote commits were already taken from the
+    queue, so if any of them cannot be applied, this node fails for good */
+    private static void applyRemoteCommits(List<RemoteCommit> remoteCommits) {
+        if (remoteCommits.isEmpty()) {
+            return;
+        }
+        checkRemoteCommitsApplied();
 
-        logger.debug("Applying remote commit: serverId={}, txNumber={}", serverId, txNumber);
+        try {
+            RemoteCommitApplier current = applier;
+            if (current != null) {
+                current.apply(remoteCommits);
+            } else {
+                for (RemoteCommit remoteCommit : remoteCommits) {
+                    Cons<VBoxBody> newBodies = addNewVersions(backEnd, remoteCommit, 0, 1, Cons.<VBoxBody> empty());
+                    publishRemoteCommit(remoteCommit, newBodies);
+                }
+            }
+        } catch (RuntimeException e) {
+            failRemoteCommits(e);
+        } catch (Error e) {
+            failRemoteCommits(e);
+        }
+
+        synchronized (REMOTE_COMMITS_APPLIED) {
+            REMOTE_COMMITS_APPLIED.notifyAll();
+        }
+    }
 
-        Cons<VBoxBody> newBodies = Cons.empty();
+    private static void failRemoteCommits(Throwable failure) {
+        logger.error("Failed to apply remote commits. This node can no longer run transactions", failure);
+        remoteCommitsFailure = failure;
+        synchronized (REMOTE_COMMITS_APPLIED) {
+            REMOTE_COMMITS_APPLIED.notifyAll();
+        }
+        throw new TransactionError(failure);
+    }
 
-        int size = remoteCommit.getIds().length;
-        for (int i = 0; i < size; i++) {
-            String vboxId = remoteCommit.getIds()[i];
+    /* adds a new version to the cached boxes written by the remote commit that
+    belong to the given partition, and returns their bodies prepended to
+    newBodies.  Boxes are partitioned by the oid of their owner (or by their id),
+    so the boxes of each partition can be updated concurrently with those of the
+    others.
+
+    If the vbox is not found (not cached or reachable from a domain object), we
+    don't need to update its slots. If a concurrent access to this objects causes
+    it to be allocated and its slots reloaded, the most recent values will be
+    fetched from the repository */
+    static Cons<VBoxBody> addNewVersions(JvstmClusterBackEnd backEnd, RemoteCommit remoteCommit, int partition, int partitions,
+            Cons<VBoxBody> newBodies) {
+        int txNumber = remoteCommit.getTxNumber();
 
-            JvstmClusterBackEnd backEnd = (JvstmClusterBackEnd) FenixFramework.getConfig().getBackEnd();
+        long[] oids = remoteCommit.getOids();
+        int[] slotIndexes = remoteCommit.getSlotIndexes();
+        for (int i = 0; i < oids.length; i++) {
+            long oid = oids[i];
+            if (partitions > 1 && ((int) (oid ^ (oid >>> 32)) & Integer.MAX_VALUE) % partitions != partition) {
+                continue;
+            }
+            VBox vbox = backEnd.lookupCachedVBox(oid, slotIndexes[i]);
+            if (vbox != null) {
+                newBodies = addNewVersion(vbox, txNumber, newBodies);
+            } else if (logger.isDebugEnabled()) {
+                logger.debug("Ignoring remote commit for vbox not found in local memory: {}#{}", Long.toHexString(oid),
+                        slotIndexes[i]);
+            }
+        }
 
+        for (String vboxId : remoteCommit.getIds()) {
+            if (partitions > 1 && (vboxId.hashCode() & Integer.MAX_VALUE) % partitions != partition) {
+                continue;
+            }
             VBox vbox = backEnd.lookupCachedVBox(vboxId);
-
-            /* if the vbox is not found (not cached or reachable from a domain object), we don't need to update its
-            slots. If a concurrent access to this objects causes it to be allocated
-            and its slots reloaded, the most recent values will be fetched from
-            the repository */
             if (vbox != null) {
-                VBoxBody newBody = vbox.addNewVersion(txNumber);
-                if (newBody != null) {
-                    newBodies = newBodies.cons(newBody);
-                }
+                newBodies = addNewVersion(vbox, txNumber, newBodies);
             } else {
                 logger.debug("Ignoring remote commit for vbox not found in local memory: {}", vboxId);
             }
         }
 
-        ActiveTransactionsRecord newRecord = new ActiveTransactionsRecord(txNumber, newBodies);
+        return newBodies;
+    }
+
+    /* makes the remote commit visible to new transactions, once all its boxes have
+    the new version.  Must be invoked in tx number order */
+    static void publishRemoteCommit(RemoteCommit remoteCommit, Cons<VBoxBody> newBodies) {
+        logger.debug("Applied remote commit: serverId={}, txNumber={}", remoteCommit.getServerId(), remoteCommit.getTxNumber());
+
+        ActiveTransactionsRecord newRecord = new ActiveTransactionsRecord(remoteCommit.getTxNumber(), newBodies);
         Transaction.setMostRecentActiveRecord(newRecord);
     }
 
+    private static Cons<VBoxBody> addNewVersion(VBox vbox, int txNumber, Cons<VBoxBody> newBodies) {
+        VBoxBody newBody = vbox.addNewVersion(txNumber);
+        if (newBody != null) {
+            newBodies = newBodies.cons(newBody);
+        }
+        return newBodies;
+    }
+
     private static ActiveTransactionsRecord findActiveRecordForNumber(ActiveTransactionsRecord rec, int number) {
         while (rec.transactionNumber < number) {
             rec = rec.getNext();
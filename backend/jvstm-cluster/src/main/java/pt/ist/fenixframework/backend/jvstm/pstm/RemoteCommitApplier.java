@@ -0,0 +1,197 @@
+/*
+ * Fenix Framework, a framework to develop Java Enterprise Applications.
+ *
+ * Copyright (C) 2013 Fenix Framework Team and/or its affiliates and other contributors as indicated by the @author tags.
+ *
+ * This file is part of the Fenix Framework.  Read the file COPYRIGHT.TXT for more copyright and licensing information.
+ */
+package pt.ist.fenixframework.backend.jvstm.pstm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import jvstm.VBoxBody;
+import jvstm.util.Cons;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import pt.ist.fenixframework.backend.jvstm.cluster.ClusterUtils;
+import pt.ist.fenixframework.backend.jvstm.cluster.JvstmClusterBackEnd;
+import pt.ist.fenixframework.backend.jvstm.cluster.RemoteCommit;
+import pt.ist.fenixframework.core.TransactionError;
+import pt.ist.fenixframework.util.FenixFrameworkThread;
+
+/**
+ * Applies the commits of the other servers as soon as they arrive, so that transactions need not apply them when they begin.
+ *
+ * The boxes written by large batches of remote commits are split into partitions (by the oid of their owner), which are
+ * updated by several threads at once. Each partition adds the new versions of its boxes in tx number order, and the commits are
+ * only made visible, also in tx number order, after all partitions are done.
+ *
+ * The boxes are looked up in the backend given on creation. Neither this thread nor its workers use FenixFramework, because they
+ * apply commits while holding the commit lock, and may do so while the framework is still initializing.
+ */
+public class RemoteCommitApplier extends FenixFrameworkThread {
+
+    private static final Logger logger = LoggerFactory.getLogger(RemoteCommitApplier.class);
+
+    // the least number of boxes worth splitting among several threads
+    private static final int MIN_BOXES_TO_PARTITION = 256;
+
+    // how long to wait for remote commits before checking again whether to stop
+    private static final long WAIT_MILLIS = 1000;
+
+    private final JvstmClusterBackEnd backEnd;
+    private final int partitions;
+    private final ExecutorService workers;
+
+    private volatile boolean stopped = false;
+
+    RemoteCommitApplier(JvstmClusterBackEnd backEnd, int threads) {
+        super("FenixFramework remote commit applier");
+        setDaemon(true);
+
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be positive: " + threads);
+        }
+        this.backEnd = backEnd;
+        this.partitions = threads;
+        this.workers = (threads == 1) ? null : Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "FenixFramework remote commit worker");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    @Override
+    public void run() {
+        while (!this.stopped) {
+            try {
+                ClusterUtils.awaitRemoteCommits(WAIT_MILLIS);
+            } catch (InterruptedException e) {
+                continue;
+            }
+            if (!ClusterUtils.getRemoteCommits().isEmpty()) {
+                try {
+                    ClusteredPersistentTransaction.applyPendingRemoteCommits();
+                } catch (TransactionError e) {
+                    // already logged: this node cannot apply any more remote commits
+                    return;
+                }
+            }
+        }
+    }
+
+    @Override
+    protected void shutdown() {
+        this.stopped = true;
+        super.shutdown();
+        if (this.workers != null) {
+            this.workers.shutdown();
+        }
+    }
+
+    /**
+     * Applies the given remote commits, in order. Must be invoked while holding the commit lock.
+     */
+    void apply(List<RemoteCommit> remoteCommits) {
+        if (this.workers == null || countBoxes(remoteCommits) < MIN_BOXES_TO_PARTITION) {
+            for (RemoteCommit remoteCommit : remoteCommits) {
+                Cons<VBoxBody> newBodies =
+                        ClusteredPersistentTransaction.addNewVersions(this.backEnd, remoteCommit, 0, 1, Cons.<VBoxBody> empty());
+                ClusteredPersistentTransaction.publishRemoteCommit(remoteCommit, newBodies);
+            }
+            return;
+        }
+
+        List<Future<List<Cons<VBoxBody>>>> results = new ArrayList<Future<List<Cons<VBoxBody>>>>(this.partitions);
+        for (int partition = 0; partition < this.partitions; partition++) {
+            results.add(this.workers.submit(new PartitionTask(this.backEnd, remoteCommits, partition, this.partitions)));
+        }
+
+        // the new bodies of each remote commit, gathered from all the partitions
+        List<Cons<VBoxBody>> newBodies = new ArrayList<Cons<VBoxBody>>(remoteCommits.size());
+        for (int i = 0; i < remoteCommits.size(); i++) {
+            newBodies.add(Cons.<VBoxBody> empty());
+        }
+        for (Future<List<Cons<VBoxBody>>> result : results) {
+            List<Cons<VBoxBody>> partitionBodies = getUninterruptibly(result);
+            for (int i = 0; i < remoteCommits.size(); i++) {
+                Cons<VBoxBody> bodies = newBodies.get(i);
+                for (VBoxBody body : partitionBodies.get(i)) {
+                    bodies = bodies.cons(body);
+                }
+                newBodies.set(i, bodies);
+            }
+        }
+
+        for (int i = 0; i < remoteCommits.size(); i++) {
+            ClusteredPersistentTransaction.publishRemoteCommit(remoteCommits.get(i), newBodies.get(i));
+        }
+        logger.debug("Applied {} remote commits in {} partitions", remoteCommits.size(), this.partitions);
+    }
+
+    private static int countBoxes(List<RemoteCommit> remoteCommits) {
+        int count = 0;
+        for (RemoteCommit remoteCommit : remoteCommits) {
+            count += remoteCommit.getOids().length + remoteCommit.getIds().length;
+        }
+        return count;
+    }
+
+    /* the versions of the boxes were already added to some of the partitions,
+    so we must wait for all of them, even if interrupted.  A failed partition
+    fails the whole node (see ClusteredPersistentTransaction) */
+    private static <T> T getUninterruptibly(Future<T> future) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return future.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    throw new Error("Failed to apply remote commits", e.getCause());
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static class PartitionTask implements Callable<List<Cons<VBoxBody>>> {
+        private final JvstmClusterBackEnd backEnd;
+        private final List<RemoteCommit> remoteCommits;
+        private final int partition;
+        private final int partitions;
+
+        PartitionTask(JvstmClusterBackEnd backEnd, List<RemoteCommit> remoteCommits, int partition, int partitions) {
+            this.backEnd = backEnd;
+            this.remoteCommits = remoteCommits;
+            this.partition = partition;
+            this.partitions = partitions;
+        }
+
+        @Override
+        public List<Cons<VBoxBody>> call() {
+            List<Cons<VBoxBody>> newBodies = new ArrayList<Cons<VBoxBody>>(this.remoteCommits.size());
+            for (RemoteCommit remoteCommit : this.remoteCommits) {
+                newBodies.add(ClusteredPersistentTransaction.addNewVersions(this.backEnd, remoteCommit, this.partition,
+                        this.partitions, Cons.<VBoxBody> empty()));
+            }
+            return newBodies;
+        }
+    }
+}
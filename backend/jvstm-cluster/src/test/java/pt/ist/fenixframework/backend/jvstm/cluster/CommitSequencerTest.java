@@ -0,0 +1,193 @@
+package pt.ist.fenixframework.backend.jvstm.cluster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.config.Join;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+
+/**
+ * Commits from several threads in two Hazelcast instances of the same JVM: each commit must hold the token alone, and must get
+ * the number that follows the previous commit. A number that was taken must not be handed out again, even if the node that took
+ * it leaves the cluster while holding the token, or if the shared number loses it.
+ */
+@RunWith(JUnit4.class)
+public class CommitSequencerTest {
+
+    public static final int NUMBER_NODES = 2;
+    public static final int THREADS_PER_NODE = 3;
+    public static final int COMMITS_PER_THREAD = 50;
+    public static final int INITIAL_TX_NUMBER = 42;
+
+    // how long to wait for the nodes to notice that a node left
+    private static final long MEMBERSHIP_TIMEOUT_MILLIS = 30000;
+
+    private static final List<HazelcastInstance> instances = new ArrayList<HazelcastInstance>();
+    private static final List<CommitSequencer> sequencers = new ArrayList<CommitSequencer>();
+
+    @BeforeClass
+    public static void startInstances() {
+        for (int i = 0; i < NUMBER_NODES; i++) {
+            HazelcastInstance instance = newInstance();
+            instances.add(instance);
+            sequencers.add(new CommitSequencer(instance));
+        }
+        assertEquals(NUMBER_NODES, instances.get(0).getCluster().getMembers().size());
+
+        sequencers.get(0).init(INITIAL_TX_NUMBER);
+        // only the first initialization counts
+        sequencers.get(1).init(INITIAL_TX_NUMBER + 1000);
+    }
+
+    @AfterClass
+    public static void shutdownInstances() {
+        for (HazelcastInstance instance : instances) {
+            instance.getLifecycleService().shutdown();
+        }
+    }
+
+    private static HazelcastInstance newInstance() {
+        Config config = new Config();
+        config.getGroupConfig().setName("commit-sequencer-test");
+        config.setProperty("hazelcast.logging.type", "slf4j");
+        Join join = config.getNetworkConfig().getJoin();
+        join.getMulticastConfig().setEnabled(false);
+        join.getTcpIpConfig().setEnabled(true).addMember("127.0.0.1");
+        return Hazelcast.newHazelcastInstance(config);
+    }
+
+    @Test
+    public void testInitialization() {
+        assertTrue(currentNumber(sequencers.get(1)) >= INITIAL_TX_NUMBER);
+        assertTrue(currentNumber(sequencers.get(1)) < INITIAL_TX_NUMBER + 1000);
+    }
+
+    @Test
+    public void testSequentialNumbers() throws InterruptedException {
+        final int initialTxNumber = currentNumber(sequencers.get(0));
+        final AtomicBoolean tokenHeld = new AtomicBoolean(false);
+        final AtomicInteger lastCommitted = new AtomicInteger(initialTxNumber);
+        final AtomicInteger failures = new AtomicInteger(0);
+
+        List<Thread> threads = new ArrayList<Thread>();
+        for (final CommitSequencer sequencer : sequencers) {
+            for (int i = 0; i < THREADS_PER_NODE; i++) {
+                threads.add(new Thread() {
+                    @Override
+                    public void run() {
+                        for (int c = 0; c < COMMITS_PER_THREAD; c++) {
+                            int txNumber = sequencer.acquire();
+                            try {
+                                if (!tokenHeld.compareAndSet(false, true) || txNumber != lastCommitted.get()) {
+                                    failures.incrementAndGet();
+                                }
+                                sequencer.commit(txNumber + 1);
+                                lastCommitted.set(txNumber + 1);
+                                tokenHeld.set(false);
+                            } finally {
+                                sequencer.release();
+                            }
+                        }
+                    }
+                });
+            }
+        }
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(0, failures.get());
+        assertFalse(tokenHeld.get());
+        int totalCommits = NUMBER_NODES * THREADS_PER_NODE * COMMITS_PER_THREAD;
+        assertEquals(initialTxNumber + totalCommits, lastCommitted.get());
+
+        // both nodes see the number of the last commit
+        for (CommitSequencer sequencer : sequencers) {
+            assertEquals(initialTxNumber + totalCommits, currentNumber(sequencer));
+        }
+    }
+
+    @Test
+    public void testCommitMustFollowTheMostRecentOne() {
+        CommitSequencer sequencer = sequencers.get(0);
+        int txNumber = sequencer.acquire();
+        try {
+            sequencer.commit(txNumber + 2);
+            fail("took a number that does not follow the most recent commit");
+        } catch (IllegalStateException e) {
+            // expected
+        } finally {
+            sequencer.release();
+        }
+        assertEquals(txNumber, currentNumber(sequencers.get(1)));
+    }
+
+    @Test
+    public void testAbortedCommit() {
+        CommitSequencer sequencer = sequencers.get(0);
+        int txNumber = sequencer.acquire();
+        try {
+            sequencer.commit(txNumber + 1);
+            sequencer.abort(txNumber + 1);
+        } finally {
+            sequencer.release();
+        }
+        // the number is handed out again
+        assertEquals(txNumber, currentNumber(sequencers.get(1)));
+    }
+
+    @Test
+    public void testHolderLeavesAfterCommit() {
+        HazelcastInstance leaving = newInstance();
+        CommitSequencer sequencer = new CommitSequencer(leaving);
+        int txNumber = sequencer.acquire();
+        sequencer.commit(txNumber + 1);
+        // the node leaves without releasing the token, which Hazelcast releases for it
+        leaving.getLifecycleService().shutdown();
+
+        for (CommitSequencer remaining : sequencers) {
+            assertEquals(txNumber + 1, currentNumber(remaining));
+        }
+    }
+
+    @Test
+    public void testRebuiltAfterMembershipChange() throws InterruptedException {
+        int txNumber = currentNumber(sequencers.get(0));
+        // a commit that the first node received on the commit topic, but whose number the shared number lost
+        sequencers.get(0).seen(txNumber + 10);
+
+        // the number is rebuilt once a node leaves the cluster
+        newInstance().getLifecycleService().shutdown();
+        long deadline = System.currentTimeMillis() + MEMBERSHIP_TIMEOUT_MILLIS;
+        while (currentNumber(sequencers.get(0)) != txNumber + 10) {
+            assertTrue("the number was not rebuilt", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+        assertEquals(txNumber + 10, currentNumber(sequencers.get(1)));
+    }
+
+    private static int currentNumber(CommitSequencer sequencer) {
+        int txNumber = sequencer.acquire();
+        sequencer.release();
+        return txNumber;
+    }
+}
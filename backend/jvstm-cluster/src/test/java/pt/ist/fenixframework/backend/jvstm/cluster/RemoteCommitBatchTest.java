@@ -0,0 +1,128 @@
+package pt.ist.fenixframework.backend.jvstm.cluster;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.hazelcast.nio.DataSerializable;
+
+/**
+ * Writes {@link RemoteCommit}s and {@link RemoteCommitBatch}es as Hazelcast would, and reads them back. The boxes of each commit
+ * are set directly, as they would be by {@link RemoteCommit#setBoxesWritten(java.util.Map)}: sorted by oid, as signed values.
+ */
+@RunWith(JUnit4.class)
+public class RemoteCommitBatchTest {
+
+    private static final int SERVER_ID = 3;
+
+    @Test
+    public void testSingleCommit() throws IOException {
+        RemoteCommit commit = commit(SERVER_ID, 1234, new long[] { 10, 10, 11, 500 }, new int[] { 0, 3, 1, 2 }, "a:b", "c");
+        RemoteCommit read = roundTrip(commit, new RemoteCommit());
+
+        assertEquals(SERVER_ID, read.getServerId());
+        assertEquals(1234, read.getTxNumber());
+        assertSameChanges(commit, read);
+    }
+
+    @Test
+    public void testOidDeltas() throws IOException {
+        // the first delta is negative, and the following ones overflow a long
+        long[] oids = { Long.MIN_VALUE, Long.MIN_VALUE + 1, -1, 0, 1, Long.MAX_VALUE - 1, Long.MAX_VALUE };
+        int[] slotIndexes = { 0, Integer.MAX_VALUE, 7, 0, 200, 1, 2 };
+        RemoteCommit commit = commit(SERVER_ID, 1, oids, slotIndexes);
+
+        assertSameChanges(commit, roundTrip(commit, new RemoteCommit()));
+        assertSameChanges(commit, roundTrip(batch(commit), new RemoteCommitBatch()).getCommits().get(0));
+    }
+
+    @Test
+    public void testTxNumberDeltas() throws IOException {
+        int[] txNumbers = { Integer.MAX_VALUE, 0, 1, 1000000, 999999, 5, Integer.MAX_VALUE - 1, 2, Integer.MIN_VALUE };
+        List<RemoteCommit> commits = new ArrayList<RemoteCommit>();
+        for (int txNumber : txNumbers) {
+            commits.add(commit(SERVER_ID, txNumber, new long[] { txNumber }, new int[] { 0 }));
+        }
+
+        RemoteCommitBatch read = roundTrip(new RemoteCommitBatch(SERVER_ID, commits), new RemoteCommitBatch());
+        assertEquals(SERVER_ID, read.getServerId());
+        assertEquals(txNumbers.length, read.getCommits().size());
+        for (int i = 0; i < txNumbers.length; i++) {
+            RemoteCommit commit = read.getCommits().get(i);
+            assertEquals(SERVER_ID, commit.getServerId());
+            assertEquals(txNumbers[i], commit.getTxNumber());
+            assertSameChanges(commits.get(i), commit);
+        }
+    }
+
+    @Test
+    public void testMixedBoxes() throws IOException {
+        List<RemoteCommit> commits = new ArrayList<RemoteCommit>();
+        // only boxes with slot indexes, only boxes with ids, both, and neither
+        commits.add(commit(SERVER_ID, 100, new long[] { 1L << 40, (1L << 40) + 1 }, new int[] { 4, 0 }));
+        commits.add(commit(SERVER_ID, 101, new long[0], new int[0], "DomainRoot:theBook", "\u00e9\u4e2d"));
+        commits.add(commit(SERVER_ID, 102, new long[] { -5, 3, 3 }, new int[] { 1, 0, 1 }, "x"));
+        commits.add(commit(SERVER_ID, 103, new long[0], new int[0]));
+
+        RemoteCommitBatch read = roundTrip(new RemoteCommitBatch(SERVER_ID, commits), new RemoteCommitBatch());
+        assertEquals(commits.size(), read.getCommits().size());
+        for (int i = 0; i < commits.size(); i++) {
+            assertEquals(commits.get(i).getTxNumber(), read.getCommits().get(i).getTxNumber());
+            assertSameChanges(commits.get(i), read.getCommits().get(i));
+        }
+    }
+
+    @Test
+    public void testEmptyBatch() throws IOException {
+        RemoteCommitBatch read =
+                roundTrip(new RemoteCommitBatch(SERVER_ID, new ArrayList<RemoteCommit>()), new RemoteCommitBatch());
+        assertEquals(SERVER_ID, read.getServerId());
+        assertEquals(0, read.getCommits().size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCommitFromAnotherServer() {
+        new RemoteCommitBatch(SERVER_ID, Arrays.asList(commit(SERVER_ID + 1, 1, new long[0], new int[0])));
+    }
+
+    private static RemoteCommit commit(int serverId, int txNumber, long[] oids, int[] slotIndexes, String... ids) {
+        RemoteCommit commit = new RemoteCommit(serverId, txNumber);
+        commit.oids = oids;
+        commit.slotIndexes = slotIndexes;
+        commit.ids = ids;
+        return commit;
+    }
+
+    private static RemoteCommitBatch batch(RemoteCommit commit) {
+        return new RemoteCommitBatch(commit.getServerId(), Arrays.asList(commit));
+    }
+
+    private static void assertSameChanges(RemoteCommit expected, RemoteCommit actual) {
+        assertArrayEquals(expected.getOids(), actual.getOids());
+        assertArrayEquals(expected.getSlotIndexes(), actual.getSlotIndexes());
+        assertArrayEquals(expected.getIds(), actual.getIds());
+    }
+
+    // writes the given object, and reads it into the other one, checking that all the bytes were read
+    private static <T extends DataSerializable> T roundTrip(DataSerializable written, T read) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        written.writeData(new DataOutputStream(bytes));
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        read.readData(in);
+        assertEquals(0, in.available());
+        return read;
+    }
+}
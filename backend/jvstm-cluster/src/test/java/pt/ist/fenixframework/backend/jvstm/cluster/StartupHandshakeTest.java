@@ -0,0 +1,117 @@
+package pt.ist.fenixframework.backend.jvstm.cluster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.config.Join;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+
+/**
+ * Starts nodes in Hazelcast instances of the same JVM, each test in its own cluster, and checks how a node waits for the first
+ * one: a node that is waiting must proceed as soon as the first node notifies that its startup is complete, a node that starts
+ * waiting afterwards must not wait at all, and a node that is never notified must give up after the configured time. This test
+ * is in the package of {@link ClusterUtils} to reach the handshake of a given instance.
+ */
+@RunWith(JUnit4.class)
+public class StartupHandshakeTest {
+
+    private static final long SHORT_TIMEOUT_MILLIS = 500;
+    private static final long LONG_TIMEOUT_MILLIS = 60000;
+
+    private final List<HazelcastInstance> instances = new ArrayList<HazelcastInstance>();
+
+    @After
+    public void shutdownInstances() {
+        for (HazelcastInstance instance : instances) {
+            instance.getLifecycleService().shutdown();
+        }
+    }
+
+    private HazelcastInstance newInstance(String groupName) {
+        Config config = new Config();
+        config.getGroupConfig().setName(groupName);
+        config.setProperty("hazelcast.logging.type", "slf4j");
+        Join join = config.getNetworkConfig().getJoin();
+        join.getMulticastConfig().setEnabled(false);
+        join.getTcpIpConfig().setEnabled(true).addMember("127.0.0.1");
+        HazelcastInstance instance = Hazelcast.newHazelcastInstance(config);
+        instances.add(instance);
+        return instance;
+    }
+
+    @Test
+    public void testTimeout() {
+        HazelcastInstance instance = newInstance("startup-timeout-test");
+
+        long start = System.currentTimeMillis();
+        try {
+            ClusterUtils.waitForStartupFromFirstNode(instance, SHORT_TIMEOUT_MILLIS);
+            fail("proceeded without the first node completing its startup");
+        } catch (Error e) {
+            // expected
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        assertTrue("gave up after " + elapsed + " ms", elapsed >= SHORT_TIMEOUT_MILLIS);
+        assertTrue("gave up after " + elapsed + " ms", elapsed < LONG_TIMEOUT_MILLIS);
+    }
+
+    @Test
+    public void testWaitingNodeIsNotified() throws InterruptedException {
+        final HazelcastInstance first = newInstance("startup-handshake-test");
+        final HazelcastInstance other = newInstance("startup-handshake-test");
+        assertEquals(2, first.getCluster().getMembers().size());
+
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread waiter = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    ClusterUtils.waitForStartupFromFirstNode(other, LONG_TIMEOUT_MILLIS);
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            }
+        };
+        long start = System.currentTimeMillis();
+        waiter.start();
+
+        // notify once the other node is blocked, usually on the latch; if it is still checking the marker, it must also proceed
+        while (waiter.getState() != Thread.State.TIMED_WAITING) {
+            assertTrue("the other node did not start waiting", waiter.isAlive());
+            Thread.sleep(10);
+        }
+        ClusterUtils.notifyStartupComplete(first);
+
+        waiter.join(LONG_TIMEOUT_MILLIS);
+        assertFalse("the other node is still waiting", waiter.isAlive());
+        assertNull(failure.get());
+        assertTrue(System.currentTimeMillis() - start < LONG_TIMEOUT_MILLIS);
+
+        // a node that starts waiting afterwards finds the marker, and does not wait at all
+        ClusterUtils.waitForStartupFromFirstNode(other, 0);
+    }
+
+    @Test
+    public void testDefaultTimeout() {
+        JvstmClusterConfig config = new JvstmClusterConfig() {
+        };
+        assertEquals(300000, config.getStartupTimeoutMillis());
+
+        config.startupTimeoutMillisFromString(" 1000 ");
+        assertEquals(1000, config.getStartupTimeoutMillis());
+    }
+}
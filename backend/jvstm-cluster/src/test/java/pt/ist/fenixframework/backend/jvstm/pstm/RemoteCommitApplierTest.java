@@ -0,0 +1,190 @@
+package pt.ist.fenixframework.backend.jvstm.pstm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import jvstm.Transaction;
+import jvstm.VBoxBody;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import pt.ist.fenixframework.backend.jvstm.cluster.ClusterUtils;
+import pt.ist.fenixframework.backend.jvstm.cluster.JvstmClusterBackEnd;
+import pt.ist.fenixframework.backend.jvstm.cluster.RemoteCommit;
+import pt.ist.fenixframework.backend.jvstm.repository.NoRepository;
+
+/**
+ * Applies remote commits, queued as if they had arrived from another server, to boxes cached by a backend that only knows those
+ * boxes. The framework is never initialized, so any use of FenixFramework while applying them would fail. Each commit must add a
+ * version to every cached box it wrote, and must become visible in tx number order. This test is in the package of the
+ * transaction to reach its waiting methods.
+ */
+@RunWith(JUnit4.class)
+public class RemoteCommitApplierTest {
+
+    private static final int SERVER_ID = 7;
+
+    // how long to wait for the applier to apply the queued commits by itself
+    private static final long APPLY_TIMEOUT_MILLIS = 10000;
+
+    private final Map<String, VBox> cachedBoxes = new ConcurrentHashMap<String, VBox>();
+    private final Set<Thread> applyingThreads = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+
+    @Before
+    public void setUp() {
+        ClusteredPersistentTransaction.setBackEnd(new JvstmClusterBackEnd(new NoRepository()) {
+            @Override
+            public VBox lookupCachedVBox(String vboxId) {
+                applyingThreads.add(Thread.currentThread());
+                return cachedBoxes.get(vboxId);
+            }
+
+            @Override
+            public VBox lookupCachedVBox(long oid, int slotIndex) {
+                applyingThreads.add(Thread.currentThread());
+                return null;
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        ClusteredPersistentTransaction.stopRemoteCommitApplier();
+        ClusterUtils.getRemoteCommits().clear();
+    }
+
+    @Test
+    public void testAppliedByWaitingThread() {
+        // without an applier (e.g. while the node starts), a transaction that must see the commits applies them itself
+        List<RemoteCommit> commits = enqueueCommits(3, 4);
+        int lastTxNumber = commits.get(commits.size() - 1).getTxNumber();
+
+        ClusteredPersistentTransaction.awaitRemoteCommitsApplied(lastTxNumber);
+
+        assertEquals(lastTxNumber, Transaction.getMostRecentCommitedNumber());
+        assertTrue(ClusterUtils.getRemoteCommits().isEmpty());
+        assertEquals(Collections.singleton(Thread.currentThread()), applyingThreads);
+        assertVersions(commits);
+    }
+
+    @Test
+    public void testAwaitsOnlyUpToTheGivenNumber() {
+        int visible = Transaction.getMostRecentCommitedNumber();
+        List<RemoteCommit> commits = enqueueCommits(1, 2);
+
+        // the commit is later than the one awaited, so it is left to the applier
+        ClusteredPersistentTransaction.awaitRemoteCommitsApplied(visible);
+        assertEquals(visible, Transaction.getMostRecentCommitedNumber());
+        assertEquals(1, ClusterUtils.getRemoteCommits().size());
+
+        ClusteredPersistentTransaction.awaitRemoteCommitsApplied(commits.get(0).getTxNumber());
+        assertEquals(commits.get(0).getTxNumber(), Transaction.getMostRecentCommitedNumber());
+    }
+
+    @Test
+    public void testAppliedInBackground() throws InterruptedException {
+        ClusteredPersistentTransaction.startRemoteCommitApplier(1);
+        List<RemoteCommit> commits = enqueueCommits(5, 3);
+        int lastTxNumber = commits.get(commits.size() - 1).getTxNumber();
+
+        // nobody else applies them
+        awaitVisible(lastTxNumber);
+        assertFalse(applyingThreads.contains(Thread.currentThread()));
+        assertVersions(commits);
+
+        // once visible, waiting for them returns at once
+        ClusteredPersistentTransaction.awaitRemoteCommitsApplied(lastTxNumber);
+    }
+
+    @Test
+    public void testAppliedInPartitions() throws InterruptedException {
+        ClusteredPersistentTransaction.startRemoteCommitApplier(4);
+        // enough boxes for the applier to split them among its workers
+        List<RemoteCommit> commits = enqueueCommits(8, 100);
+        int lastTxNumber = commits.get(commits.size() - 1).getTxNumber();
+
+        awaitVisible(lastTxNumber);
+        assertTrue("the boxes were not split among the workers", applyingThreads.size() > 1);
+        assertVersions(commits);
+    }
+
+    /**
+     * Queues the given number of commits, each writing the given number of boxes. Consecutive commits write some of the same
+     * boxes, and some boxes are not cached, as happens with the boxes of objects that were never loaded in this server.
+     */
+    private List<RemoteCommit> enqueueCommits(int count, int boxesPerCommit) {
+        int txNumber = Math.max(Transaction.getMostRecentCommitedNumber(), ClusterUtils.getLastReceivedTxNumber());
+        List<RemoteCommit> commits = new ArrayList<RemoteCommit>();
+        for (int i = 0; i < count; i++) {
+            txNumber++;
+            Map<jvstm.VBox, Object> boxesWritten = new HashMap<jvstm.VBox, Object>();
+            for (int j = 0; j < boxesPerCommit; j++) {
+                int boxNumber = i * boxesPerCommit / 2 + j;
+                String id = "box-" + boxNumber;
+                VBox box = cachedBoxes.get(id);
+                if (box == null) {
+                    box = StandaloneVBox.makeNew(id, true);
+                    if (boxNumber % 5 != 4) {
+                        cachedBoxes.put(id, box);
+                    }
+                }
+                boxesWritten.put(box, "value");
+            }
+            RemoteCommit commit = new RemoteCommit(SERVER_ID, txNumber, boxesWritten);
+            commits.add(commit);
+            ClusterUtils.getRemoteCommits().offer(commit);
+        }
+        return commits;
+    }
+
+    private static void awaitVisible(int txNumber) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + APPLY_TIMEOUT_MILLIS;
+        while (Transaction.getMostRecentCommitedNumber() < txNumber) {
+            assertTrue("the remote commits were not applied", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    // every cached box has a version for each of the given commits that wrote it, newest first
+    private void assertVersions(List<RemoteCommit> commits) {
+        Map<String, List<Integer>> expected = new HashMap<String, List<Integer>>();
+        for (RemoteCommit commit : commits) {
+            for (String id : commit.getIds()) {
+                if (cachedBoxes.containsKey(id)) {
+                    if (!expected.containsKey(id)) {
+                        expected.put(id, new ArrayList<Integer>());
+                    }
+                    expected.get(id).add(0, commit.getTxNumber());
+                }
+            }
+        }
+
+        Set<Integer> txNumbers = new HashSet<Integer>();
+        for (RemoteCommit commit : commits) {
+            txNumbers.add(commit.getTxNumber());
+        }
+        for (Map.Entry<String, List<Integer>> entry : expected.entrySet()) {
+            List<Integer> versions = new ArrayList<Integer>();
+            for (VBoxBody body = cachedBoxes.get(entry.getKey()).body; body != null; body = body.next) {
+                if (txNumbers.contains(body.version)) {
+                    versions.add(body.version);
+                }
+            }
+            assertEquals(entry.getKey(), entry.getValue(), versions);
+        }
+    }
+}
@@ -8,8 +8,11 @@
 package pt.ist.fenixframework.backend.jvstm;
 
 import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
 
 import pt.ist.fenixframework.dml.CompilerArgs;
+import pt.ist.fenixframework.dml.DomainClass;
 import pt.ist.fenixframework.dml.DomainModel;
 import pt.ist.fenixframework.dml.IndexesCodeGenerator;
 import pt.ist.fenixframework.dml.Role;
@@ -47,6 +50,33 @@ public class JVSTMCodeGenerator extends IndexesCodeGenerator {
         print(out, ";");
     }
 
+    @Override
+    protected void generateBaseClassBody(DomainClass domClass, PrintWriter out) {
+        super.generateBaseClassBody(domClass, out);
+        generateSlotAtMethod(domClass, out);
+    }
+
+    protected void generateSlotAtMethod(DomainClass domClass, PrintWriter out) {
+        List<String> ownBoxNames = getOwnBoxNames(domClass);
+        if (ownBoxNames.isEmpty()) {
+            return;
+        }
+        int firstIndex = getBoxNames(domClass).size() - ownBoxNames.size();
+
+        newline(out);
+        println(out, "@Override");
+        printMethod(out, "public", "OwnedVBox", "getSlotAt", makeArg("int", "slotIndex"));
+        startMethodBody(out);
+        print(out, "switch (slotIndex)");
+        newBlock(out);
+        for (int i = 0; i < ownBoxNames.size(); i++) {
+            println(out, "case " + (firstIndex + i) + ": return " + ownBoxNames.get(i) + ";");
+        }
+        print(out, "default: return super.getSlotAt(slotIndex);");
+        closeBlock(out);
+        endMethodBody(out);
+    }
+
     @Override
     protected void generateFilePreamble(String subPackageName, PrintWriter out) {
         super.generateFilePreamble(subPackageName, out);
@@ -77,7 +107,46 @@ public class JVSTMCodeGenerator extends IndexesCodeGenerator {
     }
 
     protected String getNewSlotExpression(String slotName, boolean isReference) {
-        return getBoxBaseType() + ".makeNew(this, \"" + slotName + "\", allocateOnly, " + isReference + ")";
+        return getBoxBaseType() + ".makeNew(this, \"" + slotName + "\", " + getSlotIndex(dC, slotName) + ", allocateOnly, "
+                + isReference + ")";
+    }
+
+    /**
+     * The index of a slot among all the boxes of a domain class, starting with those inherited from its superclasses. See
+     * {@link JVSTMDomainObject#getSlotAt(int)}.
+     */
+    protected int getSlotIndex(DomainClass domClass, String slotName) {
+        int index = getBoxNames(domClass).lastIndexOf(slotName);
+        if (index < 0) {
+            throw new Error("Slot " + slotName + " not found in " + domClass.getFullName());
+        }
+        return index;
+    }
+
+    // the names of the boxes of a domain class, in slot index order
+    protected List<String> getBoxNames(DomainClass domClass) {
+        List<String> boxNames;
+        if (domClass.getSuperclass() instanceof DomainClass) {
+            boxNames = getBoxNames((DomainClass) domClass.getSuperclass());
+        } else {
+            boxNames = new ArrayList<String>();
+        }
+        boxNames.addAll(getOwnBoxNames(domClass));
+        return boxNames;
+    }
+
+    // the names of the boxes declared by the base class of a domain class, in slot index order
+    protected List<String> getOwnBoxNames(DomainClass domClass) {
+        List<String> boxNames = new ArrayList<String>();
+        for (Slot slot : domClass.getSlotsList()) {
+            boxNames.add(slot.getName());
+        }
+        for (Role role : domClass.getRoleSlotsList()) {
+            if (role.getName() != null) {
+                boxNames.add(decideRoleVBoxName(role));
+            }
+        }
+        return boxNames;
     }
 
     protected String getNewSlotExpression(Slot slot) {
@@ -0,0 +1,42 @@
+/*
+ * Fenix Framework, a framework to develop Java Enterprise Applications.
+ *
+ * Copyright (C) 2013 Fenix Framework Team and/or its affiliates and other contributors as indicated by the @author tags.
+ *
+ * This file is part of the Fenix Framework.  Read the file COPYRIGHT.TXT for more copyright and licensing information.
+ */
+package pt.ist.fenixframework.backend.jvstm;
+
+import pt.ist.fenixframework.Atomic;
+
+/**
+ * Decides what the {@link JVSTMTransactionManager} does when a transaction fails to commit because of a conflict with another
+ * transaction. Implementations must be thread-safe, as a single instance is shared by all transactions.
+ *
+ * @see JVSTMConfig
+ * @see ExponentialBackoffContentionManager
+ */
+public interface ContentionManager {
+
+    public enum Decision {
+        /** Restart the transaction normally. */
+        RETRY,
+        /**
+         * Restart the transaction in serialized mode (see {@link Atomic#serializeAfter()}). This only holds back the other
+         * transactions of this node that have not started yet, so the transaction may still conflict.
+         */
+        RETRY_SERIALIZED,
+        /** Do not restart the transaction: a {@link TooManyAbortsException} is thrown to the caller. */
+        GIVE_UP
+    }
+
+    /**
+     * Invoked after a transaction aborted because of a conflict, and before it is restarted. Implementations may block the
+     * calling thread to delay the restart.
+     *
+     * @param atomic The {@link Atomic} with which the transaction is running. Never <code>null</code>.
+     * @param aborts The number of times that the transaction aborted so far, including this one.
+     * @return What to do next
+     */
+    public Decision onConflict(Atomic atomic, int aborts);
+}
@@ -0,0 +1,84 @@
+/*
+ * Fenix Framework, a framework to develop Java Enterprise Applications.
+ *
+ * Copyright (C) 2013 Fenix Framework Team and/or its affiliates and other contributors as indicated by the @author tags.
+ *
+ * This file is part of the Fenix Framework.  Read the file COPYRIGHT.TXT for more copyright and licensing information.
+ */
+package pt.ist.fenixframework.backend.jvstm;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import pt.ist.fenixframework.Atomic;
+
+/**
+ * The default {@link ContentionManager}. Before each restart it waits for a random time (full jitter) of up to
+ * <code>minDelay * 2^(aborts - 1)</code>, capped at <code>maxDelay</code>. Once a transaction has aborted
+ * <code>serializeAfter</code> times it is restarted in serialized mode, without further waiting, and once it has restarted
+ * <code>maxRetries</code> times it gives up. Both limits may be overridden per transaction in its {@link Atomic}. Waiting and
+ * both limits are disabled by default (see {@link JVSTMConfig}).
+ */
+public class ExponentialBackoffContentionManager implements ContentionManager {
+
+    // the maximum shift applied to minDelay, to avoid overflowing
+    private static final int MAX_SHIFT = 30;
+
+    private static final ThreadLocal<Random> RANDOM = new ThreadLocal<Random>() {
+        @Override
+        protected Random initialValue() {
+            return new Random();
+        }
+    };
+
+    private final long minDelayNanos;
+    private final long maxDelayNanos;
+    private final int maxRetries;
+    private final int serializeAfter;
+
+    /**
+     * @param minDelayMicros The maximum wait before the first restart, in microseconds. Zero disables waiting.
+     * @param maxDelayMicros The upper bound of the wait before any restart, in microseconds.
+     * @param maxRetries The default maximum number of restarts. Negative means unlimited.
+     * @param serializeAfter The default number of aborts after which a transaction is serialized. Negative means never.
+     */
+    public ExponentialBackoffContentionManager(long minDelayMicros, long maxDelayMicros, int maxRetries, int serializeAfter) {
+        this.minDelayNanos = TimeUnit.MICROSECONDS.toNanos(minDelayMicros);
+        this.maxDelayNanos = TimeUnit.MICROSECONDS.toNanos(Math.max(minDelayMicros, maxDelayMicros));
+        this.maxRetries = (maxRetries < 0) ? Atomic.UNLIMITED : maxRetries;
+        this.serializeAfter = (serializeAfter < 0) ? Atomic.UNLIMITED : serializeAfter;
+    }
+
+    @Override
+    public Decision onConflict(Atomic atomic, int aborts) {
+        int maxRetries = (atomic.maxRetries() == Atomic.USE_DEFAULT) ? this.maxRetries : atomic.maxRetries();
+        if (aborts > maxRetries) {
+            return Decision.GIVE_UP;
+        }
+
+        int serializeAfter = (atomic.serializeAfter() == Atomic.USE_DEFAULT) ? this.serializeAfter : atomic.serializeAfter();
+        if (aborts >= serializeAfter) {
+            return Decision.RETRY_SERIALIZED;
+        }
+
+        backoff(aborts);
+        return Decision.RETRY;
+    }
+
+    protected void backoff(int aborts) {
+        if (minDelayNanos <= 0) {
+            return;
+        }
+
+        long delay = minDelayNanos << Math.min(aborts - 1, MAX_SHIFT);
+        if (delay <= 0 || delay > maxDelayNanos) {
+            delay = maxDelayNanos;
+        }
+
+        long wait = (long) (RANDOM.get().nextDouble() * delay);
+        if (wait > 0) {
+            LockSupport.parkNanos(wait);
+        }
+    }
+}
@@ -21,9 +21,13 @@ import pt.ist.fenixframework.FenixFramework;
 import pt.ist.fenixframework.backend.BackEnd;
 import pt.ist.fenixframework.backend.jvstm.pstm.DomainClassInfo;
 import pt.ist.fenixframework.backend.jvstm.pstm.FenixFrameworkData;
+import pt.ist.fenixframework.backend.jvstm.pstm.GroupCommitter;
 import pt.ist.fenixframework.backend.jvstm.pstm.NonPersistentTopLevelReadOnlyTransaction;
 import pt.ist.fenixframework.backend.jvstm.pstm.NonPersistentTopLevelTransaction;
+import pt.ist.fenixframework.backend.jvstm.pstm.OwnedVBox;
+import pt.ist.fenixframework.backend.jvstm.pstm.StandaloneVBox;
 import pt.ist.fenixframework.backend.jvstm.pstm.VBox;
+import pt.ist.fenixframework.backend.jvstm.pstm.VBoxIndex;
 import pt.ist.fenixframework.backend.jvstm.repository.NoRepository;
 import pt.ist.fenixframework.backend.jvstm.repository.Repository;
 import pt.ist.fenixframework.core.AbstractDomainObject;
@@ -41,6 +45,8 @@ public class JVSTMBackEnd implements BackEnd {
     // the repository instance used to persist the changes
     protected final Repository repository;
     protected final JVSTMTransactionManager transactionManager;
+    // only set when group commit is enabled
+    protected GroupCommitter groupCommitter = null;
 
     // this constructor is used by the JVSTMConfig when no sub-backend has been created 
     JVSTMBackEnd() {
@@ -80,7 +86,7 @@ public class JVSTMBackEnd implements BackEnd {
     public <T extends DomainObject> T fromOid(Object oid) {
         logger.debug("fromOid({})", oid);
 
-        AbstractDomainObject obj = SharedIdentityMap.getCache().lookup(oid);
+        AbstractDomainObject obj = SharedIdentityMap.getIdentityMap().lookup(oid);
 
         if (obj == null) {
             long longOid = ((Long) oid).longValue();
@@ -91,7 +97,8 @@ public class JVSTMBackEnd implements BackEnd {
 
             obj = DomainObjectAllocator.allocateObject(DomainClassInfo.mapOidToClass(longOid), oid);
             // cache object and return the canonical object
-            obj = SharedIdentityMap.getCache().cache(obj);
+            obj = SharedIdentityMap.getIdentityMap().cache(obj);
+            VBoxIndex.getIndex().register((JVSTMDomainObject) obj);
         }
 
         return (T) obj;
@@ -109,10 +116,18 @@ public class JVSTMBackEnd implements BackEnd {
     }
 
     protected void localInit(JVSTMConfig jvstmConfig, int serverId) {
+        this.transactionManager.setContentionManager(jvstmConfig.getContentionManager());
+
         logger.info("initializeRepository()");
         boolean repositoryIsNew = initializeRepository(jvstmConfig);
 
+        if (jvstmConfig.isGroupCommit()) {
+            logger.info("Group commit enabled with maxBatchSize={}", jvstmConfig.getGroupCommitMaxBatchSize());
+            this.groupCommitter = new GroupCommitter(this.repository, jvstmConfig.getGroupCommitMaxBatchSize());
+        }
+
         logger.info("initializeDomainClassInfos");
+        DomainClassInfo.setOidBlockSize(jvstmConfig.getOidBlockSize());
         initializeDomainClassInfos(serverId);
 
         logger.info("setupJVSTM");
@@ -209,7 +224,24 @@ public class JVSTMBackEnd implements BackEnd {
      *         cache).
      */
     public VBox lookupCachedVBox(String vboxId) {
-        throw new UnsupportedOperationException("not yet implemented");
+        VBox vbox = StandaloneVBox.lookupCachedVBox(vboxId);
+        if (vbox != null) {
+            return vbox;
+        }
+        // It may be an owned VBox
+        return OwnedVBox.lookupCachedVBox(vboxId);
+    }
+
+    /**
+     * Looks up a cached VBox given the oid of its owner and its slot index (see {@link OwnedVBox#getSlotIndex()}).
+     * 
+     * @param oid The oid of the object that owns the VBox
+     * @param slotIndex The index of the VBox's slot
+     * @return The VBox if it is available in memory. Otherwise, <code>null</code> (if either the VBox does not exist or is not in
+     *         cache).
+     */
+    public VBox lookupCachedVBox(long oid, int slotIndex) {
+        return VBoxIndex.getIndex().lookup(oid, slotIndex);
     }
 
     @Override
@@ -220,4 +252,11 @@ public class JVSTMBackEnd implements BackEnd {
         return this.repository;
     }
 
+    /**
+     * @return The {@link GroupCommitter} in use, or <code>null</code> if group commit is disabled.
+     */
+    public GroupCommitter getGroupCommitter() {
+        return this.groupCommitter;
+    }
+
 }
@@ -9,6 +9,7 @@ package pt.ist.fenixframework.backend.jvstm;
 
 import pt.ist.fenixframework.Config;
 import pt.ist.fenixframework.ConfigError;
+import pt.ist.fenixframework.backend.jvstm.pstm.DomainClassInfo;
 import pt.ist.fenixframework.hibernatesearch.HibernateSearchConfig;
 
 /**
@@ -23,6 +24,68 @@ public class JVSTMConfig extends HibernateSearchConfig {
 
     protected JVSTMBackEnd backEnd;
 
+    /**
+     * This <strong>optional</strong> parameter enables group commit. When enabled, the changes of concurrently committing
+     * transactions are persisted together in batches, outside the commit lock, and each commit returns only after its batch is
+     * durable. The default value for this parameter is <code>false</code>.
+     */
+    protected boolean groupCommit = false;
+
+    /**
+     * This <strong>optional</strong> parameter specifies the maximum number of transactions whose changes are persisted in a
+     * single group commit batch. Only used when <code>groupCommit</code> is enabled. The default value for this parameter is
+     * <code>128</code>.
+     */
+    protected int groupCommitMaxBatchSize = 128;
+
+    /**
+     * This <strong>optional</strong> parameter specifies how many object keys are reserved at once, per domain class, when
+     * creating new domain objects. Keys are handed out from the reserved block without contacting the repository, which is
+     * only updated when the block is exhausted. Reserved keys that are not used before the server stops are lost. The default
+     * value for this parameter is <code>1000</code>.
+     */
+    protected int oidBlockSize = DomainClassInfo.DEFAULT_OID_BLOCK_SIZE;
+
+    /**
+     * This <strong>optional</strong> parameter specifies the fully qualified name of the {@link ContentionManager} class to use
+     * when transactions conflict. The class must have a public no-arg constructor. When not set, an
+     * {@link ExponentialBackoffContentionManager} configured with the <code>backoffMinDelay</code>,
+     * <code>backoffMaxDelay</code>, <code>maxRetries</code> and <code>serializeAfterAborts</code> parameters is used. With
+     * their default values, it restarts conflicting transactions right away and as many times as needed, as if there was no
+     * contention management.
+     */
+    protected ContentionManager contentionManager = null;
+
+    /**
+     * This <strong>optional</strong> parameter specifies, in microseconds, the maximum wait before restarting a transaction
+     * after its first conflict. Subsequent waits double, up to <code>backoffMaxDelay</code>. Zero disables waiting. Under high
+     * contention, <code>50</code> is a reasonable starting value. The default value for this parameter is <code>0</code>.
+     */
+    protected long backoffMinDelay = 0;
+
+    /**
+     * This <strong>optional</strong> parameter specifies, in microseconds, the upper bound of the wait before restarting a
+     * conflicting transaction. Only used when <code>backoffMinDelay</code> is positive. The default value for this parameter is
+     * <code>50000</code>.
+     */
+    protected long backoffMaxDelay = 50000;
+
+    /**
+     * This <strong>optional</strong> parameter specifies how many times a transaction is restarted because of conflicts before
+     * giving up with a {@link TooManyAbortsException}. A negative value means unlimited. It may be overridden in each
+     * <code>@Atomic</code>. The default value for this parameter is <code>-1</code>.
+     */
+    protected int maxRetries = -1;
+
+    /**
+     * This <strong>optional</strong> parameter specifies after how many conflicts a transaction is restarted in serialized mode.
+     * A negative value means never. It may be overridden in each <code>@Atomic</code>. Serialized mode only holds back the
+     * read-write transactions of this node that start after it, so a serialized transaction may still conflict, and still
+     * counts towards <code>maxRetries</code>. Under high contention, <code>16</code> is a reasonable starting value. The default
+     * value for this parameter is <code>-1</code>.
+     */
+    protected int serializeAfterAborts = -1;
+
     /**
      * Subclasses of this config should set their own backEnd before calling this init. Otherwise, this method will set its own
      * backEnd (JVSTMBackEnd)
@@ -50,6 +113,102 @@ public class JVSTMConfig extends HibernateSearchConfig {
         super.init();
     }
 
+    protected void groupCommitFromString(String value) {
+        groupCommit = Boolean.parseBoolean(value);
+    }
+
+    protected void groupCommitMaxBatchSizeFromString(String value) {
+        try {
+            groupCommitMaxBatchSize = Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new ConfigError(e);
+        }
+    }
+
+    protected void oidBlockSizeFromString(String value) {
+        try {
+            oidBlockSize = Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new ConfigError(e);
+        }
+    }
+
+    protected void contentionManagerFromString(String value) {
+        try {
+            contentionManager = (ContentionManager) Class.forName(value.trim()).newInstance();
+        } catch (Exception e) {
+            throw new ConfigError(e);
+        }
+    }
+
+    protected void backoffMinDelayFromString(String value) {
+        try {
+            backoffMinDelay = Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new ConfigError(e);
+        }
+    }
+
+    protected void backoffMaxDelayFromString(String value) {
+        try {
+            backoffMaxDelay = Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new ConfigError(e);
+        }
+    }
+
+    protected void maxRetriesFromString(String value) {
+        try {
+            maxRetries = Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new ConfigError(e);
+        }
+    }
+
+    protected void serializeAfterAbortsFromString(String value) {
+        try {
+            serializeAfterAborts = Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new ConfigError(e);
+        }
+    }
+
+    public boolean isGroupCommit() {
+        return groupCommit;
+    }
+
+    public int getGroupCommitMaxBatchSize() {
+        return groupCommitMaxBatchSize;
+    }
+
+    public int getOidBlockSize() {
+        return oidBlockSize;
+    }
+
+    public ContentionManager getContentionManager() {
+        if (contentionManager == null) {
+            contentionManager =
+                    new ExponentialBackoffContentionManager(backoffMinDelay, backoffMaxDelay, maxRetries, serializeAfterAborts);
+        }
+        return contentionManager;
+    }
+
+    public long getBackoffMinDelay() {
+        return backoffMinDelay;
+    }
+
+    public long getBackoffMaxDelay() {
+        return backoffMaxDelay;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public int getSerializeAfterAborts() {
+        return serializeAfterAborts;
+    }
+
     @Override
     public JVSTMBackEnd getBackEnd() {
         return this.backEnd;
@@ -8,11 +8,16 @@
 package pt.ist.fenixframework.backend.jvstm;
 
 import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import pt.ist.fenixframework.backend.jvstm.pstm.DomainClassInfo;
+import pt.ist.fenixframework.backend.jvstm.pstm.OwnedVBox;
+import pt.ist.fenixframework.backend.jvstm.pstm.VBoxIndex;
 import pt.ist.fenixframework.backend.jvstm.pstm.VersionedSubject;
 import pt.ist.fenixframework.core.AbstractDomainObjectAdapter;
 import pt.ist.fenixframework.core.DomainObjectAllocator;
@@ -21,6 +26,10 @@ import pt.ist.fenixframework.core.SharedIdentityMap;
 public abstract class JVSTMDomainObject extends AbstractDomainObjectAdapter {
     private static final Logger logger = LoggerFactory.getLogger(JVSTMDomainObject.class);
 
+    // the slot fields of each domain class (including those inherited), by name, looked up once per class and name
+    private static final ConcurrentHashMap<Class<?>, ConcurrentHashMap<String, Field>> SLOT_FIELDS =
+            new ConcurrentHashMap<Class<?>, ConcurrentHashMap<String, Field>>();
+
     // this should be final, but the ensureOid and restoreOid methods prevent it
     private long oid;
 
@@ -40,9 +49,10 @@ public abstract class JVSTMDomainObject extends AbstractDomainObjectAdapter {
             // find successive ids until one is available
             while (true) {
                 this.oid = DomainClassInfo.getNextOidFor(this.getClass());
-                Object cached = SharedIdentityMap.getCache().cache(this);
+                Object cached = SharedIdentityMap.getIdentityMap().cache(this);
                 if (cached == this) {
                     // break the loop once we got this instance cached
+                    VBoxIndex.getIndex().register(this);
                     return;
                 }
                 if (logger.isDebugEnabled()) {
@@ -81,22 +91,73 @@ public abstract class JVSTMDomainObject extends AbstractDomainObjectAdapter {
     }
 
     public VersionedSubject getSlotNamed(String attrName) {
-        Class myClass = this.getClass();
-        while (myClass != Object.class) {
-            try {
-                Field f = myClass.getDeclaredField(attrName);
-                f.setAccessible(true);
-                return (VersionedSubject) f.get(this);
-            } catch (NoSuchFieldException nsfe) {
-                myClass = myClass.getSuperclass();
-            } catch (IllegalAccessException iae) {
-                throw new Error("Couldn't find attribute " + attrName + ": " + iae);
-            } catch (SecurityException se) {
-                throw new Error("Couldn't find attribute " + attrName + ": " + se);
+        Field f = getSlotField(this.getClass(), attrName);
+        if (f == null) {
+            logger.warn("Couldn't find attribute {}", attrName);
+            return null;
+        }
+
+        try {
+            return (VersionedSubject) f.get(this);
+        } catch (IllegalAccessException iae) {
+            throw new Error("Couldn't find attribute " + attrName + ": " + iae);
+        }
+    }
+
+    private static Field getSlotField(Class<?> domainClass, String attrName) {
+        ConcurrentHashMap<String, Field> fields = SLOT_FIELDS.get(domainClass);
+        if (fields == null) {
+            fields = new ConcurrentHashMap<String, Field>();
+            ConcurrentHashMap<String, Field> existing = SLOT_FIELDS.putIfAbsent(domainClass, fields);
+            if (existing != null) {
+                fields = existing;
+            }
+        }
+
+        Field field = fields.get(attrName);
+        if (field == null) {
+            Class<?> myClass = domainClass;
+            while (field == null && myClass != Object.class) {
+                try {
+                    field = myClass.getDeclaredField(attrName);
+                    field.setAccessible(true);
+                } catch (NoSuchFieldException nsfe) {
+                    myClass = myClass.getSuperclass();
+                } catch (SecurityException se) {
+                    throw new Error("Couldn't find attribute " + attrName + ": " + se);
+                }
+            }
+            if (field != null) {
+                fields.putIfAbsent(attrName, field);
             }
         }
-        logger.warn("Couldn't find attribute {}", attrName);
+        return field;
+    }
+
+    /**
+     * Get the box of the slot with the given index. Slot indexes are assigned by the code generator: the slots of a domain
+     * class are numbered after those of its superclass, in the order in which they are declared. Each generated base class
+     * overrides this method to return its own slots.
+     *
+     * @return The box of the slot, or <code>null</code> if this object has no slot with that index
+     */
+    public OwnedVBox getSlotAt(int slotIndex) {
         return null;
     }
 
+    /**
+     * Get all the slots of this object, i.e. the boxes that hold its attributes and relations, in slot index order. They are
+     * read through {@link #getSlotAt(int)}, so no reflection is involved.
+     */
+    public List<VersionedSubject> getSlots() {
+        List<VersionedSubject> slots = new ArrayList<VersionedSubject>();
+        for (int slotIndex = 0;; slotIndex++) {
+            OwnedVBox slot = getSlotAt(slotIndex);
+            if (slot == null) {
+                return slots;
+            }
+            slots.add(slot);
+        }
+    }
+
 }
@@ -2,6 +2,9 @@ package pt.ist.fenixframework.backend.jvstm;
 
 import java.lang.annotation.Annotation;
 import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.transaction.HeuristicMixedException;
 import javax.transaction.HeuristicRollbackException;
@@ -40,6 +43,16 @@ public class JVSTMTransactionManager extends AbstractTransactionManager {
             return true;
         }
 
+        @Override
+        public int maxRetries() {
+            return USE_DEFAULT;
+        }
+
+        @Override
+        public int serializeAfter() {
+            return USE_DEFAULT;
+        }
+
         @Override
         public Class<? extends Annotation> annotationType() {
             return pt.ist.fenixframework.Atomic.class;
@@ -52,6 +65,65 @@ public class JVSTMTransactionManager extends AbstractTransactionManager {
      */
     private final ThreadLocal<JVSTMTransaction> transactions = new ThreadLocal<JVSTMTransaction>();
 
+    /*
+     * Until the backend sets the configured one, conflicting transactions are restarted right away and as many times as needed.
+     */
+    private volatile ContentionManager contentionManager = new ExponentialBackoffContentionManager(0, 0, -1, -1);
+
+    /*
+     * Escalated (serialized) transactions run while holding this lock.  While any of them is waiting for it or running, new
+     * top-level read-write transactions must also get through it before starting, so that the escalated ones are not starved.
+     * This is not an inevitable transaction: JVSTM's inevitable transactions write directly to the boxes, bypassing the commit
+     * of the persistent transactions, which writes to the repository and informs the other nodes. So, the transactions that were
+     * already running, or that run in other nodes, may still commit first and make an escalated transaction conflict again, in
+     * which case it is restarted, still serialized, as decided by the ContentionManager.
+     */
+    private final ReentrantLock serializedLock = new ReentrantLock(true);
+    private final AtomicInteger serializedTransactions = new AtomicInteger(0);
+
+    private final ThreadLocal<Integer> lastAbortCount = new ThreadLocal<Integer>();
+    private final AtomicLong totalAborts = new AtomicLong(0);
+    private final AtomicLong totalSerialized = new AtomicLong(0);
+    private final AtomicLong totalGiveUps = new AtomicLong(0);
+
+    public ContentionManager getContentionManager() {
+        return contentionManager;
+    }
+
+    public void setContentionManager(ContentionManager contentionManager) {
+        this.contentionManager = contentionManager;
+    }
+
+    /**
+     * Returns how many times the last transaction executed by the current thread via <code>withTransaction</code> aborted
+     * because of conflicts, whether it eventually committed or not.
+     */
+    public int getLastAbortCount() {
+        Integer aborts = lastAbortCount.get();
+        return (aborts == null) ? 0 : aborts;
+    }
+
+    /**
+     * Returns the total number of conflicting aborts of the transactions executed via <code>withTransaction</code>.
+     */
+    public long getTotalAborts() {
+        return totalAborts.get();
+    }
+
+    /**
+     * Returns the total number of transactions that were escalated to serialized mode.
+     */
+    public long getTotalSerialized() {
+        return totalSerialized.get();
+    }
+
+    /**
+     * Returns the total number of transactions that gave up because of too many conflicts.
+     */
+    public long getTotalGiveUps() {
+        return totalGiveUps.get();
+    }
+
     @Override
     public void begin(boolean readOnly) throws NotSupportedException {
         JVSTMTransaction parent = transactions.get();
@@ -176,64 +248,119 @@ public class JVSTMTransactionManager extends AbstractTransactionManager {
             return command.call();
         }
 
+        if (atomic == null) {
+            atomic = DEFAULT_ATOMIC;
+        }
+
+        final boolean topLevel = (getTransaction() == null);
+        if (topLevel && !readOnly) {
+            awaitSerializedTransactions();
+        }
+
         int tries = 0;
+        int aborts = 0;
+        boolean serialized = false;
+
+        try {
+            while (true) {
+                begin(tryReadOnly);
+                tries++;
+
+                T result = null;
+                boolean commandFinished = false;
+                boolean conflicted = false;
 
-        while (true) {
-            begin(tryReadOnly);
-            tries++;
-
-            T result = null;
-            boolean commandFinished = false;
-
-            try {
-                result = command.call();
-                commandFinished = true;
-            } catch (WriteOnReadException e) {
-                tryReadOnly = handleWriteOnRead(commandName, readOnly, tryReadOnly, tries, e);
-            } catch (WriteOnReadError e) {
-                tryReadOnly = handleWriteOnRead(commandName, readOnly, tryReadOnly, tries, e);
-            } catch (UnableToDetermineIdException e) {
-                if (!readOnly) {
-                    tryReadOnly = false;
-                }
-                logTransactionRestart(commandName, e, tries);
-            } catch (Exception e) {
-                // just log any other exception
-                logGenericException(commandName, e, tries);
-                throw e;
-            } finally {
                 try {
-                    if (commandFinished) {
-                        commit();
-                        return result;
-                    } else {
-                        rollback();
-                    }
-                } catch (RecoverableRollbackException e) {
-                    // Restart the transaction if the rollback was recoverable
-                    logger.debug("Exception on transaction {}: {}", (commandFinished ? "commit" : "rollback"), e);
-                } catch (FenixRollbackException e) {
-                    // If the rollback isn't recoverable, attempt to unwrap
-                    // the exception and throw it.
-                    if (e.getCause() instanceof Exception) {
-                        throw (Exception) e.getCause();
+                    result = command.call();
+                    commandFinished = true;
+                } catch (WriteOnReadException e) {
+                    tryReadOnly = handleWriteOnRead(commandName, readOnly, tryReadOnly, tries, e);
+                } catch (WriteOnReadError e) {
+                    tryReadOnly = handleWriteOnRead(commandName, readOnly, tryReadOnly, tries, e);
+                } catch (UnableToDetermineIdException e) {
+                    if (!readOnly) {
+                        tryReadOnly = false;
                     }
+                    logTransactionRestart(commandName, e, tries);
+                } catch (Exception e) {
+                    // just log any other exception
+                    logGenericException(commandName, e, tries);
                     throw e;
-                } catch (HeuristicMixedException e) {
-                    logger.debug("Exception on transaction {}: {}", (commandFinished ? "commit" : "rollback"), e);
-                } catch (HeuristicRollbackException e) {
-                    logger.debug("Exception on transaction {}: {}", (commandFinished ? "commit" : "rollback"), e);
-                } catch (SecurityException e) {
-                    logger.debug("Exception on transaction {}: {}", (commandFinished ? "commit" : "rollback"), e);
-                } catch (IllegalStateException e) {
-                    logger.debug("Exception on transaction {}: {}", (commandFinished ? "commit" : "rollback"), e);
-                } catch (SystemException e) {
-                    logger.debug("Exception on transaction {}: {}", (commandFinished ? "commit" : "rollback"), e);
+                } finally {
+                    try {
+                        if (commandFinished) {
+                            commit();
+                            return result;
+                        } else {
+                            rollback();
+                        }
+                    } catch (RecoverableRollbackException e) {
+                        // Restart the transaction if the rollback was recoverable
+                        logger.debug("Exception on transaction {}: {}", (commandFinished ? "commit" : "rollback"), e);
+                        conflicted = commandFinished;
+                    } catch (FenixRollbackException e) {
+                        // If the rollback isn't recoverable, attempt to unwrap
+                        // the exception and throw it.
+                        if (e.getCause() instanceof Exception) {
+                            throw (Exception) e.getCause();
+                        }
+                        throw e;
+                    } catch (HeuristicMixedException e) {
+                        logger.debug("Exception on transaction {}: {}", (commandFinished ? "commit" : "rollback"), e);
+                    } catch (HeuristicRollbackException e) {
+                        logger.debug("Exception on transaction {}: {}", (commandFinished ? "commit" : "rollback"), e);
+                    } catch (SecurityException e) {
+                        logger.debug("Exception on transaction {}: {}", (commandFinished ? "commit" : "rollback"), e);
+                    } catch (IllegalStateException e) {
+                        logger.debug("Exception on transaction {}: {}", (commandFinished ? "commit" : "rollback"), e);
+                    } catch (SystemException e) {
+                        logger.debug("Exception on transaction {}: {}", (commandFinished ? "commit" : "rollback"), e);
+                    }
+                }
+
+                if (conflicted) {
+                    aborts++;
+                    totalAborts.incrementAndGet();
+
+                    ContentionManager.Decision decision = contentionManager.onConflict(atomic, aborts);
+                    if (decision == ContentionManager.Decision.GIVE_UP) {
+                        totalGiveUps.incrementAndGet();
+                        TooManyAbortsException e = new TooManyAbortsException(commandName, aborts);
+                        logTransactionAbort(commandName, e, tries);
+                        throw e;
+                    } else if (decision == ContentionManager.Decision.RETRY_SERIALIZED && topLevel && !serialized) {
+                        logger.debug("Transaction {} will run serialized after {} abort(s)", commandName, aborts);
+                        totalSerialized.incrementAndGet();
+                        beginSerialized();
+                        serialized = true;
+                    }
                 }
             }
+        } finally {
+            lastAbortCount.set(aborts);
+            if (serialized) {
+                endSerialized();
+            }
+        }
+    }
+
+    private void awaitSerializedTransactions() {
+        if (serializedTransactions.get() > 0 && !serializedLock.isHeldByCurrentThread()) {
+            serializedLock.lock();
+            serializedLock.unlock();
         }
     }
 
+    private void beginSerialized() {
+        serializedTransactions.incrementAndGet();
+        serializedLock.lock();
+    }
+
+    private void endSerialized() {
+        serializedLock.unlock();
+        serializedTransactions.decrementAndGet();
+    }
+
     private boolean handleWriteOnRead(final String commandName, boolean readOnly, boolean tryReadOnly, int tries, Throwable e)
             throws WriteOnReadError {
         if (readOnly) {
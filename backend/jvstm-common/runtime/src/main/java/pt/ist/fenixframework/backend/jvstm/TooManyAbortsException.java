@@ -0,0 +1,20 @@
+package pt.ist.fenixframework.backend.jvstm;
+
+/**
+ * Thrown when the {@link ContentionManager} gives up on restarting a transaction that keeps conflicting with other
+ * transactions. None of the transaction's changes were committed.
+ */
+public class TooManyAbortsException extends RuntimeException {
+    private static final long serialVersionUID = -2419437253163346573L;
+
+    private final int aborts;
+
+    public TooManyAbortsException(String commandName, int aborts) {
+        super("Transaction " + commandName + " gave up after aborting " + aborts + " time(s)");
+        this.aborts = aborts;
+    }
+
+    public int getAborts() {
+        return aborts;
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Fenix Framework, a framework to develop Java Enterprise Applications.
+ *
+ * Copyright (C) 2013 Fenix Framework Team and/or its affiliates and other contributors as indicated by the @author tags.
+ *
+ * This file is part of the Fenix Framework.  Read the file COPYRIGHT.TXT for more copyright and licensing information.
+ */
+package pt.ist.fenixframework.backend.jvstm.pstm;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import jvstm.Transaction;
+
+/**
+ * Keeps track of the {@link jvstm.ActiveTransactionsRecord} number on which each running persistent transaction started, so
+ * that a repository can tell which old versions may still be read (see {@link #getOldestActiveNumber()}).
+ *
+ * Tracking is off by default, and should be enabled before the first transaction starts. Transactions may later move to a more
+ * recent record (e.g. when upgraded during commit), so the starting number is a conservative bound.
+ */
+public final class ActiveTransactions {
+
+    private static volatile boolean tracking = false;
+
+    private static final ConcurrentHashMap<PersistentTransaction, Integer> ACTIVE =
+            new ConcurrentHashMap<PersistentTransaction, Integer>();
+
+    private ActiveTransactions() {
+    }
+
+    public static void enableTracking() {
+        tracking = true;
+    }
+
+    public static boolean isTracking() {
+        return tracking;
+    }
+
+    static void started(PersistentTransaction tx, int txNumber) {
+        if (tracking) {
+            ACTIVE.put(tx, txNumber);
+        }
+    }
+
+    static void finished(PersistentTransaction tx) {
+        if (tracking) {
+            ACTIVE.remove(tx);
+        }
+    }
+
+    /**
+     * Computes the number of the oldest version that a running (or about to start) transaction may need to read: the smallest
+     * starting number of the active transactions, or the most recent record's number, if none is active.
+     *
+     * Note that a transaction that is starting concurrently with this method may register itself only after having been
+     * skipped, so callers should combine consecutive results (e.g. take the minimum of the last two).
+     */
+    public static int getOldestActiveNumber() {
+        // read it before scanning: transactions starting after this point never go below it
+        int oldest = Transaction.mostRecentRecord.transactionNumber;
+        for (Integer txNumber : ACTIVE.values()) {
+            if (txNumber < oldest) {
+                oldest = txNumber;
+            }
+        }
+        return oldest;
+    }
+}
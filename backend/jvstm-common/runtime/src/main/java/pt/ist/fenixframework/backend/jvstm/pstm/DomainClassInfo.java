@@ -6,12 +6,14 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.IdentityHashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import pt.ist.fenixframework.DomainRoot;
 import pt.ist.fenixframework.backend.jvstm.JVSTMBackEnd;
+import pt.ist.fenixframework.backend.jvstm.repository.Repository;
 import pt.ist.fenixframework.core.AbstractDomainObject;
 import pt.ist.fenixframework.dml.DomainClass;
 import pt.ist.fenixframework.dml.DomainModel;
@@ -62,6 +64,23 @@ public class DomainClassInfo implements Serializable {
         }
     }
 
+    /**
+     * Loads the Java classes of the domain model, which {@link #initializeClassInfos(DomainModel, int)} would otherwise do. This
+     * needs neither the server id nor the repository, so it can be done in another thread while the server is still being set
+     * up (e.g. joining a cluster). The classes are not initialized, as their static initializers may depend on the framework
+     * being ready.
+     */
+    public static void loadDomainClasses(DomainModel domainModel) {
+        ClassLoader classLoader = DomainClassInfo.class.getClassLoader();
+        for (DomainClass domClass : domainModel.getDomainClasses()) {
+            try {
+                Class.forName(domClass.getFullName(), false, classLoader);
+            } catch (ClassNotFoundException cnfe) {
+                // will be reported when initializing the class infos
+            }
+        }
+    }
+
     private static int createAnyMissingRecords(Map<Class<? extends AbstractDomainObject>, DomainClassInfo> map,
             ArrayList<DomainClassInfo> array, int maxId, DomainModel domainModel) throws ClassNotFoundException {
         ArrayList<DomainClassInfo> newClasses = new ArrayList<DomainClassInfo>();
@@ -175,22 +194,22 @@ public class DomainClassInfo implements Serializable {
         return mapIdToClass(mapOidToClassId(oid));
     }
 
+    public static void setOidBlockSize(int blockSize) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("The OID block size must be positive: " + blockSize);
+        }
+        oidBlockSize = blockSize;
+    }
+
+    public static int getOidBlockSize() {
+        return oidBlockSize;
+    }
+
     public static long getNextOidFor(Class<? extends AbstractDomainObject> objClass) throws Exception {
-        int nextKey;
         DomainClassInfo info = classInfoMap.get(objClass);
+        int nextKey = info.nextKey(JVSTMBackEnd.getInstance().getRepository());
         long oid;
 
-        synchronized (info) {
-            int lastKey = info.getLastKey();
-            if (lastKey == UNKNOWN_KEY) {  // not yet initialized from the persistent storage
-                lastKey = getLastKeyFor(info);
-                logger.debug("Initialize last used counter for class {}: {}", info.domainClassName, lastKey);
-            }
-
-            nextKey = lastKey + 1;
-            info.setLastKey(nextKey);
-        }
-
         // build the OID
         if ((DomainRoot.class == objClass) && (nextKey == 1)) {
             // this first DomainRoot instance is special and always takes a known value, regardless of the serverOidBase
@@ -208,28 +227,28 @@ public class DomainClassInfo implements Serializable {
                     objClass.getCanonicalName());
         }
 
-        // inform the Repository of the new OID; it **may** require such knowledge
-        JVSTMBackEnd.getInstance().getRepository().updateMaxCounterForClass(info, nextKey);
-
         return oid;
     }
 
-    /* Invocations to this method should be synchronized in the <code>info</code> argument */
-    private static int getLastKeyFor(DomainClassInfo info) throws Exception {
-        int maxCounter = JVSTMBackEnd.getInstance().getRepository().getMaxCounterForClass(info);
+    private static final int UNKNOWN_KEY = 0;
 
-        return maxCounter < 0 ? UNKNOWN_KEY : maxCounter;
-    }
+    public static final int DEFAULT_OID_BLOCK_SIZE = 1000;
 
-    private static final int UNKNOWN_KEY = 0;
+    private static volatile int oidBlockSize = DEFAULT_OID_BLOCK_SIZE;
 
     // the non-static part starts here
 
     public final String domainClassName;
     public final transient Class<? extends AbstractDomainObject> domainClass;
     public final int classId;
-    /** The maximum object key used for objects of this class in this server */
-    private transient int lastKey = UNKNOWN_KEY;
+    /** The last object key handed out for objects of this class in this server */
+    private final transient AtomicInteger lastKey = new AtomicInteger(UNKNOWN_KEY);
+    /**
+     * The maximum object key reserved for objects of this class in this server. Keys up to this value are handed out without
+     * contacting the repository. Only changed while holding this instance's lock.
+     */
+    private transient volatile int reservedKey = UNKNOWN_KEY;
+    private transient boolean initialized = false;
 
     public DomainClassInfo(Class<? extends AbstractDomainObject> domainClass, int classId) {
         this(domainClass.getName(), domainClass, classId);
@@ -245,12 +264,55 @@ public class DomainClassInfo implements Serializable {
         this.classId = classId;
     }
 
+    /**
+     * @return The maximum object key that may have been used for objects of this class in this server, i.e. the end of the
+     *         currently reserved block of keys.
+     */
     public int getLastKey() {
-        return this.lastKey;
+        return this.reservedKey;
+    }
+
+    // lock-free, except when the reserved block is exhausted.  Package-private for the tests
+    int nextKey(Repository repository) throws Exception {
+        while (true) {
+            int last = this.lastKey.get();
+            if (last < this.reservedKey) {
+                if (this.lastKey.compareAndSet(last, last + 1)) {
+                    return last + 1;
+                }
+            } else {
+                reserveKeys(last, repository);
+            }
+        }
     }
 
-    private void setLastKey(int lastKey) {
-        this.lastKey = lastKey;
+    /* Durably reserves a new block of keys in the repository, unless another thread already did it after having seen
+     * exhaustedKey as the last key handed out.  The keys of a block that are not handed out before the server stops are simply
+     * never used. */
+    private synchronized void reserveKeys(int exhaustedKey, Repository repository) throws Exception {
+        if (exhaustedKey < this.reservedKey) {
+            return;
+        }
+
+        int base = this.reservedKey;
+        if (!this.initialized) {  // not yet initialized from the persistent storage
+            int maxCounter = repository.getMaxCounterForClass(this);
+            base = maxCounter < 0 ? UNKNOWN_KEY : maxCounter;
+            logger.debug("Initialize last used counter for class {}: {}", this.domainClassName, base);
+            this.lastKey.set(base);
+            this.initialized = true;
+        }
+
+        int blockSize = oidBlockSize;
+        if (base > Integer.MAX_VALUE - blockSize) {
+            throw new Error("Exhausted the object keys for class " + this.domainClassName);
+        }
+        int newReservedKey = base + blockSize;
+        repository.storeMaxCounterForClass(this, newReservedKey);
+        logger.debug("Reserved keys up to {} for class {}", newReservedKey, this.domainClassName);
+
+        // publish only after the reservation is durable
+        this.reservedKey = newReservedKey;
     }
 
     // serialization code
@@ -0,0 +1,195 @@
+/*
+ * Fenix Framework, a framework to develop Java Enterprise Applications.
+ *
+ * Copyright (C) 2013 Fenix Framework Team and/or its affiliates and other contributors as indicated by the @author tags.
+ *
+ * This file is part of the Fenix Framework.  Read the file COPYRIGHT.TXT for more copyright and licensing information.
+ */
+package pt.ist.fenixframework.backend.jvstm.pstm;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import pt.ist.fenixframework.backend.jvstm.repository.CommittedWriteSet;
+import pt.ist.fenixframework.backend.jvstm.repository.Repository;
+import pt.ist.fenixframework.core.TransactionError;
+
+/**
+ * Coalesces the write-sets of concurrently committing transactions into batches, each persisted with a single call to
+ * {@link Repository#persistChanges(List, Object)}.
+ * 
+ * Write-sets are enqueued while holding the commit lock, so the queue is ordered by transaction number. After leaving the
+ * commit lock, each committer waits until its write-set is durable. There is no dedicated flushing thread: a committer that
+ * finds no flush in progress becomes the leader, persists everything queued so far (up to <code>maxBatchSize</code> write-sets)
+ * and then wakes up the followers whose write-sets were in that batch. Batches are flushed one at a time, in order.
+ * 
+ * JVSTM makes a commit visible in memory as soon as it leaves the commit lock, and new transactions may only begin on the most
+ * recent version, so the changes of a queued write-set may be read before they are durable. To keep such reads from escaping,
+ * every transaction (including read-only ones) waits, before finishing its commit, until all the write-sets up to the version it
+ * read are durable (see {@link #awaitDurable(int)}). So, no transaction completes having seen changes that may still be lost.
+ * 
+ * A batch that fails to be persisted is fatal: every later transaction may depend on it. So, no more write-sets are accepted,
+ * the write-sets still queued are discarded and every transaction that read the version of the failed batch, or a later one,
+ * fails, without being reported as durable.
+ */
+public class GroupCommitter {
+
+    private static final Logger logger = LoggerFactory.getLogger(GroupCommitter.class);
+
+    private final Repository repository;
+    private final int maxBatchSize;
+
+    // all fields below are guarded by this instance's monitor
+    private final ArrayDeque<PendingCommit> queue = new ArrayDeque<PendingCommit>();
+    // the batch being persisted, if any
+    private List<PendingCommit> flushing = null;
+    // set when a batch fails to be persisted, along with the number of its first transaction
+    private Throwable failure = null;
+    private int failedTxNumber = Integer.MAX_VALUE;
+
+    public GroupCommitter(Repository repository, int maxBatchSize) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be positive: " + maxBatchSize);
+        }
+        this.repository = repository;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /* must be called while holding the commit lock. The changes are copied, because the transaction's write-set may be cleared
+    or reused once it leaves the commit lock, while the write-set waits to be persisted */
+    synchronized PendingCommit enqueue(PersistentTransaction tx, Set<Entry<jvstm.VBox, Object>> changes, int txNumber,
+            Object nullObject) {
+        if (this.failure != null) {
+            throw new TransactionError(this.failure);
+        }
+        Map<jvstm.VBox, Object> snapshot = new HashMap<jvstm.VBox, Object>();
+        for (Entry<jvstm.VBox, Object> change : changes) {
+            snapshot.put(change.getKey(), change.getValue());
+        }
+        PendingCommit pending = new PendingCommit(tx, new CommittedWriteSet(snapshot.entrySet(), txNumber), nullObject);
+        this.queue.add(pending);
+        return pending;
+    }
+
+    // must be called after releasing the commit lock
+    void awaitDurable(PendingCommit pending) {
+        awaitDurable(pending.writeSet.getTxNumber());
+    }
+
+    /**
+     * Waits until the write-sets of all the transactions numbered up to the given number are durable, flushing them if no other
+     * thread is doing so. Must be called after releasing the commit lock.
+     * 
+     * @param txNumber The number of the version read (or committed) by the calling transaction
+     * @throws TransactionError If the write-set of one of those transactions failed to be persisted
+     */
+    void awaitDurable(int txNumber) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                List<PendingCommit> batch;
+                synchronized (this) {
+                    while (!isDurable(txNumber) && this.flushing != null) {
+                        try {
+                            wait();
+                        } catch (InterruptedException e) {
+                            interrupted = true;
+                        }
+                    }
+                    if (isDurable(txNumber)) {
+                        break;
+                    }
+                    // some write-set up to txNumber is still queued
+                    batch = drainBatch();
+                    this.flushing = batch;
+                }
+                flush(batch);
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // must be called while holding this instance's monitor
+    private boolean isDurable(int txNumber) {
+        if (txNumber >= this.failedTxNumber) {
+            throw new TransactionError(this.failure);
+        }
+        PendingCommit oldest = (this.flushing != null) ? this.flushing.get(0) : this.queue.peek();
+        return oldest == null || oldest.writeSet.getTxNumber() > txNumber;
+    }
+
+    private List<PendingCommit> drainBatch() {
+        int size = Math.min(this.queue.size(), this.maxBatchSize);
+        List<PendingCommit> batch = new ArrayList<PendingCommit>(size);
+        for (int i = 0; i < size; i++) {
+            batch.add(this.queue.poll());
+        }
+        return batch;
+    }
+
+    private void flush(List<PendingCommit> batch) {
+        Throwable failure = null;
+        try {
+            List<CommittedWriteSet> writeSets = new ArrayList<CommittedWriteSet>(batch.size());
+            for (PendingCommit pending : batch) {
+                writeSets.add(pending.writeSet);
+            }
+
+            try {
+                this.repository.persistChanges(writeSets, batch.get(0).nullObject);
+                logger.debug("Group commit flushed {} write-sets", batch.size());
+            } catch (RuntimeException e) {
+                failure = e;
+            } catch (Error e) {
+                failure = e;
+            }
+            if (failure != null) {
+                logger.error("Failed to persist a group commit of {} write-sets. No more commits will be accepted.",
+                        batch.size(), failure);
+                return;
+            }
+
+            for (PendingCommit pending : batch) {
+                try {
+                    pending.tx.afterDurable(pending.writeSet.getTxNumber());
+                } catch (RuntimeException e) {
+                    logger.error("Post-commit action failed for transaction {}", pending.writeSet.getTxNumber(), e);
+                }
+            }
+        } finally {
+            synchronized (this) {
+                if (failure != null) {
+                    this.failure = failure;
+                    this.failedTxNumber = batch.get(0).writeSet.getTxNumber();
+                    // the write-sets still queued were committed on top of the failed batch
+                    this.queue.clear();
+                }
+                this.flushing = null;
+                notifyAll();
+            }
+        }
+    }
+
+    static final class PendingCommit {
+        private final PersistentTransaction tx;
+        private final CommittedWriteSet writeSet;
+        private final Object nullObject;
+
+        PendingCommit(PersistentTransaction tx, CommittedWriteSet writeSet, Object nullObject) {
+            this.tx = tx;
+            this.writeSet = writeSet;
+            this.nullObject = nullObject;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package pt.ist.fenixframework.backend.jvstm.pstm;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of non-negative values with fixed memory use, whose buckets grow in powers of two: bucket 0 counts the value
+ * 0, and bucket <code>k</code> counts the values in <code>[2^(k-1), 2^k - 1]</code>. Like the {@link StripedCounter}, it is
+ * striped per thread, so that recording a value does not contend with other threads.
+ */
+public class LogHistogram {
+
+    public static final int BUCKETS = 64;
+
+    // per stripe: the buckets followed by the sum, rounded up to whole cache lines
+    private static final int SUM = BUCKETS;
+    private static final int STRIDE = ((BUCKETS + 1 + StripedCounter.PADDING - 1) / StripedCounter.PADDING)
+            * StripedCounter.PADDING;
+
+    private final AtomicLongArray cells = new AtomicLongArray(StripedCounter.STRIPES * STRIDE);
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong(0);
+
+    /**
+     * Records a value. Negative values are recorded as 0.
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+
+        int base = StripedCounter.stripe() * STRIDE;
+        cells.getAndIncrement(base + bucketFor(value));
+        cells.getAndAdd(base + SUM, value);
+
+        // these only change while the extremes are still being found, so they rarely contend
+        long currentMin;
+        while (value < (currentMin = min.get()) && !min.compareAndSet(currentMin, value)) {
+        }
+        long currentMax;
+        while (value > (currentMax = max.get()) && !max.compareAndSet(currentMax, value)) {
+        }
+    }
+
+    /**
+     * Returns a snapshot of the recorded values and resets the histogram. Concurrent records are either included in the
+     * snapshot or kept for the next one, although the snapshot's extremes may already reflect them.
+     */
+    public Snapshot getAndReset() {
+        long[] buckets = new long[BUCKETS];
+        long sum = 0;
+        for (int stripe = 0; stripe < StripedCounter.STRIPES; stripe++) {
+            int base = stripe * STRIDE;
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] += cells.getAndSet(base + i, 0);
+            }
+            sum += cells.getAndSet(base + SUM, 0);
+        }
+        return new Snapshot(buckets, sum, min.getAndSet(Long.MAX_VALUE), max.getAndSet(0));
+    }
+
+    static int bucketFor(long value) {
+        // 0 goes to bucket 0; Long.MAX_VALUE would be 63 already
+        return 64 - Long.numberOfLeadingZeros(value);
+    }
+
+    /**
+     * The largest value counted in the given bucket.
+     */
+    static long bucketUpperBound(int bucket) {
+        return (bucket >= 63) ? Long.MAX_VALUE : (1L << bucket) - 1;
+    }
+
+    public static class Snapshot {
+        private final long[] buckets;
+        private final long count;
+        private final long sum;
+        private final long min;
+        private final long max;
+
+        Snapshot(long[] buckets, long sum, long min, long max) {
+            long count = 0;
+            for (long bucket : buckets) {
+                count += bucket;
+            }
+            this.buckets = buckets;
+            this.count = count;
+            this.sum = sum;
+            this.min = (count == 0) ? 0 : min;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getSum() {
+            return sum;
+        }
+
+        public long getMin() {
+            return min;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public double getMean() {
+            return (count == 0) ? 0 : (double) sum / count;
+        }
+
+        /**
+         * The number of values counted in the given bucket.
+         */
+        public long getBucketCount(int bucket) {
+            return buckets[bucket];
+        }
+
+        /**
+         * Returns an upper bound (at most twice the real value) for the given percentile, between 0 and 100, of the recorded
+         * values.
+         */
+        public long getPercentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+
+            long rank = (long) Math.ceil(count * percentile / 100);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets[i];
+                if (seen >= rank && seen > 0) {
+                    return Math.min(bucketUpperBound(i), max);
+                }
+            }
+            return max;
+        }
+
+        /**
+         * Converts this snapshot to the summary that is stored in the {@link TransactionStatisticsEntry}.
+         */
+        public TransactionStatistics.CounterStats toCounterStats() {
+            if (count == 0) {
+                return new TransactionStatistics.CounterStats();
+            }
+            return new TransactionStatistics.CounterStats(saturatedInt(min), saturatedInt(max), sum);
+        }
+
+        private static int saturatedInt(long value) {
+            return (int) Math.min(value, Integer.MAX_VALUE);
+        }
+    }
+}
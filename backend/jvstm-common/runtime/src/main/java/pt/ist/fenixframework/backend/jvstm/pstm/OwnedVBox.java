@@ -6,11 +6,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import pt.ist.fenixframework.backend.jvstm.JVSTMDomainObject;
-import pt.ist.fenixframework.core.SharedIdentityMap;
 
 /**
  * A VBox that is onwed by some DomainObject. It extends VBox with an owner and a slotName. The box's id is composed by both
  * these attributes.
+ * 
+ * The boxes created by the generated domain classes also know their slot index: the position of the slot among all the slots
+ * of the owner's class, as assigned by the code generator. The owner's oid together with the slot index identify the box
+ * without resorting to its textual id (see {@link JVSTMDomainObject#getSlotAt(int)}).
  */
 public abstract class OwnedVBox<E> extends VBox<E> {
 
@@ -19,6 +22,7 @@ public abstract class OwnedVBox<E> extends VBox<E> {
     //initialized in the constructor
     protected final JVSTMDomainObject ownerObj;
     protected final String slotName;
+    protected final int slotIndex;
 
     /* 
      This field is only to avoid computing this vbox's id on every request.
@@ -28,22 +32,42 @@ public abstract class OwnedVBox<E> extends VBox<E> {
      */
     private String id;
 
+    /**
+     * The slot index of boxes that were not created by generated code, and thus can only be identified by their id.
+     */
+    public static final int NO_SLOT_INDEX = -1;
+
     public OwnedVBox(JVSTMDomainObject ownerObj, String slotName) {
+        this(ownerObj, slotName, NO_SLOT_INDEX);
+    }
+
+    public OwnedVBox(JVSTMDomainObject ownerObj, String slotName, int slotIndex) {
         super();
         this.ownerObj = ownerObj;
         this.slotName = slotName;
+        this.slotIndex = slotIndex;
     }
 
     public OwnedVBox(JVSTMDomainObject ownerObj, String slotName, E initial) {
+        this(ownerObj, slotName, NO_SLOT_INDEX, initial);
+    }
+
+    public OwnedVBox(JVSTMDomainObject ownerObj, String slotName, int slotIndex, E initial) {
         super(initial);
         this.ownerObj = ownerObj;
         this.slotName = slotName;
+        this.slotIndex = slotIndex;
     }
 
     protected OwnedVBox(JVSTMDomainObject ownerObj, String slotName, VBoxBody<E> body) {
+        this(ownerObj, slotName, NO_SLOT_INDEX, body);
+    }
+
+    protected OwnedVBox(JVSTMDomainObject ownerObj, String slotName, int slotIndex, VBoxBody<E> body) {
         super(body);
         this.ownerObj = ownerObj;
         this.slotName = slotName;
+        this.slotIndex = slotIndex;
     }
 
     private static String makeId(String slotName, JVSTMDomainObject ownerObj) {
@@ -65,7 +89,7 @@ public abstract class OwnedVBox<E> extends VBox<E> {
             return null;
         }
 
-        JVSTMDomainObject obj = (JVSTMDomainObject) SharedIdentityMap.getCache().lookup(oid);
+        JVSTMDomainObject obj = VBoxIndex.getIndex().lookupObject(oid);
 
         // vbox is only available if the object was cached
         if (obj == null) {
@@ -74,6 +98,15 @@ public abstract class OwnedVBox<E> extends VBox<E> {
         return (OwnedVBox) obj.getSlotNamed(slotName);
     }
 
+    /**
+     * Lookup the box with the given slot index in the object with the given oid.
+     * 
+     * @return The box, or <code>null</code> if the object is not cached
+     */
+    public static OwnedVBox lookupCachedVBox(long oid, int slotIndex) {
+        return VBoxIndex.getIndex().lookup(oid, slotIndex);
+    }
+
     @Override
     public String getId() {
         String id = this.id;
@@ -91,22 +124,34 @@ public abstract class OwnedVBox<E> extends VBox<E> {
         return this.slotName;
     }
 
+    /**
+     * @return This box's slot index, or {@link #NO_SLOT_INDEX} if it has none
+     */
+    public int getSlotIndex() {
+        return this.slotIndex;
+    }
+
     public static <T> OwnedVBox<T> makeNew(JVSTMDomainObject ownerObj, String slotName, boolean allocateOnly, boolean isReference) {
+        return makeNew(ownerObj, slotName, NO_SLOT_INDEX, allocateOnly, isReference);
+    }
+
+    public static <T> OwnedVBox<T> makeNew(JVSTMDomainObject ownerObj, String slotName, int slotIndex, boolean allocateOnly,
+            boolean isReference) {
         if (isReference) {
             if (allocateOnly) {
                 // when a box is allocated, it is safe 
                 // to say that the version number is 0
-                return new ReferenceBox<T>(ownerObj, slotName, makeNewBody((T) NOT_LOADED_VALUE, 0, null));
+                return new ReferenceBox<T>(ownerObj, slotName, slotIndex, makeNewBody((T) NOT_LOADED_VALUE, 0, null));
             } else {
-                return new ReferenceBox<T>(ownerObj, slotName);
+                return new ReferenceBox<T>(ownerObj, slotName, slotIndex);
             }
         } else {
             if (allocateOnly) {
                 // when a box is allocated, it is safe 
                 // to say that the version number is 0
-                return new PrimitiveBox<T>(ownerObj, slotName, makeNewBody((T) NOT_LOADED_VALUE, 0, null));
+                return new PrimitiveBox<T>(ownerObj, slotName, slotIndex, makeNewBody((T) NOT_LOADED_VALUE, 0, null));
             } else {
-                return new PrimitiveBox<T>(ownerObj, slotName);
+                return new PrimitiveBox<T>(ownerObj, slotName, slotIndex);
             }
         }
     }
@@ -1,6 +1,8 @@
 package pt.ist.fenixframework.backend.jvstm.pstm;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import jvstm.ActiveTransactionsRecord;
@@ -30,9 +32,21 @@ public class PersistentTransaction extends ConsistentTopLevelTransaction impleme
     protected int numBoxReads = 0;
     protected int numBoxWrites = 0;
 
+    // set when group commit is enabled and the changes of this transaction were handed to the GroupCommitter.  The
+    // transaction then waits for them (and for those of the transactions before it) to become durable after leaving the commit
+    // lock.  Other transactions, which may have read them meanwhile, also wait for them before finishing their commits
+    private GroupCommitter.PendingCommit pendingCommit = null;
+
     public PersistentTransaction(ActiveTransactionsRecord record) {
         super(record);
         this.readOnly = false;
+        ActiveTransactions.started(this, record.transactionNumber);
+    }
+
+    @Override
+    protected void finish() {
+        super.finish();
+        ActiveTransactions.finished(this);
     }
 
     @Override
@@ -58,7 +72,8 @@ public class PersistentTransaction extends ConsistentTopLevelTransaction impleme
 
     @Override
     protected void doCommit() {
-        if (isWriteTransaction()) {
+        boolean writeTransaction = isWriteTransaction();
+        if (writeTransaction) {
             TransactionStatistics.STATISTICS.incWrites(this);
         } else {
             TransactionStatistics.STATISTICS.incReads(this);
@@ -72,7 +87,23 @@ public class PersistentTransaction extends ConsistentTopLevelTransaction impleme
         numBoxReads = 0;
         numBoxWrites = 0;
 
+        long commitStart = writeTransaction ? System.nanoTime() : 0;
+
         super.doCommit();
+
+        GroupCommitter groupCommitter = JVSTMBackEnd.getInstance().getGroupCommitter();
+        if (this.pendingCommit != null) {
+            GroupCommitter.PendingCommit pending = this.pendingCommit;
+            this.pendingCommit = null;
+            groupCommitter.awaitDurable(pending);
+        } else if (groupCommitter != null) {
+            // the version read may include commits that are visible but not yet durable
+            groupCommitter.awaitDurable(getNumber());
+        }
+
+        if (writeTransaction) {
+            TransactionStatistics.STATISTICS.recordCommitLatency(System.nanoTime() - commitStart);
+        }
     }
 
     // Override the commit operation to propagate the changes to the persistent repository.
@@ -80,7 +111,12 @@ public class PersistentTransaction extends ConsistentTopLevelTransaction impleme
     protected Cons<VBoxBody> doCommit(int newTxNumber) {
         Cons<VBoxBody> newBodies = Cons.empty();
 
-        JVSTMBackEnd.getInstance().getRepository().persistChanges(boxesWritten.entrySet(), newTxNumber, NULL_VALUE);
+        GroupCommitter groupCommitter = JVSTMBackEnd.getInstance().getGroupCommitter();
+        if (groupCommitter != null) {
+            this.pendingCommit = groupCommitter.enqueue(this, boxesWritten.entrySet(), newTxNumber, NULL_VALUE);
+        } else {
+            JVSTMBackEnd.getInstance().getRepository().persistChanges(boxesWritten.entrySet(), newTxNumber, NULL_VALUE);
+        }
 
         for (Map.Entry<jvstm.VBox, Object> entry : boxesWritten.entrySet()) {
             VBox vbox = (VBox) entry.getKey();
@@ -97,6 +133,23 @@ public class PersistentTransaction extends ConsistentTopLevelTransaction impleme
         return newBodies;
     }
 
+    /**
+     * Whether the changes of this transaction were committed in memory but are still waiting to be made durable by the group
+     * commit.
+     */
+    protected boolean isDurabilityPending() {
+        return this.pendingCommit != null;
+    }
+
+    /**
+     * Invoked once the changes of this transaction are durable, when group commit is enabled. Invocations follow the transaction
+     * number order, but may come from a thread other than the committing one. The default implementation does nothing.
+     * 
+     * @param txNumber The number of this (committed) transaction
+     */
+    protected void afterDurable(int txNumber) {
+    }
+
     public void setInPast(int newTxNumber) {
         setNumber(newTxNumber);
     }
@@ -152,7 +205,7 @@ public class PersistentTransaction extends ConsistentTopLevelTransaction impleme
             //VBoxBody<T> body = vbox.body.getBody(number);
             VBoxBody<T> body = vbox.getBody(number);
             if (body.value == VBox.NOT_LOADED_VALUE) {
-                vbox.reload();
+                loadBox(vbox);
                 // after the reload, the (new) body should have the required loaded value
                 // if not, then something gone wrong and its better to abort
                 // body = vbox.body.getBody(number);
@@ -173,6 +226,33 @@ public class PersistentTransaction extends ConsistentTopLevelTransaction impleme
         return (value == NULL_VALUE) ? null : value;
     }
 
+    /**
+     * Faults in the given box for this transaction's version. When the box belongs to a domain object, the other slots of that
+     * object that are not loaded for this version yet are fetched along with it, in a single repository request, because they
+     * are likely to be read next.
+     */
+    protected void loadBox(VBox vbox) {
+        if (vbox instanceof OwnedVBox) {
+            List<VBox> group = new ArrayList<VBox>();
+            for (VersionedSubject slot : ((OwnedVBox) vbox).getOwnerObject().getSlots()) {
+                if (slot instanceof VBox && ((VBox) slot).getBody(number).value == VBox.NOT_LOADED_VALUE) {
+                    group.add((VBox) slot);
+                }
+            }
+
+            if (group.size() > 1) {
+                try {
+                    JVSTMBackEnd.getInstance().getRepository().reloadAttributes(group);
+                } catch (PersistenceException e) {
+                    logger.warn("Couldn't reload the slots of {} together: {}", vbox.getId(), e.getMessage());
+                }
+            }
+        }
+
+        // loads the box by itself, unless the group reload already did it
+        vbox.reload();
+    }
+
     @Override
     public boolean isBoxValueLoaded(VBox vbox) {
         Object localValue = getLocalValue(vbox);
@@ -12,12 +12,12 @@ class PrimitiveBox<E> extends OwnedVBox<E> {
 
     private static final Logger logger = LoggerFactory.getLogger(PrimitiveBox.class);
 
-    PrimitiveBox(JVSTMDomainObject ownerObj, String slotName) {
-        super(ownerObj, slotName);
+    PrimitiveBox(JVSTMDomainObject ownerObj, String slotName, int slotIndex) {
+        super(ownerObj, slotName, slotIndex);
     }
 
-    PrimitiveBox(JVSTMDomainObject ownerObj, String slotName, VBoxBody<E> body) {
-        super(ownerObj, slotName, body);
+    PrimitiveBox(JVSTMDomainObject ownerObj, String slotName, int slotIndex, VBoxBody<E> body) {
+        super(ownerObj, slotName, slotIndex, body);
     }
 
     // when a box needs reloading it's because the required value was NOT_LOADED_VALUE and thus the responsibility of this
@@ -15,12 +15,12 @@ class ReferenceBox<E> extends OwnedVBox<E> {
 
     private static final Logger logger = LoggerFactory.getLogger(PrimitiveBox.class);
 
-    ReferenceBox(JVSTMDomainObject ownerObj, String slotName) {
-        super(ownerObj, slotName);
+    ReferenceBox(JVSTMDomainObject ownerObj, String slotName, int slotIndex) {
+        super(ownerObj, slotName, slotIndex);
     }
 
-    ReferenceBox(JVSTMDomainObject ownerObj, String slotName, VBoxBody<E> body) {
-        super(ownerObj, slotName, body);
+    ReferenceBox(JVSTMDomainObject ownerObj, String slotName, int slotIndex, VBoxBody<E> body) {
+        super(ownerObj, slotName, slotIndex, body);
     }
 
     public ReferenceBox(JVSTMDomainObject ownerObj, String slotName, E value) {
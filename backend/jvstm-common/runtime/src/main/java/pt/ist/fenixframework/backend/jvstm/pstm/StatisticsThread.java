@@ -47,7 +47,7 @@ public class StatisticsThread extends Thread {
         entry =
                 new TransactionStatisticsEntry(server, numReport, stats.numReads, stats.numWrites, stats.numAborts,
                         stats.numConflicts, SECONDS_BETWEEN_REPORTS, new DateTime(), stats.readOnlyReads, stats.readWriteReads,
-                        stats.readWriteWrites);
+                        stats.readWriteWrites, stats.commitLatencies);
         FenixFrameworkData ffData = FenixFramework.getDomainRoot().getFenixFrameworkData();
         ffData.addFFTxStatsEntry(entry);
     }
@@ -0,0 +1,59 @@
+package pt.ist.fenixframework.backend.jvstm.pstm;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter that is cheap to update from many threads at once. Each thread adds to one of several cells (chosen from its id),
+ * each in its own cache line, and the cells are only added up when the counter is read.
+ */
+public class StripedCounter {
+
+    // longs per cell, so that each cell sits alone in a 64-byte cache line
+    static final int PADDING = 8;
+    private static final int MAX_STRIPES = 64;
+
+    static final int STRIPES = stripesFor(Runtime.getRuntime().availableProcessors());
+
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+    public void increment() {
+        add(1);
+    }
+
+    public void add(long delta) {
+        cells.getAndAdd(stripe() * PADDING, delta);
+    }
+
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            sum += cells.get(i * PADDING);
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the sum and resets the counter to zero. Concurrent updates are never lost: they are either included in the
+     * returned value or kept for the next one.
+     */
+    public long sumThenReset() {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            sum += cells.getAndSet(i * PADDING, 0);
+        }
+        return sum;
+    }
+
+    static int stripe() {
+        long id = Thread.currentThread().getId();
+        return (int) (id ^ (id >>> 16)) & (STRIPES - 1);
+    }
+
+    private static int stripesFor(int processors) {
+        int stripes = 1;
+        while (stripes < processors && stripes < MAX_STRIPES) {
+            stripes <<= 1;
+        }
+        return stripes;
+    }
+}
@@ -1,78 +1,92 @@
 package pt.ist.fenixframework.backend.jvstm.pstm;
 
+/**
+ * Collects statistics about the transactions executed in this server. Updates do not synchronize: counters are
+ * {@link StripedCounter}s and the sizes of the read and write sets, as well as the commit latencies, are kept in
+ * {@link LogHistogram}s, so that statistics may always be enabled.
+ */
 public class TransactionStatistics {
 
     public final static TransactionStatistics STATISTICS = new TransactionStatistics();
 
-    private int numReadTxs = 0;
-    private int numWriteTxs = 0;
-    private int numAborts = 0;
-    private int numConflicts = 0;
+    private final StripedCounter numReadTxs = new StripedCounter();
+    private final StripedCounter numWriteTxs = new StripedCounter();
+    private final StripedCounter numAborts = new StripedCounter();
+    private final StripedCounter numConflicts = new StripedCounter();
 
-    private final CounterStats readOnlyReads = new CounterStats();
-    private final CounterStats readWriteReads = new CounterStats();
-    private final CounterStats readWriteWrites = new CounterStats();
+    private final LogHistogram readOnlyReads = new LogHistogram();
+    private final LogHistogram readWriteReads = new LogHistogram();
+    private final LogHistogram readWriteWrites = new LogHistogram();
+    // in microseconds
+    private final LogHistogram commitLatencies = new LogHistogram();
 
     TransactionStatistics() {
     }
 
-    public synchronized void incReads(StatisticsCapableTransaction tx) {
+    public void incReads(StatisticsCapableTransaction tx) {
         // don't count empty transactions
         if (tx.getNumBoxReads() == 0) {
             return;
         }
 
-        numReadTxs++;
+        numReadTxs.increment();
 
-        readOnlyReads.addNewValue(tx.getNumBoxReads());
+        readOnlyReads.record(tx.getNumBoxReads());
     }
 
-    public synchronized void incWrites(StatisticsCapableTransaction tx) {
-        numWriteTxs++;
+    public void incWrites(StatisticsCapableTransaction tx) {
+        numWriteTxs.increment();
 
-        readWriteReads.addNewValue(tx.getNumBoxReads());
-        readWriteWrites.addNewValue(tx.getNumBoxWrites());
+        readWriteReads.record(tx.getNumBoxReads());
+        readWriteWrites.record(tx.getNumBoxWrites());
     }
 
-    public synchronized void incAborts() {
-        numAborts++;
+    public void incAborts() {
+        numAborts.increment();
     }
 
-    public synchronized void incConflicts() {
-        numConflicts++;
+    public void incConflicts() {
+        numConflicts.increment();
     }
 
-    public synchronized Report getReportAndReset() {
-        Report report =
-                new Report(numReadTxs, numWriteTxs, numAborts, numConflicts, readOnlyReads.getAndReset(),
-                        readWriteReads.getAndReset(), readWriteWrites.getAndReset());
-        numReadTxs = 0;
-        numWriteTxs = 0;
-        numAborts = 0;
-        numConflicts = 0;
+    public void recordCommitLatency(long nanos) {
+        commitLatencies.record(nanos / 1000);
+    }
 
-        return report;
+    /**
+     * Returns the statistics gathered since the previous report. Each value is reset on its own, so a report may count a
+     * transaction that is concurrently finishing only partially; the remaining values go into the next report.
+     */
+    public Report getReportAndReset() {
+        return new Report(numReadTxs.sumThenReset(), numWriteTxs.sumThenReset(), numAborts.sumThenReset(),
+                numConflicts.sumThenReset(), readOnlyReads.getAndReset(), readWriteReads.getAndReset(),
+                readWriteWrites.getAndReset(), commitLatencies.getAndReset());
     }
 
     public static class Report {
-        public final int numReads;
-        public final int numWrites;
-        public final int numAborts;
-        public final int numConflicts;
+        public final long numReads;
+        public final long numWrites;
+        public final long numAborts;
+        public final long numConflicts;
 
         public final CounterStats readOnlyReads;
         public final CounterStats readWriteReads;
         public final CounterStats readWriteWrites;
 
-        public Report(int numReads, int numWrites, int numAborts, int numConflicts, CounterStats readOnlyReads,
-                CounterStats readWriteReads, CounterStats readWriteWrites) {
+        // in microseconds
+        public final LogHistogram.Snapshot commitLatencies;
+
+        public Report(long numReads, long numWrites, long numAborts, long numConflicts,
+                LogHistogram.Snapshot readOnlyReadsHistogram, LogHistogram.Snapshot readWriteReadsHistogram,
+                LogHistogram.Snapshot readWriteWritesHistogram, LogHistogram.Snapshot commitLatencies) {
             this.numReads = numReads;
             this.numWrites = numWrites;
             this.numAborts = numAborts;
             this.numConflicts = numConflicts;
-            this.readOnlyReads = readOnlyReads;
-            this.readWriteReads = readWriteReads;
-            this.readWriteWrites = readWriteWrites;
+            this.readOnlyReads = readOnlyReadsHistogram.toCounterStats();
+            this.readWriteReads = readWriteReadsHistogram.toCounterStats();
+            this.readWriteWrites = readWriteWritesHistogram.toCounterStats();
+            this.commitLatencies = commitLatencies;
         }
     }
 
@@ -12,7 +12,7 @@ public class TransactionStatisticsEntry extends TransactionStatisticsEntry_Base
 
     public TransactionStatisticsEntry(String server, int numReport, long numReads, long numWrites, long numAborts,
             long numConflicts, long secondsBetweenReports, DateTime when, CounterStats readOnlyReads,
-            CounterStats readWriteReads, CounterStats readWriteWrites) {
+            CounterStats readWriteReads, CounterStats readWriteWrites, LogHistogram.Snapshot commitLatencies) {
         super();
         setServer(server);
         setNumReport(numReport);
@@ -25,6 +25,9 @@ public class TransactionStatisticsEntry extends TransactionStatisticsEntry_Base
         setReadOnlyReads(readOnlyReads);
         setReadWriteReads(readWriteReads);
         setReadWriteWrites(readWriteWrites);
+        setCommitLatencies(commitLatencies.toCounterStats());
+        setCommitLatencyMedian(commitLatencies.getPercentile(50));
+        setCommitLatency99thPercentile(commitLatencies.getPercentile(99));
     }
 
     final public boolean isInPeriod(long from, long until) {
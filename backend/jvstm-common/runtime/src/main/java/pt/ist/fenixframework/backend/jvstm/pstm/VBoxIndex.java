@@ -0,0 +1,234 @@
+/*
+ * Fenix Framework, a framework to develop Java Enterprise Applications.
+ *
+ * Copyright (C) 2013 Fenix Framework Team and/or its affiliates and other contributors as indicated by the @author tags.
+ *
+ * This file is part of the Fenix Framework.  Read the file COPYRIGHT.TXT for more copyright and licensing information.
+ */
+package pt.ist.fenixframework.backend.jvstm.pstm;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+import pt.ist.fenixframework.backend.jvstm.JVSTMDomainObject;
+
+/**
+ * Finds the {@link OwnedVBox}es in memory by the oid of their owner and their slot index (see
+ * {@link OwnedVBox#getSlotIndex()}).
+ *
+ * <p>
+ * Every domain object in memory is indexed by its <code>long</code> oid, and the slot index selects the box among those of the
+ * object (see {@link JVSTMDomainObject#getSlotAt(int)}). Unlike the {@link pt.ist.fenixframework.core.SharedIdentityMap}, the
+ * oids are neither boxed nor hashed as objects, so a lookup allocates nothing, and it does not count as an access to the object
+ * for the purpose of deciding which objects stay resident. This makes it suitable for invalidating the boxes written by remote
+ * commits.
+ * </p>
+ *
+ * <p>
+ * Objects are referenced weakly, so the index never keeps them in memory. Oids are spread over a fixed number of segments, each
+ * guarded by its own lock and holding an open-addressing table of oids and references. Cleared references are removed by the
+ * segment that holds them, only when a new object is registered into that segment.
+ * </p>
+ */
+public class VBoxIndex {
+    private final static VBoxIndex instance = new VBoxIndex(Runtime.getRuntime().availableProcessors() * 4);
+
+    private final Segment[] segments;
+    private final int segmentShift;
+    private final int segmentMask;
+
+    public VBoxIndex(int concurrencyLevel) {
+        int segmentBits = 0;
+        while ((1 << segmentBits) < concurrencyLevel && segmentBits < 16) {
+            segmentBits++;
+        }
+
+        // segments are chosen by the upper bits of the hash, and the positions within each segment by the lower bits
+        this.segmentShift = 32 - segmentBits;
+        this.segmentMask = (1 << segmentBits) - 1;
+        this.segments = new Segment[1 << segmentBits];
+        for (int i = 0; i < this.segments.length; i++) {
+            this.segments[i] = new Segment();
+        }
+    }
+
+    public static VBoxIndex getIndex() {
+        return instance;
+    }
+
+    /**
+     * Indexes the given object by its oid. Each object must be registered once it is in the identity map.
+     */
+    public void register(JVSTMDomainObject obj) {
+        long oid = obj.getOid();
+        int hash = hash(oid);
+        segmentFor(hash).register(oid, hash, obj);
+    }
+
+    /**
+     * @return The object with the given oid, or <code>null</code> if it is not in memory
+     */
+    public JVSTMDomainObject lookupObject(long oid) {
+        int hash = hash(oid);
+        return segmentFor(hash).lookup(oid, hash);
+    }
+
+    /**
+     * @return The box with the given slot index of the object with the given oid, or <code>null</code> if the object is not in
+     *         memory
+     */
+    public OwnedVBox lookup(long oid, int slotIndex) {
+        JVSTMDomainObject obj = lookupObject(oid);
+        return (obj == null) ? null : obj.getSlotAt(slotIndex);
+    }
+
+    /**
+     * @return The number of entries in this index, some of which may reference objects that were already collected.
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : this.segments) {
+            segment.lock();
+            try {
+                size += segment.size;
+            } finally {
+                segment.unlock();
+            }
+        }
+        return size;
+    }
+
+    private Segment segmentFor(int hash) {
+        return this.segments[(hash >>> this.segmentShift) & this.segmentMask];
+    }
+
+    // oids of the same class differ mostly in their lower bits, so they are mixed with a multiplicative hash
+    static int hash(long oid) {
+        return (int) ((oid * 0x9E3779B97F4A7C15L) >>> 32);
+    }
+
+    private static final class Entry extends WeakReference<JVSTMDomainObject> {
+        final long oid;
+
+        Entry(long oid, JVSTMDomainObject obj, ReferenceQueue<JVSTMDomainObject> refQueue) {
+            super(obj, refQueue);
+            this.oid = oid;
+        }
+    }
+
+    private static final class Segment extends ReentrantLock {
+        private static final long serialVersionUID = 1L;
+
+        private static final int INITIAL_CAPACITY = 64;
+
+        private final ReferenceQueue<JVSTMDomainObject> refQueue = new ReferenceQueue<JVSTMDomainObject>();
+
+        // an empty position has a null entry; the oid of each entry is also kept in oids, to probe without dereferencing it
+        private long[] oids = new long[INITIAL_CAPACITY];
+        private Entry[] entries = new Entry[INITIAL_CAPACITY];
+        private int size = 0;
+
+        JVSTMDomainObject lookup(long oid, int hash) {
+            lock();
+            try {
+                int position = find(oid, hash);
+                Entry entry = this.entries[position];
+                return (entry == null) ? null : entry.get();
+            } finally {
+                unlock();
+            }
+        }
+
+        void register(long oid, int hash, JVSTMDomainObject obj) {
+            lock();
+            try {
+                expungeStaleEntries();
+
+                int position = find(oid, hash);
+                Entry entry = this.entries[position];
+                if (entry != null) {
+                    if (entry.get() != obj) {
+                        // the previous object with this oid is gone
+                        this.entries[position] = new Entry(oid, obj, this.refQueue);
+                    }
+                    return;
+                }
+
+                if ((this.size + 1) * 4 > this.entries.length * 3) {
+                    resize();
+                    position = find(oid, hash);
+                }
+                this.oids[position] = oid;
+                this.entries[position] = new Entry(oid, obj, this.refQueue);
+                this.size++;
+            } finally {
+                unlock();
+            }
+        }
+
+        // returns the position of the given oid, or the empty position where it would be placed
+        private int find(long oid, int hash) {
+            int mask = this.entries.length - 1;
+            int position = hash & mask;
+            while (this.entries[position] != null && this.oids[position] != oid) {
+                position = (position + 1) & mask;
+            }
+            return position;
+        }
+
+        private void expungeStaleEntries() {
+            Entry stale = (Entry) this.refQueue.poll();
+            while (stale != null) {
+                int position = find(stale.oid, hash(stale.oid));
+                // the oid may have been registered meanwhile with a new entry, which must not be removed
+                if (this.entries[position] == stale) {
+                    remove(position);
+                }
+                stale = (Entry) this.refQueue.poll();
+            }
+        }
+
+        /* removes the entry at the given position, and moves back the entries
+        that follow it in the same run, so that probing needs no tombstones */
+        private void remove(int position) {
+            int mask = this.entries.length - 1;
+            this.entries[position] = null;
+            this.size--;
+
+            int empty = position;
+            int next = (position + 1) & mask;
+            while (this.entries[next] != null) {
+                int home = hash(this.oids[next]) & mask;
+                // the entry can only move back if its home position is not cyclically within (empty, next]
+                boolean canMove = (empty <= next) ? (home <= empty || home > next) : (home <= empty && home > next);
+                if (canMove) {
+                    this.oids[empty] = this.oids[next];
+                    this.entries[empty] = this.entries[next];
+                    this.entries[next] = null;
+                    empty = next;
+                }
+                next = (next + 1) & mask;
+            }
+        }
+
+        // entries already cleared are dropped, and are ignored when they reach the reference queue
+        private void resize() {
+            long[] oldOids = this.oids;
+            Entry[] oldEntries = this.entries;
+
+            this.oids = new long[oldEntries.length * 2];
+            this.entries = new Entry[oldEntries.length * 2];
+            this.size = 0;
+            for (int i = 0; i < oldEntries.length; i++) {
+                Entry entry = oldEntries[i];
+                if (entry != null && entry.get() != null) {
+                    int position = find(oldOids[i], hash(oldOids[i]));
+                    this.oids[position] = oldOids[i];
+                    this.entries[position] = entry;
+                    this.size++;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Fenix Framework, a framework to develop Java Enterprise Applications.
+ *
+ * Copyright (C) 2013 Fenix Framework Team and/or its affiliates and other contributors as indicated by the @author tags.
+ *
+ * This file is part of the Fenix Framework.  Read the file COPYRIGHT.TXT for more copyright and licensing information.
+ */
+package pt.ist.fenixframework.backend.jvstm.repository;
+
+import java.util.Map.Entry;
+import java.util.Set;
+
+/**
+ * The changes made by one committed transaction. Several of these are handed at once to
+ * {@link Repository#persistChanges(java.util.List, Object)} when group commit is enabled.
+ */
+public class CommittedWriteSet {
+
+    private final Set<Entry<jvstm.VBox, Object>> changes;
+    private final int txNumber;
+
+    public CommittedWriteSet(Set<Entry<jvstm.VBox, Object>> changes, int txNumber) {
+        this.changes = changes;
+        this.txNumber = txNumber;
+    }
+
+    public Set<Entry<jvstm.VBox, Object>> getChanges() {
+        return this.changes;
+    }
+
+    public int getTxNumber() {
+        return this.txNumber;
+    }
+}
@@ -1,5 +1,7 @@
 package pt.ist.fenixframework.backend.jvstm.repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Map.Entry;
 import java.util.Set;
 
@@ -29,8 +31,14 @@ public class NoRepository implements Repository {
         return -1;
     }
 
+    @Deprecated
     @Override
     public void updateMaxCounterForClass(DomainClassInfo domainClassInfo, int newCounterValue) {
+        storeMaxCounterForClass(domainClassInfo, newCounterValue);
+    }
+
+    @Override
+    public void storeMaxCounterForClass(DomainClassInfo domainClassInfo, int maxCounter) {
         // no-op
     }
 
@@ -49,11 +57,21 @@ public class NoRepository implements Repository {
         throw new UnsupportedOperationException("should not be invoked when using the NoRepository implementation");
     }
 
+    @Override
+    public void reloadAttributes(Collection<VBox> boxes) {
+        throw new UnsupportedOperationException("should not be invoked when using the NoRepository implementation");
+    }
+
     @Override
     public void persistChanges(Set<Entry<jvstm.VBox, Object>> changes, int txNumber, Object nullObject) {
         // no-op
     }
 
+    @Override
+    public void persistChanges(List<CommittedWriteSet> writeSets, Object nullObject) {
+        // no-op
+    }
+
     @Override
     public int getMaxCommittedTxNumber() {
         return 0;
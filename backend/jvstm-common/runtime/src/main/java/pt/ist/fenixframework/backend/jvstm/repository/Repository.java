@@ -7,6 +7,8 @@
  */
 package pt.ist.fenixframework.backend.jvstm.repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Map.Entry;
 import java.util.Set;
 
@@ -64,14 +66,28 @@ public interface Repository {
     public int getMaxCounterForClass(DomainClassInfo domainClassInfo);
 
     /**
-     * Invoked by the framework whenever a new OID is generated (i.e. a new DomainObject is created inside a transaction).
-     * Depending on the concrete repository, this may be needed for maintaining the maximum id per class (and maybe per server).
+     * Stores the counter for a given domain class, unless the stored counter is already greater. The framework no longer
+     * invokes this method, and every repository implements it by invoking {@link #storeMaxCounterForClass(DomainClassInfo, int)}.
+     * 
+     * @deprecated Object keys are now reserved in blocks, and the framework invokes
+     *             {@link #storeMaxCounterForClass(DomainClassInfo, int)} whenever it reserves a new block, instead of this method.
      * 
      * @param domainClassInfo Information about the instantiated class
      * @param newCounterValue The new value of the counter
      */
+    @Deprecated
     public void updateMaxCounterForClass(DomainClassInfo domainClassInfo, int newCounterValue);
 
+    /**
+     * Durably stores the counter for a given domain class, unless the stored counter is already greater. Invoked by the
+     * framework whenever it reserves a new block of object keys for the class, so that, after a restart, no key of the block
+     * is reused. This write must not depend on the outcome of any ongoing transaction.
+     * 
+     * @param domainClassInfo Information about the class for which the counter refers
+     * @param maxCounter The maximum key reserved so far
+     */
+    public void storeMaxCounterForClass(DomainClassInfo domainClassInfo, int maxCounter);
+
     // reloads a primitive value from the storage for the specified box
     public void reloadPrimitiveAttribute(VBox box);
 
@@ -81,10 +97,29 @@ public interface Repository {
     // reloads an attribute from the storage for the specified box
     public void reloadAttribute(VBox box);
 
+    /**
+     * Reloads several attributes at once, for the current transaction's version, fetching them from the storage with as few
+     * requests as possible. Boxes for which the storage holds no suitable version are silently left as they were, so callers
+     * must still check whether each box they need was loaded.
+     * 
+     * @param boxes The boxes to reload
+     */
+    public void reloadAttributes(Collection<VBox> boxes);
+
     // stores persistently a set of changes
     // the third arguments represents the reference used by the stm to represent null objects.
     public void persistChanges(Set<Entry<jvstm.VBox, Object>> changes, int txNumber, Object nullObject);
 
+    /**
+     * Stores persistently the changes of several committed transactions as a single batch (e.g. within a single backing
+     * transaction). This is used when group commit is enabled, and may be invoked by a thread other than the ones that committed
+     * the given write-sets.
+     * 
+     * @param writeSets The write-sets to store, in ascending order of transaction number
+     * @param nullObject The reference used by the stm to represent null objects
+     */
+    public void persistChanges(List<CommittedWriteSet> writeSets, Object nullObject);
+
     /**
      * Return the greatest committed transaction number, persisted in the Repository
      */
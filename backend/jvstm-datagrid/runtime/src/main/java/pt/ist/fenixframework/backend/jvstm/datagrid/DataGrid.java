@@ -1,5 +1,8 @@
 package pt.ist.fenixframework.backend.jvstm.datagrid;
 
+import java.util.Collection;
+import java.util.Map;
+
 public interface DataGrid {
 
     public void init(JvstmDataGridConfig config);
@@ -8,6 +11,12 @@ public interface DataGrid {
 
     public Object get(Object key);
 
+    /**
+     * Get the values of several keys with a single request (if the concrete data grid supports it). Keys without a value are
+     * absent from the returned map.
+     */
+    public Map<Object, Object> getAll(Collection<?> keys);
+
     public void put(Object key, Object value);
 
     /** Start a new data grid transaction */
@@ -8,8 +8,10 @@
 package pt.ist.fenixframework.backend.jvstm.datagrid;
 
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.Callable;
@@ -17,12 +19,11 @@ import java.util.concurrent.Callable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import pt.ist.fenixframework.FenixFramework;
-import pt.ist.fenixframework.Transaction;
 import pt.ist.fenixframework.backend.jvstm.JVSTMConfig;
 import pt.ist.fenixframework.backend.jvstm.pstm.DomainClassInfo;
 import pt.ist.fenixframework.backend.jvstm.pstm.VBox;
 import pt.ist.fenixframework.backend.jvstm.pstm.VersionedValue;
+import pt.ist.fenixframework.backend.jvstm.repository.CommittedWriteSet;
 import pt.ist.fenixframework.backend.jvstm.repository.PersistenceException;
 import pt.ist.fenixframework.backend.jvstm.repository.Repository;
 import pt.ist.fenixframework.core.Externalization;
@@ -43,9 +44,6 @@ public class DataGridRepository implements Repository {
     // the key used to store the max committed transaction number
     private static final String MAX_COMMITTED_TX_ID = "maxTxId";
 
-    // key to store context information in the (JVSTM's) Transaction
-    private static final String KEY_INSTANTIATED_CLASSES = "Set<DomainClassInfo>";
-
     private DataGrid dataGrid;
     private int maxCommittedTxId = -1;
 
@@ -121,21 +119,6 @@ public class DataGridRepository implements Repository {
         });
     }
 
-    @Override
-    public void updateMaxCounterForClass(DomainClassInfo domainClassInfo, int newCounterValue) {
-        Transaction current = FenixFramework.getTransaction();
-
-        Set<DomainClassInfo> infos = current.getFromContext(KEY_INSTANTIATED_CLASSES);
-        if (infos == null) {
-            infos = new HashSet<DomainClassInfo>();
-            current.putInContext(KEY_INSTANTIATED_CLASSES, infos);
-        }
-
-        if (infos.add(domainClassInfo)) {
-            logger.debug("Will update counter for instances of {} upon commit.", domainClassInfo.domainClassName);
-        }
-    }
-
     @Override
     public void reloadPrimitiveAttribute(VBox box) {
         reloadAttribute(box);
@@ -153,32 +136,50 @@ public class DataGridRepository implements Repository {
         doWithinBackingTransactionIfNeeded(new Callable<Void>() {
             @Override
             public Void call() {
-                updatePersistentInstanceCounters();
-                persistCommittedTransactionNumber(txNumber);
+                persistWriteSet(changes, txNumber, nullObject);
+                return null;
+            }
+        });
+    }
+
+    // stores all the write-sets within a single data grid transaction
+    @Override
+    public void persistChanges(final List<CommittedWriteSet> writeSets, final Object nullObject) {
+        doWithinBackingTransactionIfNeeded(new Callable<Void>() {
+            @Override
+            public Void call() {
+                for (CommittedWriteSet writeSet : writeSets) {
+                    persistWriteSet(writeSet.getChanges(), writeSet.getTxNumber(), nullObject);
+                }
+                return null;
+            }
+        });
+    }
 
-                for (Entry<jvstm.VBox, Object> entry : changes) {
-                    VBox vbox = (VBox) entry.getKey();
-                    Object newValue = entry.getValue();
+    // only correct if invoked within a backing transaction
+    private void persistWriteSet(Set<Entry<jvstm.VBox, Object>> changes, int txNumber, Object nullObject) {
+        persistCommittedTransactionNumber(txNumber);
 
-                    newValue = (newValue == nullObject) ? null : newValue;
+        for (Entry<jvstm.VBox, Object> entry : changes) {
+            VBox vbox = (VBox) entry.getKey();
+            Object newValue = entry.getValue();
 
-                    String key = makeKeyFor(vbox);
-                    DataVersionHolder current = (DataVersionHolder) dataGrid.get(key);
-                    DataVersionHolder newVersion;
-                    byte[] externalizedData = Externalization.externalizeObject(newValue);
+            newValue = (newValue == nullObject) ? null : newValue;
 
-                    if (current != null) {
-                        dataGrid.put(makeVersionedKey(key, current.version), current); // TODO: colocar aqui um timeout ?
-                        newVersion = new DataVersionHolder(txNumber, current.version, externalizedData);
-                    } else {
-                        newVersion = new DataVersionHolder(txNumber, -1, externalizedData);
-                    }
+            String key = makeKeyFor(vbox);
+            DataVersionHolder current = (DataVersionHolder) dataGrid.get(key);
+            DataVersionHolder newVersion;
+            byte[] externalizedData = Externalization.externalizeObject(newValue);
 
-                    dataGrid.put(key, newVersion); // TODO: colocar aqui um timeout
-                }
-                return null;
+            if (current != null) {
+                dataGrid.put(makeVersionedKey(key, current.version), current); // TODO: colocar aqui um timeout ?
+                newVersion = new DataVersionHolder(txNumber, current.version, externalizedData);
+            } else {
+                newVersion = new DataVersionHolder(txNumber, -1, externalizedData);
             }
-        });
+
+            dataGrid.put(key, newVersion); // TODO: colocar aqui um timeout
+        }
     }
 
     // returns the highest committed transaction number stored in the data grid
@@ -270,6 +271,30 @@ public class DataGridRepository implements Repository {
         });
     }
 
+    // the key is specific to this server, so the only concurrent writes are from this same method, serialized by the caller
+    @Deprecated
+    @Override
+    public void updateMaxCounterForClass(DomainClassInfo domainClassInfo, int newCounterValue) {
+        storeMaxCounterForClass(domainClassInfo, newCounterValue);
+    }
+
+    @Override
+    public void storeMaxCounterForClass(DomainClassInfo domainClassInfo, final int maxCounter) {
+        final String key = makeKeyForMaxCounter(domainClassInfo);
+
+        doWithinBackingTransactionIfNeeded(new Callable<Void>() {
+            @Override
+            public Void call() {
+                Integer max = (Integer) dataGrid.get(key);
+
+                if (max == null || max < maxCounter) {
+                    dataGrid.put(key, maxCounter);
+                }
+                return null;
+            }
+        });
+    }
+
     private String makeKeyForMaxCounter(DomainClassInfo domainClassInfo) {
         return String.valueOf(DomainClassInfo.getServerId()) + ":" + domainClassInfo.classId;
     }
@@ -282,6 +307,16 @@ public class DataGridRepository implements Repository {
         box.mergeVersions(vvalues);
     }
 
+    @Override
+    public void reloadAttributes(Collection<VBox> boxes) {
+        int txNumber = jvstm.Transaction.current().getNumber();
+
+        Map<VBox, List<VersionedValue>> vvaluesPerBox = getMostRecentVersions(boxes, txNumber);
+        for (Map.Entry<VBox, List<VersionedValue>> entry : vvaluesPerBox.entrySet()) {
+            entry.getKey().mergeVersions(entry.getValue());
+        }
+    }
+
     List<VersionedValue> getMostRecentVersions(final VBox vbox, final int desiredVersion) {
         final String key = makeKeyFor(vbox);
 
@@ -315,6 +350,58 @@ public class DataGridRepository implements Repository {
         });
     }
 
+    // Same as getMostRecentVersions(VBox, int), but for several boxes: each step back in the version chains is done with a
+    // single multi-get for all the boxes that still need an older version.  Boxes for which no suitable version is found are
+    // left out of the result.
+    Map<VBox, List<VersionedValue>> getMostRecentVersions(final Collection<VBox> vboxes, final int desiredVersion) {
+        return doWithinBackingTransactionIfNeeded(new Callable<Map<VBox, List<VersionedValue>>>() {
+            @Override
+            public Map<VBox, List<VersionedValue>> call() {
+                Map<VBox, List<VersionedValue>> result = new HashMap<VBox, List<VersionedValue>>(vboxes.size() * 2);
+
+                Map<String, VBox> pending = new HashMap<String, VBox>(vboxes.size() * 2);
+                for (VBox vbox : vboxes) {
+                    pending.put(makeKeyFor(vbox), vbox);
+                }
+
+                while (!pending.isEmpty()) {
+                    Map<Object, Object> holders = dataGrid.getAll(pending.keySet());
+                    Map<String, VBox> next = new HashMap<String, VBox>();
+
+                    for (Map.Entry<String, VBox> entry : pending.entrySet()) {
+                        VBox vbox = entry.getValue();
+                        DataVersionHolder current = (DataVersionHolder) holders.get(entry.getKey());
+
+                        if (current == null) {
+                            logger.debug("No version of vbox {} found for transaction number {}", vbox.getId(), desiredVersion);
+                            result.remove(vbox);
+                            continue;
+                        }
+
+                        List<VersionedValue> vvalues = result.get(vbox);
+                        if (vvalues == null) {
+                            vvalues = new ArrayList<VersionedValue>();
+                            result.put(vbox, vvalues);
+                        }
+                        vvalues.add(new VersionedValue(Externalization.internalizeObject(current.data), current.version));
+
+                        if (current.version > desiredVersion) {
+                            if (current.previousVersion == -1) {
+                                logger.debug("Version of vbox {} not found for transaction number {}", vbox.getId(),
+                                        desiredVersion);
+                                result.remove(vbox);
+                            } else {
+                                next.put(makeVersionedKey(makeKeyFor(vbox), current.previousVersion), vbox);
+                            }
+                        }
+                    }
+                    pending = next;
+                }
+                return result;
+            }
+        });
+    }
+
     // persist the number of the committed transaction. Maybe this should be made differently.
     // It may abort transactions because they try to change this same slot.
     private void persistCommittedTransactionNumber(final int txNumber) {
@@ -333,31 +420,6 @@ public class DataGridRepository implements Repository {
         }
     }
 
-    // only correct if invoked within a backing transaction.  Also this code
-    // assumes a single global commit lock. Otherwise the counter might be set
-    // backwards by a late-running thread.
-    private void updatePersistentInstanceCounters() {
-        Transaction current = FenixFramework.getTransaction();
-
-        Set<DomainClassInfo> infos = current.getFromContext(KEY_INSTANTIATED_CLASSES);
-
-        if (infos != null) {
-            for (DomainClassInfo info : infos) {
-                String key = makeKeyForMaxCounter(info);
-                Integer max = (Integer) dataGrid.get(key);
-
-                int newCounterValue = info.getLastKey();
-
-                if (max == null || max < newCounterValue) {
-                    dataGrid.put(key, newCounterValue);
-                    logger.debug("Update persistent counter for class {}: {}", info.domainClassName, newCounterValue);
-                }
-
-            }
-
-        }
-    }
-
     private String makeKeyFor(VBox vbox) {
         return vbox.getId();
     }
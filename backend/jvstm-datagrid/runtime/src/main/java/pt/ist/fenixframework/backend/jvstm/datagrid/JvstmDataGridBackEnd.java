@@ -12,7 +12,6 @@ import org.slf4j.LoggerFactory;
 
 import pt.ist.fenixframework.FenixFramework;
 import pt.ist.fenixframework.backend.jvstm.cluster.JvstmClusterBackEnd;
-import pt.ist.fenixframework.backend.jvstm.pstm.OwnedVBox;
 import pt.ist.fenixframework.backend.jvstm.pstm.StandaloneVBox;
 import pt.ist.fenixframework.backend.jvstm.pstm.VBox;
 import pt.ist.fenixframework.backend.jvstm.pstm.VBoxCache;
@@ -35,16 +34,6 @@ public class JvstmDataGridBackEnd extends JvstmClusterBackEnd {
         return BACKEND_NAME;
     }
 
-    @Override
-    public VBox lookupCachedVBox(String vboxId) {
-        VBox vbox = StandaloneVBox.lookupCachedVBox(vboxId);
-        if (vbox != null) {
-            return vbox;
-        }
-        // It may be an owned VBox
-        return OwnedVBox.lookupCachedVBox(vboxId);
-    }
-
     public VBox vboxFromId(String vboxId) {
         logger.debug("vboxFromId({})", vboxId);
 
@@ -1,5 +1,8 @@
 package pt.ist.fenixframework.backend.jvstm.datagrid.infinispan;
 
+import java.util.Collection;
+import java.util.Map;
+
 import javax.transaction.SystemException;
 import javax.transaction.TransactionManager;
 
@@ -33,6 +36,8 @@ public class InfinispanDataGrid implements DataGrid {
     TransactionManager transactionManager;
     Cache<String, Object> cache;
     Cache<String, Object> cacheOptimizeWrites;
+    // reads several keys of the cache at once
+    BulkReader cacheReader;
 
     @Override
     public void init(JvstmDataGridConfig config) {
@@ -53,6 +58,7 @@ public class InfinispanDataGrid implements DataGrid {
 
     @Override
     public void stop() {
+        this.cacheReader.stop();
         this.cacheManager.stop();
     }
 
@@ -61,6 +67,13 @@ public class InfinispanDataGrid implements DataGrid {
         return this.cache.get(key);
     }
 
+    // the keys owned by other nodes are read in one request per owner (see BulkReader).  The others share the data grid
+    // transaction, if any
+    @Override
+    public Map<Object, Object> getAll(Collection<?> keys) {
+        return this.cacheReader.getAll(keys);
+    }
+
     @Override
     public void put(Object key, Object value) {
         this.cacheOptimizeWrites.put(key.toString(), value);
@@ -210,6 +223,7 @@ public class InfinispanDataGrid implements DataGrid {
         this.cacheManager.defineConfiguration(CACHE_NAME, conf);
         this.cache = this.cacheManager.getCache(CACHE_NAME);
         this.cacheOptimizeWrites = this.cache.getAdvancedCache().withFlags(Flag.IGNORE_RETURN_VALUES);
+        this.cacheReader = new BulkReader(this.cache);
 //        this.cache = doWithinBackingTransactionIfNeeded(new Callable<Cache<String, Object>>() {
 //            @Override
 //            public Cache<String, Object> call() {
@@ -0,0 +1,143 @@
+package pt.ist.fenixframework.backend.jvstm.infinispan;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.infinispan.Cache;
+import org.infinispan.distexec.DefaultExecutorService;
+import org.infinispan.distexec.DistributedCallable;
+import org.infinispan.distexec.DistributedExecutorService;
+import org.infinispan.distribution.DistributionManager;
+import org.infinispan.remoting.transport.Address;
+
+import pt.ist.fenixframework.backend.jvstm.repository.PersistenceException;
+
+/**
+ * Reads several keys of a cache at once. This version of Infinispan has no bulk get, and reading the keys one by one costs a
+ * remote call for each key that is owned by another node. So, in a distributed cache, the keys owned by other nodes are grouped
+ * by their primary owner, and each group is read by a single distributed task that runs on that owner. The keys owned by this
+ * node, and all the keys of a cache that is not distributed, are read directly, within the caller's transaction, if any.
+ *
+ * The distributed tasks read committed values only, outside of the caller's transaction. This is enough for the repository,
+ * which only reads versions that were committed before the reading transaction started.
+ */
+class BulkReader {
+
+    private final Cache<String, Object> cache;
+    // null when the cache is not distributed
+    private final DistributedExecutorService executor;
+
+    BulkReader(Cache<String, Object> cache) {
+        this.cache = cache;
+        if (cache.getAdvancedCache().getDistributionManager() != null) {
+            this.executor = new DefaultExecutorService(cache);
+        } else {
+            this.executor = null;
+        }
+    }
+
+    void stop() {
+        if (this.executor != null) {
+            this.executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Reads the given keys.
+     *
+     * @return The value of each key that exists in the cache
+     */
+    Map<Object, Object> getAll(Collection<?> keys) {
+        Map<Object, Object> result = new HashMap<Object, Object>(keys.size() * 2);
+
+        Map<Address, List<Object>> remoteKeys = new HashMap<Address, List<Object>>();
+        for (Object key : keys) {
+            Address owner = getRemoteOwner(key);
+            if (owner == null) {
+                putIfFound(result, key, this.cache.get(key));
+            } else {
+                List<Object> ownerKeys = remoteKeys.get(owner);
+                if (ownerKeys == null) {
+                    ownerKeys = new ArrayList<Object>();
+                    remoteKeys.put(owner, ownerKeys);
+                }
+                ownerKeys.add(key);
+            }
+        }
+
+        // submit all the groups before waiting for any of them, so that the owners read them in parallel
+        List<Future<HashMap<Object, Object>>> groups = new ArrayList<Future<HashMap<Object, Object>>>();
+        for (List<Object> ownerKeys : remoteKeys.values()) {
+            if (ownerKeys.size() == 1) {
+                // a task is no cheaper than a remote get
+                putIfFound(result, ownerKeys.get(0), this.cache.get(ownerKeys.get(0)));
+            } else {
+                groups.add(this.executor.submit(new ReadKeys(), ownerKeys.toArray()));
+            }
+        }
+
+        try {
+            for (Future<HashMap<Object, Object>> group : groups) {
+                result.putAll(group.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PersistenceException(e);
+        } catch (ExecutionException e) {
+            throw new PersistenceException(e.getCause());
+        }
+        return result;
+    }
+
+    // the primary owner of the given key, or null if the key is to be read directly
+    private Address getRemoteOwner(Object key) {
+        if (this.executor == null) {
+            return null;
+        }
+
+        DistributionManager dm = this.cache.getAdvancedCache().getDistributionManager();
+        List<Address> owners = dm.locate(key);
+        if (owners.isEmpty() || owners.contains(this.cache.getCacheManager().getAddress())) {
+            return null;
+        }
+        return owners.get(0);
+    }
+
+    private static void putIfFound(Map<Object, Object> result, Object key, Object value) {
+        if (value != null) {
+            result.put(key, value);
+        }
+    }
+
+    /**
+     * Reads the keys it is given by the distributed executor, in the node that owns them.
+     */
+    static class ReadKeys implements DistributedCallable<Object, Object, HashMap<Object, Object>>, Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private transient Cache<Object, Object> cache;
+        private transient Set<Object> keys;
+
+        @Override
+        public void setEnvironment(Cache<Object, Object> cache, Set<Object> inputKeys) {
+            this.cache = cache;
+            this.keys = inputKeys;
+        }
+
+        @Override
+        public HashMap<Object, Object> call() {
+            HashMap<Object, Object> result = new HashMap<Object, Object>(this.keys.size() * 2);
+            for (Object key : this.keys) {
+                putIfFound(result, key, this.cache.get(key));
+            }
+            return result;
+        }
+    }
+}
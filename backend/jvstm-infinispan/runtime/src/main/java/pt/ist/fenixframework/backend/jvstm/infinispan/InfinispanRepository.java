@@ -8,11 +8,20 @@
 package pt.ist.fenixframework.backend.jvstm.infinispan;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.Lock;
 
 import javax.transaction.TransactionManager;
 
@@ -27,12 +36,13 @@ import org.infinispan.util.concurrent.IsolationLevel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import pt.ist.fenixframework.FenixFramework;
-import pt.ist.fenixframework.Transaction;
 import pt.ist.fenixframework.backend.jvstm.JVSTMConfig;
+import pt.ist.fenixframework.backend.jvstm.cluster.ClusterUtils;
+import pt.ist.fenixframework.backend.jvstm.pstm.ActiveTransactions;
 import pt.ist.fenixframework.backend.jvstm.pstm.DomainClassInfo;
 import pt.ist.fenixframework.backend.jvstm.pstm.VBox;
 import pt.ist.fenixframework.backend.jvstm.pstm.VersionedValue;
+import pt.ist.fenixframework.backend.jvstm.repository.CommittedWriteSet;
 import pt.ist.fenixframework.backend.jvstm.repository.PersistenceException;
 import pt.ist.fenixframework.backend.jvstm.repository.Repository;
 import pt.ist.fenixframework.core.Externalization;
@@ -63,14 +73,44 @@ public class InfinispanRepository implements Repository {
     // this is a marker, so that when bootstrapping the repository, we can identify whether it already exists 
     private static final String CACHE_IS_NEW = "CacheAlreadExists";
 
-    private static final String KEY_INSTANTIATED_CLASSES = "Set<DomainClassInfo>";
+    // the oldest version that each node may still need to read, as last published by each node's VersionCollector
+    private static final String OLDEST_ACTIVE_TX_NUMBERS = "OldestActiveTxNumbers";
+
+    // the cluster-wide lock that excludes the group commit flushes and the pruning of versions done by all nodes
+    private static final String VERSION_CHAINS_CLUSTER_LOCK_NAME = "ff.ispn.version.chains.lock";
+
+    // a node that has not published its oldest active transaction for this many collection intervals is considered gone
+    private static final int STALE_PUBLICATION_INTERVALS = 10;
+
+    // old versions are pruned in batches, each within a single backing transaction and holding the global commit lock
+    private static final int PRUNE_BATCH_SIZE = 256;
 
     Cache<String, Object> systemCache;
-    Cache<String, DataVersionHolder> domainCache;
+    Cache<String, Object> domainCache;
     TransactionManager transactionManager;
+    // reads several keys of the domain cache at once
+    private BulkReader domainCacheReader;
 
     private int maxCommittedTxId = -1;
 
+    // how many of the most recent version numbers of each box are kept in its head entry.  Package-private for the tests
+    int versionWindowSize;
+    // whether this node collects old versions.  Package-private for the tests
+    boolean collectingVersions = false;
+    private VersionCollector versionCollector;
+    /* the versions written by this node, in tx number order, which may have made older versions of their boxes
+    collectable.  Each node collects the older versions of the boxes it wrote, so the versions superseded by the last writes
+    of a node that leaves the cluster are only collected once another node writes the same boxes */
+    private final ConcurrentLinkedQueue<WrittenVersion> writtenVersions = new ConcurrentLinkedQueue<WrittenVersion>();
+    // the oldest active transaction number computed in the previous collection (see ActiveTransactions)
+    private int previousOldestActive = Integer.MAX_VALUE;
+
+    // serializes the updates to the version chains done by the commits and by the version collector within this node
+    private final Object versionChainsLock = new Object();
+    // commits done without group commit already exclude pruning by holding the global commit lock, but group commit flushes
+    // happen after releasing it, so they must exclude the pruning done by other nodes with this lock
+    private Lock versionChainsClusterLock;
+
     // creates the manager of caches for Infinispan
     private void createCacheContainer(String ispnConfigFile) {
         try {
@@ -202,9 +242,9 @@ public class InfinispanRepository implements Repository {
         this.cacheManager.defineConfiguration(DOMAIN_CACHE_NAME, conf);
 
         final DefaultCacheManager finalCacheManager = this.cacheManager;
-        this.domainCache = doWithinBackingTransactionIfNeeded(new Callable<Cache<String, DataVersionHolder>>() {
+        this.domainCache = doWithinBackingTransactionIfNeeded(new Callable<Cache<String, Object>>() {
             @Override
-            public Cache<String, DataVersionHolder> call() {
+            public Cache<String, Object> call() {
                 return finalCacheManager.getCache(DOMAIN_CACHE_NAME);
             }
         });
@@ -219,7 +259,7 @@ public class InfinispanRepository implements Repository {
     }
 
     // returns the single cache object that holds all domain objects
-    private Cache<String, DataVersionHolder> getDomainCache() {
+    private Cache<String, Object> getDomainCache() {
         return this.domainCache;
     }
 
@@ -269,13 +309,29 @@ public class InfinispanRepository implements Repository {
 
     @Override
     public boolean init(JVSTMConfig jvstmConfig) {
-        String ispnConfigFile = ((JvstmIspnConfig) jvstmConfig).getIspnConfigFile();
+        JvstmIspnConfig ispnConfig = (JvstmIspnConfig) jvstmConfig;
+
+        initCaches(ispnConfig.getIspnConfigFile());
+        boolean repositoryIsNew = bootstrapIfNeeded();
+
+        this.versionChainsClusterLock = ClusterUtils.getClusterLock(VERSION_CHAINS_CLUSTER_LOCK_NAME);
+        this.versionWindowSize = Math.max(1, ispnConfig.getVersionWindowSize());
+        if (ispnConfig.getVersionGCInterval() > 0) {
+            // must be enabled before any transaction starts
+            ActiveTransactions.enableTracking();
+            this.collectingVersions = true;
+            this.versionCollector = new VersionCollector(this, ispnConfig.getVersionGCInterval() * 1000L);
+            this.versionCollector.start();
+        }
+        return repositoryIsNew;
+    }
 
+    void initCaches(String ispnConfigFile) {
         createCacheContainer(ispnConfigFile);
         initTransactionManager();
         createSystemCache();
         createDomainCache();
-        return bootstrapIfNeeded();
+        this.domainCacheReader = new BulkReader(this.domainCache);
     }
 
     // get the stored information concerning the DomainClassInfo
@@ -343,21 +399,28 @@ public class InfinispanRepository implements Repository {
 
     }
 
-    // called when a new domain object is created inside a transaction and a new oid is assigned to the
-    // created object.  Register the class info to be updated upon commit
+    // the key is specific to this server, so the only concurrent writes are from this same method, serialized by the caller
+    @Deprecated
     @Override
-    public void updateMaxCounterForClass(DomainClassInfo domainClassInfo, final int newCounterValue) {
-        Transaction current = FenixFramework.getTransaction();
+    public void updateMaxCounterForClass(DomainClassInfo domainClassInfo, int newCounterValue) {
+        storeMaxCounterForClass(domainClassInfo, newCounterValue);
+    }
 
-        Set<DomainClassInfo> infos = current.getFromContext(KEY_INSTANTIATED_CLASSES);
-        if (infos == null) {
-            infos = new HashSet<DomainClassInfo>();
-            current.putInContext(KEY_INSTANTIATED_CLASSES, infos);
-        }
+    @Override
+    public void storeMaxCounterForClass(DomainClassInfo domainClassInfo, final int maxCounter) {
+        final String key = makeKeyForMaxCounter(domainClassInfo);
 
-        if (infos.add(domainClassInfo)) {
-            logger.debug("Will update counter for instances of {} upon commit.", domainClassInfo.domainClassName);
-        }
+        doWithinBackingTransactionIfNeeded(new Callable<Void>() {
+            @Override
+            public Void call() {
+                Integer max = (Integer) getSystemCache().get(key);
+
+                if (max == null || max < maxCounter) {
+                    getSystemCache().put(key, maxCounter);
+                }
+                return null;
+            }
+        });
     }
 
     private String makeKeyForMaxCounter(DomainClassInfo domainClassInfo) {
@@ -380,39 +443,96 @@ public class InfinispanRepository implements Repository {
     // the third arguments represents the reference used by the stm to represent null objects.
     @Override
     public void persistChanges(final Set<Entry<jvstm.VBox, Object>> changes, final int txNumber, final Object nullObject) {
-        final Cache<String, DataVersionHolder> cache = getDomainCache();
+        final List<WrittenVersion> written = new ArrayList<WrittenVersion>();
+        // the lock must also cover the commit of the backing transaction, so that the version collector never reads a chain
+        // that is about to be replaced
+        synchronized (this.versionChainsLock) {
+            // begin repo tx here
+            doWithinBackingTransactionIfNeeded(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    persistWriteSet(changes, txNumber, nullObject, written);
+                    return null;
+                }
+            });
+            recordWrittenVersions(written);
+        }
+    }
 
-        // begin repo tx here
-        doWithinBackingTransactionIfNeeded(new Callable<Void>() {
-            @Override
-            public Void call() {
-                updatePersistentInstanceCounters();
-                persistCommittedTransactionNumber(txNumber);
+    // stores all the write-sets within a single backing transaction
+    @Override
+    public void persistChanges(final List<CommittedWriteSet> writeSets, final Object nullObject) {
+        final List<WrittenVersion> written = new ArrayList<WrittenVersion>();
+        this.versionChainsClusterLock.lock();
+        try {
+            synchronized (this.versionChainsLock) {
+                doWithinBackingTransactionIfNeeded(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        for (CommittedWriteSet writeSet : writeSets) {
+                            persistWriteSet(writeSet.getChanges(), writeSet.getTxNumber(), nullObject, written);
+                        }
+                        return null;
+                    }
+                });
+                recordWrittenVersions(written);
+            }
+        } finally {
+            this.versionChainsClusterLock.unlock();
+        }
+    }
 
-                for (Entry<jvstm.VBox, Object> entry : changes) {
-                    VBox vbox = (VBox) entry.getKey();
-                    Object newValue = entry.getValue();
+    // only correct if invoked within a backing transaction, while holding the versionChainsLock
+    private void persistWriteSet(Set<Entry<jvstm.VBox, Object>> changes, int txNumber, Object nullObject,
+            List<WrittenVersion> written) {
+        Cache<String, Object> cache = getDomainCache();
 
-                    newValue = (newValue == nullObject) ? null : newValue;
+        persistCommittedTransactionNumber(txNumber);
 
-                    String key = makeKeyFor(vbox);
-                    DataVersionHolder current = cache.get(key);
-                    DataVersionHolder newVersion;
-                    byte[] externalizedData = Externalization.externalizeObject(newValue);
+        for (Entry<jvstm.VBox, Object> entry : changes) {
+            VBox vbox = (VBox) entry.getKey();
+            Object newValue = entry.getValue();
 
-                    if (current != null) {
-                        cache.put(makeVersionedKey(key, current.version), current); // TODO: colocar aqui um timeout ?
-                        newVersion = new DataVersionHolder(txNumber, current.version, externalizedData);
-                    } else {
-                        newVersion = new DataVersionHolder(txNumber, -1, externalizedData);
-                    }
+            newValue = (newValue == nullObject) ? null : newValue;
 
-                    cache.put(key, newVersion); // TODO: colocar aqui um timeout
-                }
-                return null;
+            String key = makeKeyFor(vbox);
+            byte[] externalizedData = Externalization.externalizeObject(newValue);
+
+            if (addVersion(cache, key, cache.get(key), txNumber, externalizedData)) {
+                written.add(new WrittenVersion(key, txNumber));
             }
-        });
+        }
+    }
 
+    // Each version is written once, to its own versioned key, and the head entry of the box is replaced by one that starts
+    // with the new version.  Returns whether the box had older versions.
+    private boolean addVersion(Cache<String, Object> cache, String key, Object stored, int txNumber, byte[] newData) {
+        VersionChain current = VersionChain.fromStored(stored);
+        int previousVersion = -1;
+        VersionChain head;
+
+        if (current == null) {
+            head = new VersionChain(new int[] { txNumber }, newData, -1);
+        } else {
+            if (stored instanceof DataVersionHolder) {
+                // an entry written before version chains existed: its version is not in its versioned key yet
+                cache.put(makeVersionedKey(key, current.versions[0]), stored);
+            }
+            previousVersion = current.versions[0];
+            head = current.withNewVersion(txNumber, newData, this.versionWindowSize);
+        }
+
+        cache.put(makeVersionedKey(key, txNumber), new DataVersionHolder(txNumber, previousVersion, newData));
+        cache.put(key, head);
+        return previousVersion != -1;
+    }
+
+    // must be invoked after the backing transaction that wrote the versions commits, while holding the versionChainsLock, so
+    // that the versions are queued in tx number order
+    private void recordWrittenVersions(List<WrittenVersion> written) {
+        if (this.collectingVersions) {
+            this.writtenVersions.addAll(written);
+        }
     }
 
     // returns the greatest committed transaction number. This implementation 
@@ -441,6 +561,11 @@ public class InfinispanRepository implements Repository {
     @Override
     public void closeRepository() {
         logger.info("closeRepository()");
+        if (this.versionCollector != null) {
+            this.versionCollector.shutdown();
+            this.versionCollector = null;
+        }
+        this.domainCacheReader.stop();
         this.cacheManager.stop();
         this.cacheManager = null;
         maxCommittedTxId = -1;
@@ -456,80 +581,330 @@ public class InfinispanRepository implements Repository {
         box.mergeVersions(vvalues);
     }
 
+    @Override
+    public void reloadAttributes(Collection<VBox> boxes) {
+        int txNumber = jvstm.Transaction.current().getNumber();
+
+        Map<VBox, List<VersionedValue>> vvaluesPerBox = getMostRecentVersions(boxes, txNumber);
+        for (Map.Entry<VBox, List<VersionedValue>> entry : vvaluesPerBox.entrySet()) {
+            entry.getKey().mergeVersions(entry.getValue());
+        }
+    }
+
     List<VersionedValue> getMostRecentVersions(final VBox vbox, final int desiredVersion) {
-        final Cache<String, DataVersionHolder> cache = getDomainCache();
-        final String key = makeKeyFor(vbox);
+        List<VersionedValue> result = getMostRecentVersions(Collections.singleton(vbox), desiredVersion).get(vbox);
+        if (result == null) {
+            throw new PersistenceException("Version of vbox " + vbox.getId() + " not found for transaction number "
+                    + desiredVersion);
+        }
+        return result;
+    }
 
-        return doWithinBackingTransactionIfNeeded(new Callable<List<VersionedValue>>() {
+    // Returns, for each box, its versions from the most recent until the one that is not newer than desiredVersion.  The head
+    // entries are read with a single multi-get, which suffices for the boxes whose most recent version may be read.  The
+    // other versions listed in the heads are read with another multi-get and only the boxes that need versions older than
+    // those listed then follow the links between versions, with a further multi-get for each step back.  Boxes for which no
+    // suitable version is found are left out of the result.
+    Map<VBox, List<VersionedValue>> getMostRecentVersions(final Collection<VBox> vboxes, final int desiredVersion) {
+        return doWithinBackingTransactionIfNeeded(new Callable<Map<VBox, List<VersionedValue>>>() {
             @Override
-            public List<VersionedValue> call() {
-                ArrayList<VersionedValue> result = new ArrayList<VersionedValue>();
-                DataVersionHolder current;
+            public Map<VBox, List<VersionedValue>> call() {
+                Map<VBox, List<VersionedValue>> result = new HashMap<VBox, List<VersionedValue>>(vboxes.size() * 2);
 
-                current = cache.get(key);
+                Map<String, VBox> keys = new HashMap<String, VBox>(vboxes.size() * 2);
+                for (VBox vbox : vboxes) {
+                    keys.put(makeKeyFor(vbox), vbox);
+                }
 
-                if (current != null) {
+                Map<Object, Object> heads = getAll(keys.keySet());
+                Map<String, VersionChain> listed = new HashMap<String, VersionChain>();
+                Set<String> listedKeys = new HashSet<String>();
+                for (Map.Entry<String, VBox> entry : keys.entrySet()) {
+                    VBox vbox = entry.getValue();
+                    VersionChain chain = VersionChain.fromStored(heads.get(entry.getKey()));
 
-                    while (true) {
-                        result.add(new VersionedValue(Externalization.internalizeObject(current.data), current.version));
+                    if (chain == null) {
+                        logger.debug("No version of vbox {} found for transaction number {}", vbox.getId(), desiredVersion);
+                        continue;
+                    }
 
-                        if (current.version <= desiredVersion) {
-                            return result;
+                    List<VersionedValue> vvalues = new ArrayList<VersionedValue>();
+                    vvalues.add(new VersionedValue(Externalization.internalizeObject(chain.data), chain.versions[0]));
+                    result.put(vbox, vvalues);
+                    if (chain.versions[0] > desiredVersion) {
+                        listed.put(entry.getKey(), chain);
+                        int last = chain.lastIndexFor(desiredVersion);
+                        for (int i = 1; i < last; i++) {
+                            listedKeys.add(makeVersionedKey(entry.getKey(), chain.versions[i]));
                         }
+                    }
+                }
 
-                        if (current.previousVersion == -1) {
-                            break;
+                // the other versions listed in the heads
+                Map<Object, Object> listedHolders = getAll(listedKeys);
+                Map<String, VBox> pending = new HashMap<String, VBox>();
+                for (Map.Entry<String, VersionChain> entry : listed.entrySet()) {
+                    VBox vbox = keys.get(entry.getKey());
+                    VersionChain chain = entry.getValue();
+                    List<VersionedValue> vvalues = result.get(vbox);
+
+                    int last = chain.lastIndexFor(desiredVersion);
+                    for (int i = 1; i < last && vvalues != null; i++) {
+                        DataVersionHolder current =
+                                (DataVersionHolder) listedHolders.get(makeVersionedKey(entry.getKey(), chain.versions[i]));
+                        if (current == null) {
+                            logger.debug("No version of vbox {} found for transaction number {}", vbox.getId(), desiredVersion);
+                            result.remove(vbox);
+                            vvalues = null;
+                        } else {
+                            vvalues.add(new VersionedValue(Externalization.internalizeObject(current.data), current.version));
                         }
+                    }
 
-                        current = cache.get(makeVersionedKey(key, current.previousVersion));
+                    if (vvalues != null && last == chain.versions.length
+                            && chain.versions[chain.versions.length - 1] > desiredVersion) {
+                        if (chain.olderVersion == -1) {
+                            logger.debug("Version of vbox {} not found for transaction number {}", vbox.getId(), desiredVersion);
+                            result.remove(vbox);
+                        } else {
+                            pending.put(makeVersionedKey(entry.getKey(), chain.olderVersion), vbox);
+                        }
                     }
                 }
-                throw new PersistenceException("Version of vbox " + vbox.getId() + " not found for transaction number "
-                        + desiredVersion);
+
+                // follow the links to the versions older than those listed in the heads
+                while (!pending.isEmpty()) {
+                    Map<Object, Object> holders = getAll(pending.keySet());
+                    Map<String, VBox> next = new HashMap<String, VBox>();
+
+                    for (Map.Entry<String, VBox> entry : pending.entrySet()) {
+                        VBox vbox = entry.getValue();
+                        DataVersionHolder current = (DataVersionHolder) holders.get(entry.getKey());
+
+                        if (current == null) {
+                            logger.debug("No version of vbox {} found for transaction number {}", vbox.getId(), desiredVersion);
+                            result.remove(vbox);
+                            continue;
+                        }
+
+                        List<VersionedValue> vvalues = result.get(vbox);
+                        vvalues.add(new VersionedValue(Externalization.internalizeObject(current.data), current.version));
+
+                        if (current.version > desiredVersion) {
+                            if (current.previousVersion == -1) {
+                                logger.debug("Version of vbox {} not found for transaction number {}", vbox.getId(),
+                                        desiredVersion);
+                                result.remove(vbox);
+                            } else {
+                                next.put(makeVersionedKey(makeKeyFor(vbox), current.previousVersion), vbox);
+                            }
+                        }
+                    }
+                    pending = next;
+                }
+                return result;
             }
         });
     }
 
-    // persist the number of the committed transaction. Maybe this should be made differently.
-    // It may abort transactions because they try to change this same slot.
-    private void persistCommittedTransactionNumber(final int txNumber) {
-        // there might be some synchronization issues concerning maxCommittedTxId
-        if (txNumber > this.maxCommittedTxId) {
-            this.maxCommittedTxId = txNumber;
+    // the keys owned by other nodes are read in one request per owner (see BulkReader).  The others share the caller's
+    // backing transaction
+    private Map<Object, Object> getAll(Collection<String> keys) {
+        return this.domainCacheReader.getAll(keys);
+    }
 
-            doWithinBackingTransactionIfNeeded(new Callable<Void>() {
+    /* collection of old versions.  Invoked periodically by the VersionCollector */
+
+    void collectOldVersions(long collectionInterval) {
+        int oldestActive = publishOldestActiveNumber(collectionInterval);
+        if (oldestActive != -1) {
+            collectVersionsSupersededUpTo(oldestActive);
+        }
+    }
+
+    // Once the oldest active transaction reads a version written by this node, or a later one, the versions older than the
+    // one it reads are no longer needed.  Only the boxes of those written versions are visited.  Returns the number of
+    // boxes whose versions were removed.
+    int collectVersionsSupersededUpTo(int oldestActive) {
+        Set<String> batch = new LinkedHashSet<String>();
+        int pruned = 0;
+        WrittenVersion written;
+        while ((written = this.writtenVersions.peek()) != null && written.txNumber <= oldestActive) {
+            this.writtenVersions.poll();
+            batch.add(written.key);
+            if (batch.size() == PRUNE_BATCH_SIZE) {
+                pruned += pruneVersions(batch, oldestActive);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            pruned += pruneVersions(batch, oldestActive);
+        }
+        logger.debug("Pruned {} version chains up to version {}", pruned, oldestActive);
+        return pruned;
+    }
+
+    // Publishes the oldest version that this node may still need to read and returns the oldest among those published by all
+    // the live nodes, or -1 if this is the first publication of this node.
+    private int publishOldestActiveNumber(final long collectionInterval) {
+        int localOldest = ActiveTransactions.getOldestActiveNumber();
+        // a transaction starting during the previous computation may have been missed by it, but not by this one
+        final int published = Math.min(localOldest, this.previousOldestActive);
+        final boolean firstPublication = (this.previousOldestActive == Integer.MAX_VALUE);
+        this.previousOldestActive = localOldest;
+        final int serverId = DomainClassInfo.getServerId();
+
+        ClusterUtils.globalLock();
+        try {
+            int oldest = doWithinBackingTransactionIfNeeded(new Callable<Integer>() {
                 @Override
-                public Void call() {
+                @SuppressWarnings("unchecked")
+                public Integer call() {
+                    long now = System.currentTimeMillis();
+                    HashMap<Integer, long[]> stored = (HashMap<Integer, long[]>) getSystemCache().get(OLDEST_ACTIVE_TX_NUMBERS);
+                    HashMap<Integer, long[]> all =
+                            (stored == null) ? new HashMap<Integer, long[]>() : new HashMap<Integer, long[]>(stored);
+                    all.put(serverId, new long[] { published, now });
+
+                    long oldest = published;
+                    Iterator<long[]> iter = all.values().iterator();
+                    while (iter.hasNext()) {
+                        long[] publication = iter.next();
+                        if (now - publication[1] > STALE_PUBLICATION_INTERVALS * collectionInterval) {
+                            iter.remove();
+                        } else {
+                            oldest = Math.min(oldest, publication[0]);
+                        }
+                    }
 
-                    getSystemCache().put(MAX_COMMITTED_TX_ID, new Integer(maxCommittedTxId));
-                    return null;
+                    getSystemCache().put(OLDEST_ACTIVE_TX_NUMBERS, all);
+                    return (int) oldest;
                 }
             });
+            return firstPublication ? -1 : oldest;
+        } finally {
+            ClusterUtils.globalUnlock();
         }
     }
 
-    // only correct if invoked within a backing transaction.  Also this code
-    // assumes a single global commit lock. Otherwise the counter might be set
-    // backwards by a late-running thread.
-    private void updatePersistentInstanceCounters() {
-        Transaction current = FenixFramework.getTransaction();
+    // Excludes every commit and group commit flush of any node while changing the chains.  Returns the number of chains changed.
+    private int pruneVersions(final Collection<String> keys, final int oldestActive) {
+        lockVersionChainsClusterWide();
+        try {
+            synchronized (this.versionChainsLock) {
+                return doWithinBackingTransactionIfNeeded(new Callable<Integer>() {
+                    @Override
+                    public Integer call() {
+                        int changed = 0;
+                        for (String key : keys) {
+                            if (pruneVersionChain(getDomainCache(), key, oldestActive)) {
+                                changed++;
+                            }
+                        }
+                        return changed;
+                    }
+                });
+            }
+        } finally {
+            unlockVersionChainsClusterWide();
+        }
+    }
 
-        Set<DomainClassInfo> infos = current.getFromContext(KEY_INSTANTIATED_CLASSES);
+    // Holds the global commit lock, which excludes the commits, and the version chains' cluster lock, which excludes the group
+    // commit flushes.  Package-private for the tests, which run without a cluster
+    void lockVersionChainsClusterWide() {
+        ClusterUtils.globalLock();
+        boolean locked = false;
+        try {
+            this.versionChainsClusterLock.lock();
+            locked = true;
+        } finally {
+            if (!locked) {
+                ClusterUtils.globalUnlock();
+            }
+        }
+    }
 
-        if (infos != null) {
-            for (DomainClassInfo info : infos) {
-                String key = makeKeyForMaxCounter(info);
-                Integer max = (Integer) getSystemCache().get(key);
+    void unlockVersionChainsClusterWide() {
+        try {
+            this.versionChainsClusterLock.unlock();
+        } finally {
+            ClusterUtils.globalUnlock();
+        }
+    }
 
-                int newCounterValue = info.getLastKey();
+    // Keeps the versions newer than oldestActive and the most recent one that is not (which is the one read by the oldest
+    // active transaction), and removes all the older ones.  Only correct if invoked within a backing transaction, while
+    // excluding every other update of the chains.
+    private boolean pruneVersionChain(Cache<String, Object> cache, String key, int oldestActive) {
+        Object stored = cache.get(key);
+        if (!(stored instanceof VersionChain)) {
+            return false;
+        }
 
-                if (max == null || max < newCounterValue) {
-                    getSystemCache().put(key, newCounterValue);
-                    logger.debug("Update persistent counter for class {}: {}", info.domainClassName, newCounterValue);
-                }
+        VersionChain chain = (VersionChain) stored;
+        int kept = chain.lastIndexFor(oldestActive);
+        if (kept == chain.versions.length && chain.versions[kept - 1] > oldestActive) {
+            // every version listed in the head is still needed, but some of the older ones may not be
+            return chain.olderVersion != -1 && trimOlderVersions(cache, key, chain.olderVersion, oldestActive);
+        }
+
+        if (kept == chain.versions.length && chain.olderVersion == -1) {
+            return false;
+        }
+        for (int i = kept; i < chain.versions.length; i++) {
+            cache.remove(makeVersionedKey(key, chain.versions[i]));
+        }
+        removeOlderVersions(cache, key, chain.olderVersion);
+        cache.put(key, chain.truncatedTo(kept));
+        return true;
+    }
 
+    // follows the links from the given version, up to the one read by the oldest active transaction, and removes the older ones
+    private boolean trimOlderVersions(Cache<String, Object> cache, String key, int fromVersion, int oldestActive) {
+        int version = fromVersion;
+        while (version != -1) {
+            String versionedKey = makeVersionedKey(key, version);
+            DataVersionHolder holder = (DataVersionHolder) cache.get(versionedKey);
+            if (holder == null) {
+                return false;
             }
+            if (holder.version <= oldestActive) {
+                if (holder.previousVersion == -1) {
+                    return false;
+                }
+                cache.put(versionedKey, new DataVersionHolder(holder.version, -1, holder.data));
+                removeOlderVersions(cache, key, holder.previousVersion);
+                return true;
+            }
+            version = holder.previousVersion;
+        }
+        return false;
+    }
 
+    private void removeOlderVersions(Cache<String, Object> cache, String key, int fromVersion) {
+        int version = fromVersion;
+        while (version != -1) {
+            DataVersionHolder holder = (DataVersionHolder) cache.remove(makeVersionedKey(key, version));
+            version = (holder == null) ? -1 : holder.previousVersion;
+        }
+    }
+
+    // persist the number of the committed transaction. Maybe this should be made differently.
+    // It may abort transactions because they try to change this same slot.
+    private void persistCommittedTransactionNumber(final int txNumber) {
+        // there might be some synchronization issues concerning maxCommittedTxId
+        if (txNumber > this.maxCommittedTxId) {
+            this.maxCommittedTxId = txNumber;
+
+            doWithinBackingTransactionIfNeeded(new Callable<Void>() {
+                @Override
+                public Void call() {
+
+                    getSystemCache().put(MAX_COMMITTED_TX_ID, new Integer(maxCommittedTxId));
+                    return null;
+                }
+            });
         }
     }
 
@@ -543,7 +918,7 @@ public class InfinispanRepository implements Repository {
 
     /* DataVersionHolder class. Ensures safe publication. */
 
-    private static class DataVersionHolder implements java.io.Serializable {
+    static class DataVersionHolder implements java.io.Serializable {
         private static final long serialVersionUID = 1L;
         public final int version;
         public final int previousVersion;
@@ -558,6 +933,75 @@ public class InfinispanRepository implements Repository {
         }
     }
 
+    /* VersionChain class.  The head entry stored for each box: its most recent version, along with the numbers of the
+    versions that follow it, up to the size of the window.  Every version, the most recent included, is also stored in its
+    own versioned key, holding a DataVersionHolder, so that each commit writes only the new version and the head.  The
+    versions older than those listed are reached through the links between the DataVersionHolders, starting at
+    olderVersion.  Ensures safe publication. */
+
+    static class VersionChain implements java.io.Serializable {
+        private static final long serialVersionUID = 1L;
+        // most recent first
+        public final int[] versions;
+        // the data of the most recent version
+        public final byte[] data;
+        // the version that precedes the last one listed, or -1 if there is none
+        public final int olderVersion;
+
+        VersionChain(int[] versions, byte[] data, int olderVersion) {
+            this.versions = versions;
+            this.data = data;
+            this.olderVersion = olderVersion;
+        }
+
+        static VersionChain fromStored(Object stored) {
+            if (stored == null || stored instanceof VersionChain) {
+                return (VersionChain) stored;
+            }
+            // an entry written before version chains existed: it holds a single version and links to the previous ones
+            DataVersionHolder holder = (DataVersionHolder) stored;
+            return new VersionChain(new int[] { holder.version }, holder.data, holder.previousVersion);
+        }
+
+        VersionChain withNewVersion(int txNumber, byte[] newData, int windowSize) {
+            int newLength = Math.min(versions.length + 1, Math.max(1, windowSize));
+            int[] newVersions = new int[newLength];
+            newVersions[0] = txNumber;
+            System.arraycopy(versions, 0, newVersions, 1, newLength - 1);
+            // the first version that no longer fits precedes the last one listed
+            int newOlderVersion = (newLength <= versions.length) ? versions[newLength - 1] : olderVersion;
+            return new VersionChain(newVersions, newData, newOlderVersion);
+        }
+
+        /**
+         * Returns the number of versions listed, from the most recent, until one that is not newer than
+         * <code>desiredVersion</code>, or all of them if there is no such version.
+         */
+        int lastIndexFor(int desiredVersion) {
+            for (int i = 0; i < versions.length; i++) {
+                if (versions[i] <= desiredVersion) {
+                    return i + 1;
+                }
+            }
+            return versions.length;
+        }
+
+        VersionChain truncatedTo(int length) {
+            return new VersionChain(Arrays.copyOf(versions, length), data, -1);
+        }
+    }
+
+    // a version written by this node, which may make the older versions of its box collectable
+    private static class WrittenVersion {
+        final String key;
+        final int txNumber;
+
+        WrittenVersion(String key, int txNumber) {
+            this.key = key;
+            this.txNumber = txNumber;
+        }
+    }
+
     /*
       Notes on the usage of Infinispan:
 
@@ -574,15 +1018,18 @@ public class InfinispanRepository implements Repository {
       some key changes, the system as a whole behaves as expected. Here are some
       things to consider:
 
-      - Keys are never removed.  At most their corresponding value is updated.
+      - Keys are only removed by the VersionCollector, and only when they
+      hold versions that no transaction in the cluster may read anymore.
+      Otherwise, at most their corresponding value is updated.
 
       - The domain cache contains the domain entities. When committing (to
-      persistence), a given VBox, we store its most recent value in a key built
-      from the slotName + ownerOid.  Thus, this key's value will change over
-      time.  But we ensure that if a newer value is seen here the previous values
-      already exist somewhere else (in another key).  The previous values in
-      history are written each in their own key built from slotName + ownerOid
-      + #version.  Everything else in the domain cache is write-only.
+      persistence), a given VBox, we store its most recent value, along with
+      the numbers of its recent versions, in a key built from the slotName +
+      ownerOid (a VersionChain).  Thus, this key's value will change over
+      time.  But we ensure that if a newer value is seen here the previous
+      values still exist somewhere else (in another key): every value is also
+      written in its own key built from slotName + ownerOid + #version.  These
+      are write-only, except for the VersionCollector.
 
       - The system cache may be updated.  I'll look further into this.  For now,
       these updates are performed within a global (cluster-wide) commit lock,
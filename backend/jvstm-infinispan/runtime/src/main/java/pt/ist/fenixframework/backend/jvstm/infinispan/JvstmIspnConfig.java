@@ -10,6 +10,7 @@ package pt.ist.fenixframework.backend.jvstm.infinispan;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import pt.ist.fenixframework.ConfigError;
 import pt.ist.fenixframework.backend.jvstm.cluster.JvstmClusterConfig;
 
 /**
@@ -28,10 +29,51 @@ public class JvstmIspnConfig extends JvstmClusterConfig {
      */
     protected String ispnConfigFile = null;
 
+    /**
+     * This <strong>optional</strong> parameter specifies how many of the most recent version numbers of each box are listed
+     * in its head entry, along with the value of its most recent version. Each version is stored in an entry of its own, and
+     * the versions listed are read with a single multi-get, whereas the older ones are reached one at a time. The default
+     * value for this parameter is <code>8</code>.
+     */
+    protected int versionWindowSize = 8;
+
+    /**
+     * This <strong>optional</strong> parameter specifies the number of seconds between each collection of the versions that
+     * no active transaction in the cluster may read anymore. A value less than or equal to zero disables the collection, in
+     * which case the storage keeps every version ever written. Enabling the collection makes every transaction register
+     * itself when it begins and finishes, so that the oldest active transaction is known. The default value for this parameter
+     * is <code>0</code> (disabled).
+     */
+    protected int versionGCInterval = 0;
+
     public String getIspnConfigFile() {
         return this.ispnConfigFile;
     }
 
+    protected void versionWindowSizeFromString(String value) {
+        try {
+            versionWindowSize = Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new ConfigError(e);
+        }
+    }
+
+    protected void versionGCIntervalFromString(String value) {
+        try {
+            versionGCInterval = Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new ConfigError(e);
+        }
+    }
+
+    public int getVersionWindowSize() {
+        return this.versionWindowSize;
+    }
+
+    public int getVersionGCInterval() {
+        return this.versionGCInterval;
+    }
+
     @Override
     protected void init() {
         JvstmIspnBackEnd thisBackEnd = new JvstmIspnBackEnd();
@@ -0,0 +1,57 @@
+/*
+ * Fenix Framework, a framework to develop Java Enterprise Applications.
+ *
+ * Copyright (C) 2013 Fenix Framework Team and/or its affiliates and other contributors as indicated by the @author tags.
+ *
+ * This file is part of the Fenix Framework.  Read the file COPYRIGHT.TXT for more copyright and licensing information.
+ */
+package pt.ist.fenixframework.backend.jvstm.infinispan;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import pt.ist.fenixframework.util.FenixFrameworkThread;
+
+/**
+ * Periodically prunes, from the {@link InfinispanRepository}, the versions that are older than the oldest version still
+ * readable by an active transaction in any node of the cluster.
+ */
+class VersionCollector extends FenixFrameworkThread {
+
+    private static final Logger logger = LoggerFactory.getLogger(VersionCollector.class);
+
+    private final InfinispanRepository repository;
+    private final long interval;
+
+    VersionCollector(InfinispanRepository repository, long interval) {
+        super("VersionCollector");
+        this.repository = repository;
+        this.interval = interval;
+        setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            try {
+                sleep(this.interval);
+            } catch (InterruptedException ie) {
+                logger.debug("VersionCollector interrupted. Exiting.");
+                return;
+            }
+
+            try {
+                this.repository.collectOldVersions(this.interval);
+            } catch (RuntimeException e) {
+                // keep collecting: a failed round is simply retried on the next one
+                logger.warn("Failed to collect old versions", e);
+            }
+        }
+    }
+
+    // overridden only to make it accessible to the repository
+    @Override
+    protected void shutdown() {
+        super.shutdown();
+    }
+}
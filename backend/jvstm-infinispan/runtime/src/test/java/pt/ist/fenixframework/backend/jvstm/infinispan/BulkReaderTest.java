@@ -0,0 +1,152 @@
+package pt.ist.fenixframework.backend.jvstm.infinispan;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.infinispan.Cache;
+import org.infinispan.configuration.cache.CacheMode;
+import org.infinispan.configuration.cache.ConfigurationBuilder;
+import org.infinispan.configuration.global.GlobalConfigurationBuilder;
+import org.infinispan.manager.DefaultCacheManager;
+import org.infinispan.remoting.transport.Address;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Reads keys in bulk from a local cache, and from a distributed cache whose keys are split between two nodes running in this
+ * JVM, each key having a single owner. Every key that exists must be read, whoever owns it, and those that do not exist must be
+ * left out. This test is in the package of the reader to reach it.
+ */
+@RunWith(JUnit4.class)
+public class BulkReaderTest {
+
+    private static final String CACHE_NAME = "bulk";
+    private static final int KEYS = 200;
+
+    // how long to wait for the nodes to see each other
+    private static final long JOIN_TIMEOUT_MILLIS = 60000;
+
+    private final List<DefaultCacheManager> managers = new ArrayList<DefaultCacheManager>();
+    private final List<BulkReader> readers = new ArrayList<BulkReader>();
+
+    @After
+    public void tearDown() {
+        for (BulkReader reader : readers) {
+            reader.stop();
+        }
+        for (DefaultCacheManager manager : managers) {
+            manager.stop();
+        }
+    }
+
+    @Test
+    public void testLocalCache() {
+        DefaultCacheManager manager = new DefaultCacheManager();
+        managers.add(manager);
+        Cache<String, Object> cache = manager.getCache(CACHE_NAME);
+
+        Map<String, Object> expected = fill(cache);
+        assertEquals(expected, read(cache, keysToRead()));
+        assertTrue(read(cache, new ArrayList<String>()).isEmpty());
+    }
+
+    @Test
+    public void testDistributedCache() throws InterruptedException {
+        Cache<String, Object> first = startNode();
+        Cache<String, Object> second = startNode();
+        awaitMembers(first, 2);
+
+        Map<String, Object> expected = fill(first);
+
+        // both nodes own some of the keys, so that each reads some of them from the other
+        Set<Address> owners = new HashSet<Address>();
+        for (String key : expected.keySet()) {
+            owners.add(first.getAdvancedCache().getDistributionManager().locate(key).get(0));
+        }
+        assertEquals(2, owners.size());
+
+        assertEquals(expected, read(first, keysToRead()));
+        assertEquals(expected, read(second, keysToRead()));
+
+        // a single key owned by the other node
+        Address self = first.getCacheManager().getAddress();
+        for (String key : expected.keySet()) {
+            if (!first.getAdvancedCache().getDistributionManager().locate(key).contains(self)) {
+                List<String> single = new ArrayList<String>();
+                single.add(key);
+                assertEquals(key, read(first, single).keySet().iterator().next());
+                break;
+            }
+        }
+    }
+
+    @Test
+    public void testReadKeys() {
+        DefaultCacheManager manager = new DefaultCacheManager();
+        managers.add(manager);
+        Cache<Object, Object> cache = manager.getCache(CACHE_NAME);
+        cache.put("present", "value");
+
+        Set<Object> keys = new HashSet<Object>();
+        keys.add("present");
+        keys.add("absent");
+        BulkReader.ReadKeys task = new BulkReader.ReadKeys();
+        task.setEnvironment(cache, keys);
+
+        Map<Object, Object> expected = new HashMap<Object, Object>();
+        expected.put("present", "value");
+        assertEquals(expected, task.call());
+    }
+
+    private Cache<String, Object> startNode() {
+        GlobalConfigurationBuilder global = GlobalConfigurationBuilder.defaultClusteredBuilder();
+        global.globalJmxStatistics().allowDuplicateDomains(true);
+        ConfigurationBuilder conf = new ConfigurationBuilder();
+        conf.clustering().cacheMode(CacheMode.DIST_SYNC).hash().numOwners(1);
+
+        DefaultCacheManager manager = new DefaultCacheManager(global.build(), conf.build());
+        managers.add(manager);
+        return manager.getCache(CACHE_NAME);
+    }
+
+    private static void awaitMembers(Cache<String, Object> cache, int members) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + JOIN_TIMEOUT_MILLIS;
+        while (cache.getCacheManager().getMembers().size() < members) {
+            assertTrue("the nodes did not join", System.currentTimeMillis() < deadline);
+            Thread.sleep(100);
+        }
+    }
+
+    // the even keys exist, and the odd ones do not
+    private static Map<String, Object> fill(Cache<String, Object> cache) {
+        Map<String, Object> values = new HashMap<String, Object>();
+        for (int i = 0; i < KEYS; i += 2) {
+            values.put("key" + i, "value" + i);
+        }
+        cache.putAll(values);
+        return values;
+    }
+
+    private static List<String> keysToRead() {
+        List<String> keys = new ArrayList<String>();
+        for (int i = 0; i < KEYS; i++) {
+            keys.add("key" + i);
+        }
+        return keys;
+    }
+
+    private Map<Object, Object> read(Cache<String, Object> cache, List<String> keys) {
+        BulkReader reader = new BulkReader(cache);
+        readers.add(reader);
+        return reader.getAll(keys);
+    }
+}
@@ -0,0 +1,244 @@
+package pt.ist.fenixframework.backend.jvstm.infinispan;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.transaction.TransactionManager;
+
+import org.infinispan.AbstractDelegatingCache;
+import org.infinispan.Cache;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import pt.ist.fenixframework.backend.jvstm.pstm.StandaloneVBox;
+import pt.ist.fenixframework.backend.jvstm.pstm.VBox;
+import pt.ist.fenixframework.backend.jvstm.pstm.VersionedValue;
+import pt.ist.fenixframework.backend.jvstm.repository.PersistenceException;
+import pt.ist.fenixframework.core.Externalization;
+
+/**
+ * Stores the versions of some boxes in a local Infinispan cache: each commit must write only the new version and the head
+ * entry of each box, every version must be read back, also from entries written before version chains existed, and the
+ * collection of old versions must only visit the boxes written since the previous collection. The repository runs without a
+ * cluster, so it does not take the cluster-wide locks. This test is in the package of the repository to reach its caches.
+ */
+@RunWith(JUnit4.class)
+public class InfinispanRepositoryVersionsTest {
+
+    private static final Object NULL_VALUE = new Object();
+    private static final int WINDOW_SIZE = 3;
+
+    private InfinispanRepository repository;
+    private Cache<String, Object> backingCache;
+    // the keys written in the domain cache
+    private final List<String> written = new ArrayList<String>();
+
+    @Before
+    public void setUp() {
+        this.repository = new InfinispanRepository() {
+            @Override
+            void lockVersionChainsClusterWide() {
+            }
+
+            @Override
+            void unlockVersionChainsClusterWide() {
+            }
+        };
+        this.repository.initCaches(null);
+        this.repository.versionWindowSize = WINDOW_SIZE;
+        this.repository.collectingVersions = true;
+
+        this.backingCache = this.repository.domainCache;
+        this.repository.domainCache = new AbstractDelegatingCache<String, Object>(this.backingCache) {
+            @Override
+            public Object put(String key, Object value) {
+                written.add(key);
+                return super.put(key, value);
+            }
+        };
+    }
+
+    @After
+    public void tearDown() {
+        this.repository.closeRepository();
+    }
+
+    @Test
+    public void testCommitWritesOnlyTheNewVersionAndTheHead() {
+        VBox box = StandaloneVBox.makeNew("written", true);
+        for (int txNumber = 1; txNumber <= 2 * WINDOW_SIZE + 1; txNumber++) {
+            written.clear();
+            commit(txNumber, box, "v" + txNumber);
+            assertEquals(Arrays.asList("written:" + txNumber, "written"), written);
+        }
+    }
+
+    @Test
+    public void testReadsEveryVersion() {
+        VBox box = StandaloneVBox.makeNew("read", true);
+        VBox other = StandaloneVBox.makeNew("other", true);
+        for (int txNumber = 10; txNumber <= 100; txNumber += 10) {
+            commit(txNumber, box, "v" + txNumber);
+        }
+        commit(101, other, "other");
+
+        for (int desired = 10; desired <= 105; desired++) {
+            int expected = Math.min(100, desired / 10 * 10);
+            assertVersions(repository.getMostRecentVersions(box, desired), 100, expected);
+            // and the same when read along with another box
+            Map<VBox, List<VersionedValue>> both = repository.getMostRecentVersions(Arrays.asList(box, other), desired);
+            assertVersions(both.get(box), 100, expected);
+            assertEquals(desired >= 101, both.containsKey(other));
+        }
+
+        assertNotFound(box, 9);
+        assertTrue(repository.getMostRecentVersions(Collections.singleton(box), 9).isEmpty());
+    }
+
+    @Test
+    public void testReadsEntriesStoredBeforeVersionChains() throws Exception {
+        VBox box = StandaloneVBox.makeNew("legacy", true);
+        // a head with the most recent version, linked to the previous one
+        putInBackingTransaction("legacy", new InfinispanRepository.DataVersionHolder(20, 10, data("v20")));
+        putInBackingTransaction("legacy:10", new InfinispanRepository.DataVersionHolder(10, -1, data("v10")));
+
+        assertVersions(repository.getMostRecentVersions(box, 25), 20, 20);
+        assertVersions(repository.getMostRecentVersions(box, 15), 20, 10);
+
+        // the first commit moves the version of the old head to its versioned key
+        written.clear();
+        commit(30, box, "v30");
+        assertEquals(Arrays.asList("legacy:20", "legacy:30", "legacy"), written);
+        assertVersions(repository.getMostRecentVersions(box, 30), 30, 30);
+        assertVersions(repository.getMostRecentVersions(box, 25), 30, 20);
+        assertVersions(repository.getMostRecentVersions(box, 15), 30, 10);
+    }
+
+    @Test
+    public void testCollectsOnlyTheVersionsSuperseded() throws Exception {
+        VBox box = StandaloneVBox.makeNew("collected", true);
+        VBox longBox = StandaloneVBox.makeNew("long", true);
+        VBox single = StandaloneVBox.makeNew("single", true);
+        for (int txNumber = 1; txNumber <= 6; txNumber++) {
+            commit(txNumber, box, "v" + txNumber);
+        }
+        commit(7, single, "single");
+
+        // the versions written while nothing is collected are not visited later
+        repository.collectingVersions = false;
+        VBox ignored = StandaloneVBox.makeNew("ignored", true);
+        commit(8, ignored, "v8");
+        commit(9, ignored, "v9");
+        repository.collectingVersions = true;
+
+        // the oldest active transaction reads version 4: the older ones go, the newer ones stay
+        assertEquals(1, repository.collectVersionsSupersededUpTo(4));
+        assertStored("collected", 4, 5, 6);
+        assertNotStored("collected", 1, 2, 3);
+        assertVersions(repository.getMostRecentVersions(box, 4), 6, 4);
+        assertNotFound(box, 3);
+
+        // nothing else was written up to that version
+        assertEquals(0, repository.collectVersionsSupersededUpTo(4));
+
+        assertEquals(1, repository.collectVersionsSupersededUpTo(9));
+        assertStored("collected", 6);
+        assertNotStored("collected", 4, 5);
+        assertStored("single", 7);
+        assertStored("ignored", 8, 9);
+
+        // versions older than those listed in the head are trimmed as well
+        for (int txNumber = 10; txNumber <= 17; txNumber++) {
+            commit(txNumber, longBox, "v" + txNumber);
+        }
+        assertEquals(1, repository.collectVersionsSupersededUpTo(12));
+        assertStored("long", 12, 13, 14, 15, 16, 17);
+        assertNotStored("long", 10, 11);
+        assertVersions(repository.getMostRecentVersions(longBox, 12), 17, 12);
+        assertNotFound(longBox, 11);
+    }
+
+    private void commit(int txNumber, VBox box, Object value) {
+        Map<jvstm.VBox, Object> changes = new HashMap<jvstm.VBox, Object>();
+        changes.put(box, value);
+        repository.persistChanges(changes.entrySet(), txNumber, NULL_VALUE);
+    }
+
+    // the versions read go from the most recent down to the expected one, and hold the values written by those commits
+    private static void assertVersions(List<VersionedValue> vvalues, int mostRecent, int expected) {
+        assertFalse(vvalues.isEmpty());
+        assertEquals(mostRecent, vvalues.get(0).getVersion());
+        VersionedValue last = vvalues.get(vvalues.size() - 1);
+        assertEquals(expected, last.getVersion());
+        for (int i = 0; i < vvalues.size(); i++) {
+            assertEquals("v" + vvalues.get(i).getVersion(), vvalues.get(i).getValue());
+            if (i > 0) {
+                assertTrue(vvalues.get(i).getVersion() < vvalues.get(i - 1).getVersion());
+            }
+        }
+    }
+
+    private void assertNotFound(VBox box, int desiredVersion) {
+        try {
+            repository.getMostRecentVersions(box, desiredVersion);
+            fail("read a version of " + box.getId() + " older than those stored");
+        } catch (PersistenceException e) {
+            // expected
+        }
+    }
+
+    private void assertStored(String key, int... versions) throws Exception {
+        for (int version : versions) {
+            assertTrue(key + ":" + version, getVersionedKeys(key, versions).contains(key + ":" + version));
+        }
+    }
+
+    private void assertNotStored(String key, int... versions) throws Exception {
+        for (int version : versions) {
+            assertFalse(key + ":" + version, getVersionedKeys(key, versions).contains(key + ":" + version));
+        }
+    }
+
+    private Collection<String> getVersionedKeys(String key, int... versions) throws Exception {
+        TransactionManager tm = repository.transactionManager;
+        tm.begin();
+        try {
+            List<String> stored = new ArrayList<String>();
+            for (int version : versions) {
+                if (backingCache.containsKey(key + ":" + version)) {
+                    stored.add(key + ":" + version);
+                }
+            }
+            return stored;
+        } finally {
+            tm.commit();
+        }
+    }
+
+    private void putInBackingTransaction(String key, Object value) throws Exception {
+        TransactionManager tm = repository.transactionManager;
+        tm.begin();
+        try {
+            backingCache.put(key, value);
+        } finally {
+            tm.commit();
+        }
+    }
+
+    private static byte[] data(Object value) {
+        return Externalization.externalizeObject(value);
+    }
+}
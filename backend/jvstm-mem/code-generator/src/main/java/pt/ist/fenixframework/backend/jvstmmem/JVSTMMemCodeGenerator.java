@@ -155,6 +155,11 @@ public class JVSTMMemCodeGenerator extends JVSTMCodeGenerator {
     protected void generateRoleSlotMethodsMultStarInternalGetter(String getterName, Role role, PrintWriter out) {
     }
 
+    // the boxes of this backend are not OwnedVBoxes, so they cannot be looked up by their slot index
+    @Override
+    protected void generateSlotAtMethod(DomainClass domClass, PrintWriter out) {
+    }
+
     @Override
     protected void generateGetterBody(String slotName, String typeName, PrintWriter out) {
         // call the DAP CodeGen which is overridden in this method
@@ -17,7 +17,7 @@ public class JVSTMMemBackEnd implements BackEnd {
 
     @Override
     public <T extends DomainObject> T fromOid(Object oid) {
-        return (T) SharedIdentityMap.getCache().lookup(oid);
+        return (T) SharedIdentityMap.getIdentityMap().lookup(oid);
 
     }
 
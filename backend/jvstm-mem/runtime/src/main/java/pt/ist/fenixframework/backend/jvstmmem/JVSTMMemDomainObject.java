@@ -24,7 +24,7 @@ public class JVSTMMemDomainObject extends AbstractDomainObjectAdapter {
         // find successive ids until one is available
         while (true) {
             this.oid = DomainClassInfo.getNextOidFor(this.getClass());
-            Object cached = SharedIdentityMap.getCache().cache(this);
+            Object cached = SharedIdentityMap.getIdentityMap().cache(this);
             if (cached == this) {
                 // break the loop once we got this instance cached
                 return;
@@ -29,11 +29,11 @@ public class JvstmOJBBackEnd implements BackEnd {
     public <T extends DomainObject> T fromOid(Object oid) {
         logger.trace("fromOid({})", oid);
 
-        AbstractDomainObject obj = SharedIdentityMap.getCache().lookup(oid);
+        AbstractDomainObject obj = SharedIdentityMap.getIdentityMap().lookup(oid);
 
         if (obj == null) {
             obj = DomainObjectAllocator.allocateObject(DomainClassInfo.mapOidToClass(((Long) oid).longValue()), oid);
-            obj = SharedIdentityMap.getCache().cache(obj);
+            obj = SharedIdentityMap.getIdentityMap().cache(obj);
         }
 
         return (T) obj;
@@ -93,7 +93,7 @@ public abstract class AbstractDomainObject extends AbstractDomainObjectAdapter {
             // find successive ids until one is available
             while (true) {
                 this.oid = DomainClassInfo.getNextOidFor(this.getClass());
-                Object cached = SharedIdentityMap.getCache().cache(this);
+                Object cached = SharedIdentityMap.getIdentityMap().cache(this);
                 if (cached == this) {
                     // break the loop once we got this instance cached
                     return;
@@ -117,7 +117,7 @@ public abstract class AbstractDomainObject extends AbstractDomainObjectAdapter {
             while (true) {
                 Integer id = (Integer) broker.serviceSequenceManager().getUniqueValue(cld.getFieldDescriptorByName("idInternal"));
                 this.oid = cid + id;
-                Object cached = SharedIdentityMap.getCache().cache(this);
+                Object cached = SharedIdentityMap.getIdentityMap().cache(this);
                 if (cached == this) {
                     // break the loop once we got this instance cached
                     return;
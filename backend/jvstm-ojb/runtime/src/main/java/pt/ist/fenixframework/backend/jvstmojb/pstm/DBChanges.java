@@ -176,7 +176,7 @@ class DBChanges {
     void cache() {
         if (newObjs != null) {
             for (AbstractDomainObject obj : newObjs) {
-                SharedIdentityMap.getCache().cache(obj);
+                SharedIdentityMap.getIdentityMap().cache(obj);
             }
         }
     }
@@ -54,7 +54,7 @@ public class MemBackEnd implements BackEnd {
         if (logger.isTraceEnabled()) {
             logger.trace("fromOid(" + oid + ")");
         }
-        return (T) SharedIdentityMap.getCache().lookup(oid);
+        return (T) SharedIdentityMap.getIdentityMap().lookup(oid);
 
     }
 
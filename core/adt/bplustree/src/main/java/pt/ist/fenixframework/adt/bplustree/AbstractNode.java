@@ -93,35 +93,53 @@ public abstract class AbstractNode<T extends Serializable> extends AbstractNode_
 
     abstract Iterator<? extends Comparable> keysIterator();
 
+    /** Returns the leaf node that contains, or would contain, the given key */
+    abstract LeafNode findLeaf(Comparable key);
+
+    abstract LeafNode firstLeaf();
+
+    abstract LeafNode lastLeaf();
+
     /*
      * We need to ensure that no DomainObjects escape in the serialization.  This would be a problem
      * if 'someone' (e.g. Infinispan in clustered mode) needed to internalize a D.O. (hidden in a
-     * treemap entry) while the FenixFramework was still running its static initialization code. So
-     * we convert the TreeMap to/from a byte[] every time it is externalized/internalize by the FF.
-     * We wrap it in a Serializable class (TreeMapExternalization) ,because some backends (e.g. OGM)
+     * node entry) while the FenixFramework was still running its static initialization code. So
+     * we convert the SortedEntries to/from a byte[] every time it is externalized/internalize by the FF.
+     * We wrap it in a Serializable class (EntriesExternalization) ,because some backends (e.g. OGM)
      * don't deal well with byte[] yet.
      */
 
-    public static Serializable /*byte[]*/externalizeTreeMap(TreeMap treeMap) {
-        // return Externalization.externalizeObject(new TreeMapExternalization(treeMap));
-        return new TreeMapExternalization(treeMap);
-        // return treeMap;
+    public static Serializable /*byte[]*/externalizeEntries(SortedEntries entries) {
+        return new EntriesExternalization(entries);
     }
 
-    public static TreeMap internalizeTreeMap(Serializable/*byte[]*/externalizedTreeMap) {
-        // TreeMapExternalization treeMapExternalization = Externalization.internalizeObject(externalizedTreeMap);
-        return ((TreeMapExternalization) externalizedTreeMap).toTreeMap();
-        // return (TreeMap)externalizedTreeMap;
+    public static SortedEntries internalizeEntries(Serializable/*byte[]*/externalizedEntries) {
+        if (externalizedEntries instanceof TreeMapExternalization) { // stored before the nodes were backed by arrays
+            return SortedEntries.fromMap(((TreeMapExternalization) externalizedEntries).toTreeMap());
+        }
+        return ((EntriesExternalization) externalizedEntries).toEntries();
     }
 
-    private static class TreeMapExternalization implements Serializable {
+    private static class EntriesExternalization implements Serializable {
         private static final long serialVersionUID = 1L;
 
-        private final byte[] serializedTreeMap;
+        private final byte[] serializedEntries;
+
+        EntriesExternalization(SortedEntries<? extends Serializable> entries) {
+            this.serializedEntries = Externalization.externalizeSerializable(entries);
+        }
 
-        TreeMapExternalization(TreeMap<Comparable, ? extends Serializable> treeMap) {
-            this.serializedTreeMap = Externalization.externalizeSerializable(treeMap);
+        SortedEntries toEntries() {
+            return (SortedEntries) Externalization.internalizeSerializable(serializedEntries);
         }
+    }
+
+    // The previous externalized form, when nodes kept their entries in a TreeMap.  It is only read,
+    // and the node is written back in the new form on its next update.
+    private static class TreeMapExternalization implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private byte[] serializedTreeMap;
 
         TreeMap toTreeMap() {
             return (TreeMap) Externalization.internalizeSerializable(serializedTreeMap);
@@ -72,6 +72,13 @@ public abstract class AbstractNodeArray<T extends Serializable> extends Abstract
     // the number of _elements_ in this node (not counting sub-nodes)
     abstract int shallowSize();
 
+    /** Returns the leaf node that contains, or would contain, the given key */
+    abstract LeafNodeArray findLeaf(Comparable key);
+
+    abstract LeafNodeArray firstLeaf();
+
+    abstract LeafNodeArray lastLeaf();
+
     public static Serializable externalizeArrays(DoubleArray array) {
         return new ArrayExternalization(array);
     }
@@ -2,14 +2,18 @@ package pt.ist.fenixframework.adt.bplustree;
 
 import java.io.ObjectStreamException;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.SortedMap;
 
 import pt.ist.fenixframework.DomainObject;
 import pt.ist.fenixframework.NoDomainMetaObjects;
-import pt.ist.fenixframework.dml.runtime.DomainBasedMap;
+import pt.ist.fenixframework.dml.runtime.SortedDomainBasedMap;
 
 /**
  * Implementation of a persistence-independent B+Tree. This implementation is modelled in DML and
@@ -20,7 +24,7 @@ import pt.ist.fenixframework.dml.runtime.DomainBasedMap;
  * type Integer and String).
  */
 @NoDomainMetaObjects
-public class BPlusTree<T extends Serializable> extends BPlusTree_Base implements DomainBasedMap<T> {
+public class BPlusTree<T extends Serializable> extends BPlusTree_Base implements SortedDomainBasedMap<T> {
 
     /* Special last key */
     private static final class ComparableLastKey implements Comparable, Serializable {
@@ -85,6 +89,20 @@ public class BPlusTree<T extends Serializable> extends BPlusTree_Base implements
     static final int MAX_NUMBER_OF_KEYS = 2 * LOWER_BOUND;
     static final int MAX_NUMBER_OF_ELEMENTS = MAX_NUMBER_OF_KEYS + 1;
 
+    /**
+     * Splits <code>count</code> elements into the least number of chunks of at most <code>maxChunkSize</code> elements, all of
+     * them with the same size give or take one. Returns the boundaries of the chunks: chunk <code>i</code> goes from
+     * <code>bounds[i]</code> (inclusive) to <code>bounds[i + 1]</code> (exclusive).
+     */
+    static int[] chunkBounds(int count, int maxChunkSize) {
+        int chunks = Math.max(1, (count + maxChunkSize - 1) / maxChunkSize);
+        int[] bounds = new int[chunks + 1];
+        for (int i = 0; i <= chunks; i++) {
+            bounds[i] = (int) ((long) count * i / chunks);
+        }
+        return bounds;
+    }
+
     static StringBuilder spaces(int level) {
         StringBuilder str = new StringBuilder();
         for (int i = 0; i < level; i++) {
@@ -96,6 +114,7 @@ public class BPlusTree<T extends Serializable> extends BPlusTree_Base implements
     // non-static part start here
 
     public BPlusTree() {
+        setElementCount(0);
         initRoot();
     }
 
@@ -109,7 +128,11 @@ public class BPlusTree<T extends Serializable> extends BPlusTree_Base implements
             throw new UnsupportedOperationException("This B+Tree does not support nulls");
         }
         AbstractNode rootNode = this.getRoot();
-        AbstractNode resultNode = rootNode.insert(key, value);
+        // inner nodes only pass the insertion down to the leaf, so it is inserted there directly.  The leaf keeps the new
+        // entries even if it splits, so its size tells whether the key was added or its value replaced
+        LeafNode leaf = rootNode.findLeaf(key);
+        int previousSize = leaf.shallowSize();
+        AbstractNode resultNode = leaf.insert(key, value);
 
         if (resultNode == null) {
             return false;
@@ -117,9 +140,65 @@ public class BPlusTree<T extends Serializable> extends BPlusTree_Base implements
         if (rootNode != resultNode) {
             this.setRoot(resultNode);
         }
+        if (leaf.shallowSize() != previousSize) {
+            adjustElementCount(1);
+        }
         return true;
     }
 
+    /**
+     * Inserts all the given entries, which must be sorted by key and have no repeated keys. If this tree is empty, it is built
+     * bottom-up, with its nodes already packed, which writes each node only once instead of splitting nodes along the way.
+     * Otherwise, the entries are inserted one at a time.
+     *
+     * @throws IllegalArgumentException if the keys are not in strictly ascending order
+     */
+    public void bulkLoad(Iterable<? extends Map.Entry<? extends Comparable, ? extends T>> sortedEntries) {
+        List<Comparable> keys = new ArrayList<Comparable>();
+        List<Serializable> values = new ArrayList<Serializable>();
+        for (Map.Entry<? extends Comparable, ? extends T> entry : sortedEntries) {
+            Comparable key = entry.getKey();
+            T value = entry.getValue();
+            checkBulkLoadEntry(key, value);
+            if (!keys.isEmpty() && COMPARATOR_SUPPORTING_LAST_KEY.compare(keys.get(keys.size() - 1), key) >= 0) {
+                throw new IllegalArgumentException("Keys are not in strictly ascending order: " + key);
+            }
+            keys.add(key);
+            values.add(value);
+        }
+        if (keys.isEmpty()) {
+            return;
+        }
+
+        AbstractNode rootNode = this.getRoot();
+        if (!(rootNode instanceof LeafNode) || rootNode.shallowSize() != 0) {
+            for (int i = 0; i < keys.size(); i++) {
+                insert(keys.get(i), (T) values.get(i));
+            }
+            return;
+        }
+
+        AbstractNode resultNode =
+                ((LeafNode) rootNode).bulkLoad(keys.toArray(new Comparable[keys.size()]),
+                        values.toArray(new Serializable[values.size()]));
+        setElementCount(keys.size());
+        if (rootNode != resultNode) {
+            this.setRoot(resultNode);
+        }
+    }
+
+    /** Inserts all the entries of the given map. See {@link #bulkLoad(Iterable)}. */
+    public void bulkLoad(SortedMap<? extends Comparable, ? extends T> map) {
+        bulkLoad(map.entrySet());
+    }
+
+    /** Checks each entry given to {@link #bulkLoad(Iterable)}, with the same rules as {@link #insert(Comparable, Serializable)} */
+    protected void checkBulkLoadEntry(Comparable key, T value) {
+        if (value == null) {
+            throw new UnsupportedOperationException("This B+Tree does not support nulls");
+        }
+    }
+
     /** Removes the element with the given key */
     public boolean removeKey(Comparable key) {
         AbstractNode rootNode = this.getRoot();
@@ -131,6 +210,7 @@ public class BPlusTree<T extends Serializable> extends BPlusTree_Base implements
         if (rootNode != resultNode) {
             this.setRoot(resultNode);
         }
+        adjustElementCount(-1);
         return true;
     }
 
@@ -161,6 +241,7 @@ public class BPlusTree<T extends Serializable> extends BPlusTree_Base implements
         if (rootNode != resultNode) {
             this.setRoot(resultNode);
         }
+        adjustElementCount(-1);
 
         return value;
     }
@@ -170,14 +251,32 @@ public class BPlusTree<T extends Serializable> extends BPlusTree_Base implements
         return this.getRoot().containsKey(key);
     }
 
-    /** Returns the number of key-value mappings in this map */
+    /**
+     * Returns the number of key-value mappings in this map. The count is kept in the tree itself, so this does not load any
+     * node.
+     */
     @Override
     public int size() {
-        return this.getRoot().size();
+        Integer count = getElementCount();
+        return (count != null) ? count : this.getRoot().size();
     }
 
+    /** Returns <code>true</code> if this map contains no mappings. Like {@link #size()}, this does not load any node. */
+    @Override
     public boolean isEmpty() {
-        return size() == 0;
+        Integer count = getElementCount();
+        // the root has no entries only when it is an empty leaf
+        return (count != null) ? count == 0 : this.getRoot().shallowSize() == 0;
+    }
+
+    // Must be invoked after the tree is changed.  Trees created before the count was kept get it on their first change.
+    private void adjustElementCount(int delta) {
+        Integer count = getElementCount();
+        if (count != null) {
+            setElementCount(count + delta);
+        } else {
+            setElementCount(this.getRoot().size());
+        }
     }
 
     /**
@@ -201,6 +300,58 @@ public class BPlusTree<T extends Serializable> extends BPlusTree_Base implements
         return this.getRoot().iterator();
     }
 
+    @Override
+    public Cursor<T> cursor(Comparable lowKey, boolean lowInclusive, Comparable highKey, boolean highInclusive) {
+        return new LeafNodeCursor(lowKey, lowInclusive, highKey, highInclusive, false);
+    }
+
+    @Override
+    public Cursor<T> descendingCursor(Comparable lowKey, boolean lowInclusive, Comparable highKey, boolean highInclusive) {
+        return new LeafNodeCursor(lowKey, lowInclusive, highKey, highInclusive, true);
+    }
+
+    private class LeafNodeCursor extends LeafCursor<T, LeafNode> {
+
+        LeafNodeCursor(Comparable lowKey, boolean lowInclusive, Comparable highKey, boolean highInclusive, boolean descending) {
+            super(COMPARATOR_SUPPORTING_LAST_KEY, lowKey, lowInclusive, highKey, highInclusive, descending);
+        }
+
+        @Override
+        protected LeafNode findLeaf(Comparable key) {
+            return getRoot().findLeaf(key);
+        }
+
+        @Override
+        protected LeafNode firstLeaf() {
+            return getRoot().firstLeaf();
+        }
+
+        @Override
+        protected LeafNode lastLeaf() {
+            return getRoot().lastLeaf();
+        }
+
+        @Override
+        protected LeafNode nextLeaf(LeafNode leaf) {
+            return leaf.getNext();
+        }
+
+        @Override
+        protected LeafNode previousLeaf(LeafNode leaf) {
+            return leaf.getPrevious();
+        }
+
+        @Override
+        protected Comparable[] keysOf(LeafNode leaf) {
+            return leaf.getEntries().keyArray();
+        }
+
+        @Override
+        protected Serializable[] valuesOf(LeafNode leaf) {
+            return leaf.getEntries().valueArray();
+        }
+    }
+
     public boolean myEquals(BPlusTree other) {
         Iterator<T> it1 = this.iterator();
         Iterator<T> it2 = other.iterator();
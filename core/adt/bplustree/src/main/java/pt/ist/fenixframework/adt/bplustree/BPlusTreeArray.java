@@ -2,11 +2,15 @@ package pt.ist.fenixframework.adt.bplustree;
 
 import java.io.ObjectStreamException;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
 
 import pt.ist.fenixframework.core.AbstractDomainObject;
-import pt.ist.fenixframework.dml.runtime.DomainBasedMap;
+import pt.ist.fenixframework.dml.runtime.SortedDomainBasedMap;
 
 /**
  * Implementation of a persistence-independent B+Tree. This implementation is modelled in DML and
@@ -16,7 +20,7 @@ import pt.ist.fenixframework.dml.runtime.DomainBasedMap;
  * comparable to each other (e.g. the same BPlusTree instance cannot simultaneously support keys of
  * type Integer and String).
  */
-public class BPlusTreeArray<T extends Serializable> extends BPlusTreeArray_Base implements DomainBasedMap<T> {
+public class BPlusTreeArray<T extends Serializable> extends BPlusTreeArray_Base implements SortedDomainBasedMap<T> {
     /* Special last key */
     private static final class ComparableLastKey implements Comparable, Serializable {
         private static final Serializable LAST_KEY_SERIALIZED_FORM = new Serializable() {
@@ -88,6 +92,7 @@ public class BPlusTreeArray<T extends Serializable> extends BPlusTreeArray_Base
     // non-static part start here
 
     public BPlusTreeArray() {
+        setElementCount(0);
         initRoot();
     }
 
@@ -101,7 +106,11 @@ public class BPlusTreeArray<T extends Serializable> extends BPlusTreeArray_Base
             throw new UnsupportedOperationException("This B+Tree does not support nulls");
         }
         AbstractNodeArray rootNode = this.getRoot();
-        AbstractNodeArray resultNode = rootNode.insert(key, value);
+        // inner nodes only pass the insertion down to the leaf, so it is inserted there directly.  The leaf keeps the new
+        // entries even if it splits, so its size tells whether the key was added or its value replaced
+        LeafNodeArray leaf = rootNode.findLeaf(key);
+        int previousSize = leaf.shallowSize();
+        AbstractNodeArray resultNode = leaf.insert(key, value);
 
         if (resultNode == null) {
             return false;
@@ -109,9 +118,64 @@ public class BPlusTreeArray<T extends Serializable> extends BPlusTreeArray_Base
         if (rootNode != resultNode) {
             this.setRoot(resultNode);
         }
+        if (leaf.shallowSize() != previousSize) {
+            adjustElementCount(1);
+        }
         return true;
     }
 
+    /**
+     * Inserts all the given entries, which must be sorted by key and have no repeated keys. Works just like
+     * {@link BPlusTree#bulkLoad(Iterable)}.
+     *
+     * @throws IllegalArgumentException if the keys are not in strictly ascending order
+     */
+    public void bulkLoad(Iterable<? extends Map.Entry<? extends Comparable, ? extends T>> sortedEntries) {
+        List<Comparable> keys = new ArrayList<Comparable>();
+        List<Serializable> values = new ArrayList<Serializable>();
+        for (Map.Entry<? extends Comparable, ? extends T> entry : sortedEntries) {
+            Comparable key = entry.getKey();
+            T value = entry.getValue();
+            checkBulkLoadEntry(key, value);
+            if (!keys.isEmpty() && COMPARATOR_SUPPORTING_LAST_KEY.compare(keys.get(keys.size() - 1), key) >= 0) {
+                throw new IllegalArgumentException("Keys are not in strictly ascending order: " + key);
+            }
+            keys.add(key);
+            values.add(value);
+        }
+        if (keys.isEmpty()) {
+            return;
+        }
+
+        AbstractNodeArray rootNode = this.getRoot();
+        if (!(rootNode instanceof LeafNodeArray) || rootNode.shallowSize() != 0) {
+            for (int i = 0; i < keys.size(); i++) {
+                insert(keys.get(i), (T) values.get(i));
+            }
+            return;
+        }
+
+        AbstractNodeArray resultNode =
+                ((LeafNodeArray) rootNode).bulkLoad(keys.toArray(new Comparable[keys.size()]),
+                        values.toArray(new Serializable[values.size()]));
+        setElementCount(keys.size());
+        if (rootNode != resultNode) {
+            this.setRoot(resultNode);
+        }
+    }
+
+    /** Inserts all the entries of the given map. See {@link #bulkLoad(Iterable)}. */
+    public void bulkLoad(SortedMap<? extends Comparable, ? extends T> map) {
+        bulkLoad(map.entrySet());
+    }
+
+    /** Checks each entry given to {@link #bulkLoad(Iterable)}, with the same rules as {@link #insert(Comparable, Serializable)} */
+    protected void checkBulkLoadEntry(Comparable key, T value) {
+        if (value == null) {
+            throw new UnsupportedOperationException("This B+Tree does not support nulls");
+        }
+    }
+
     // /** Removes the given element */
     // public void remove(T obj) {
     //     remove(obj.getOid());
@@ -128,6 +192,7 @@ public class BPlusTreeArray<T extends Serializable> extends BPlusTreeArray_Base
         if (rootNode != resultNode) {
             this.setRoot(resultNode);
         }
+        adjustElementCount(-1);
         return true;
     }
 
@@ -158,6 +223,7 @@ public class BPlusTreeArray<T extends Serializable> extends BPlusTreeArray_Base
         if (rootNode != resultNode) {
             this.setRoot(resultNode);
         }
+        adjustElementCount(-1);
 
         return value;
     }
@@ -167,10 +233,32 @@ public class BPlusTreeArray<T extends Serializable> extends BPlusTreeArray_Base
         return this.getRoot().containsKey(key);
     }
 
-    /** Returns the number of key-value mappings in this map */
+    /**
+     * Returns the number of key-value mappings in this map. The count is kept in the tree itself, so this does not load any
+     * node.
+     */
     @Override
     public int size() {
-        return this.getRoot().size();
+        Integer count = getElementCount();
+        return (count != null) ? count : this.getRoot().size();
+    }
+
+    /** Returns <code>true</code> if this map contains no mappings. Like {@link #size()}, this does not load any node. */
+    @Override
+    public boolean isEmpty() {
+        Integer count = getElementCount();
+        // the root has no entries only when it is an empty leaf
+        return (count != null) ? count == 0 : this.getRoot().shallowSize() == 0;
+    }
+
+    // Must be invoked after the tree is changed.  Trees created before the count was kept get it on their first change.
+    private void adjustElementCount(int delta) {
+        Integer count = getElementCount();
+        if (count != null) {
+            setElementCount(count + delta);
+        } else {
+            setElementCount(this.getRoot().size());
+        }
     }
 
     public String dump(int level, boolean dumpKeysOnly, boolean dumpNodeIds) {
@@ -182,6 +270,59 @@ public class BPlusTreeArray<T extends Serializable> extends BPlusTreeArray_Base
         return this.getRoot().iterator();
     }
 
+    @Override
+    public Cursor<T> cursor(Comparable lowKey, boolean lowInclusive, Comparable highKey, boolean highInclusive) {
+        return new LeafNodeArrayCursor(lowKey, lowInclusive, highKey, highInclusive, false);
+    }
+
+    @Override
+    public Cursor<T> descendingCursor(Comparable lowKey, boolean lowInclusive, Comparable highKey, boolean highInclusive) {
+        return new LeafNodeArrayCursor(lowKey, lowInclusive, highKey, highInclusive, true);
+    }
+
+    private class LeafNodeArrayCursor extends LeafCursor<T, LeafNodeArray> {
+
+        LeafNodeArrayCursor(Comparable lowKey, boolean lowInclusive, Comparable highKey, boolean highInclusive,
+                boolean descending) {
+            super(COMPARATOR_SUPPORTING_LAST_KEY, lowKey, lowInclusive, highKey, highInclusive, descending);
+        }
+
+        @Override
+        protected LeafNodeArray findLeaf(Comparable key) {
+            return getRoot().findLeaf(key);
+        }
+
+        @Override
+        protected LeafNodeArray firstLeaf() {
+            return getRoot().firstLeaf();
+        }
+
+        @Override
+        protected LeafNodeArray lastLeaf() {
+            return getRoot().lastLeaf();
+        }
+
+        @Override
+        protected LeafNodeArray nextLeaf(LeafNodeArray leaf) {
+            return leaf.getNext();
+        }
+
+        @Override
+        protected LeafNodeArray previousLeaf(LeafNodeArray leaf) {
+            return leaf.getPrevious();
+        }
+
+        @Override
+        protected Comparable[] keysOf(LeafNodeArray leaf) {
+            return leaf.getEntries().keys;
+        }
+
+        @Override
+        protected Serializable[] valuesOf(LeafNodeArray leaf) {
+            return leaf.getEntries().values;
+        }
+    }
+
     public boolean myEquals(BPlusTreeArray other) {
         Iterator<AbstractDomainObject> it1 = this.iterator();
         Iterator<AbstractDomainObject> it2 = other.iterator();
@@ -0,0 +1,25 @@
+package pt.ist.fenixframework.adt.bplustree;
+
+import java.io.Serializable;
+
+import pt.ist.fenixframework.NoDomainMetaObjects;
+
+/**
+ * {@link BPlusTree} whose leaves are {@link DeltaLeafNode}s, so that changing a few keys of a large leaf writes only those
+ * changes, instead of the whole leaf. Reading a leaf costs an additional merge of its base entries with its delta.
+ * 
+ * To use it for the relations of a domain model, set the code generator's <code>collectionClassName</code> parameter to
+ * <code>pt.ist.fenixframework.adt.bplustree.DeltaBPlusTree</code> (see the DML reference).
+ */
+@NoDomainMetaObjects
+public class DeltaBPlusTree<T extends Serializable> extends DeltaBPlusTree_Base {
+
+    public DeltaBPlusTree() {
+        super();
+    }
+
+    @Override
+    protected void initRoot() {
+        this.setRoot(new DeltaLeafNode());
+    }
+}
@@ -0,0 +1,95 @@
+package pt.ist.fenixframework.adt.bplustree;
+
+import java.io.Serializable;
+
+import pt.ist.fenixframework.NoDomainMetaObjects;
+
+/**
+ * {@link LeafNode} that stores its entries as a base snapshot plus a delta with the changes made since the snapshot was
+ * taken. An update to the node writes only the delta, which is much smaller than the whole node. When the delta grows beyond
+ * {@link #MAX_DELTA_SIZE} entries, it is compacted: the current entries become the new base, and the delta is emptied.
+ * 
+ * The delta is always computed against the base, so it never holds more than one entry per changed key.
+ * 
+ * @see DeltaBPlusTree
+ */
+@NoDomainMetaObjects
+public class DeltaLeafNode extends DeltaLeafNode_Base {
+
+    /** The number of changed keys that the delta may hold before the node is compacted */
+    static final int MAX_DELTA_SIZE = BPlusTree.LOWER_BOUND / 4;
+
+    // The entries computed from the last base and delta that were read, so that reading the same versions again does not
+    // merge them again.  The base and delta are immutable, so they are compared by identity.
+    private volatile MergedEntries merged;
+
+    public DeltaLeafNode() {
+        super();
+        setEntries(SortedEntries.<Serializable> empty());
+    }
+
+    private DeltaLeafNode(SortedEntries<Serializable> entries) {
+        super();
+        setEntries(entries);
+    }
+
+    // each constructor sets the entries itself, so that the base and the delta are written only once
+    @Override
+    protected void initEntries() {
+    }
+
+    /*
+     * Overriden entries getter and setter.
+     * This allows the {@link LeafNode} to keep working on the whole entries, while only the changes are written.
+     */
+
+    @Override
+    public SortedEntries<? extends Serializable> getEntries() {
+        SortedEntries<Serializable> base = (SortedEntries<Serializable>) getBaseEntries();
+        SortedEntries<Serializable> delta = (SortedEntries<Serializable>) getEntriesDelta();
+
+        MergedEntries current = this.merged;
+        if (current == null || current.base != base || current.delta != delta) {
+            current = new MergedEntries(base, delta);
+            this.merged = current;
+        }
+        return current.entries;
+    }
+
+    @Override
+    public void setEntries(SortedEntries<? extends Serializable> entries) {
+        SortedEntries<Serializable> base = (SortedEntries<Serializable>) getBaseEntries();
+        if (base != null) {
+            SortedEntries<Serializable> delta = ((SortedEntries<Serializable>) entries).deltaFrom(base);
+            if (delta.size() <= MAX_DELTA_SIZE) {
+                setEntriesDelta(delta);
+                return;
+            }
+        }
+
+        // compact
+        setBaseEntries(entries);
+        setEntriesDelta(SortedEntries.<Serializable> empty());
+    }
+
+    /*
+     * Node instantiators.
+     */
+
+    @Override
+    protected LeafNode createNodeWithEntries(SortedEntries<Serializable> entries) {
+        return new DeltaLeafNode(entries);
+    }
+
+    private static final class MergedEntries {
+        private final SortedEntries<Serializable> base;
+        private final SortedEntries<Serializable> delta;
+        private final SortedEntries<Serializable> entries;
+
+        MergedEntries(SortedEntries<Serializable> base, SortedEntries<Serializable> delta) {
+            this.base = base;
+            this.delta = delta;
+            this.entries = base.applyDelta(delta);
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package pt.ist.fenixframework.adt.bplustree;
 
 import java.io.Serializable;
+import java.util.Collection;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 import pt.ist.fenixframework.NoDomainMetaObjects;
 import pt.ist.fenixframework.core.AbstractDomainObject;
@@ -56,4 +59,24 @@ public class DomainBPlusTree<T extends AbstractDomainObject> extends DomainBPlus
         throw new UnsupportedOperationException("DomainBPlusTree can only store AbstractDomainObjects indexed using their OID.");
     }
 
+    /**
+     * Inserts all the given {@link AbstractDomainObject}s, which need not be sorted. If the tree is empty, it is built
+     * bottom-up, as described in {@link #bulkLoad(Iterable)}. Repeated objects are inserted only once.
+     */
+    public void bulkLoadDomainObjects(Collection<? extends AbstractDomainObject> domainObjects) {
+        SortedMap<Comparable, AbstractDomainObject> entries = new TreeMap<Comparable, AbstractDomainObject>();
+        for (AbstractDomainObject domainObject : domainObjects) {
+            entries.put(domainObject.getOid(), domainObject);
+        }
+        super.bulkLoad(entries);
+    }
+
+    @Override
+    protected void checkBulkLoadEntry(Comparable key, Serializable value) {
+        if (!(value instanceof AbstractDomainObject) || !((AbstractDomainObject) value).getOid().equals(key)) {
+            throw new UnsupportedOperationException(
+                    "DomainBPlusTree can only store AbstractDomainObjects indexed using their OID.");
+        }
+    }
+
 }
@@ -1,7 +1,9 @@
 package pt.ist.fenixframework.adt.bplustree;
 
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map.Entry;
-import java.util.TreeMap;
 
 import pt.ist.fenixframework.FenixFramework;
 import pt.ist.fenixframework.NoDomainMetaObjects;
@@ -34,7 +36,7 @@ public class DomainInnerNode extends DomainInnerNode_Base {
         init(leftNode, rightNode, splitKey);
     }
 
-    private DomainInnerNode(TreeMap<Comparable, AbstractNode> subNodes) {
+    DomainInnerNode(SortedEntries<AbstractNode> subNodes) {
         init(subNodes);
     }
 
@@ -45,12 +47,12 @@ public class DomainInnerNode extends DomainInnerNode_Base {
      */
 
     @Override
-    public TreeMap<Comparable, AbstractNode> getSubNodes() {
+    public SortedEntries<AbstractNode> getSubNodes() {
         return getSubNodesByOid();
     }
 
     @Override
-    public void setSubNodes(TreeMap<Comparable, AbstractNode> subNodes) {
+    public void setSubNodes(SortedEntries<AbstractNode> subNodes) {
         setSubNodesByOid(subNodes);
     }
 
@@ -67,7 +69,7 @@ public class DomainInnerNode extends DomainInnerNode_Base {
     }
 
     @Override
-    protected InnerNode createNodeWithSubNodes(TreeMap<Comparable, AbstractNode> subNodes) {
+    protected InnerNode createNodeWithSubNodes(SortedEntries<AbstractNode> subNodes) {
         return new DomainInnerNode(subNodes);
     }
 
@@ -82,29 +84,29 @@ public class DomainInnerNode extends DomainInnerNode_Base {
     private static final JsonParser parser = new JsonParser();
 
     /**
-     * Serializes the given map to a JSON object containing a mapping between the
+     * Serializes the given entries to a JSON object containing a mapping between the
      * External Ids of the Key and Value objects.
      * 
      * Uses {@link BPlusTree.LAST_KEY_REPRESENTATION} as a well-known value to
      * represent the Last Key.
      * 
-     * @param map
-     *            Map to serialize. Must be in the form [Oid, AbstractNode]
+     * @param entries
+     *            Entries to serialize. Must be in the form [Oid, AbstractNode]
      * @return
      *         A JSON Object containing the mapping
      */
-    public static String externalizeOidIndexedMap(TreeMap map) {
+    public static String externalizeOidIndexedEntries(SortedEntries entries) {
         BackEnd backend = FenixFramework.getConfig().getBackEnd();
         JsonObject jsonObject = new JsonObject();
-        for (Object obj : map.entrySet()) {
-            Entry<Comparable, AbstractNode> entry = (Entry<Comparable, AbstractNode>) obj;
+        for (int i = 0; i < entries.size(); i++) {
+            Comparable oid = entries.keyAt(i);
             String key;
-            if (entry.getKey().equals(BPlusTree.LAST_KEY)) {
+            if (oid.equals(BPlusTree.LAST_KEY)) {
                 key = BPlusTree.LAST_KEY.toString();
             } else {
-                key = backend.fromOid(entry.getKey()).getExternalId();
+                key = backend.fromOid(oid).getExternalId();
             }
-            jsonObject.add(key, new JsonPrimitive(entry.getValue().getExternalId()));
+            jsonObject.add(key, new JsonPrimitive(((AbstractNode) entries.valueAt(i)).getExternalId()));
         }
         return jsonObject.toString();
     }
@@ -112,14 +114,15 @@ public class DomainInnerNode extends DomainInnerNode_Base {
     /**
      * Internalizes the given JSON object.
      * 
-     * @param externalizedMap
-     *            A JSON array returned by {@code externalizeOidIndexedMap}
+     * @param externalizedEntries
+     *            A JSON array returned by {@code externalizeOidIndexedEntries}
      * @return
-     *         A TreeMap containing pairs [Oid, AbstractNode]
+     *         The entries containing pairs [Oid, AbstractNode]
      */
-    public static TreeMap internalizeOidIndexedMap(String externalizedMap) {
-        TreeMap map = new TreeMap(BPlusTree.COMPARATOR_SUPPORTING_LAST_KEY);
-        JsonObject object = parser.parse(externalizedMap).getAsJsonObject();
+    public static SortedEntries internalizeOidIndexedEntries(String externalizedEntries) {
+        List<Comparable> keys = new ArrayList<Comparable>();
+        List<AbstractNode> values = new ArrayList<AbstractNode>();
+        JsonObject object = parser.parse(externalizedEntries).getAsJsonObject();
         for (Entry<String, JsonElement> entry : object.entrySet()) {
             Comparable key;
             if (entry.getKey().equals(BPlusTree.LAST_KEY.toString())) {
@@ -128,9 +131,11 @@ public class DomainInnerNode extends DomainInnerNode_Base {
                 key = FenixFramework.<AbstractDomainObject> getDomainObject(entry.getKey()).getOid();
             }
             AbstractNode value = FenixFramework.getDomainObject(entry.getValue().getAsString());
-            map.put(key, value);
+            keys.add(key);
+            values.add(value);
         }
-        return map;
+        return SortedEntries.fromArrays(keys.toArray(new Comparable[keys.size()]),
+                values.toArray(new Serializable[values.size()]));
     }
 
 }
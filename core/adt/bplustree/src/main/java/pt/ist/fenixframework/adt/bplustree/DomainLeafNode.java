@@ -1,7 +1,6 @@
 package pt.ist.fenixframework.adt.bplustree;
 
 import java.io.Serializable;
-import java.util.TreeMap;
 
 import pt.ist.fenixframework.DomainObject;
 import pt.ist.fenixframework.FenixFramework;
@@ -39,7 +38,7 @@ public class DomainLeafNode extends DomainLeafNode_Base {
      * 
      * @see LeafNode
      */
-    private DomainLeafNode(TreeMap<Comparable, Serializable> entries) {
+    private DomainLeafNode(SortedEntries<Serializable> entries) {
         setEntries(entries);
     }
 
@@ -50,13 +49,13 @@ public class DomainLeafNode extends DomainLeafNode_Base {
      */
 
     @Override
-    public TreeMap<Comparable, ? extends Serializable> getEntries() {
+    public SortedEntries<? extends Serializable> getEntries() {
         return getDomainEntries();
     }
 
     @Override
-    public void setEntries(TreeMap<Comparable, ? extends Serializable> entries) {
-        setDomainEntries((TreeMap<Comparable, AbstractDomainObject>) entries);
+    public void setEntries(SortedEntries<? extends Serializable> entries) {
+        setDomainEntries((SortedEntries<AbstractDomainObject>) entries);
     }
 
     /*
@@ -67,7 +66,7 @@ public class DomainLeafNode extends DomainLeafNode_Base {
      */
 
     @Override
-    protected LeafNode createNodeWithEntries(TreeMap<Comparable, Serializable> entries) {
+    protected LeafNode createNodeWithEntries(SortedEntries<Serializable> entries) {
         return new DomainLeafNode(entries);
     }
 
@@ -76,6 +75,11 @@ public class DomainLeafNode extends DomainLeafNode_Base {
         return new DomainInnerNode(leftNode, rightNode, splitKey);
     }
 
+    @Override
+    protected InnerNode createInnerNodeWithSubNodes(SortedEntries<AbstractNode> subNodes) {
+        return new DomainInnerNode(subNodes);
+    }
+
     /*
      * Serialization code
      */
@@ -87,17 +91,17 @@ public class DomainLeafNode extends DomainLeafNode_Base {
     private static final JsonParser parser = new JsonParser();
 
     /**
-     * Serializes the given map to a JSON array containing the ExternalId of
+     * Serializes the given entries to a JSON array containing the ExternalId of
      * the values.
      * 
-     * @param map
-     *            Map to serialize. Must be in the form [Oid, DomainObject]
+     * @param entries
+     *            Entries to serialize. Must be in the form [Oid, DomainObject]
      * @return
      *         A JSON array containing the External Ids
      */
-    public static String externalizeDomainObjectMap(TreeMap map) {
+    public static String externalizeDomainObjectEntries(SortedEntries entries) {
         JsonArray array = new JsonArray();
-        for (Object obj : map.values()) {
+        for (Object obj : entries.values()) {
             DomainObject domainObject = (DomainObject) obj;
             array.add(new JsonPrimitive(domainObject.getExternalId()));
         }
@@ -107,18 +111,22 @@ public class DomainLeafNode extends DomainLeafNode_Base {
     /**
      * Internalizes the given JSON array.
      * 
-     * @param externalizedMap
-     *            A JSON array returned by {@code externalizeDomainObjectMap}
+     * @param externalizedEntries
+     *            A JSON array returned by {@code externalizeDomainObjectEntries}
      * @return
-     *         A TreeMap containing pairs [Oid, DomainObject]
+     *         The entries containing pairs [Oid, DomainObject]
      */
-    public static TreeMap internalizeDomainObjectMap(String externalizedMap) {
-        TreeMap map = new TreeMap();
-        JsonArray array = parser.parse(externalizedMap).getAsJsonArray();
+    public static SortedEntries internalizeDomainObjectEntries(String externalizedEntries) {
+        JsonArray array = parser.parse(externalizedEntries).getAsJsonArray();
+        Comparable[] keys = new Comparable[array.size()];
+        Serializable[] values = new Serializable[array.size()];
+        int i = 0;
         for (JsonElement element : array) {
             AbstractDomainObject ado = FenixFramework.getDomainObject(element.getAsString());
-            map.put(ado.getOid(), ado);
+            keys[i] = ado.getOid();
+            values[i] = ado;
+            i++;
         }
-        return map;
+        return SortedEntries.fromArrays(keys, values);
     }
 }
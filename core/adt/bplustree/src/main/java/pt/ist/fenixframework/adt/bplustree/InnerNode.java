@@ -5,7 +5,6 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.Map;
-import java.util.TreeMap;
 
 import pt.ist.fenixframework.NoDomainMetaObjects;
 
@@ -27,7 +26,7 @@ public class InnerNode extends InnerNode_Base {
         init(leftNode, rightNode, splitKey);
     }
 
-    private InnerNode(TreeMap<Comparable, AbstractNode> subNodes) {
+    InnerNode(SortedEntries<AbstractNode> subNodes) {
         init(subNodes);
     }
 
@@ -37,20 +36,15 @@ public class InnerNode extends InnerNode_Base {
      */
 
     protected void init(AbstractNode leftNode, AbstractNode rightNode, Comparable splitKey) {
-        TreeMap<Comparable, AbstractNode> newMap =
-                new TreeMap<Comparable, AbstractNode>(BPlusTree.COMPARATOR_SUPPORTING_LAST_KEY);
-        newMap.put(splitKey, leftNode);
-        newMap.put(BPlusTree.LAST_KEY, rightNode);
-
-        setSubNodes(newMap);
+        setSubNodes(new SortedEntries<AbstractNode>(splitKey, leftNode, BPlusTree.LAST_KEY, rightNode));
         leftNode.setParent(this);
         rightNode.setParent(this);
     }
 
-    protected void init(TreeMap<Comparable, AbstractNode> subNodes) {
+    protected void init(SortedEntries<AbstractNode> subNodes) {
         setSubNodes(subNodes);
-        for (AbstractNode subNode : subNodes.values()) { // smf: either don't do this or don't setParent when making new
-            subNode.setParent(this);
+        for (int i = 0; i < subNodes.size(); i++) { // smf: either don't do this or don't setParent when making new
+            subNodes.valueAt(i).setParent(this);
         }
     }
 
@@ -62,14 +56,10 @@ public class InnerNode extends InnerNode_Base {
         return new InnerNode(leftNode, rightNode, splitKey);
     }
 
-    protected InnerNode createNodeWithSubNodes(TreeMap<Comparable, AbstractNode> subNodes) {
+    protected InnerNode createNodeWithSubNodes(SortedEntries<AbstractNode> subNodes) {
         return new InnerNode(subNodes);
     }
 
-    private TreeMap<Comparable, AbstractNode> duplicateMap() {
-        return new TreeMap<Comparable, AbstractNode>(getSubNodes());
-    }
-
     @Override
     public AbstractNode insert(Comparable key, Serializable value) {
         return findSubNode(key).insert(key, value);
@@ -78,28 +68,23 @@ public class InnerNode extends InnerNode_Base {
     // this method is invoked when a node in the next depth level got full, it
     // was split and now needs to pass a new key to its parent (this)
     AbstractNode rebase(AbstractNode subLeftNode, AbstractNode subRightNode, Comparable middleKey) {
-        TreeMap<Comparable, AbstractNode> newMap = justInsertUpdatingParentRelation(middleKey, subLeftNode, subRightNode);
-        if (newMap.size() <= BPlusTree.MAX_NUMBER_OF_ELEMENTS) { // this node can accommodate the new split
+        SortedEntries<AbstractNode> newSubNodes = justInsertUpdatingParentRelation(middleKey, subLeftNode, subRightNode);
+        if (newSubNodes.size() <= BPlusTree.MAX_NUMBER_OF_ELEMENTS) { // this node can accommodate the new split
             return getRoot();
         } else { // must split this node
             // find middle position (key to move up amd sub-node to move left)
-            Iterator<Map.Entry<Comparable, AbstractNode>> entriesIterator = newMap.entrySet().iterator();
-            for (int i = 0; i < BPlusTree.LOWER_BOUND; i++) {
-                entriesIterator.next();
-            }
-            Map.Entry<Comparable, AbstractNode> splitEntry = entriesIterator.next();
-            Comparable keyToSplit = splitEntry.getKey();
-            AbstractNode subNodeToMoveLeft = splitEntry.getValue();
-            Comparable nextKey = entriesIterator.next().getKey();
+            int splitIndex = BPlusTree.LOWER_BOUND;
+            Comparable keyToSplit = newSubNodes.keyAt(splitIndex);
+            AbstractNode subNodeToMoveLeft = newSubNodes.valueAt(splitIndex);
 
             // Split node in two.  Notice that the 'keyToSplit' is left out of
             // this level.  It will be moved up.
-            TreeMap<Comparable, AbstractNode> leftSubNodes = new TreeMap<Comparable, AbstractNode>(newMap.headMap(keyToSplit));
-            leftSubNodes.put(BPlusTree.LAST_KEY, subNodeToMoveLeft);
+            SortedEntries<AbstractNode> leftSubNodes =
+                    newSubNodes.headSlice(splitIndex + 1).replaceKeyAt(splitIndex, BPlusTree.LAST_KEY);
             InnerNode leftNode = createNodeWithSubNodes(leftSubNodes);
             subNodeToMoveLeft.setParent(leftNode); // smf: maybe it is not necessary because of the code in the constructor
 
-            InnerNode rightNode = createNodeWithSubNodes(new TreeMap<Comparable, AbstractNode>(newMap.tailMap(nextKey)));
+            InnerNode rightNode = createNodeWithSubNodes(newSubNodes.tailSlice(splitIndex + 1));
 
             // propagate split to parent
             if (this.getParent() == null) {
@@ -111,23 +96,23 @@ public class InnerNode extends InnerNode_Base {
         }
     }
 
-    private TreeMap<Comparable, AbstractNode> justInsert(Comparable middleKey, AbstractNode subLeftNode, AbstractNode subRightNode) {
-        TreeMap<Comparable, AbstractNode> newMap = duplicateMap();
+    private SortedEntries<AbstractNode> justInsert(Comparable middleKey, AbstractNode subLeftNode, AbstractNode subRightNode) {
+        SortedEntries<AbstractNode> localSubNodes = getSubNodes();
 
-        // find smallest key greater than middleKey
-        Comparable keyJustAfterMiddleKey = newMap.higherKey(middleKey);
-        newMap.put(keyJustAfterMiddleKey, subRightNode); // this replaces the previous mapping
-        newMap.put(middleKey, subLeftNode); // this adds the new split
-        setSubNodes(newMap);
-        return newMap;
+        // the smallest key greater than middleKey now maps to subRightNode, and the new split goes just before it
+        int keyJustAfterMiddleKey = localSubNodes.higherIndex(middleKey);
+        SortedEntries<AbstractNode> newSubNodes =
+                localSubNodes.insertSplitAt(keyJustAfterMiddleKey, middleKey, subLeftNode, subRightNode);
+        setSubNodes(newSubNodes);
+        return newSubNodes;
     }
 
-    private TreeMap<Comparable, AbstractNode> justInsertUpdatingParentRelation(Comparable middleKey, AbstractNode subLeftNode,
+    private SortedEntries<AbstractNode> justInsertUpdatingParentRelation(Comparable middleKey, AbstractNode subLeftNode,
             AbstractNode subRightNode) {
-        TreeMap<Comparable, AbstractNode> newMap = justInsert(middleKey, subLeftNode, subRightNode);
+        SortedEntries<AbstractNode> newSubNodes = justInsert(middleKey, subLeftNode, subRightNode);
         subLeftNode.setParent(this);
         subRightNode.setParent(this);
-        return newMap;
+        return newSubNodes;
     }
 
     @Override
@@ -145,9 +130,9 @@ public class InnerNode extends InnerNode_Base {
     }
 
     AbstractNode replaceDeletedKey(Comparable deletedKey, Comparable replacementKey) {
-        AbstractNode subNode = this.getSubNodes().get(deletedKey);
-        if (subNode != null) { // found the key a this level
-            return replaceDeletedKey(deletedKey, replacementKey, subNode);
+        int index = getSubNodes().indexOf(deletedKey);
+        if (index >= 0) { // found the key a this level
+            return replaceDeletedKey(index, replacementKey);
         } else if (this.getParent() != null) {
             return this.getParent().replaceDeletedKey(deletedKey, replacementKey);
         } else {
@@ -155,12 +140,9 @@ public class InnerNode extends InnerNode_Base {
         }
     }
 
-    // replaces the key for the given sub-node.  The deletedKey is expected to exist in this node
-    private AbstractNode replaceDeletedKey(Comparable deletedKey, Comparable replacementKey, AbstractNode subNode) {
-        TreeMap<Comparable, AbstractNode> newMap = duplicateMap();
-        newMap.remove(deletedKey);
-        newMap.put(replacementKey, subNode);
-        setSubNodes(newMap);
+    // replaces the key at the given position, keeping its sub-node
+    private AbstractNode replaceDeletedKey(int index, Comparable replacementKey) {
+        setSubNodes(getSubNodes().replaceKeyAt(index, replacementKey));
         return getRoot();
     }
 
@@ -172,17 +154,13 @@ public class InnerNode extends InnerNode_Base {
     // replaced. Corollary: the deleted key was not the first key in its leaf
     // node
     AbstractNode underflowFromLeaf(Comparable deletedKey, Comparable replacementKey) {
-        Iterator<Map.Entry<Comparable, AbstractNode>> it = this.getSubNodes().entrySet().iterator();
-        Map.Entry<Comparable, AbstractNode> previousEntry = null;
-        Map.Entry<Comparable, AbstractNode> entry = it.next();
-        Map.Entry<Comparable, AbstractNode> nextEntry = null;;
+        SortedEntries<AbstractNode> localSubNodes = getSubNodes();
 
         // first, identify the deletion point
-        while (BPlusTree.COMPARATOR_SUPPORTING_LAST_KEY.compare(entry.getKey(), deletedKey) <= 0) {
-            previousEntry = entry;
-            entry = it.next();
-        }
-        // Now, the value() of 'entry' holds the child where the deletion occurred.
+        int index = localSubNodes.higherIndex(deletedKey);
+        int previous = index - 1;
+        int next = index + 1;
+        // Now, the value at 'index' holds the child where the deletion occurred.
 
         /*
          * Decide whether to shift or merge, and whether to use the left
@@ -192,26 +170,26 @@ public class InnerNode extends InnerNode_Base {
          * (namely when the key was deleted from the left side of a node
          * AND that side was not changed by a merge/move with/from the left.
          */
-        if (previousEntry == null) { // the deletedKey was removed from the first sub-node
-            nextEntry = it.next(); // always exists because of LAST_KEY
-            if (nextEntry.getValue().shallowSize() == BPlusTree.LOWER_BOUND) { // can we merge with the right?
-                rightLeafMerge(entry, nextEntry);
+        if (previous < 0) { // the deletedKey was removed from the first sub-node
+            // the next always exists because of LAST_KEY
+            if (localSubNodes.valueAt(next).shallowSize() == BPlusTree.LOWER_BOUND) { // can we merge with the right?
+                rightLeafMerge(index, next);
             } else { // cannot merge with the right. We have to move an element from the right to here
-                moveChildFromRightToLeft(entry, nextEntry);
+                moveChildFromRightToLeft(index, next);
             }
             if (replacementKey != null && this.getParent() != null) { // the deletedKey occurs somewhere atop only
                 this.getParent().replaceDeletedKey(deletedKey, replacementKey);
             }
-        } else if (previousEntry.getValue().shallowSize() == BPlusTree.LOWER_BOUND) { // can we merge with the left?
-            leftLeafMerge(previousEntry, entry);
+        } else if (localSubNodes.valueAt(previous).shallowSize() == BPlusTree.LOWER_BOUND) { // can we merge with the left?
+            leftLeafMerge(previous, index);
         } else {  // cannot merge with the left
-            if (!it.hasNext() || (nextEntry = it.next()).getValue().shallowSize() > BPlusTree.LOWER_BOUND) { // caution: tricky test!!
+            if (next == localSubNodes.size() || localSubNodes.valueAt(next).shallowSize() > BPlusTree.LOWER_BOUND) { // caution: tricky test!!
                 // either there is no next or the next is above the lower bound
-                moveChildFromLeftToRight(previousEntry, entry);
+                moveChildFromLeftToRight(previous, index);
             } else {
-                rightLeafMerge(entry, nextEntry);
+                rightLeafMerge(index, next);
                 if (replacementKey != null) { // the deletedKey occurs anywhere (or at this level ONLY?)
-                    this.replaceDeletedKey(deletedKey, replacementKey, previousEntry.getValue());
+                    this.replaceDeletedKey(deletedKey, replacementKey);
                 }
             }
         }
@@ -219,7 +197,7 @@ public class InnerNode extends InnerNode_Base {
     }
 
     private AbstractNode checkForUnderflow() {
-        TreeMap<Comparable, AbstractNode> localSubNodes = this.getSubNodes();
+        SortedEntries<AbstractNode> localSubNodes = getSubNodes();
 
         // Now, just check for underflow in this node.   The LAST_KEY is fake, so it does not count for the total.
         if (localSubNodes.size() < BPlusTree.LOWER_BOUND_WITH_LAST_KEY) {
@@ -227,7 +205,7 @@ public class InnerNode extends InnerNode_Base {
             if (localSubNodes.size() == 1) { // This only occurs in the root node
                 // (size == 1) => (parent == null), but NOT the inverse
                 assert (this.getParent() == null);
-                AbstractNode child = localSubNodes.firstEntry().getValue();
+                AbstractNode child = localSubNodes.valueAt(0);
                 child.setParent(null);
                 return child;
             } else if (this.getParent() != null) {
@@ -237,72 +215,61 @@ public class InnerNode extends InnerNode_Base {
         return getRoot();
     }
 
-    private void rightLeafMerge(Map.Entry<Comparable, AbstractNode> entry, Map.Entry<Comparable, AbstractNode> nextEntry) {
-        leftLeafMerge(entry, nextEntry);
+    private void rightLeafMerge(int index, int next) {
+        leftLeafMerge(index, next);
     }
 
-    private void leftLeafMerge(Map.Entry<Comparable, AbstractNode> previousEntry, Map.Entry<Comparable, AbstractNode> entry) {
-        entry.getValue().mergeWithLeftNode(previousEntry.getValue(), null);
+    private void leftLeafMerge(int previous, int index) {
+        SortedEntries<AbstractNode> localSubNodes = getSubNodes();
+        localSubNodes.valueAt(index).mergeWithLeftNode(localSubNodes.valueAt(previous), null);
         // remove the superfluous node
-        TreeMap<Comparable, AbstractNode> newMap = duplicateMap();
-        newMap.remove(previousEntry.getKey());
-        setSubNodes(newMap);
+        setSubNodes(localSubNodes.removeAt(previous));
     }
 
     @Override
     void mergeWithLeftNode(AbstractNode leftNode, Comparable splitKey) {
         InnerNode left = (InnerNode) leftNode;  // this node does not know how to merge with another kind
 
-        TreeMap<Comparable, AbstractNode> newMap = duplicateMap();
-        TreeMap<Comparable, AbstractNode> newLeftSubNodes = left.duplicateMap();
+        SortedEntries<AbstractNode> localSubNodes = getSubNodes();
+        SortedEntries<AbstractNode> leftSubNodes = left.getSubNodes();
 
         // change the parent of all the left sub-nodes
-        InnerNode uncle = newMap.get(BPlusTree.LAST_KEY).getParent();
-        for (AbstractNode leftSubNode : newLeftSubNodes.values()) {
+        InnerNode uncle = localSubNodes.valueAt(localSubNodes.size() - 1).getParent();
+        for (AbstractNode leftSubNode : leftSubNodes.values()) {
             leftSubNode.setParent(uncle);
         }
 
-        // remove the entry for left's LAST_KEY
-        Map.Entry<Comparable, AbstractNode> higherLeftValue = newLeftSubNodes.pollLastEntry();
+        // the higher left value, which was under the left's LAST_KEY, becomes associated with the split-key
+        leftSubNodes = leftSubNodes.replaceKeyAt(leftSubNodes.size() - 1, splitKey);
 
-        // add the higher left value associated with the split-key
-        newMap.put(splitKey, higherLeftValue.getValue());
-
-        // merge the remaining left sub-nodes
-        newMap.putAll(newLeftSubNodes);
-        setSubNodes(newMap);
+        // merge the left sub-nodes
+        setSubNodes(localSubNodes.mergeWith(leftSubNodes));
     }
 
     // Get the rightmost key-value pair from the left sub-node and move it to the given sub-node.  Update the split key
-    private void moveChildFromLeftToRight(Map.Entry<Comparable, AbstractNode> leftEntry,
-            Map.Entry<Comparable, AbstractNode> rightEntry) {
-        AbstractNode leftSubNode = leftEntry.getValue();
+    private void moveChildFromLeftToRight(int left, int right) {
+        SortedEntries<AbstractNode> localSubNodes = getSubNodes();
+        AbstractNode leftSubNode = localSubNodes.valueAt(left);
 
         Map.Entry<Comparable, Serializable> leftBiggestKeyValue = leftSubNode.removeBiggestKeyValue();
-        rightEntry.getValue().addKeyValue(leftBiggestKeyValue);
+        localSubNodes.valueAt(right).addKeyValue(leftBiggestKeyValue);
 
         // update the split key to be the key we just moved
-        TreeMap<Comparable, AbstractNode> newMap = duplicateMap();
-        newMap.remove(leftEntry.getKey());
-        newMap.put(leftBiggestKeyValue.getKey(), leftSubNode);
-        setSubNodes(newMap);
+        setSubNodes(localSubNodes.replaceKeyAt(left, leftBiggestKeyValue.getKey()));
     }
 
     // Get the leftmost key-value pair from the right sub-node and move it to the given sub-node.  Update the split key
-    private void moveChildFromRightToLeft(Map.Entry<Comparable, AbstractNode> leftEntry,
-            Map.Entry<Comparable, AbstractNode> rightEntry) {
-        AbstractNode rightSubNode = rightEntry.getValue();
+    private void moveChildFromRightToLeft(int left, int right) {
+        SortedEntries<AbstractNode> localSubNodes = getSubNodes();
+        AbstractNode rightSubNode = localSubNodes.valueAt(right);
 
         Map.Entry<Comparable, Serializable> rightSmallestKeyValue = rightSubNode.removeSmallestKeyValue();
-        AbstractNode leftSubNode = leftEntry.getValue();
+        AbstractNode leftSubNode = localSubNodes.valueAt(left);
         leftSubNode.addKeyValue(rightSmallestKeyValue);
 
         // update the split key to be the key after the one we just moved
         Comparable rightNextSmallestKey = rightSubNode.getSmallestKey();
-        TreeMap<Comparable, AbstractNode> newMap = duplicateMap();
-        newMap.remove(leftEntry.getKey());
-        newMap.put(rightNextSmallestKey, leftSubNode);
-        setSubNodes(newMap);
+        setSubNodes(localSubNodes.replaceKeyAt(left, rightNextSmallestKey));
     }
 
     /*
@@ -310,111 +277,103 @@ public class InnerNode extends InnerNode_Base {
      */
 
     AbstractNode underflowFromInner(InnerNode deletedNode) {
-        Iterator<Map.Entry<Comparable, AbstractNode>> it = this.getSubNodes().entrySet().iterator();
-        Map.Entry<Comparable, AbstractNode> previousEntry = null;
-        Map.Entry<Comparable, AbstractNode> entry = null;
-        Map.Entry<Comparable, AbstractNode> nextEntry = null;;
+        SortedEntries<AbstractNode> localSubNodes = getSubNodes();
 
         // first, identify the deletion point
-        do {
-            previousEntry = entry;
-            entry = it.next();
-        } while (entry.getValue() != deletedNode);
-        // Now, the value() of 'entry' holds the child where the deletion occurred.
+        int index = 0;
+        while (localSubNodes.valueAt(index) != deletedNode) {
+            index++;
+        }
+        int previous = index - 1;
+        int next = index + 1;
+        // Now, the value at 'index' holds the child where the deletion occurred.
 
         /*
          * Decide whether to shift or merge, and whether to use the left
          * or the right sibling.  We prefer merging to shifting.
          */
-        if (previousEntry == null) { // the deletion occurred in the first sub-node
-            nextEntry = it.next(); // always exists because of LAST_KEY
-            if (nextEntry.getValue().shallowSize() == BPlusTree.LOWER_BOUND_WITH_LAST_KEY) { // can we merge with the right?
-                rightInnerMerge(entry, nextEntry);
+        if (previous < 0) { // the deletion occurred in the first sub-node
+            // the next always exists because of LAST_KEY
+            if (localSubNodes.valueAt(next).shallowSize() == BPlusTree.LOWER_BOUND_WITH_LAST_KEY) { // can we merge with the right?
+                rightInnerMerge(index, next);
             } else { // cannot merge with the right. We have to move an element from the right to here
-                rotateRightToLeft((Map.Entry) entry, (Map.Entry) nextEntry);
+                rotateRightToLeft(index, next);
             }
-        } else if (previousEntry.getValue().shallowSize() == BPlusTree.LOWER_BOUND_WITH_LAST_KEY) { // can we merge with the left?
-            leftInnerMerge(previousEntry, entry);
+        } else if (localSubNodes.valueAt(previous).shallowSize() == BPlusTree.LOWER_BOUND_WITH_LAST_KEY) { // can we merge with the left?
+            leftInnerMerge(previous, index);
         } else {  // cannot merge with the left
-            if (!it.hasNext() || (nextEntry = it.next()).getValue().shallowSize() > BPlusTree.LOWER_BOUND_WITH_LAST_KEY) { // caution: tricky test!!
+            if (next == localSubNodes.size()
+                    || localSubNodes.valueAt(next).shallowSize() > BPlusTree.LOWER_BOUND_WITH_LAST_KEY) { // caution: tricky test!!
                 // either there is no next or the next is above the lower bound
-                rotateLeftToRight((Map.Entry) previousEntry, (Map.Entry) entry);
+                rotateLeftToRight(previous, index);
             } else {
-                rightInnerMerge(entry, nextEntry);
+                rightInnerMerge(index, next);
             }
         }
 
         return checkForUnderflow();
     }
 
-    private void rightInnerMerge(Map.Entry<Comparable, AbstractNode> entry, Map.Entry<Comparable, AbstractNode> nextEntry) {
-        leftInnerMerge(entry, nextEntry);
+    private void rightInnerMerge(int index, int next) {
+        leftInnerMerge(index, next);
     }
 
-    private void leftInnerMerge(Map.Entry<Comparable, AbstractNode> previousEntry, Map.Entry<Comparable, AbstractNode> entry) {
-        Comparable splitKey = previousEntry.getKey();
-        entry.getValue().mergeWithLeftNode(previousEntry.getValue(), splitKey);
+    private void leftInnerMerge(int previous, int index) {
+        SortedEntries<AbstractNode> localSubNodes = getSubNodes();
+        Comparable splitKey = localSubNodes.keyAt(previous);
+        localSubNodes.valueAt(index).mergeWithLeftNode(localSubNodes.valueAt(previous), splitKey);
         // remove the superfluous node
-        TreeMap<Comparable, AbstractNode> newMap = duplicateMap();
-        newMap.remove(splitKey);
-        setSubNodes(newMap);
+        setSubNodes(localSubNodes.removeAt(previous));
     }
 
-    private void rotateLeftToRight(Map.Entry<Comparable, InnerNode> leftEntry, Map.Entry<Comparable, InnerNode> rightEntry) {
-        InnerNode leftSubNode = leftEntry.getValue();
-        InnerNode rightSubNode = rightEntry.getValue();
+    private void rotateLeftToRight(int left, int right) {
+        SortedEntries<AbstractNode> localSubNodes = getSubNodes();
+        Comparable splitKey = localSubNodes.keyAt(left);
+        InnerNode leftSubNode = (InnerNode) localSubNodes.valueAt(left);
+        InnerNode rightSubNode = (InnerNode) localSubNodes.valueAt(right);
 
-        TreeMap<Comparable, AbstractNode> newLeftSubNodeSubNodes = leftSubNode.duplicateMap();
-        TreeMap<Comparable, AbstractNode> newRightSubNodeSubNodes = rightSubNode.duplicateMap();
+        SortedEntries<AbstractNode> leftSubNodeSubNodes = leftSubNode.getSubNodes();
+        int leftLastIndex = leftSubNodeSubNodes.size() - 1;
 
-        Comparable leftHighestKey = newLeftSubNodeSubNodes.lowerKey(BPlusTree.LAST_KEY);
-        AbstractNode leftHighestValue = newLeftSubNodeSubNodes.get(BPlusTree.LAST_KEY);
+        Comparable leftHighestKey = leftSubNodeSubNodes.keyAt(leftLastIndex - 1);
+        AbstractNode leftHighestValue = leftSubNodeSubNodes.valueAt(leftLastIndex);
 
         // move the highest value from the left to the right.  Use the split-key as the index.
-        newRightSubNodeSubNodes.put(leftEntry.getKey(), leftHighestValue);
+        rightSubNode.setSubNodes(rightSubNode.getSubNodes().insertAt(0, splitKey, leftHighestValue));
         leftHighestValue.setParent(rightSubNode);
 
         // shift a new child to the last entry on the left
-        leftHighestValue = newLeftSubNodeSubNodes.remove(leftHighestKey);
-        newLeftSubNodeSubNodes.put(BPlusTree.LAST_KEY, leftHighestValue);
-
-        leftSubNode.setSubNodes(newLeftSubNodeSubNodes);
-        rightSubNode.setSubNodes(newRightSubNodeSubNodes);
+        leftSubNode.setSubNodes(leftSubNodeSubNodes.removeAt(leftLastIndex).replaceKeyAt(leftLastIndex - 1, BPlusTree.LAST_KEY));
 
         // update the split-key to be the key we just removed from the left
-        TreeMap<Comparable, AbstractNode> newMap = duplicateMap();
-        newMap.remove(leftEntry.getKey());
-        newMap.put(leftHighestKey, leftSubNode);
-        setSubNodes(newMap);
+        setSubNodes(localSubNodes.replaceKeyAt(left, leftHighestKey));
     }
 
-    private void rotateRightToLeft(Map.Entry<Comparable, InnerNode> leftEntry, Map.Entry<Comparable, InnerNode> rightEntry) {
-        InnerNode leftSubNode = leftEntry.getValue();
-        InnerNode rightSubNode = rightEntry.getValue();
+    private void rotateRightToLeft(int left, int right) {
+        SortedEntries<AbstractNode> localSubNodes = getSubNodes();
+        Comparable splitKey = localSubNodes.keyAt(left);
+        InnerNode leftSubNode = (InnerNode) localSubNodes.valueAt(left);
+        InnerNode rightSubNode = (InnerNode) localSubNodes.valueAt(right);
 
-        TreeMap<Comparable, AbstractNode> newLeftSubNodeSubNodes = leftSubNode.duplicateMap();
-        TreeMap<Comparable, AbstractNode> newRightSubNodeSubNodes = rightSubNode.duplicateMap();
+        SortedEntries<AbstractNode> leftSubNodeSubNodes = leftSubNode.getSubNodes();
+        SortedEntries<AbstractNode> rightSubNodeSubNodes = rightSubNode.getSubNodes();
 
         // re-index the left highest value under the split-key, which is moved down
-        AbstractNode leftHighestValue = newLeftSubNodeSubNodes.get(BPlusTree.LAST_KEY);
-        newLeftSubNodeSubNodes.put(leftEntry.getKey(), leftHighestValue);
+        leftSubNodeSubNodes = leftSubNodeSubNodes.replaceKeyAt(leftSubNodeSubNodes.size() - 1, splitKey);
 
         // remove right's lowest entry
-        Map.Entry<Comparable, AbstractNode> rightLowestEntry = newRightSubNodeSubNodes.pollFirstEntry();
+        Comparable rightLowestKey = rightSubNodeSubNodes.keyAt(0);
+        AbstractNode rightLowestValue = rightSubNodeSubNodes.valueAt(0);
 
         // set its value on the left
-        AbstractNode rightLowestValue = rightLowestEntry.getValue();
-        newLeftSubNodeSubNodes.put(BPlusTree.LAST_KEY, rightLowestValue);
+        leftSubNodeSubNodes = leftSubNodeSubNodes.insertAt(leftSubNodeSubNodes.size(), BPlusTree.LAST_KEY, rightLowestValue);
         rightLowestValue.setParent(leftSubNode);
 
-        leftSubNode.setSubNodes(newLeftSubNodeSubNodes);
-        rightSubNode.setSubNodes(newRightSubNodeSubNodes);
+        leftSubNode.setSubNodes(leftSubNodeSubNodes);
+        rightSubNode.setSubNodes(rightSubNodeSubNodes.removeAt(0));
 
         // update the split-key to be the key we just removed from the right
-        TreeMap<Comparable, AbstractNode> newMap = duplicateMap();
-        newMap.remove(leftEntry.getKey());
-        newMap.put(rightLowestEntry.getKey(), leftSubNode);
-        setSubNodes(newMap);
+        setSubNodes(localSubNodes.replaceKeyAt(left, rightLowestKey));
     }
 
     @Override
@@ -445,13 +404,13 @@ public class InnerNode extends InnerNode_Base {
     // travels to the leftmost leaf and goes from there;
     @Override
     public Serializable getIndex(int index) {
-        return this.getSubNodes().firstEntry().getValue().getIndex(index);
+        return this.getSubNodes().valueAt(0).getIndex(index);
     }
 
     // travels to the leftmost leaf and goes from there;
     @Override
     public AbstractNode removeIndex(int index) {
-        return this.getSubNodes().firstEntry().getValue().removeIndex(index);
+        return this.getSubNodes().valueAt(0).removeIndex(index);
     }
 
     @Override
@@ -460,13 +419,13 @@ public class InnerNode extends InnerNode_Base {
     }
 
     private AbstractNode findSubNode(Comparable key) {
-        for (Map.Entry<Comparable, AbstractNode> subNode : this.getSubNodes().entrySet()) {
-            Comparable splitKey = subNode.getKey();
-            if (BPlusTree.COMPARATOR_SUPPORTING_LAST_KEY.compare(splitKey, key) > 0) { // this will eventually be true because the LAST_KEY is greater than all
-                return subNode.getValue();
-            }
+        SortedEntries<AbstractNode> localSubNodes = this.getSubNodes();
+        // the first split key greater than the key.  There is always one, because the LAST_KEY is greater than all
+        int index = localSubNodes.higherIndex(key);
+        if (index == localSubNodes.size()) {
+            throw new RuntimeException("findSubNode() didn't find a suitable sub-node!?");
         }
-        throw new RuntimeException("findSubNode() didn't find a suitable sub-node!?");
+        return localSubNodes.valueAt(index);
     }
 
     @Override
@@ -483,14 +442,30 @@ public class InnerNode extends InnerNode_Base {
         return total;
     }
 
+    @Override
+    LeafNode findLeaf(Comparable key) {
+        return findSubNode(key).findLeaf(key);
+    }
+
+    @Override
+    LeafNode firstLeaf() {
+        return this.getSubNodes().valueAt(0).firstLeaf();
+    }
+
+    @Override
+    LeafNode lastLeaf() {
+        SortedEntries<AbstractNode> localSubNodes = this.getSubNodes();
+        return localSubNodes.valueAt(localSubNodes.size() - 1).lastLeaf();
+    }
+
     @Override
     Iterator<? extends Comparable> keysIterator() {
-        return this.getSubNodes().firstEntry().getValue().keysIterator();
+        return this.getSubNodes().valueAt(0).keysIterator();
     }
 
     @Override
     public Iterator iterator() {
-        return this.getSubNodes().firstEntry().getValue().iterator();
+        return this.getSubNodes().valueAt(0).iterator();
     }
 
     @Override
@@ -500,9 +475,10 @@ public class InnerNode extends InnerNode_Base {
         str.append(spaces);
         str.append("[" + (dumpNodeIds ? this : "") + ": ");
 
-        for (Map.Entry<Comparable, AbstractNode> entry : this.getSubNodes().entrySet()) {
-            Comparable key = entry.getKey();
-            AbstractNode value = entry.getValue();
+        SortedEntries<AbstractNode> localSubNodes = this.getSubNodes();
+        for (int i = 0; i < localSubNodes.size(); i++) {
+            Comparable key = localSubNodes.keyAt(i);
+            AbstractNode value = localSubNodes.valueAt(i);
             str.append("\n");
             str.append(value.dump(level + 4, dumpKeysOnly, dumpNodeIds));
             str.append(spaces);
@@ -22,7 +22,7 @@ public class InnerNodeArray extends InnerNodeArray_Base {
         rightNode.setParent(this);
     }
 
-    private InnerNodeArray(DoubleArray<AbstractNodeArray> subNodes) {
+    InnerNodeArray(DoubleArray<AbstractNodeArray> subNodes) {
         setSubNodes(subNodes);
         for (int i = 0; i < subNodes.length(); i++) { // smf: either don't do this or don't setParent when making new
             subNodes.values[i].setParent(this);
@@ -409,6 +409,21 @@ public class InnerNodeArray extends InnerNodeArray_Base {
         return total;
     }
 
+    @Override
+    LeafNodeArray findLeaf(Comparable key) {
+        return findSubNode(key).findLeaf(key);
+    }
+
+    @Override
+    LeafNodeArray firstLeaf() {
+        return this.getSubNodes().firstValue().firstLeaf();
+    }
+
+    @Override
+    LeafNodeArray lastLeaf() {
+        return this.getSubNodes().lastValue().lastLeaf();
+    }
+
     @Override
     public Iterator iterator() {
         return this.getSubNodes().firstValue().iterator();
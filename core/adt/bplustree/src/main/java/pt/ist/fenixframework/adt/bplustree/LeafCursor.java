@@ -0,0 +1,178 @@
+package pt.ist.fenixframework.adt.bplustree;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.NoSuchElementException;
+
+import pt.ist.fenixframework.dml.runtime.SortedDomainBasedMap.Cursor;
+
+/**
+ * A {@link Cursor} over the linked leaves of a B+Tree. It descends the tree only to position itself, and from there on it
+ * follows the leaves' next (or previous) links, so a range of <code>k</code> elements costs <code>O(log n + k)</code>.
+ *
+ * The entries of the current leaf are read once, when the cursor enters the leaf.
+ *
+ * @param <L> The type of the leaf nodes
+ */
+@SuppressWarnings({ "unchecked", "rawtypes" })
+abstract class LeafCursor<T extends Serializable, L> implements Cursor<T> {
+
+    private final Comparator comparator;
+    private final Comparable lowKey;
+    private final boolean lowInclusive;
+    private final Comparable highKey;
+    private final boolean highInclusive;
+    private final boolean descending;
+
+    private L leaf;
+    private Comparable[] keys;
+    private Serializable[] values;
+    // the position, in the current leaf, of the next candidate element
+    private int index;
+    private Comparable lastKey;
+    private boolean started = false;
+
+    LeafCursor(Comparator comparator, Comparable lowKey, boolean lowInclusive, Comparable highKey, boolean highInclusive,
+            boolean descending) {
+        this.comparator = comparator;
+        this.lowKey = lowKey;
+        this.lowInclusive = lowInclusive;
+        this.highKey = highKey;
+        this.highInclusive = highInclusive;
+        this.descending = descending;
+    }
+
+    /* Navigation in the tree */
+
+    /** The leaf that contains, or would contain, the given key */
+    protected abstract L findLeaf(Comparable key);
+
+    protected abstract L firstLeaf();
+
+    protected abstract L lastLeaf();
+
+    protected abstract L nextLeaf(L leaf);
+
+    protected abstract L previousLeaf(L leaf);
+
+    protected abstract Comparable[] keysOf(L leaf);
+
+    protected abstract Serializable[] valuesOf(L leaf);
+
+    private void enter(L leaf) {
+        this.leaf = leaf;
+        this.keys = keysOf(leaf);
+        this.values = valuesOf(leaf);
+    }
+
+    // Places the cursor so that the next candidate is the first key after (or the last key before) the given key.  A null key
+    // stands for the start of the tree.
+    private void position(Comparable key, boolean inclusive) {
+        if (key == null) {
+            enter(descending ? lastLeaf() : firstLeaf());
+            index = descending ? keys.length - 1 : 0;
+            return;
+        }
+
+        enter(findLeaf(key));
+        int found = Arrays.binarySearch(keys, key, comparator);
+        if (descending) {
+            index = (found >= 0) ? (inclusive ? found : found - 1) : -(found + 1) - 1;
+        } else {
+            index = (found >= 0) ? (inclusive ? found : found + 1) : -(found + 1);
+        }
+    }
+
+    private void start() {
+        if (!started) {
+            started = true;
+            if (descending) {
+                position(highKey, highInclusive);
+            } else {
+                position(lowKey, lowInclusive);
+            }
+        }
+    }
+
+    // moves to the following leaves until the candidate exists, and then checks it against the end of the range
+    private boolean findNext() {
+        start();
+        while (leaf != null && (index < 0 || index >= keys.length)) {
+            L following = descending ? previousLeaf(leaf) : nextLeaf(leaf);
+            if (following == null) {
+                leaf = null;
+            } else {
+                enter(following);
+                index = descending ? keys.length - 1 : 0;
+            }
+        }
+        if (leaf == null) {
+            return false;
+        }
+        return descending ? isAboveLow(keys[index]) : isBelowHigh(keys[index]);
+    }
+
+    private boolean isAboveLow(Comparable key) {
+        if (lowKey == null) {
+            return true;
+        }
+        int comparison = comparator.compare(key, lowKey);
+        return comparison > 0 || (lowInclusive && comparison == 0);
+    }
+
+    private boolean isBelowHigh(Comparable key) {
+        if (highKey == null) {
+            return true;
+        }
+        int comparison = comparator.compare(key, highKey);
+        return comparison < 0 || (highInclusive && comparison == 0);
+    }
+
+    @Override
+    public boolean hasNext() {
+        return findNext();
+    }
+
+    @Override
+    public T next() {
+        if (!findNext()) {
+            throw new NoSuchElementException();
+        }
+        lastKey = keys[index];
+        T value = (T) values[index];
+        index += descending ? -1 : 1;
+        return value;
+    }
+
+    @Override
+    public Comparable getKey() {
+        if (lastKey == null) {
+            throw new IllegalStateException("next() was not yet invoked");
+        }
+        return lastKey;
+    }
+
+    @Override
+    public void seek(Comparable key) {
+        started = true;
+        if (descending) {
+            if (isBelowHigh(key)) {
+                position(key, true);
+            } else {
+                position(highKey, highInclusive);
+            }
+        } else {
+            if (isAboveLow(key)) {
+                position(key, true);
+            } else {
+                position(lowKey, lowInclusive);
+            }
+        }
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("This implementation does not allow element removal via the iterator");
+    }
+}
@@ -1,11 +1,11 @@
 package pt.ist.fenixframework.adt.bplustree;
 
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.NoSuchElementException;
-import java.util.TreeMap;
 
 import pt.ist.fenixframework.NoDomainMetaObjects;
 
@@ -13,33 +13,39 @@ import pt.ist.fenixframework.NoDomainMetaObjects;
 public class LeafNode extends LeafNode_Base {
 
     public LeafNode() {
-        setEntries(new TreeMap<Comparable, Serializable>(BPlusTree.COMPARATOR_SUPPORTING_LAST_KEY));
+        initEntries();
     }
 
-    private LeafNode(TreeMap<Comparable, Serializable> entries) {
+    // gives a new node its (empty) entries.  Subclasses that set the entries in their own constructors may skip it
+    protected void initEntries() {
+        setEntries(SortedEntries.<Serializable> empty());
+    }
+
+    private LeafNode(SortedEntries<Serializable> entries) {
         setEntries(entries);
     }
 
-    private TreeMap<Comparable, Serializable> duplicateMap() {
-        return new TreeMap<Comparable, Serializable>(getEntries());
+    private SortedEntries<Serializable> entries() {
+        return (SortedEntries<Serializable>) getEntries();
     }
 
     @Override
     public AbstractNode insert(Comparable key, Serializable value) {
-        TreeMap<Comparable, Serializable> localMap = justInsert(key, value);
+        SortedEntries<Serializable> localEntries = justInsert(key, value);
 
-        if (localMap == null) {		// no insertion occurred
+        if (localEntries == null) {		// no insertion occurred
             return null;	// insert will return false
         }
-        if (localMap.size() <= BPlusTree.MAX_NUMBER_OF_ELEMENTS) { // it still fits :-)
+        if (localEntries.size() <= BPlusTree.MAX_NUMBER_OF_ELEMENTS) { // it still fits :-)
             return getRoot();
         } else { // must split this node
             // find middle position
-            Comparable keyToSplit = findRightMiddlePosition(localMap.keySet());
+            int splitIndex = BPlusTree.LOWER_BOUND + 1;
+            Comparable keyToSplit = localEntries.keyAt(splitIndex);
 
             // split node in two
-            LeafNode leftNode = createNodeWithEntries(new TreeMap<Comparable, Serializable>(localMap.headMap(keyToSplit)));
-            LeafNode rightNode = createNodeWithEntries(new TreeMap<Comparable, Serializable>(localMap.tailMap(keyToSplit)));
+            LeafNode leftNode = createNodeWithEntries(localEntries.headSlice(splitIndex));
+            LeafNode rightNode = createNodeWithEntries(localEntries.tailSlice(splitIndex));
             fixLeafNodesListAfterSplit(leftNode, rightNode);
 
             // propagate split to parent
@@ -54,7 +60,7 @@ public class LeafNode extends LeafNode_Base {
         }
     }
 
-    protected LeafNode createNodeWithEntries(TreeMap<Comparable, Serializable> entries) {
+    protected LeafNode createNodeWithEntries(SortedEntries<Serializable> entries) {
         return new LeafNode(entries);
     }
 
@@ -62,30 +68,83 @@ public class LeafNode extends LeafNode_Base {
         return new InnerNode(leftNode, rightNode, splitKey);
     }
 
-    private <T extends Comparable> Comparable findRightMiddlePosition(Collection<T> keys) {
-        Iterator<T> keysIterator = keys.iterator();
+    protected InnerNode createInnerNodeWithSubNodes(SortedEntries<AbstractNode> subNodes) {
+        return new InnerNode(subNodes);
+    }
+
+    /*
+     * Bulk loading
+     */
+
+    // Builds the tree bottom-up, from the given keys (sorted and without repetitions) and values, using this empty root node
+    // as the first leaf.  Every node is created with its final contents and written only once.  Returns the new root.
+    AbstractNode bulkLoad(Comparable[] keys, Serializable[] values) {
+        int[] bounds = BPlusTree.chunkBounds(keys.length, BPlusTree.MAX_NUMBER_OF_ELEMENTS);
+        AbstractNode[] level = new AbstractNode[bounds.length - 1];
+        Comparable[] smallestKeys = new Comparable[level.length];
+
+        LeafNode previous = null;
+        for (int i = 0; i < level.length; i++) {
+            int from = bounds[i];
+            int to = bounds[i + 1];
+            SortedEntries<Serializable> entries =
+                    new SortedEntries<Serializable>(Arrays.copyOfRange(keys, from, to), Arrays.copyOfRange(values, from, to));
+
+            LeafNode leaf;
+            if (previous == null) {
+                setEntries(entries);
+                leaf = this;
+            } else {
+                leaf = createNodeWithEntries(entries);
+                previous.setNext(leaf);
+            }
+            level[i] = leaf;
+            smallestKeys[i] = keys[from];
+            previous = leaf;
+        }
+
+        // each inner node's split keys are the smallest keys of its sub-nodes, shifted by one, ending with the LAST_KEY
+        while (level.length > 1) {
+            bounds = BPlusTree.chunkBounds(level.length, BPlusTree.MAX_NUMBER_OF_ELEMENTS);
+            AbstractNode[] upperLevel = new AbstractNode[bounds.length - 1];
+            Comparable[] upperSmallestKeys = new Comparable[upperLevel.length];
+
+            for (int i = 0; i < upperLevel.length; i++) {
+                int from = bounds[i];
+                int to = bounds[i + 1];
+                Comparable[] splitKeys = new Comparable[to - from];
+                for (int j = from; j < to - 1; j++) {
+                    splitKeys[j - from] = smallestKeys[j + 1];
+                }
+                splitKeys[to - from - 1] = BPlusTree.LAST_KEY;
 
-        for (int i = 0; i < BPlusTree.LOWER_BOUND + 1; i++) {
-            keysIterator.next();
+                upperLevel[i] =
+                        createInnerNodeWithSubNodes(new SortedEntries<AbstractNode>(splitKeys, Arrays.copyOfRange(level, from, to)));
+                upperSmallestKeys[i] = smallestKeys[from];
+            }
+            level = upperLevel;
+            smallestKeys = upperSmallestKeys;
         }
-        return keysIterator.next();
+        return level[0];
     }
 
-    private TreeMap<Comparable, Serializable> justInsert(Comparable key, Serializable value) {
-        TreeMap<Comparable, ? extends Serializable> localEntries = this.getEntries();
+    private SortedEntries<Serializable> justInsert(Comparable key, Serializable value) {
+        SortedEntries<Serializable> localEntries = entries();
 
         // this test is performed because we need to return a new structure in
         // case an update occurs.  Value types must be immutable.
-        Serializable currentValue = localEntries.get(key);
-        // this check suffices because we do not allow null values
-        if (currentValue == value) {
-            return null;
+        int index = localEntries.indexOf(key);
+        SortedEntries<Serializable> newEntries;
+        if (index >= 0) {
+            if (localEntries.valueAt(index) == value) {
+                return null;
+            }
+            newEntries = localEntries.replaceValueAt(index, value);
         } else {
-            TreeMap<Comparable, Serializable> newMap = duplicateMap();
-            newMap.put(key, value);
-            setEntries(newMap);
-            return newMap;
+            newEntries = localEntries.insertAt(-(index + 1), key, value);
         }
+        setEntries(newEntries);
+        return newEntries;
     }
 
     private void fixLeafNodesListAfterSplit(LeafNode leftNode, LeafNode rightNode) {
@@ -96,9 +155,9 @@ public class LeafNode extends LeafNode_Base {
 
     @Override
     public AbstractNode remove(Comparable key) {
-        TreeMap<Comparable, Serializable> localMap = justRemove(key);
+        SortedEntries<Serializable> localEntries = justRemove(key);
 
-        if (localMap == null) {
+        if (localEntries == null) {
             return null;	// remove will return false
         }
         if (getParent() == null) {
@@ -107,7 +166,7 @@ public class LeafNode extends LeafNode_Base {
             // if the removed key was the first we need to replace it in some parent's index
             Comparable replacementKey = getReplacementKeyIfNeeded(key);
 
-            if (localMap.size() < BPlusTree.LOWER_BOUND) {
+            if (localEntries.size() < BPlusTree.LOWER_BOUND) {
                 return getParent().underflowFromLeaf(key, replacementKey);
             } else if (replacementKey != null) {
                 return getParent().replaceDeletedKey(key, replacementKey);
@@ -125,25 +184,25 @@ public class LeafNode extends LeafNode_Base {
         deleteDomainObject();
     }
 
-    private TreeMap<Comparable, Serializable> justRemove(Comparable key) {
-        TreeMap<Comparable, ? extends Serializable> localEntries = this.getEntries();
+    private SortedEntries<Serializable> justRemove(Comparable key) {
+        SortedEntries<Serializable> localEntries = entries();
 
         // this test is performed because we need to return a new structure in
         // case an update occurs.  Value types must be immutable.
-        if (!localEntries.containsKey(key)) {
+        int index = localEntries.indexOf(key);
+        if (index < 0) {
             return null;
         } else {
-            TreeMap<Comparable, Serializable> newMap = duplicateMap();
-            newMap.remove(key);
-            setEntries(newMap);
-            return newMap;
+            SortedEntries<Serializable> newEntries = localEntries.removeAt(index);
+            setEntries(newEntries);
+            return newEntries;
         }
     }
 
     // This method assumes that there is at least one more key (which is
     // always true if this is not the root node)
     private Comparable getReplacementKeyIfNeeded(Comparable deletedKey) {
-        Comparable firstKey = this.getEntries().firstKey();
+        Comparable firstKey = entries().firstKey();
         if (BPlusTree.COMPARATOR_SUPPORTING_LAST_KEY.compare(deletedKey, firstKey) < 0) {
             return firstKey;
         } else {
@@ -153,39 +212,36 @@ public class LeafNode extends LeafNode_Base {
 
     @Override
     Map.Entry<Comparable, Serializable> removeBiggestKeyValue() {
-        TreeMap<Comparable, Serializable> newMap = duplicateMap();
-        Map.Entry<Comparable, Serializable> lastEntry = newMap.pollLastEntry();
-        setEntries(newMap);
+        SortedEntries<Serializable> localEntries = entries();
+        int lastIndex = localEntries.size() - 1;
+        Map.Entry<Comparable, Serializable> lastEntry = localEntries.entryAt(lastIndex);
+        setEntries(localEntries.removeAt(lastIndex));
         return lastEntry;
     }
 
     @Override
     Map.Entry<Comparable, Serializable> removeSmallestKeyValue() {
-        TreeMap<Comparable, Serializable> newMap = duplicateMap();
-        Map.Entry<Comparable, Serializable> firstEntry = newMap.pollFirstEntry();
-        setEntries(newMap);
+        SortedEntries<Serializable> localEntries = entries();
+        Map.Entry<Comparable, Serializable> firstEntry = localEntries.entryAt(0);
+        setEntries(localEntries.removeAt(0));
         return firstEntry;
     }
 
     @Override
     Comparable getSmallestKey() {
-        return this.getEntries().firstKey();
+        return entries().firstKey();
     }
 
     @Override
     void addKeyValue(Map.Entry keyValue) {
-        TreeMap<Comparable, Serializable> newMap = duplicateMap();
-        newMap.put((Comparable) keyValue.getKey(), (Serializable) keyValue.getValue());
-        setEntries(newMap);
+        setEntries(entries().put((Comparable) keyValue.getKey(), (Serializable) keyValue.getValue()));
     }
 
     @Override
     void mergeWithLeftNode(AbstractNode leftNode, Comparable splitKey) {
         LeafNode left = (LeafNode) leftNode; // this node does not know how to merge with another kind
 
-        TreeMap<Comparable, Serializable> newMap = duplicateMap();
-        newMap.putAll(left.getEntries());
-        setEntries(newMap);
+        setEntries(entries().mergeWith(left.entries()));
 
         LeafNode nodeBefore = left.getPrevious();
 
@@ -200,7 +256,7 @@ public class LeafNode extends LeafNode_Base {
 
     @Override
     public Serializable get(Comparable key) {
-        return this.getEntries().get(key);
+        return entries().get(key);
     }
 
     @Override
@@ -210,11 +266,7 @@ public class LeafNode extends LeafNode_Base {
         }
 
         if (index < shallowSize()) { // the required position is here
-            Iterator<? extends Serializable> values = this.getEntries().values().iterator();
-            for (int i = 0; i < index; i++) {
-                values.next();
-            }
-            return values.next();
+            return entries().valueAt(index);
         } else {
             LeafNode next = this.getNext();
             if (next == null) {
@@ -231,11 +283,7 @@ public class LeafNode extends LeafNode_Base {
         }
 
         if (index < shallowSize()) { // the required position is here
-            Iterator<Comparable> keys = this.getEntries().keySet().iterator();
-            for (int i = 0; i < index; i++) {
-                keys.next();
-            }
-            return this.remove(keys.next());
+            return this.remove(entries().keyAt(index));
         } else {
             LeafNode next = this.getNext();
             if (next == null) {
@@ -247,7 +295,7 @@ public class LeafNode extends LeafNode_Base {
 
     @Override
     public boolean containsKey(Comparable key) {
-        return this.getEntries().containsKey(key);
+        return entries().containsKey(key);
     }
 
     @Override
@@ -260,6 +308,21 @@ public class LeafNode extends LeafNode_Base {
         return this.getEntries().size();
     }
 
+    @Override
+    LeafNode findLeaf(Comparable key) {
+        return this;
+    }
+
+    @Override
+    LeafNode firstLeaf() {
+        return this;
+    }
+
+    @Override
+    LeafNode lastLeaf() {
+        return this;
+    }
+
     @Override
     Iterator<? extends Comparable> keysIterator() {
         return new LeafNodeKeysIterator(this);
@@ -319,7 +382,7 @@ public class LeafNode extends LeafNode_Base {
 
         @Override
         protected Iterator<Serializable> getInternalIterator(LeafNode leafNode) {
-            return (Iterator<Serializable>) leafNode.getEntries().values().iterator();
+            return leafNode.entries().values().iterator();
         }
 
     }
@@ -332,7 +395,7 @@ public class LeafNode extends LeafNode_Base {
 
         @Override
         protected Iterator<Comparable> getInternalIterator(LeafNode leafNode) {
-            return leafNode.getEntries().keySet().iterator();
+            return leafNode.entries().keys().iterator();
         }
 
     }
@@ -347,9 +410,10 @@ public class LeafNode extends LeafNode_Base {
             str.append("[: ");
         }
 
-        for (Map.Entry<Comparable, ? extends Serializable> entry : this.getEntries().entrySet()) {
-            Comparable key = entry.getKey();
-            Serializable value = entry.getValue();
+        SortedEntries<Serializable> localEntries = entries();
+        for (int i = 0; i < localEntries.size(); i++) {
+            Comparable key = localEntries.keyAt(i);
+            Serializable value = localEntries.valueAt(i);
             str.append("(" + key);
             str.append(dumpKeysOnly ? ") " : "," + value + ") ");
         }
@@ -364,7 +428,7 @@ public class LeafNode extends LeafNode_Base {
 
     @Override
     Collection<? extends Comparable> getKeys() {
-        return this.getEntries().keySet();
+        return entries().keys();
     }
 
 }
\ No newline at end of file
@@ -1,6 +1,7 @@
 package pt.ist.fenixframework.adt.bplustree;
 
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 
@@ -18,6 +19,59 @@ public class LeafNodeArray extends LeafNodeArray_Base {
         setEntries(entries);
     }
 
+    // Builds the tree bottom-up, just like LeafNode.bulkLoad(), using this empty root node as the first leaf.  Returns the new
+    // root.
+    AbstractNodeArray bulkLoad(Comparable[] keys, Serializable[] values) {
+        int[] bounds = BPlusTree.chunkBounds(keys.length, BPlusTreeArray.MAX_NUMBER_OF_ELEMENTS);
+        AbstractNodeArray[] level = new AbstractNodeArray[bounds.length - 1];
+        Comparable[] smallestKeys = new Comparable[level.length];
+
+        LeafNodeArray previous = null;
+        for (int i = 0; i < level.length; i++) {
+            int from = bounds[i];
+            int to = bounds[i + 1];
+            DoubleArray<Serializable> entries =
+                    new DoubleArray<Serializable>(Serializable.class, Arrays.copyOfRange(keys, from, to), Arrays.copyOfRange(
+                            values, from, to));
+
+            LeafNodeArray leaf;
+            if (previous == null) {
+                setEntries(entries);
+                leaf = this;
+            } else {
+                leaf = new LeafNodeArray(entries);
+                previous.setNext(leaf);
+            }
+            level[i] = leaf;
+            smallestKeys[i] = keys[from];
+            previous = leaf;
+        }
+
+        while (level.length > 1) {
+            bounds = BPlusTree.chunkBounds(level.length, BPlusTreeArray.MAX_NUMBER_OF_ELEMENTS);
+            AbstractNodeArray[] upperLevel = new AbstractNodeArray[bounds.length - 1];
+            Comparable[] upperSmallestKeys = new Comparable[upperLevel.length];
+
+            for (int i = 0; i < upperLevel.length; i++) {
+                int from = bounds[i];
+                int to = bounds[i + 1];
+                Comparable[] splitKeys = new Comparable[to - from];
+                for (int j = from; j < to - 1; j++) {
+                    splitKeys[j - from] = smallestKeys[j + 1];
+                }
+                splitKeys[to - from - 1] = BPlusTreeArray.LAST_KEY;
+
+                upperLevel[i] =
+                        new InnerNodeArray(new DoubleArray<AbstractNodeArray>(AbstractNodeArray.class, splitKeys,
+                                Arrays.copyOfRange(level, from, to)));
+                upperSmallestKeys[i] = smallestKeys[from];
+            }
+            level = upperLevel;
+            smallestKeys = upperSmallestKeys;
+        }
+        return level[0];
+    }
+
     @Override
     public AbstractNodeArray insert(Comparable key, Serializable value) {
         DoubleArray<Serializable> localArr = justInsert(key, value);
@@ -214,6 +268,21 @@ public class LeafNodeArray extends LeafNodeArray_Base {
         return this.getEntries().length();
     }
 
+    @Override
+    LeafNodeArray findLeaf(Comparable key) {
+        return this;
+    }
+
+    @Override
+    LeafNodeArray firstLeaf() {
+        return this;
+    }
+
+    @Override
+    LeafNodeArray lastLeaf() {
+        return this;
+    }
+
     @Override
     public Iterator<Serializable> iterator() {
         return new LeafNodeArrayIterator(this);
@@ -0,0 +1,340 @@
+package pt.ist.fenixframework.adt.bplustree;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * The entries of a {@link BPlusTree} node: two parallel arrays, with the keys sorted according to
+ * {@link BPlusTree#COMPARATOR_SUPPORTING_LAST_KEY}, which are searched by binary search.
+ *
+ * Instances are immutable, as required for value types. Every update returns a new instance, but only the arrays that change
+ * are copied: e.g. replacing a value shares the keys array, and replacing a key shares the values array.
+ */
+@SuppressWarnings({ "unchecked", "rawtypes" })
+public final class SortedEntries<T extends Serializable> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final SortedEntries EMPTY = new SortedEntries(new Comparable[0], new Serializable[0]);
+
+    private final Comparable[] keys;
+    private final Serializable[] values;
+
+    SortedEntries(Comparable[] keys, Serializable[] values) {
+        this.keys = keys;
+        this.values = values;
+    }
+
+    SortedEntries(Comparable key, T value, Comparable lastKey, T lastValue) {
+        this(new Comparable[] { key, lastKey }, new Serializable[] { value, lastValue });
+    }
+
+    static <T extends Serializable> SortedEntries<T> empty() {
+        return EMPTY;
+    }
+
+    /** Creates the entries from a map. This is only meant for converting data stored by older versions. */
+    static <T extends Serializable> SortedEntries<T> fromMap(SortedMap<Comparable, T> map) {
+        Comparable[] keys = new Comparable[map.size()];
+        Serializable[] values = new Serializable[map.size()];
+        int i = 0;
+        for (Map.Entry<Comparable, T> entry : map.entrySet()) {
+            keys[i] = entry.getKey();
+            values[i] = entry.getValue();
+            i++;
+        }
+        return new SortedEntries<T>(keys, values);
+    }
+
+    /** Creates the entries from parallel arrays, which are sorted by key if they are not already. */
+    static <T extends Serializable> SortedEntries<T> fromArrays(Comparable[] keys, Serializable[] values) {
+        for (int i = 1; i < keys.length; i++) {
+            if (BPlusTree.COMPARATOR_SUPPORTING_LAST_KEY.compare(keys[i - 1], keys[i]) >= 0) {
+                TreeMap<Comparable, T> map = new TreeMap<Comparable, T>(BPlusTree.COMPARATOR_SUPPORTING_LAST_KEY);
+                for (int j = 0; j < keys.length; j++) {
+                    map.put(keys[j], (T) values[j]);
+                }
+                return fromMap(map);
+            }
+        }
+        return new SortedEntries<T>(keys, values);
+    }
+
+    public int size() {
+        return keys.length;
+    }
+
+    public boolean isEmpty() {
+        return keys.length == 0;
+    }
+
+    public Comparable keyAt(int index) {
+        return keys[index];
+    }
+
+    public T valueAt(int index) {
+        return (T) values[index];
+    }
+
+    Map.Entry<Comparable, T> entryAt(int index) {
+        return new AbstractMap.SimpleImmutableEntry<Comparable, T>(keys[index], (T) values[index]);
+    }
+
+    public Comparable firstKey() {
+        return keys[0];
+    }
+
+    public Comparable lastKey() {
+        return keys[keys.length - 1];
+    }
+
+    /**
+     * Searches for the given key. Follows the convention of {@link Arrays#binarySearch(Object[], Object)}: returns the index of
+     * the key if it exists, or <code>(-(insertion point) - 1)</code> otherwise.
+     */
+    public int indexOf(Comparable key) {
+        return Arrays.binarySearch(keys, key, BPlusTree.COMPARATOR_SUPPORTING_LAST_KEY);
+    }
+
+    /** Returns the index of the first key strictly greater than the given key, or {@link #size()} if there is none. */
+    public int higherIndex(Comparable key) {
+        int index = indexOf(key);
+        return index >= 0 ? index + 1 : -(index + 1);
+    }
+
+    public T get(Comparable key) {
+        int index = indexOf(key);
+        return index >= 0 ? (T) values[index] : null;
+    }
+
+    public boolean containsKey(Comparable key) {
+        return indexOf(key) >= 0;
+    }
+
+    // the backing arrays, which must not be changed
+    Comparable[] keyArray() {
+        return keys;
+    }
+
+    Serializable[] valueArray() {
+        return values;
+    }
+
+    /** An unmodifiable view of the keys, in order */
+    public List<Comparable> keys() {
+        return Collections.unmodifiableList(Arrays.asList(keys));
+    }
+
+    /** An unmodifiable view of the values, in key order */
+    public List<T> values() {
+        return (List<T>) Collections.unmodifiableList(Arrays.asList(values));
+    }
+
+    /* Updates.  None of these change this instance. */
+
+    /** Maps the given key to the given value, either replacing its current value or inserting a new entry. */
+    SortedEntries<T> put(Comparable key, T value) {
+        int index = indexOf(key);
+        if (index >= 0) {
+            return replaceValueAt(index, value);
+        } else {
+            return insertAt(-(index + 1), key, value);
+        }
+    }
+
+    /** Inserts a new entry at the given position, which must keep the keys sorted */
+    SortedEntries<T> insertAt(int index, Comparable key, T value) {
+        Comparable[] newKeys = new Comparable[keys.length + 1];
+        Serializable[] newValues = new Serializable[values.length + 1];
+
+        System.arraycopy(keys, 0, newKeys, 0, index);
+        System.arraycopy(values, 0, newValues, 0, index);
+        newKeys[index] = key;
+        newValues[index] = value;
+        System.arraycopy(keys, index, newKeys, index + 1, keys.length - index);
+        System.arraycopy(values, index, newValues, index + 1, values.length - index);
+
+        return new SortedEntries<T>(newKeys, newValues);
+    }
+
+    /**
+     * Inserts a new entry for the <code>left</code> value at the given position, and maps the key that was at that position
+     * (now one position to the right) to the <code>right</code> value. This is what an inner node does when one of its
+     * sub-nodes splits.
+     */
+    SortedEntries<T> insertSplitAt(int index, Comparable key, T left, T right) {
+        SortedEntries<T> newEntries = insertAt(index, key, left);
+        newEntries.values[index + 1] = right; // not yet visible to anyone else
+        return newEntries;
+    }
+
+    SortedEntries<T> replaceValueAt(int index, T value) {
+        Serializable[] newValues = values.clone();
+        newValues[index] = value;
+        return new SortedEntries<T>(keys, newValues);
+    }
+
+    /** Replaces the key at the given position, keeping its value. The entry is moved if the new key requires it. */
+    SortedEntries<T> replaceKeyAt(int index, Comparable key) {
+        boolean fitsHere = (index == 0 || BPlusTree.COMPARATOR_SUPPORTING_LAST_KEY.compare(keys[index - 1], key) < 0);
+        fitsHere &= (index == keys.length - 1 || BPlusTree.COMPARATOR_SUPPORTING_LAST_KEY.compare(key, keys[index + 1]) < 0);
+        if (!fitsHere) {
+            return removeAt(index).put(key, (T) values[index]);
+        }
+
+        Comparable[] newKeys = keys.clone();
+        newKeys[index] = key;
+        return new SortedEntries<T>(newKeys, values);
+    }
+
+    SortedEntries<T> removeAt(int index) {
+        Comparable[] newKeys = new Comparable[keys.length - 1];
+        Serializable[] newValues = new Serializable[values.length - 1];
+
+        System.arraycopy(keys, 0, newKeys, 0, index);
+        System.arraycopy(values, 0, newValues, 0, index);
+        System.arraycopy(keys, index + 1, newKeys, index, keys.length - index - 1);
+        System.arraycopy(values, index + 1, newValues, index, values.length - index - 1);
+
+        return new SortedEntries<T>(newKeys, newValues);
+    }
+
+    /** The entries before the given position */
+    SortedEntries<T> headSlice(int toIndex) {
+        return new SortedEntries<T>(Arrays.copyOfRange(keys, 0, toIndex), Arrays.copyOfRange(values, 0, toIndex));
+    }
+
+    /** The entries from the given position onwards */
+    SortedEntries<T> tailSlice(int fromIndex) {
+        return new SortedEntries<T>(Arrays.copyOfRange(keys, fromIndex, keys.length), Arrays.copyOfRange(values, fromIndex,
+                values.length));
+    }
+
+    /** Returns the union of these entries with the given ones. When both have the same key, the given value prevails. */
+    SortedEntries<T> mergeWith(SortedEntries<? extends T> other) {
+        if (other.isEmpty()) {
+            return this;
+        } else if (this.isEmpty()) {
+            return (SortedEntries<T>) other;
+        } else if (BPlusTree.COMPARATOR_SUPPORTING_LAST_KEY.compare(other.lastKey(), this.firstKey()) < 0) {
+            return concat((SortedEntries<T>) other, this);
+        } else if (BPlusTree.COMPARATOR_SUPPORTING_LAST_KEY.compare(this.lastKey(), other.firstKey()) < 0) {
+            return concat(this, (SortedEntries<T>) other);
+        }
+
+        // the keys interleave, which never happens between sibling nodes
+        TreeMap<Comparable, T> map = new TreeMap<Comparable, T>(BPlusTree.COMPARATOR_SUPPORTING_LAST_KEY);
+        for (int i = 0; i < this.size(); i++) {
+            map.put(this.keyAt(i), this.valueAt(i));
+        }
+        for (int i = 0; i < other.size(); i++) {
+            map.put(other.keyAt(i), other.valueAt(i));
+        }
+        return fromMap(map);
+    }
+
+    private static <T extends Serializable> SortedEntries<T> concat(SortedEntries<T> left, SortedEntries<T> right) {
+        int leftSize = left.size();
+        Comparable[] newKeys = Arrays.copyOf(left.keys, leftSize + right.size());
+        Serializable[] newValues = Arrays.copyOf(left.values, leftSize + right.size());
+        System.arraycopy(right.keys, 0, newKeys, leftSize, right.size());
+        System.arraycopy(right.values, 0, newValues, leftSize, right.size());
+        return new SortedEntries<T>(newKeys, newValues);
+    }
+
+    /*
+     * Deltas.  A delta is itself a SortedEntries, in which a null value marks a removed key (nodes never hold null values).
+     */
+
+    /** Returns the delta that turns the given base entries into these ones. Values are compared by identity. */
+    SortedEntries<T> deltaFrom(SortedEntries<? extends T> base) {
+        Comparable[] deltaKeys = new Comparable[keys.length + base.size()];
+        Serializable[] deltaValues = new Serializable[keys.length + base.size()];
+        int size = 0;
+
+        int i = 0;
+        int j = 0;
+        while (i < keys.length || j < base.keys.length) {
+            int comparison;
+            if (i == keys.length) {
+                comparison = 1;
+            } else if (j == base.keys.length) {
+                comparison = -1;
+            } else {
+                comparison = BPlusTree.COMPARATOR_SUPPORTING_LAST_KEY.compare(keys[i], base.keys[j]);
+            }
+
+            if (comparison < 0) { // added
+                deltaKeys[size] = keys[i];
+                deltaValues[size++] = values[i++];
+            } else if (comparison > 0) { // removed
+                deltaKeys[size++] = base.keys[j++];
+            } else { // kept, possibly with another value
+                if (values[i] != base.values[j]) {
+                    deltaKeys[size] = keys[i];
+                    deltaValues[size++] = values[i];
+                }
+                i++;
+                j++;
+            }
+        }
+        return new SortedEntries<T>(Arrays.copyOf(deltaKeys, size), Arrays.copyOf(deltaValues, size));
+    }
+
+    /** Returns these entries with the given delta applied */
+    SortedEntries<T> applyDelta(SortedEntries<? extends T> delta) {
+        if (delta.isEmpty()) {
+            return this;
+        }
+
+        Comparable[] newKeys = new Comparable[keys.length + delta.size()];
+        Serializable[] newValues = new Serializable[keys.length + delta.size()];
+        int size = 0;
+
+        int i = 0;
+        int j = 0;
+        while (i < keys.length || j < delta.keys.length) {
+            int comparison;
+            if (i == keys.length) {
+                comparison = 1;
+            } else if (j == delta.keys.length) {
+                comparison = -1;
+            } else {
+                comparison = BPlusTree.COMPARATOR_SUPPORTING_LAST_KEY.compare(keys[i], delta.keys[j]);
+            }
+
+            if (comparison < 0) {
+                newKeys[size] = keys[i];
+                newValues[size++] = values[i++];
+            } else {
+                if (delta.values[j] != null) { // otherwise, the key was removed
+                    newKeys[size] = delta.keys[j];
+                    newValues[size++] = delta.values[j];
+                }
+                if (comparison == 0) {
+                    i++;
+                }
+                j++;
+            }
+        }
+        return new SortedEntries<T>(Arrays.copyOf(newKeys, size), Arrays.copyOf(newValues, size));
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder str = new StringBuilder("{");
+        for (int i = 0; i < keys.length; i++) {
+            if (i > 0) {
+                str.append(", ");
+            }
+            str.append(keys[i]).append('=').append(values[i]);
+        }
+        return str.append('}').toString();
+    }
+}
@@ -78,6 +78,11 @@ public class LinkedList<T extends Serializable> extends LinkedList_Base implemen
         return size;
     }
 
+    @Override
+    public boolean isEmpty() {
+        return getHead().getNext() == null;
+    }
+
     @Override
     public Iterator<T> iterator() {
         return new Iterator<T>() {
@@ -5,11 +5,12 @@ import java.util.Iterator;
 import java.util.NoSuchElementException;
 import java.util.Random;
 
-import pt.ist.fenixframework.dml.runtime.DomainBasedMap;
+import pt.ist.fenixframework.dml.runtime.SortedDomainBasedMap;
 
-public class SkipList<T extends Serializable> extends SkipList_Base implements DomainBasedMap<T> {
+public class SkipList<T extends Serializable> extends SkipList_Base implements SortedDomainBasedMap<T> {
 
-    private transient final static double probability = 0.25;
+    /** The probability with which a node that reaches a level also reaches the next one */
+    public transient final static double DEFAULT_PROBABILITY = 0.25;
     private transient final static int maxLevel = 32;
     private transient final static ThreadLocal<Random> random = new ThreadLocal<Random>() {
         @Override
@@ -22,74 +23,111 @@ public class SkipList<T extends Serializable> extends SkipList_Base implements D
     private transient final static Comparable MAX_VALUE = new TombKey(1);
 
     public SkipList() {
+        this(DEFAULT_PROBABILITY);
+    }
+
+    /**
+     * Creates a skip list whose nodes reach each level with the given probability. Lower probabilities make for fewer and
+     * smaller forward arrays, but longer searches. Searches take <code>O(log n)</code> expected time with any probability.
+     */
+    public SkipList(double probability) {
         super();
-        setLevel(0);
+        if (probability <= 0 || probability >= 1) {
+            throw new IllegalArgumentException("The probability must be between 0 and 1 (exclusive): " + probability);
+        }
+        setLevelProbability(probability);
         SkipListNode<T> head = new SkipListNode<T>(maxLevel, MIN_VALUE, null);
         SkipListNode<T> tail = new SkipListNode<T>(maxLevel, MAX_VALUE, null);
         setHead(head);
-        for (int i = 0; i <= maxLevel; i++) {
-            head.setForward(i, tail);
-        }
+        head.setForward(0, maxLevel, tail);
     }
 
+    public double getProbability() {
+        double probability = getLevelProbability();
+        return probability == 0 ? DEFAULT_PROBABILITY : probability; // lists created before the probability was stored
+    }
+
+    /** Draws the level of a new node: level <code>l</code> is drawn with probability <code>p^l * (1 - p)</code> */
     protected int randomLevel() {
+        double probability = getProbability();
         int l = 0;
         while (l < maxLevel && random.get().nextDouble() < probability)
             l++;
         return l;
     }
 
-    public boolean insert(Comparable toInsert, T value) {
-        boolean result;
+    /*
+     * The current top level is not stored in a slot of its own: it is the highest level at which the head does not link
+     * directly to the tail.  Otherwise, every operation would read that slot, and any change to it would conflict with all
+     * of them.
+     */
+    private int topLevel(SkipListNode head) {
+        SkipListNode[] forward = head.getForward().forward;
+        int level = maxLevel;
+        while (level > 0 && forward[level].getForward(0) == null) {
+            level--;
+        }
+        return level;
+    }
 
-        SkipListNode[] update = new SkipListNode[maxLevel + 1];
+    // Fills update[i] with the last node at level i whose key is less than the given key, and returns the node that follows
+    // it at level 0.
+    private SkipListNode findPredecessors(Comparable key, SkipListNode[] update, int level) {
         SkipListNode node = getHead();
-        int level = getLevel();
-
-        Comparable oid = node.getOid();
-
         for (int i = level; i >= 0; i--) {
             SkipListNode next = node.getForward(i);
-            while ((oid = next.getKeyValue().key).compareTo(toInsert) < 0) {
+            while (next.getKeyValue().key.compareTo(key) < 0) {
                 node = next;
                 next = node.getForward(i);
             }
             update[i] = node;
         }
-        node = node.getForward(0);
+        return node.getForward(0);
+    }
+
+    public boolean insert(Comparable toInsert, T value) {
+        SkipListNode head = getHead();
+        int level = topLevel(head);
+
+        SkipListNode[] update = new SkipListNode[maxLevel + 1];
+        SkipListNode node = findPredecessors(toInsert, update, level);
 
         if (node.getKeyValue().key.compareTo(toInsert) == 0) {
-            result = false;
-        } else {
-            int newLevel = randomLevel();
-            if (newLevel > level) {
-                for (int i = level + 1; i <= level; i++)
-                    update[i] = getHead();
-                setLevel(level);
-            }
-            node = new SkipListNode<T>(level, toInsert, value);
-            for (int i = 0; i <= level; i++) {
-                node.setForward(i, update[i].getForward(i));
-                update[i].setForward(i, node);
-            }
-            result = true;
+            return false;
+        }
+
+        // grow at most one level at a time, so that a lucky draw does not create levels that only slow down searches
+        int newLevel = Math.min(randomLevel(), level + 1);
+        for (int i = level + 1; i <= newLevel; i++) {
+            update[i] = head;
         }
 
-        return result;
+        SkipListNode[] forward = new SkipListNode[newLevel + 1];
+        for (int i = 0; i <= newLevel; i++) {
+            forward[i] = update[i].getForward(i);
+        }
+        node = new SkipListNode<T>(forward, toInsert, value);
+
+        // each predecessor is written once, even when it precedes the new node at several levels
+        for (int i = 0; i <= newLevel;) {
+            int j = i;
+            while (j < newLevel && update[j + 1] == update[i]) {
+                j++;
+            }
+            update[i].setForward(i, j, node);
+            i = j + 1;
+        }
+        return true;
     }
 
     @Override
     public T get(Comparable key) {
-        boolean result;
-
         SkipListNode node = getHead();
-        int level = getLevel();
-
-        Comparable oid = node.getOid();
+        int level = topLevel(node);
 
         for (int i = level; i >= 0; i--) {
             SkipListNode next = node.getForward(i);
-            while ((oid = next.getKeyValue().key).compareTo(key) < 0) {
+            while (next.getKeyValue().key.compareTo(key) < 0) {
                 node = next;
                 next = node.getForward(i);
             }
@@ -104,40 +142,26 @@ public class SkipList<T extends Serializable> extends SkipList_Base implements D
     }
 
     public boolean removeKey(Comparable toRemove) {
-        boolean result;
+        int level = topLevel(getHead());
 
         SkipListNode[] update = new SkipListNode[maxLevel + 1];
-        SkipListNode node = getHead();
+        SkipListNode node = findPredecessors(toRemove, update, level);
 
-        int level = getLevel();
-
-        Comparable oid = node.getOid();
-
-        for (int i = level; i >= 0; i--) {
-            SkipListNode next = node.getForward(i);
-            while ((oid = next.getKeyValue().key).compareTo(toRemove) < 0) {
-                node = next;
-                next = node.getForward(i);
-            }
-            update[i] = node;
+        if (node.getKeyValue().key.compareTo(toRemove) != 0) {
+            return false;
         }
-        node = node.getForward(0);
 
-        if (node.getKeyValue().key.compareTo(toRemove) != 0) {
-            result = false;
-        } else {
-            for (int i = 0; i <= level; i++) {
-                if (update[i].getForward(i).getOid().compareTo(node.getOid()) == 0)
-                    update[i].setForward(i, node.getForward(i));
+        SkipListNode[] forward = node.getForward().forward;
+        int nodeLevel = forward.length - 1;
+        for (int i = 0; i <= nodeLevel;) {
+            int j = i;
+            while (j < nodeLevel && update[j + 1] == update[i]) {
+                j++;
             }
-            while (level > 0 && getHead().getForward(level).getForward(0) == null) {
-                level--;
-                setLevel(level);
-            }
-            result = true;
+            update[i].setForward(i, j, forward);
+            i = j + 1;
         }
-
-        return result;
+        return true;
     }
 
     public boolean containsKey(Comparable key) {
@@ -173,6 +197,150 @@ public class SkipList<T extends Serializable> extends SkipList_Base implements D
         };
     }
 
+    @Override
+    public Cursor<T> cursor(Comparable lowKey, boolean lowInclusive, Comparable highKey, boolean highInclusive) {
+        return new SkipListCursor(lowKey, lowInclusive, highKey, highInclusive, false);
+    }
+
+    /**
+     * Returns a descending cursor over the given range. As the nodes only link forward, each step of a descending cursor searches
+     * the list again for the previous node, so it costs <code>O(log n)</code> rather than <code>O(1)</code>.
+     */
+    @Override
+    public Cursor<T> descendingCursor(Comparable lowKey, boolean lowInclusive, Comparable highKey, boolean highInclusive) {
+        return new SkipListCursor(lowKey, lowInclusive, highKey, highInclusive, true);
+    }
+
+    // the last node whose key is less than the given key (or equal to it, if inclusive).  It may be the head.  A null key
+    // stands for a key greater than all others.
+    private SkipListNode findLastBefore(Comparable key, boolean inclusive) {
+        SkipListNode node = getHead();
+        for (int i = topLevel(node); i >= 0; i--) {
+            SkipListNode next = node.getForward(i);
+            while (next.getForward(0) != null && (key == null || isBefore(next.getKeyValue().key, key, inclusive))) {
+                node = next;
+                next = node.getForward(i);
+            }
+        }
+        return node;
+    }
+
+    private static boolean isBefore(Comparable key, Comparable bound, boolean inclusive) {
+        int comparison = key.compareTo(bound);
+        return comparison < 0 || (inclusive && comparison == 0);
+    }
+
+    private class SkipListCursor implements Cursor<T> {
+        private final Comparable lowKey;
+        private final boolean lowInclusive;
+        private final Comparable highKey;
+        private final boolean highInclusive;
+        private final boolean descending;
+
+        // the node to return next, or null when there are no more nodes
+        private SkipListNode candidate;
+        private Comparable lastKey;
+        private boolean started = false;
+
+        SkipListCursor(Comparable lowKey, boolean lowInclusive, Comparable highKey, boolean highInclusive, boolean descending) {
+            this.lowKey = lowKey;
+            this.lowInclusive = lowInclusive;
+            this.highKey = highKey;
+            this.highInclusive = highInclusive;
+            this.descending = descending;
+        }
+
+        private void position(Comparable key, boolean inclusive) {
+            if (descending) {
+                setCandidate(findLastBefore(key, inclusive));
+            } else if (key == null) {
+                setCandidate(getHead().getForward(0));
+            } else {
+                setCandidate(findLastBefore(key, !inclusive).getForward(0));
+            }
+        }
+
+        // neither the head nor the tail hold elements
+        private void setCandidate(SkipListNode node) {
+            candidate = (node == getHead() || node.getForward(0) == null) ? null : node;
+        }
+
+        private void start() {
+            if (!started) {
+                started = true;
+                if (descending) {
+                    position(highKey, highInclusive);
+                } else {
+                    position(lowKey, lowInclusive);
+                }
+            }
+        }
+
+        private boolean isAboveLow(Comparable key) {
+            return lowKey == null || !isBefore(key, lowKey, !lowInclusive);
+        }
+
+        private boolean isBelowHigh(Comparable key) {
+            return highKey == null || isBefore(key, highKey, highInclusive);
+        }
+
+        @Override
+        public boolean hasNext() {
+            start();
+            if (candidate == null) {
+                return false;
+            }
+            Comparable key = candidate.getKeyValue().key;
+            return descending ? isAboveLow(key) : isBelowHigh(key);
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            KeyValue keyValue = candidate.getKeyValue();
+            lastKey = keyValue.key;
+            if (descending) {
+                setCandidate(findLastBefore(lastKey, false));
+            } else {
+                setCandidate(candidate.getForward(0));
+            }
+            return (T) keyValue.value;
+        }
+
+        @Override
+        public Comparable getKey() {
+            if (lastKey == null) {
+                throw new IllegalStateException("next() was not yet invoked");
+            }
+            return lastKey;
+        }
+
+        @Override
+        public void seek(Comparable key) {
+            started = true;
+            if (descending) {
+                if (isBelowHigh(key)) {
+                    position(key, true);
+                } else {
+                    position(highKey, highInclusive);
+                }
+            } else {
+                if (isAboveLow(key)) {
+                    position(key, true);
+                } else {
+                    position(lowKey, lowInclusive);
+                }
+            }
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("This implementation does not allow element removal via the iterator");
+        }
+    }
+
     @Override
     public boolean remove(Comparable key) {
         return removeKey(key);
@@ -194,6 +362,12 @@ public class SkipList<T extends Serializable> extends SkipList_Base implements D
         return size;
     }
 
+    @Override
+    public boolean isEmpty() {
+        // the first node after the head is the tail when there are no elements
+        return getHead().getForward(0).getForward(0) == null;
+    }
+
     @Override
     public void put(Comparable key, T value) {
         insert(key, value);
@@ -14,12 +14,34 @@ public class SkipListNode<T extends Serializable> extends SkipListNode_Base {
         setKeyValue(new KeyValue(key, value));
     }
 
+    public SkipListNode(SkipListNode[] forward, Comparable key, T value) {
+        this();
+        setForward(new ForwardArray(forward));
+        setKeyValue(new KeyValue(key, value));
+    }
+
     public void setForward(int level, SkipListNode next) {
         SkipListNode[] arr = copyForward();
         arr[level] = next;
         setForward(new ForwardArray(arr));
     }
 
+    /** Links this node to the given node at all the levels from <code>fromLevel</code> to <code>toLevel</code>, in one write */
+    public void setForward(int fromLevel, int toLevel, SkipListNode next) {
+        SkipListNode[] arr = copyForward();
+        for (int i = fromLevel; i <= toLevel; i++) {
+            arr[i] = next;
+        }
+        setForward(new ForwardArray(arr));
+    }
+
+    /** Copies the links from <code>fromLevel</code> to <code>toLevel</code> of the given array into this node, in one write */
+    public void setForward(int fromLevel, int toLevel, SkipListNode[] next) {
+        SkipListNode[] arr = copyForward();
+        System.arraycopy(next, fromLevel, arr, fromLevel, toLevel - fromLevel + 1);
+        setForward(new ForwardArray(arr));
+    }
+
     public SkipListNode getForward(int level) {
         return getForward().forward[level];
     }
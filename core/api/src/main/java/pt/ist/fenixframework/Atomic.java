@@ -34,4 +34,36 @@ public @interface Atomic {
      *         calling transaction's execution context. <code>false</code> otherwise.
      */
     boolean flattenNested() default true;
+
+    /**
+     * Value of {@link #maxRetries()} and {@link #serializeAfter()} meaning that the backend's configured default should be used.
+     */
+    int USE_DEFAULT = -1;
+
+    /**
+     * Value of {@link #maxRetries()} and {@link #serializeAfter()} meaning that there is no limit.
+     */
+    int UNLIMITED = Integer.MAX_VALUE;
+
+    /**
+     * The maximum number of times that the transaction is restarted because of conflicts with other transactions, before giving
+     * up. Only honored by backends that perform contention management.
+     *
+     * @return The maximum number of restarts, {@link #UNLIMITED}, or {@link #USE_DEFAULT} to use the backend's configuration.
+     */
+    int maxRetries() default USE_DEFAULT;
+
+    /**
+     * The number of conflicts after which the transaction is restarted in serialized mode, i.e. without other escalated
+     * transactions running and with new read-write transactions held back until it finishes. Only honored by backends that
+     * perform contention management.
+     *
+     * Serialized mode makes conflicts less likely, but does not guarantee that the transaction commits: the read-write
+     * transactions that had already started, and those running in other nodes, may still commit first and conflict with it. So,
+     * a serialized transaction may still be restarted, and still gives up after {@link #maxRetries()} restarts.
+     *
+     * @return The number of conflicts, {@link #UNLIMITED} to never serialize, or {@link #USE_DEFAULT} to use the backend's
+     *         configuration.
+     */
+    int serializeAfter() default USE_DEFAULT;
 }
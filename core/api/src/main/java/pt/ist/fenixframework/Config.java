@@ -11,8 +11,16 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import pt.ist.fenixframework.backend.BackEnd;
+import pt.ist.fenixframework.core.BoundedIdentityMap;
+import pt.ist.fenixframework.core.CompactExternalizationCodec;
 import pt.ist.fenixframework.core.DmlFile;
+import pt.ist.fenixframework.core.EvictionPolicy;
+import pt.ist.fenixframework.core.Externalization;
+import pt.ist.fenixframework.core.ExternalizationCodec;
+import pt.ist.fenixframework.core.IdentityMap;
+import pt.ist.fenixframework.core.JavaSerializationCodec;
 import pt.ist.fenixframework.core.Project;
+import pt.ist.fenixframework.core.SharedIdentityMap;
 import pt.ist.fenixframework.core.exception.ProjectException;
 import pt.ist.fenixframework.util.Converter;
 import pt.ist.fenixframework.util.FenixFrameworkThread;
@@ -94,6 +102,9 @@ public abstract class Config {
     public static final String PROPERTY_CONFIG_CLASS = "config.class";
     // the suffix of the method that sets a property from a String property
     protected static final String SETTER_FROM_STRING = "FromString";
+    // see pt.ist.fenixframework.dml.ValueTypeSerializationGenerator
+    private static final String VALUE_TYPE_SERIALIZER_CLASS = "pt.ist.fenixframework.ValueTypeSerializer";
+    private static final String REGISTER_EXTERNALIZERS_METHOD = "registerExternalizers";
 
     /**
      * This <strong>required</strong> parameter specifies the <code>URL[]</code> to each file
@@ -127,6 +138,41 @@ public abstract class Config {
      */
     protected String jGroupsConfigFile = "fenix-framework-udp-jgroups.xml";
 
+    /**
+     * This <strong>optional</strong> parameter, when positive, selects a {@link BoundedIdentityMap} as the shared identity map,
+     * and specifies the maximum number of domain objects that it keeps strongly reachable. Objects beyond this number are
+     * evicted according to the <code>identityMapEvictionPolicy</code>, but remain identifiable while the application holds
+     * them. The default value for this parameter is <code>0</code>, which keeps the unbounded,
+     * <code>SoftReference</code>-based {@link SharedIdentityMap}. {@link BoundedIdentityMap#DEFAULT_CAPACITY} is a reasonable
+     * starting value.
+     */
+    protected int identityMapCapacity = 0;
+
+    /**
+     * This <strong>optional</strong> parameter specifies the {@link EvictionPolicy} of the {@link BoundedIdentityMap}, and
+     * is ignored unless <code>identityMapCapacity</code> is positive. It can be set from a String with any of <code>lru</code>,
+     * <code>clock</code> or <code>w-tinylfu</code>. The default value for this parameter is {@link EvictionPolicy#LRU}.
+     */
+    protected EvictionPolicy identityMapEvictionPolicy = EvictionPolicy.LRU;
+
+    /**
+     * This <strong>optional</strong> parameter specifies the expected number of threads concurrently accessing the
+     * {@link BoundedIdentityMap}, and is ignored unless <code>identityMapCapacity</code> is positive. It is used to decide how
+     * many independently locked segments the map has. The default value for this parameter is four times the number of
+     * available processors.
+     */
+    protected int identityMapConcurrencyLevel = Runtime.getRuntime().availableProcessors() * 4;
+
+    /**
+     * This <strong>optional</strong> parameter specifies the {@link ExternalizationCodec} used to externalize the values
+     * written to storage. It can be set from a String with either <code>compact</code>, <code>java</code> or the fully
+     * qualified name of a class implementing {@link ExternalizationCodec} that has a public no-arg constructor. Data written
+     * with any of the built-in codecs remains readable whatever codec is selected, but nodes running previous versions of the
+     * framework can only read the data written with <code>java</code>. The default value for this parameter is the
+     * {@link JavaSerializationCodec}.
+     */
+    protected ExternalizationCodec externalizationCodec = new JavaSerializationCodec();
+
     protected void checkRequired(Object obj, String fieldName) {
         if (obj == null) {
             missingRequired(fieldName);
@@ -160,9 +206,50 @@ public abstract class Config {
      */
     protected final void initialize() {
         checkConfig();
+        SharedIdentityMap.setIdentityMap(createIdentityMap());
+        Externalization.setCodec(externalizationCodec);
+        registerValueTypeExternalizers();
         init();
     }
 
+    /**
+     * Registers, in the {@link CompactExternalizationCodec}, the externalizers that the code generator produced for the domain
+     * model's value types (in the generated <code>ValueTypeSerializer</code> class). Value types without externalizer fall back
+     * to Java serialization. The externalizers are registered even when the codec is not selected for writing, so that the
+     * value types it wrote (e.g. before switching back to <code>java</code>) can still be read.
+     */
+    protected void registerValueTypeExternalizers() {
+        ExternalizationCodec compactCodec =
+                (externalizationCodec instanceof CompactExternalizationCodec) ? externalizationCodec : Externalization
+                        .getRegisteredCodec(CompactExternalizationCodec.FORMAT_ID);
+        if (!(compactCodec instanceof CompactExternalizationCodec)) {
+            return;
+        }
+        try {
+            Class<?> serializerClass = Class.forName(VALUE_TYPE_SERIALIZER_CLASS);
+            serializerClass.getMethod(REGISTER_EXTERNALIZERS_METHOD, CompactExternalizationCodec.class).invoke(null,
+                    compactCodec);
+        } catch (ClassNotFoundException e) {
+            logger.debug("No generated value type serializer found");
+        } catch (NoSuchMethodException e) {
+            logger.warn("The generated value type serializer has no externalizers. Was the domain code generated with an older"
+                    + " version of the framework?");
+        } catch (Exception e) {
+            throw new ConfigError(e);
+        }
+    }
+
+    /**
+     * Creates the application-wide identity map, according to the <code>identityMap*</code> parameters. Subclasses may override
+     * this method to provide a different {@link IdentityMap}.
+     */
+    protected IdentityMap createIdentityMap() {
+        if (identityMapCapacity <= 0) {
+            return new SharedIdentityMap();
+        }
+        return new BoundedIdentityMap(identityMapCapacity, identityMapEvictionPolicy, identityMapConcurrencyLevel);
+    }
+
     // set each property via reflection, ignoring the config.class property, which was used to
     // define which config instance to create
     protected final void populate(Properties props) {
@@ -317,6 +404,45 @@ public abstract class Config {
         }
     }
 
+    protected void identityMapCapacityFromString(String value) {
+        try {
+            identityMapCapacity = Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new ConfigError(e);
+        }
+    }
+
+    protected void identityMapEvictionPolicyFromString(String value) {
+        try {
+            identityMapEvictionPolicy = EvictionPolicy.fromString(value);
+        } catch (IllegalArgumentException e) {
+            throw new ConfigError(e);
+        }
+    }
+
+    protected void identityMapConcurrencyLevelFromString(String value) {
+        try {
+            identityMapConcurrencyLevel = Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new ConfigError(e);
+        }
+    }
+
+    protected void externalizationCodecFromString(String value) {
+        String codecName = value.trim();
+        if (codecName.equalsIgnoreCase("compact")) {
+            externalizationCodec = new CompactExternalizationCodec();
+        } else if (codecName.equalsIgnoreCase("java")) {
+            externalizationCodec = new JavaSerializationCodec();
+        } else {
+            try {
+                externalizationCodec = (ExternalizationCodec) Class.forName(codecName).newInstance();
+            } catch (Exception e) {
+                throw new ConfigError(e);
+            }
+        }
+    }
+
     protected abstract void init();
 
     /**
@@ -360,6 +486,22 @@ public abstract class Config {
         return appName;
     }
 
+    public int getIdentityMapCapacity() {
+        return identityMapCapacity;
+    }
+
+    public EvictionPolicy getIdentityMapEvictionPolicy() {
+        return identityMapEvictionPolicy;
+    }
+
+    public int getIdentityMapConcurrencyLevel() {
+        return identityMapConcurrencyLevel;
+    }
+
+    public ExternalizationCodec getExternalizationCodec() {
+        return externalizationCodec;
+    }
+
     /**
      * Subclasses of this class can overwrite this method, but they should specifically call <code>super.shutdown()</code> to
      * orderly shutdown the framework.
@@ -0,0 +1,202 @@
+package pt.ist.fenixframework.core;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A size-bounded, lock-striped {@link IdentityMap}.
+ *
+ * <p>
+ * The map keeps at most <code>capacity</code> domain objects strongly reachable. Which objects stay resident is decided by the
+ * configured {@link EvictionPolicy}. Evicting an object only drops the strong reference held by the map: every cached object is
+ * also indexed through a {@link WeakReference}, so that, as long as the application still holds an evicted object, a
+ * <code>lookup</code> keeps returning that same instance (and re-admits it). This preserves the identity guarantee of the map,
+ * i.e. there is never more than one instance in the system for the same oid.
+ * </p>
+ *
+ * <p>
+ * Keys are spread over a fixed number of segments, each guarded by its own lock and with its own share of the capacity. Cleared
+ * weak entries are expunged by the segment that owns them, only when a new object is cached into that segment.
+ * </p>
+ */
+public class BoundedIdentityMap implements IdentityMap {
+    public static final int DEFAULT_CAPACITY = 100000;
+
+    private final Segment[] segments;
+    private final int segmentMask;
+    private final EvictionPolicy policy;
+
+    public BoundedIdentityMap() {
+        this(DEFAULT_CAPACITY, EvictionPolicy.LRU, Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    public BoundedIdentityMap(int capacity, EvictionPolicy policy, int concurrencyLevel) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        if (policy == null) {
+            throw new IllegalArgumentException("An eviction policy must be provided");
+        }
+
+        int numSegments = 1;
+        while (numSegments < concurrencyLevel && numSegments < capacity) {
+            numSegments <<= 1;
+        }
+
+        this.policy = policy;
+        this.segmentMask = numSegments - 1;
+        this.segments = new Segment[numSegments];
+
+        int segmentCapacity = (capacity + numSegments - 1) / numSegments;
+        for (int i = 0; i < numSegments; i++) {
+            this.segments[i] = new Segment(policy.newEvictor(segmentCapacity));
+        }
+    }
+
+    public EvictionPolicy getEvictionPolicy() {
+        return this.policy;
+    }
+
+    /**
+     * @return The number of objects currently held strongly by this map.
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : this.segments) {
+            segment.lock();
+            try {
+                size += segment.evictor.size();
+            } finally {
+                segment.unlock();
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public AbstractDomainObject cache(AbstractDomainObject obj) {
+        Object key = obj.getOid();
+        return segmentFor(key).cache(key, obj);
+    }
+
+    @Override
+    public AbstractDomainObject lookup(Object key) {
+        return segmentFor(key).lookup(key);
+    }
+
+    private Segment segmentFor(Object key) {
+        int h = key.hashCode();
+        // spread the bits, as oids tend to differ mostly in their lower bits
+        h ^= (h >>> 20) ^ (h >>> 12);
+        h ^= (h >>> 7) ^ (h >>> 4);
+        return this.segments[h & this.segmentMask];
+    }
+
+    /**
+     * An entry of the identity map. It always references its object weakly. While the entry is resident, <code>strong</code>
+     * also references it, which prevents it from being collected. The remaining fields are owned by the segment's
+     * {@link IdentityMapEvictor}.
+     */
+    static final class Entry extends WeakReference<AbstractDomainObject> {
+        final Object key;
+        AbstractDomainObject strong;
+
+        Entry prev;
+        Entry next;
+        int queue;
+        boolean referenced;
+
+        Entry(Object key, AbstractDomainObject obj, ReferenceQueue<AbstractDomainObject> refQueue) {
+            super(obj, refQueue);
+            this.key = key;
+        }
+
+        boolean isResident() {
+            return this.strong != null;
+        }
+    }
+
+    private static final class Segment extends ReentrantLock {
+        private static final long serialVersionUID = 1L;
+
+        private final HashMap<Object, Entry> index = new HashMap<Object, Entry>();
+        private final ReferenceQueue<AbstractDomainObject> refQueue = new ReferenceQueue<AbstractDomainObject>();
+        private final IdentityMapEvictor evictor;
+
+        Segment(IdentityMapEvictor evictor) {
+            this.evictor = evictor;
+        }
+
+        AbstractDomainObject lookup(Object key) {
+            lock();
+            try {
+                Entry entry = this.index.get(key);
+                if (entry == null) {
+                    return null;
+                }
+
+                AbstractDomainObject obj = entry.get();
+                if (obj == null) {
+                    this.index.remove(key);
+                    return null;
+                }
+
+                recordAccess(entry, obj);
+                return obj;
+            } finally {
+                unlock();
+            }
+        }
+
+        /* This method stores the new object if another one didn't exist already.  In either case it returns the object that
+         * was left in the cache.  This behaviour is very important to ensure that we do not inadvertently permit more than one
+         * reference to the same domain object to wander around in the system.
+         */
+        AbstractDomainObject cache(Object key, AbstractDomainObject obj) {
+            lock();
+            try {
+                expungeStaleEntries();
+
+                Entry entry = this.index.get(key);
+                if (entry != null) {
+                    AbstractDomainObject objInCache = entry.get();
+                    if (objInCache != null) {
+                        recordAccess(entry, objInCache);
+                        return objInCache;
+                    }
+                }
+
+                entry = new Entry(key, obj, this.refQueue);
+                this.index.put(key, entry);
+                entry.strong = obj;
+                this.evictor.admit(entry);
+                return obj;
+            } finally {
+                unlock();
+            }
+        }
+
+        private void recordAccess(Entry entry, AbstractDomainObject obj) {
+            if (entry.isResident()) {
+                this.evictor.touch(entry);
+            } else {
+                // the object was evicted, but the application still holds it: bring it back
+                entry.strong = obj;
+                this.evictor.admit(entry);
+            }
+        }
+
+        private void expungeStaleEntries() {
+            Entry stale = (Entry) this.refQueue.poll();
+            while (stale != null) {
+                // the key may have been re-cached meanwhile with a new entry, which must not be removed
+                if (this.index.get(stale.key) == stale) {
+                    this.index.remove(stale.key);
+                }
+                stale = (Entry) this.refQueue.poll();
+            }
+        }
+    }
+}
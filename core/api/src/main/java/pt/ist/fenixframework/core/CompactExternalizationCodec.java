@@ -0,0 +1,300 @@
+package pt.ist.fenixframework.core;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.Charset;
+import java.util.concurrent.ConcurrentHashMap;
+
+import pt.ist.fenixframework.DomainObject;
+import pt.ist.fenixframework.FenixFramework;
+import pt.ist.fenixframework.backend.OID;
+
+/**
+ * A compact {@link ExternalizationCodec}, which must be selected explicitly (it is always registered for reading). It writes a one byte tag followed by a compact encoding of the value: integral
+ * numbers are variable-length (zig-zag) encoded, Strings are UTF-8, enums are written as their class and constant names, and
+ * domain objects are written as references (their oid, when it is a <code>long</code>, or their external id otherwise).
+ *
+ * <p>
+ * Instances of value types with a registered {@link ValueTypeExternalizer} are written by that externalizer. Any other
+ * {@link Serializable} object is embedded as a Java serialization stream, so that this codec accepts everything that the
+ * previous, serialization-based, {@link Externalization} accepted.
+ * </p>
+ */
+public class CompactExternalizationCodec implements ExternalizationCodec {
+
+    public static final byte FORMAT_ID = 1;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    // The tags.  Never change the value of an existing tag, as it is part of the stored format
+    private static final byte NULL = 0;
+    private static final byte TRUE = 1;
+    private static final byte FALSE = 2;
+    private static final byte BYTE = 3;
+    private static final byte SHORT = 4;
+    private static final byte CHAR = 5;
+    private static final byte INT = 6;
+    private static final byte LONG = 7;
+    private static final byte FLOAT = 8;
+    private static final byte DOUBLE = 9;
+    private static final byte STRING = 10;
+    private static final byte BYTE_ARRAY = 11;
+    private static final byte ENUM = 12;
+    private static final byte DOMAIN_OBJECT_LONG_OID = 13;
+    private static final byte DOMAIN_OBJECT_EXTERNAL_ID = 14;
+    private static final byte OID_EXTERNAL_ID = 15;
+    private static final byte VALUE_TYPE = 16;
+    private static final byte SERIALIZABLE = 17;
+
+    private final ConcurrentHashMap<Class<?>, ValueTypeExternalizer<?>> externalizersByClass =
+            new ConcurrentHashMap<Class<?>, ValueTypeExternalizer<?>>();
+    private final ConcurrentHashMap<String, ValueTypeExternalizer<?>> externalizersByName =
+            new ConcurrentHashMap<String, ValueTypeExternalizer<?>>();
+
+    @Override
+    public byte getFormatId() {
+        return FORMAT_ID;
+    }
+
+    /**
+     * Registers the externalizer to use for the instances of the given value type. Only instances whose class is exactly
+     * <code>type</code> are handled by the externalizer. Instances are stored along with the name of their class, so the same
+     * externalizer must be registered on every node that reads them.
+     */
+    public <T> void registerValueType(Class<T> type, ValueTypeExternalizer<T> externalizer) {
+        externalizersByClass.put(type, externalizer);
+        externalizersByName.put(type.getName(), externalizer);
+    }
+
+    @Override
+    public void writeObject(Object obj, DataOutput out) throws IOException {
+        if (obj == null || obj instanceof Externalization.NullClass) {
+            out.writeByte(NULL);
+        } else if (obj instanceof String) {
+            out.writeByte(STRING);
+            writeString((String) obj, out);
+        } else if (obj instanceof Integer) {
+            out.writeByte(INT);
+            writeVarInt(encodeZigZag((Integer) obj), out);
+        } else if (obj instanceof Long) {
+            out.writeByte(LONG);
+            writeVarLong(encodeZigZag((Long) obj), out);
+        } else if (obj instanceof Boolean) {
+            out.writeByte(((Boolean) obj) ? TRUE : FALSE);
+        } else if (obj instanceof DomainObject) {
+            writeDomainObject((DomainObject) obj, out);
+        } else if (obj instanceof Enum) {
+            Enum<?> e = (Enum<?>) obj;
+            out.writeByte(ENUM);
+            writeString(e.getDeclaringClass().getName(), out);
+            writeString(e.name(), out);
+        } else if (obj instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) obj);
+        } else if (obj instanceof Float) {
+            out.writeByte(FLOAT);
+            out.writeFloat((Float) obj);
+        } else if (obj instanceof Short) {
+            out.writeByte(SHORT);
+            writeVarInt(encodeZigZag((Short) obj), out);
+        } else if (obj instanceof Byte) {
+            out.writeByte(BYTE);
+            out.writeByte((Byte) obj);
+        } else if (obj instanceof Character) {
+            out.writeByte(CHAR);
+            out.writeChar((Character) obj);
+        } else if (obj instanceof byte[]) {
+            byte[] bytes = (byte[]) obj;
+            out.writeByte(BYTE_ARRAY);
+            writeVarInt(bytes.length, out);
+            out.write(bytes);
+        } else if (obj instanceof OID) {
+            out.writeByte(OID_EXTERNAL_ID);
+            writeString(((OID) obj).toExternalId(), out);
+        } else {
+            writeOther(obj, out);
+        }
+    }
+
+    private void writeDomainObject(DomainObject obj, DataOutput out) throws IOException {
+        Object oid = (obj instanceof AbstractDomainObject) ? ((AbstractDomainObject) obj).getOid() : null;
+        if (oid instanceof Long) {
+            out.writeByte(DOMAIN_OBJECT_LONG_OID);
+            writeVarLong((Long) oid, out);
+        } else {
+            out.writeByte(DOMAIN_OBJECT_EXTERNAL_ID);
+            writeString(obj.getExternalId(), out);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void writeOther(Object obj, DataOutput out) throws IOException {
+        ValueTypeExternalizer<Object> externalizer = (ValueTypeExternalizer<Object>) externalizersByClass.get(obj.getClass());
+        if (externalizer != null) {
+            out.writeByte(VALUE_TYPE);
+            writeString(obj.getClass().getName(), out);
+            externalizer.writeValue(obj, out, this);
+        } else if (obj instanceof Serializable) {
+            byte[] bytes = Externalization.externalizeSerializable((Serializable) obj);
+            out.writeByte(SERIALIZABLE);
+            writeVarInt(bytes.length, out);
+            out.write(bytes);
+        } else {
+            throw new UnsupportedOperationException(obj.getClass().getName());
+        }
+    }
+
+    @Override
+    public Object readObject(DataInput in) throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+        case NULL:
+            return null;
+        case TRUE:
+            return Boolean.TRUE;
+        case FALSE:
+            return Boolean.FALSE;
+        case BYTE:
+            return in.readByte();
+        case SHORT:
+            return (short) decodeZigZag(readVarInt(in));
+        case CHAR:
+            return in.readChar();
+        case INT:
+            return decodeZigZag(readVarInt(in));
+        case LONG:
+            return decodeZigZag(readVarLong(in));
+        case FLOAT:
+            return in.readFloat();
+        case DOUBLE:
+            return in.readDouble();
+        case STRING:
+            return readString(in);
+        case BYTE_ARRAY:
+            return readBytes(in);
+        case ENUM:
+            return readEnum(in);
+        case DOMAIN_OBJECT_LONG_OID:
+            return FenixFramework.getConfig().getBackEnd().fromOid(readVarLong(in));
+        case DOMAIN_OBJECT_EXTERNAL_ID:
+            return FenixFramework.getDomainObject(readString(in));
+        case OID_EXTERNAL_ID:
+            return new OID(readString(in));
+        case VALUE_TYPE:
+            return readValueType(in);
+        case SERIALIZABLE:
+            return Externalization.internalizeSerializable(readBytes(in));
+        default:
+            throw new ExternalizationException(new IOException("Unknown tag: " + tag));
+        }
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private Object readEnum(DataInput in) throws IOException {
+        Class enumClass = loadClass(readString(in));
+        return Enum.valueOf(enumClass, readString(in));
+    }
+
+    private Object readValueType(DataInput in) throws IOException {
+        String className = readString(in);
+        ValueTypeExternalizer<?> externalizer = externalizersByName.get(className);
+        if (externalizer == null) {
+            throw new ExternalizationException(new IOException("No externalizer registered for value type " + className));
+        }
+        return externalizer.readValue(in, this);
+    }
+
+    private static Class<?> loadClass(String className) {
+        try {
+            ClassLoader loader = Thread.currentThread().getContextClassLoader();
+            if (loader == null) {
+                loader = CompactExternalizationCodec.class.getClassLoader();
+            }
+            return Class.forName(className, true, loader);
+        } catch (ClassNotFoundException cnfe) {
+            throw new ExternalizationException(cnfe);
+        }
+    }
+
+    /*
+     * Encoding helpers.  They are public so that ValueTypeExternalizers can produce the same compact encodings.
+     */
+
+    public static void writeString(String value, DataOutput out) throws IOException {
+        byte[] bytes = value.getBytes(UTF8);
+        writeVarInt(bytes.length, out);
+        out.write(bytes);
+    }
+
+    public static String readString(DataInput in) throws IOException {
+        return new String(readBytes(in), UTF8);
+    }
+
+    private static byte[] readBytes(DataInput in) throws IOException {
+        byte[] bytes = new byte[readVarInt(in)];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * Writes an unsigned variable-length int: seven bits per byte, least significant group first. Negative numbers always take
+     * five bytes, so signed values should first go through {@link #encodeZigZag(int)}.
+     */
+    public static void writeVarInt(int value, DataOutput out) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    public static int readVarInt(DataInput in) throws IOException {
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = in.readByte();
+            result |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new ExternalizationException(new IOException("Malformed variable-length int"));
+    }
+
+    public static void writeVarLong(long value, DataOutput out) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    public static long readVarLong(DataInput in) throws IOException {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new ExternalizationException(new IOException("Malformed variable-length long"));
+    }
+
+    public static int encodeZigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    public static int decodeZigZag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public static long encodeZigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    public static long decodeZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
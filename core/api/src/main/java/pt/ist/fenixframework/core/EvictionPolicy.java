@@ -0,0 +1,48 @@
+package pt.ist.fenixframework.core;
+
+/**
+ * The eviction policies available for the {@link BoundedIdentityMap}. The policy decides which domain objects stop being
+ * strongly held by the identity map once its capacity is reached.
+ *
+ * @see BoundedIdentityMap
+ */
+public enum EvictionPolicy {
+    /**
+     * Evicts the least recently used object.
+     */
+    LRU {
+        @Override
+        IdentityMapEvictor newEvictor(int capacity) {
+            return new IdentityMapEvictor.Lru(capacity);
+        }
+    },
+    /**
+     * Approximates LRU with a single reference bit per object (second-chance). Hits only set a flag, so this is the cheapest
+     * policy to maintain under heavy read load.
+     */
+    CLOCK {
+        @Override
+        IdentityMapEvictor newEvictor(int capacity) {
+            return new IdentityMapEvictor.Clock(capacity);
+        }
+    },
+    /**
+     * Window TinyLFU: a small LRU admission window in front of a segmented LRU main area, where admission to the main area is
+     * decided by an approximate access frequency. Gives the best hit rate for skewed workloads that also scan.
+     */
+    W_TINYLFU {
+        @Override
+        IdentityMapEvictor newEvictor(int capacity) {
+            return new IdentityMapEvictor.WindowTinyLfu(capacity);
+        }
+    };
+
+    abstract IdentityMapEvictor newEvictor(int capacity);
+
+    /**
+     * Parses a policy name, ignoring case and accepting '-' in place of '_' (e.g. <code>w-tinylfu</code>).
+     */
+    public static EvictionPolicy fromString(String value) {
+        return valueOf(value.trim().toUpperCase().replace('-', '_'));
+    }
+}
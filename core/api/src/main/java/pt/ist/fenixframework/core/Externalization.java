@@ -2,14 +2,32 @@ package pt.ist.fenixframework.core;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Converts objects to and from byte arrays, for storage.
+ *
+ * <p>
+ * Box values go through {@link #externalizeObject(Object)} and {@link #internalizeObject(byte[])}, which delegate to a
+ * pluggable {@link ExternalizationCodec}. By default, that is the {@link JavaSerializationCodec}, which writes exactly what
+ * previous versions of the framework wrote, and the {@link CompactExternalizationCodec} must be selected explicitly (see
+ * {@link pt.ist.fenixframework.Config#getExternalizationCodec()}). Data written by either of them is always readable. The
+ * <code>*Serializable</code> methods always use Java serialization.
+ * </p>
+ */
 public class Externalization {
+    private static final Logger logger = LoggerFactory.getLogger(Externalization.class);
 
     // The NullClass and the NULL_OBJECT are public so that they can be used by anyone who needs an
     // object representation for null
@@ -19,21 +37,95 @@ public class Externalization {
 
     public static final NullClass NULL_OBJECT = new NullClass();
 
+    /**
+     * The format identifier reserved for plain Java serialization streams, which carry no format header.
+     */
+    public static final byte LEGACY_FORMAT_ID = 0;
+
+    /**
+     * The first byte of the header of every payload written by a codec other than Java serialization. Java serialization
+     * streams always start with <code>0xACED</code> and GZIP streams with <code>0x1F8B</code>, so this marker is never ambiguous.
+     * The marker is followed by the codec's format identifier.
+     */
+    private static final byte FORMAT_MARKER = (byte) 0xFE;
+
+    private static final ConcurrentHashMap<Byte, ExternalizationCodec> CODECS = new ConcurrentHashMap<Byte, ExternalizationCodec>();
+
+    private static volatile ExternalizationCodec codec;
+
+    static {
+        registerCodec(new CompactExternalizationCodec());
+        setCodec(new JavaSerializationCodec());
+    }
+
+    /**
+     * @return The codec currently used by {@link #externalizeObject(Object)}
+     */
+    public static ExternalizationCodec getCodec() {
+        return codec;
+    }
+
+    /**
+     * Selects the codec used by {@link #externalizeObject(Object)} from now on. The codec is also registered, so that the data
+     * it writes can be internalized. Data written by previously selected codecs remains readable.
+     */
+    public static void setCodec(ExternalizationCodec newCodec) {
+        registerCodec(newCodec);
+        codec = newCodec;
+    }
+
+    /**
+     * @return The codec registered for reading the data with the given format identifier, or <code>null</code> if there is none
+     */
+    public static ExternalizationCodec getRegisteredCodec(byte formatId) {
+        return CODECS.get(formatId);
+    }
+
+    /**
+     * Makes the data written by the given codec readable by {@link #internalizeObject(byte[])}, without selecting it for
+     * writing.
+     */
+    public static void registerCodec(ExternalizationCodec newCodec) {
+        ExternalizationCodec previous = CODECS.put(newCodec.getFormatId(), newCodec);
+        if (previous != null && previous != newCodec && previous.getClass() != newCodec.getClass()) {
+            logger.warn("Codec " + previous.getClass().getName() + " replaced by " + newCodec.getClass().getName()
+                    + " for format " + newCodec.getFormatId());
+        }
+    }
+
     public static byte[] externalizeObject(Object obj) {
-        if (obj == null) {
-            return externalizeSerializable(NULL_OBJECT);
-        } else if (!(obj instanceof Serializable)) {
-            throw new UnsupportedOperationException(obj.getClass().getName());
+        ExternalizationCodec currentCodec = codec;
+        if (currentCodec.getFormatId() == LEGACY_FORMAT_ID) {
+            return externalizeSerializable(JavaSerializationCodec.toSerializable(obj));
+        }
+
+        try {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(baos);
+            out.writeByte(FORMAT_MARKER);
+            out.writeByte(currentCodec.getFormatId());
+            currentCodec.writeObject(obj, out);
+            out.close();
+            return baos.toByteArray();
+        } catch (IOException ioe) {
+            throw new ExternalizationException(ioe);
         }
-        return externalizeSerializable((Serializable) obj);
     }
 
     public static <T> T internalizeObject(byte[] bytes) {
-        Object obj = internalizeSerializable(bytes);
-        if (obj instanceof NullClass) {
-            return null;
-        } else {
-            return (T) obj;
+        if (bytes.length < 2 || bytes[0] != FORMAT_MARKER) {
+            // data stored before codecs existed, or written by the JavaSerializationCodec
+            return (T) JavaSerializationCodec.fromSerializable(internalizeSerializable(bytes));
+        }
+
+        ExternalizationCodec dataCodec = CODECS.get(bytes[1]);
+        if (dataCodec == null) {
+            throw new ExternalizationException(new IOException("No codec registered for format " + bytes[1]));
+        }
+        try {
+            return (T) dataCodec.readObject(new DataInputStream(new ByteArrayInputStream(bytes, 2, bytes.length - 2)));
+        } catch (IOException ioe) {
+            throw new ExternalizationException(ioe);
         }
     }
 
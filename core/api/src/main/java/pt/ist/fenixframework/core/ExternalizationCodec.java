@@ -0,0 +1,39 @@
+package pt.ist.fenixframework.core;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A codec used by {@link Externalization} to turn objects into bytes and back.
+ *
+ * <p>
+ * Every payload produced through {@link Externalization#externalizeObject(Object)} starts with a small format header that
+ * identifies the codec that wrote it (see {@link #getFormatId()}), so that data written by any registered codec can always be
+ * read back, regardless of the codec currently selected for writing. Payloads without such header are plain Java serialization
+ * streams, as produced by previous versions of the framework.
+ * </p>
+ *
+ * @see Externalization#setCodec(ExternalizationCodec)
+ */
+public interface ExternalizationCodec {
+
+    /**
+     * The format identifier of this codec, written in the header of every payload it produces. It must be unique among the
+     * registered codecs. The identifier {@link Externalization#LEGACY_FORMAT_ID} is reserved for Java serialization, which is
+     * written without header.
+     */
+    public byte getFormatId();
+
+    /**
+     * Writes the given object, which may be <code>null</code>.
+     *
+     * @throws UnsupportedOperationException If the object's type cannot be handled by this codec
+     */
+    public void writeObject(Object obj, DataOutput out) throws IOException;
+
+    /**
+     * Reads an object previously written by {@link #writeObject(Object, DataOutput)}.
+     */
+    public Object readObject(DataInput in) throws IOException;
+}
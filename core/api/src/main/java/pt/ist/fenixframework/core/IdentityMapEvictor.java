@@ -0,0 +1,329 @@
+package pt.ist.fenixframework.core;
+
+import pt.ist.fenixframework.core.BoundedIdentityMap.Entry;
+
+/**
+ * The eviction strategy of one segment of a {@link BoundedIdentityMap}. It keeps track of the resident entries and, whenever
+ * more than <code>capacity</code> entries are resident, evicts some of them. Evicting an entry simply clears its strong
+ * reference.
+ *
+ * Instances are not thread-safe: they are always used while holding the lock of the segment that owns them.
+ */
+abstract class IdentityMapEvictor {
+    protected final int capacity;
+    protected int size = 0;
+
+    IdentityMapEvictor(int capacity) {
+        this.capacity = capacity;
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * Makes the given (already strongly referenced) entry resident. May evict other entries.
+     */
+    abstract void admit(Entry entry);
+
+    /**
+     * Records a hit on a resident entry.
+     */
+    abstract void touch(Entry entry);
+
+    protected final void evict(Entry entry) {
+        entry.strong = null;
+        entry.queue = EntryList.NONE;
+        entry.referenced = false;
+    }
+
+    /**
+     * An intrusive doubly-linked list of entries, with a sentinel. The head is the most recently inserted entry.
+     */
+    static final class EntryList {
+        static final int NONE = 0;
+
+        private final Entry sentinel = new Entry(null, null, null);
+        private final int id;
+        private int size = 0;
+
+        EntryList(int id) {
+            this.id = id;
+            this.sentinel.prev = this.sentinel;
+            this.sentinel.next = this.sentinel;
+        }
+
+        int size() {
+            return this.size;
+        }
+
+        boolean isEmpty() {
+            return this.size == 0;
+        }
+
+        void addFirst(Entry entry) {
+            linkAfter(this.sentinel, entry);
+        }
+
+        void linkAfter(Entry position, Entry entry) {
+            entry.prev = position;
+            entry.next = position.next;
+            position.next.prev = entry;
+            position.next = entry;
+            entry.queue = this.id;
+            this.size++;
+        }
+
+        void remove(Entry entry) {
+            entry.prev.next = entry.next;
+            entry.next.prev = entry.prev;
+            entry.prev = null;
+            entry.next = null;
+            this.size--;
+        }
+
+        void moveToFirst(Entry entry) {
+            if (this.sentinel.next != entry) {
+                remove(entry);
+                addFirst(entry);
+            }
+        }
+
+        Entry last() {
+            return this.sentinel.prev == this.sentinel ? null : this.sentinel.prev;
+        }
+
+        /**
+         * Circular successor, skipping the sentinel. Only meaningful on a non-empty list.
+         */
+        Entry nextOf(Entry entry) {
+            Entry next = entry.next;
+            return next == this.sentinel ? next.next : next;
+        }
+    }
+
+    static final class Lru extends IdentityMapEvictor {
+        private final EntryList list = new EntryList(1);
+
+        Lru(int capacity) {
+            super(capacity);
+        }
+
+        @Override
+        void admit(Entry entry) {
+            this.list.addFirst(entry);
+            this.size++;
+            while (this.size > this.capacity) {
+                Entry victim = this.list.last();
+                this.list.remove(victim);
+                this.size--;
+                evict(victim);
+            }
+        }
+
+        @Override
+        void touch(Entry entry) {
+            this.list.moveToFirst(entry);
+        }
+    }
+
+    static final class Clock extends IdentityMapEvictor {
+        private final EntryList ring = new EntryList(1);
+        private Entry hand = null;
+
+        Clock(int capacity) {
+            super(capacity);
+        }
+
+        @Override
+        void admit(Entry entry) {
+            if (this.size >= this.capacity) {
+                evictOne();
+            }
+            entry.referenced = false;
+            if (this.hand == null) {
+                this.ring.addFirst(entry);
+                this.hand = entry;
+            } else {
+                // insert right behind the hand, so that the new entry is the last one to be inspected
+                this.ring.linkAfter(this.hand.prev, entry);
+            }
+            this.size++;
+        }
+
+        @Override
+        void touch(Entry entry) {
+            entry.referenced = true;
+        }
+
+        private void evictOne() {
+            while (this.hand.referenced) {
+                this.hand.referenced = false;
+                this.hand = this.ring.nextOf(this.hand);
+            }
+            Entry victim = this.hand;
+            this.hand = this.ring.size() == 1 ? null : this.ring.nextOf(victim);
+            this.ring.remove(victim);
+            this.size--;
+            evict(victim);
+        }
+    }
+
+    /**
+     * Window TinyLFU. New entries go into a small LRU window. Entries leaving the window compete for a place in the main area
+     * (a segmented LRU, made of a probation and a protected list) against the main area's victim: the one with the highest
+     * estimated frequency stays. Entries hit while in probation are promoted to the protected list.
+     */
+    static final class WindowTinyLfu extends IdentityMapEvictor {
+        private static final int WINDOW = 1;
+        private static final int PROBATION = 2;
+        private static final int PROTECTED = 3;
+
+        private final EntryList window = new EntryList(WINDOW);
+        private final EntryList probation = new EntryList(PROBATION);
+        private final EntryList protectedList = new EntryList(PROTECTED);
+
+        private final int maxWindow;
+        private final int maxProtected;
+        private final FrequencySketch sketch;
+
+        WindowTinyLfu(int capacity) {
+            super(capacity);
+            this.maxWindow = Math.max(1, capacity / 100);
+            int maxMain = Math.max(0, capacity - this.maxWindow);
+            this.maxProtected = (int) (maxMain * 0.8);
+            this.sketch = new FrequencySketch(capacity);
+        }
+
+        @Override
+        void admit(Entry entry) {
+            this.sketch.increment(entry.key);
+            this.window.addFirst(entry);
+            this.size++;
+
+            if (this.window.size() > this.maxWindow) {
+                Entry candidate = this.window.last();
+                this.window.remove(candidate);
+
+                if (this.size <= this.capacity) {
+                    this.probation.addFirst(candidate);
+                    return;
+                }
+
+                Entry victim = this.probation.last();
+                if (victim == null) {
+                    victim = this.protectedList.last();
+                }
+                if (victim != null && this.sketch.frequency(candidate.key) > this.sketch.frequency(victim.key)) {
+                    removeFromMain(victim);
+                    this.probation.addFirst(candidate);
+                    evict(victim);
+                } else {
+                    evict(candidate);
+                }
+                this.size--;
+            } else if (this.size > this.capacity) {
+                // the window was not full (e.g. the main area has no room at all): keep the bound anyway
+                Entry victim = this.window.last();
+                this.window.remove(victim);
+                this.size--;
+                evict(victim);
+            }
+        }
+
+        @Override
+        void touch(Entry entry) {
+            this.sketch.increment(entry.key);
+            switch (entry.queue) {
+            case WINDOW:
+                this.window.moveToFirst(entry);
+                break;
+            case PROBATION:
+                this.probation.remove(entry);
+                this.protectedList.addFirst(entry);
+                if (this.protectedList.size() > this.maxProtected) {
+                    Entry demoted = this.protectedList.last();
+                    this.protectedList.remove(demoted);
+                    this.probation.addFirst(demoted);
+                }
+                break;
+            case PROTECTED:
+                this.protectedList.moveToFirst(entry);
+                break;
+            default:
+                throw new IllegalStateException("Touched an entry that is not resident");
+            }
+        }
+
+        private void removeFromMain(Entry entry) {
+            if (entry.queue == PROBATION) {
+                this.probation.remove(entry);
+            } else {
+                this.protectedList.remove(entry);
+            }
+        }
+    }
+
+    /**
+     * A count-min sketch with four rows of saturating 4-bit counters (kept in bytes). Once the number of increments reaches
+     * ten times the capacity, every counter is halved, so that the estimated frequencies age.
+     */
+    static final class FrequencySketch {
+        private static final int[] SEEDS = { 0x97cb3127, 0xb7d5a4e3, 0x85ebca6b, 0xc2b2ae35 };
+        private static final int MAX_COUNT = 15;
+
+        private final byte[][] table;
+        private final int mask;
+        private final int sampleSize;
+        private int additions = 0;
+
+        FrequencySketch(int capacity) {
+            int width = 16;
+            while (width < capacity) {
+                width <<= 1;
+            }
+            this.table = new byte[SEEDS.length][width];
+            this.mask = width - 1;
+            this.sampleSize = Math.max(10 * capacity, 16);
+        }
+
+        void increment(Object key) {
+            int hash = key.hashCode();
+            boolean added = false;
+            for (int i = 0; i < SEEDS.length; i++) {
+                int index = indexOf(hash, i);
+                if (this.table[i][index] < MAX_COUNT) {
+                    this.table[i][index]++;
+                    added = true;
+                }
+            }
+            if (added && ++this.additions >= this.sampleSize) {
+                reset();
+            }
+        }
+
+        int frequency(Object key) {
+            int hash = key.hashCode();
+            int min = MAX_COUNT;
+            for (int i = 0; i < SEEDS.length; i++) {
+                min = Math.min(min, this.table[i][indexOf(hash, i)]);
+            }
+            return min;
+        }
+
+        private int indexOf(int hash, int row) {
+            int h = (hash ^ SEEDS[row]) * 0x9e3779b9;
+            h ^= h >>> 16;
+            return h & this.mask;
+        }
+
+        private void reset() {
+            for (byte[] row : this.table) {
+                for (int i = 0; i < row.length; i++) {
+                    row[i] = (byte) (row[i] >>> 1);
+                }
+            }
+            this.additions /= 2;
+        }
+    }
+}
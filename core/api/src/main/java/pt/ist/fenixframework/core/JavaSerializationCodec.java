@@ -0,0 +1,46 @@
+package pt.ist.fenixframework.core;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * An {@link ExternalizationCodec} that uses plain Java serialization. When it is the codec selected in {@link Externalization},
+ * payloads are written without format header, exactly as previous versions of the framework did. This allows nodes running
+ * those versions to still read them (e.g. during a rolling upgrade).
+ */
+public class JavaSerializationCodec implements ExternalizationCodec {
+
+    @Override
+    public byte getFormatId() {
+        return Externalization.LEGACY_FORMAT_ID;
+    }
+
+    @Override
+    public void writeObject(Object obj, DataOutput out) throws IOException {
+        byte[] bytes = Externalization.externalizeSerializable(toSerializable(obj));
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    @Override
+    public Object readObject(DataInput in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return fromSerializable(Externalization.internalizeSerializable(bytes));
+    }
+
+    static Serializable toSerializable(Object obj) {
+        if (obj == null) {
+            return Externalization.NULL_OBJECT;
+        } else if (!(obj instanceof Serializable)) {
+            throw new UnsupportedOperationException(obj.getClass().getName());
+        }
+        return (Serializable) obj;
+    }
+
+    static Object fromSerializable(Object obj) {
+        return (obj instanceof Externalization.NullClass) ? null : obj;
+    }
+}
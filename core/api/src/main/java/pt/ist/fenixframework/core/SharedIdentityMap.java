@@ -4,8 +4,16 @@ import java.lang.ref.ReferenceQueue;
 import java.lang.ref.SoftReference;
 import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Unbounded {@link IdentityMap} that keeps every domain object behind a {@link SoftReference}.
+ * 
+ * This class also holds the application-wide identity map, returned by {@link #getIdentityMap()}. Unless configured otherwise
+ * (see {@link pt.ist.fenixframework.Config#createIdentityMap()}), that is an instance of this class.
+ */
 public class SharedIdentityMap implements IdentityMap {
-    private final static SharedIdentityMap instance = new SharedIdentityMap();
+    private static volatile IdentityMap instance = new SharedIdentityMap();
+    // what getCache() returns: the instance itself, or a view of it when it is not a SharedIdentityMap
+    private static volatile SharedIdentityMap sharedInstance = (SharedIdentityMap) instance;
 
     private static final ReferenceQueue<AbstractDomainObject> refQueue = new ReferenceQueue<AbstractDomainObject>();
 
@@ -15,10 +23,41 @@ public class SharedIdentityMap implements IdentityMap {
         this.cache = new ConcurrentHashMap<Object, CacheEntry>();
     }
 
+    /**
+     * Returns the application-wide identity map, as a SharedIdentityMap. When the configured identity map is of another kind,
+     * this returns a SharedIdentityMap that caches and looks up the domain objects in the configured one, but that does not
+     * support {@link #size()} nor {@link #printCachedObjects()}.
+     * 
+     * @deprecated Use {@link #getIdentityMap()}
+     */
+    @Deprecated
     public static SharedIdentityMap getCache() {
+        return sharedInstance;
+    }
+
+    /**
+     * Returns the application-wide identity map.
+     */
+    public static IdentityMap getIdentityMap() {
         return instance;
     }
 
+    /**
+     * Sets the application-wide identity map. This is meant to be invoked only once, during the initialization of the
+     * framework, before any domain object is cached.
+     */
+    public static void setIdentityMap(IdentityMap identityMap) {
+        if (identityMap == null) {
+            throw new IllegalArgumentException("The identity map cannot be null");
+        }
+        instance = identityMap;
+        if (identityMap instanceof SharedIdentityMap) {
+            sharedInstance = (SharedIdentityMap) identityMap;
+        } else {
+            sharedInstance = new IdentityMapView(identityMap);
+        }
+    }
+
     public void printCachedObjects() {
         System.out.println("  == SharedIdentityMap contents [BEGIN] == \n");
         for (Object key : this.cache.keySet()) {
@@ -109,4 +148,35 @@ public class SharedIdentityMap implements IdentityMap {
             this.key = key;
         }
     }
+
+    /**
+     * A SharedIdentityMap that delegates to an identity map of another kind (see {@link SharedIdentityMap#getCache()}).
+     */
+    private static class IdentityMapView extends SharedIdentityMap {
+        private final IdentityMap identityMap;
+
+        IdentityMapView(IdentityMap identityMap) {
+            this.identityMap = identityMap;
+        }
+
+        @Override
+        public AbstractDomainObject cache(AbstractDomainObject obj) {
+            return this.identityMap.cache(obj);
+        }
+
+        @Override
+        public AbstractDomainObject lookup(Object key) {
+            return this.identityMap.lookup(key);
+        }
+
+        @Override
+        public int size() {
+            throw new UnsupportedOperationException("The identity map in use is a " + this.identityMap.getClass().getName());
+        }
+
+        @Override
+        public void printCachedObjects() {
+            throw new UnsupportedOperationException("The identity map in use is a " + this.identityMap.getClass().getName());
+        }
+    }
 }
@@ -0,0 +1,26 @@
+package pt.ist.fenixframework.core;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Writes and reads the instances of one value type for the {@link CompactExternalizationCodec}. Value types without a
+ * registered externalizer fall back to Java serialization.
+ *
+ * @param <T> The value type
+ * @see CompactExternalizationCodec#registerValueType(Class, ValueTypeExternalizer)
+ */
+public interface ValueTypeExternalizer<T> {
+
+    /**
+     * Writes a non-null value. Components of the value that are themselves arbitrary objects may be written with
+     * <code>codec.writeObject(...)</code>.
+     */
+    public void writeValue(T value, DataOutput out, ExternalizationCodec codec) throws IOException;
+
+    /**
+     * Reads back a value written by {@link #writeValue(Object, DataOutput, ExternalizationCodec)}.
+     */
+    public T readValue(DataInput in, ExternalizationCodec codec) throws IOException;
+}
@@ -0,0 +1,282 @@
+package pt.ist.fenixframework.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import pt.ist.fenixframework.Config;
+import pt.ist.fenixframework.ConfigError;
+import pt.ist.fenixframework.backend.BackEnd;
+import pt.ist.fenixframework.core.BoundedIdentityMap.Entry;
+
+/**
+ * Checks the eviction done by the {@link BoundedIdentityMap} and its {@link IdentityMapEvictor}s, that the map is only used
+ * when it is configured, and that {@link SharedIdentityMap#getCache()} still reaches the configured map. The maps have a single
+ * segment, so that their capacity is exact. This test is in the package of the map to reach its evictors.
+ */
+public class BoundedIdentityMapTest {
+
+    private static final int CAPACITY = 16;
+
+    // how many times to ask for a garbage collection before giving up on dropped objects being collected
+    private static final int MAX_GC_ATTEMPTS = 100;
+
+    public static class CachedObject extends AbstractDomainObjectAdapter {
+        private final long oid;
+
+        public CachedObject(DomainObjectAllocator.OID oid) {
+            super(oid);
+            this.oid = (Long) oid.oid;
+        }
+
+        @Override
+        public Long getOid() {
+            return this.oid;
+        }
+    }
+
+    private static CachedObject newObject(long oid) {
+        return (CachedObject) DomainObjectAllocator.allocateObject(CachedObject.class, oid);
+    }
+
+    // the object held by the entries given to the evictors, which do not look at it
+    private static final CachedObject OBJECT = newObject(0);
+
+    private static Entry newEntry(int key) {
+        Entry entry = new Entry(key, OBJECT, null);
+        entry.strong = OBJECT;
+        return entry;
+    }
+
+    @Test
+    public void testLruEviction() {
+        IdentityMapEvictor evictor = EvictionPolicy.LRU.newEvictor(3);
+        Entry[] entries = admit(evictor, 3);
+
+        // the least recently used entry goes first
+        evictor.touch(entries[0]);
+        Entry fourth = newEntry(3);
+        evictor.admit(fourth);
+        assertEquals(3, evictor.size());
+        assertTrue(entries[0].isResident());
+        assertFalse(entries[1].isResident());
+        assertTrue(entries[2].isResident());
+        assertTrue(fourth.isResident());
+
+        evictor.admit(newEntry(4));
+        assertFalse(entries[2].isResident());
+        assertTrue(entries[0].isResident());
+    }
+
+    @Test
+    public void testClockEviction() {
+        IdentityMapEvictor evictor = EvictionPolicy.CLOCK.newEvictor(3);
+        Entry[] entries = admit(evictor, 3);
+
+        // the entry that was hit gets a second chance
+        evictor.touch(entries[0]);
+        evictor.admit(newEntry(3));
+        assertEquals(3, evictor.size());
+        assertTrue(entries[0].isResident());
+        assertFalse(entries[1].isResident());
+        assertTrue(entries[2].isResident());
+
+        // but only one
+        evictor.admit(newEntry(4));
+        assertFalse(entries[2].isResident());
+        evictor.admit(newEntry(5));
+        assertFalse(entries[0].isResident());
+        assertEquals(3, evictor.size());
+    }
+
+    @Test
+    public void testWindowTinyLfuEviction() {
+        int capacity = 100;
+        IdentityMapEvictor evictor = EvictionPolicy.W_TINYLFU.newEvictor(capacity);
+
+        // a frequently used entry is kept while a scan of entries that are used only once goes through
+        Entry hot = newEntry(-1);
+        evictor.admit(hot);
+        for (int i = 0; i < 10; i++) {
+            evictor.touch(hot);
+        }
+        Entry[] scan = admit(evictor, 2 * capacity);
+
+        assertTrue(hot.isResident());
+        assertEquals(capacity, evictor.size());
+        assertEquals(capacity - 1, countResident(scan));
+    }
+
+    @Test
+    public void testCapacity() {
+        for (EvictionPolicy policy : EvictionPolicy.values()) {
+            BoundedIdentityMap map = new BoundedIdentityMap(CAPACITY, policy, 1);
+            List<CachedObject> objects = cacheObjects(map, 1, 10 * CAPACITY);
+            assertEquals(policy.toString(), CAPACITY, map.size());
+
+            // the evicted objects are still held by this test, so they are found, and come back into the map
+            for (CachedObject obj : objects) {
+                assertSame(obj, map.lookup(obj.getOid()));
+            }
+            assertEquals(policy.toString(), CAPACITY, map.size());
+        }
+    }
+
+    @Test
+    public void testIdentityAfterEviction() {
+        BoundedIdentityMap map = new BoundedIdentityMap(CAPACITY, EvictionPolicy.LRU, 1);
+        CachedObject first = newObject(1);
+        assertSame(first, map.cache(first));
+        cacheObjects(map, 2, 2 * CAPACITY);
+
+        // the first object was evicted, but it is still in use, so no other instance may take its place
+        assertSame(first, map.cache(newObject(1)));
+        assertSame(first, map.lookup(1L));
+        assertEquals(CAPACITY, map.size());
+    }
+
+    @Test
+    public void testEvictedObjectsAreCollected() {
+        BoundedIdentityMap map = new BoundedIdentityMap(CAPACITY, EvictionPolicy.LRU, 1);
+        int count = 10 * CAPACITY;
+        cacheObjects(map, 1, count);
+
+        // eventually, only the objects held by the map remain.  Looking up an evicted object that was not collected yet brings
+        // it back, and evicts another one, so this only stops once a whole pass finds just the resident objects
+        for (int attempt = 0; attempt < MAX_GC_ATTEMPTS; attempt++) {
+            System.gc();
+            int found = 0;
+            for (long oid = 1; oid <= count; oid++) {
+                if (map.lookup(oid) != null) {
+                    found++;
+                }
+            }
+            if (found == CAPACITY) {
+                assertEquals(CAPACITY, map.size());
+                return;
+            }
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        fail("The evicted objects were not collected");
+    }
+
+    @Test
+    public void testConfiguration() {
+        // by default, the shared identity map is not bounded
+        assertTrue(SharedIdentityMap.getIdentityMap() instanceof SharedIdentityMap);
+        assertSame(SharedIdentityMap.getIdentityMap(), SharedIdentityMap.getCache());
+
+        TestConfig config = new TestConfig();
+        assertEquals(0, config.getIdentityMapCapacity());
+        assertTrue(config.identityMap() instanceof SharedIdentityMap);
+
+        config.set("identityMapCapacity", "1000");
+        config.set("identityMapEvictionPolicy", "w-tinylfu");
+        config.set("identityMapConcurrencyLevel", "8");
+        assertEquals(1000, config.getIdentityMapCapacity());
+        assertEquals(8, config.getIdentityMapConcurrencyLevel());
+        IdentityMap identityMap = config.identityMap();
+        assertTrue(identityMap instanceof BoundedIdentityMap);
+        assertEquals(EvictionPolicy.W_TINYLFU, ((BoundedIdentityMap) identityMap).getEvictionPolicy());
+
+        try {
+            config.set("identityMapEvictionPolicy", "mru");
+            fail("accepted an unknown eviction policy");
+        } catch (ConfigError e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testCacheOfAnotherKind() {
+        IdentityMap previous = SharedIdentityMap.getIdentityMap();
+        BoundedIdentityMap map = new BoundedIdentityMap(CAPACITY, EvictionPolicy.LRU, 1);
+        try {
+            SharedIdentityMap.setIdentityMap(map);
+            assertSame(map, SharedIdentityMap.getIdentityMap());
+
+            // the callers of the previous accessor use the configured map as well
+            CachedObject obj = newObject(1);
+            assertSame(obj, SharedIdentityMap.getCache().cache(obj));
+            assertSame(obj, map.lookup(1L));
+            assertSame(obj, SharedIdentityMap.getCache().cache(newObject(1)));
+            assertSame(obj, SharedIdentityMap.getCache().lookup(1L));
+            assertEquals(1, map.size());
+        } finally {
+            SharedIdentityMap.setIdentityMap(previous);
+        }
+        assertSame(previous, SharedIdentityMap.getCache());
+    }
+
+    private static Entry[] admit(IdentityMapEvictor evictor, int count) {
+        Entry[] entries = new Entry[count];
+        for (int i = 0; i < count; i++) {
+            entries[i] = newEntry(i);
+            evictor.admit(entries[i]);
+        }
+        return entries;
+    }
+
+    private static int countResident(Entry[] entries) {
+        int resident = 0;
+        for (Entry entry : entries) {
+            if (entry.isResident()) {
+                resident++;
+            }
+        }
+        return resident;
+    }
+
+    // caches new objects with the given number of consecutive oids, and returns them
+    private static List<CachedObject> cacheObjects(BoundedIdentityMap map, long firstOid, int count) {
+        List<CachedObject> objects = new ArrayList<CachedObject>();
+        for (long oid = firstOid; oid < firstOid + count; oid++) {
+            CachedObject obj = newObject(oid);
+            assertSame(obj, map.cache(obj));
+            objects.add(obj);
+        }
+        return objects;
+    }
+
+    private static class TestConfig extends Config {
+        void set(String property, String value) {
+            if (property.equals("identityMapCapacity")) {
+                identityMapCapacityFromString(value);
+            } else if (property.equals("identityMapEvictionPolicy")) {
+                identityMapEvictionPolicyFromString(value);
+            } else {
+                identityMapConcurrencyLevelFromString(value);
+            }
+        }
+
+        IdentityMap identityMap() {
+            return createIdentityMap();
+        }
+
+        @Override
+        protected void init() {
+        }
+
+        @Override
+        public BackEnd getBackEnd() {
+            return null;
+        }
+
+        @Override
+        public String getBackEndName() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package pt.ist.fenixframework.consistencyPredicates;
+
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import pt.ist.fenixframework.CallableWithoutException;
+import pt.ist.fenixframework.TransactionManager;
+import pt.ist.fenixframework.dml.runtime.SortedDomainBasedMap;
+import pt.ist.fenixframework.dml.runtime.SortedDomainBasedMap.Cursor;
+
+/**
+ * Executes a {@link ChunkTask} for the entries of a {@link SortedDomainBasedMap}, split into chunks of consecutive keys. The
+ * chunks are executed by a pool of worker threads, each chunk within its own transaction of the given
+ * {@link TransactionManager}, and the result of each chunk is handed to a {@link ChunkHandler} in the calling thread, in key
+ * order. The end of each chunk is found by the calling thread only when the chunk is submitted, so that the workers start
+ * right away, instead of after a walk over the whole map.<br>
+ * <br>
+ * The workers only use the given map and transaction manager, but loading objects may go through the
+ * {@link pt.ist.fenixframework.FenixFramework} class, so they cannot be used while the calling thread is running a static
+ * initializer (as when the framework is initialized by convention): other threads block on the class being initialized,
+ * while the calling thread waits for them. In that case, or when there is a single thread, the chunks are executed by the
+ * calling thread, within its current transaction.
+ */
+class ChunkedExecution<T extends Serializable, R> {
+
+    /**
+     * Executes something for the entries of a chunk, and returns its result. Invoked by the worker threads.
+     */
+    interface ChunkTask<T, R> {
+        public R execute(Cursor<T> chunk);
+    }
+
+    /**
+     * Receives the result of each chunk, in key order. Invoked by the calling thread.
+     */
+    interface ChunkHandler<R> {
+        public void handle(R result);
+    }
+
+    private final SortedDomainBasedMap<T> map;
+    private final int chunkSize;
+    private final int threads;
+    private final TransactionManager transactionManager;
+
+    ChunkedExecution(SortedDomainBasedMap<T> map, int chunkSize, int threads, TransactionManager transactionManager) {
+        this.map = map;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.threads = Math.max(1, threads);
+        this.transactionManager = transactionManager;
+    }
+
+    /**
+     * Executes the task for the chunks of entries with keys greater than <code>afterKey</code> (or for all the entries, if it is
+     * <code>null</code>).
+     */
+    void execute(Comparable afterKey, ChunkTask<T, R> task, ChunkHandler<R> handler) {
+        Comparable low = nextKey(map.cursor(afterKey, false, null, false));
+        if (low == null) {
+            return;
+        }
+
+        if (threads == 1 || isRunningStaticInitializer()) {
+            while (low != null) {
+                Comparable high = chunkEnd(low);
+                handler.handle(task.execute(map.cursor(low, true, high, false)));
+                low = high;
+            }
+            return;
+        }
+
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        try {
+            Deque<Future<R>> pending = new ArrayDeque<Future<R>>();
+            while (low != null || !pending.isEmpty()) {
+                // keep every worker busy, without holding the results of too many chunks at once
+                while (low != null && pending.size() < 2 * threads) {
+                    Comparable high = chunkEnd(low);
+                    pending.add(workers.submit(new Chunk(task, low, high)));
+                    low = high;
+                }
+                handler.handle(awaitChunk(pending.poll()));
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns the first key after the chunk that starts at the given key, or <code>null</code> if the chunk is the last one.
+     */
+    private Comparable chunkEnd(Comparable low) {
+        Cursor<T> cursor = map.cursor(low, true, null, false);
+        for (int i = 0; i < chunkSize && cursor.hasNext(); i++) {
+            cursor.next();
+        }
+        return nextKey(cursor);
+    }
+
+    private static Comparable nextKey(Cursor<?> cursor) {
+        if (!cursor.hasNext()) {
+            return null;
+        }
+        cursor.next();
+        return cursor.getKey();
+    }
+
+    private static boolean isRunningStaticInitializer() {
+        for (StackTraceElement element : Thread.currentThread().getStackTrace()) {
+            if (element.getMethodName().equals("<clinit>")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static <R> R awaitChunk(Future<R> chunk) {
+        try {
+            return chunk.get();
+        } catch (ExecutionException e) {
+            throw new Error(e.getCause());
+        } catch (InterruptedException e) {
+            throw new Error(e);
+        }
+    }
+
+    /**
+     * Executes the task for the entries with keys within <code>[low, high)</code>, in a new transaction of the current thread.
+     */
+    private class Chunk implements Callable<R> {
+        private final ChunkTask<T, R> task;
+        private final Comparable low;
+        private final Comparable high;
+
+        Chunk(ChunkTask<T, R> task, Comparable low, Comparable high) {
+            this.task = task;
+            this.low = low;
+            this.high = high;
+        }
+
+        @Override
+        public R call() {
+            return transactionManager.withTransaction(new CallableWithoutException<R>() {
+                @Override
+                public R call() {
+                    return task.execute(map.cursor(low, true, high, false));
+                }
+            });
+        }
+    }
+}
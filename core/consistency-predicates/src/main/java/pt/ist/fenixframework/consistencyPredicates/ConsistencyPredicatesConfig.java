@@ -1,6 +1,7 @@
 package pt.ist.fenixframework.consistencyPredicates;
 
 import pt.ist.fenixframework.Config;
+import pt.ist.fenixframework.ConfigError;
 import pt.ist.fenixframework.DomainMetaClass;
 import pt.ist.fenixframework.DomainMetaObject;
 import pt.ist.fenixframework.FenixFramework;
@@ -35,10 +36,27 @@ public abstract class ConsistencyPredicatesConfig extends Config {
      */
     protected boolean canCreateDomainMetaObjects = false;
 
+    /**
+     * This <strong>optional</strong> parameter specifies how many threads execute a new consistency predicate for the
+     * already existing objects, during the initialization. Each thread executes the predicate for a different range of
+     * objects, within its own transactions. When the framework is initialized by convention, from the static initializer of
+     * {@link FenixFramework}, the predicates are always executed by the initializing thread, as other threads cannot use the
+     * framework until that initializer finishes. The default value is the number of available processors.
+     */
+    protected int consistencyPredicateThreads = Runtime.getRuntime().availableProcessors();
+
     protected void canCreateDomainMetaObjectsFromString(String value) {
         canCreateDomainMetaObjects = Boolean.valueOf(value);
     }
 
+    protected void consistencyPredicateThreadsFromString(String value) {
+        try {
+            consistencyPredicateThreads = Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new ConfigError(e);
+        }
+    }
+
     public boolean getCanCreateDomainMetaObjects() {
         return canCreateDomainMetaObjects;
     }
@@ -47,4 +65,12 @@ public abstract class ConsistencyPredicatesConfig extends Config {
         return FenixFramework.<ConsistencyPredicatesConfig> getConfig().getCanCreateDomainMetaObjects();
     }
 
+    public int getConsistencyPredicateThreads() {
+        return consistencyPredicateThreads;
+    }
+
+    public static int consistencyPredicateThreads() {
+        return FenixFramework.<ConsistencyPredicatesConfig> getConfig().getConsistencyPredicateThreads();
+    }
+
 }
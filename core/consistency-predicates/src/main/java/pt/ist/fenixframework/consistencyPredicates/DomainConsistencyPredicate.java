@@ -3,6 +3,8 @@ package pt.ist.fenixframework.consistencyPredicates;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 
 import jvstm.Transaction;
@@ -20,6 +22,8 @@ import pt.ist.fenixframework.DomainObject;
 import pt.ist.fenixframework.FenixFramework;
 import pt.ist.fenixframework.NoDomainMetaObjects;
 import pt.ist.fenixframework.adt.bplustree.BPlusTree;
+import pt.ist.fenixframework.core.AbstractDomainObject;
+import pt.ist.fenixframework.dml.runtime.SortedDomainBasedMap.Cursor;
 
 /**
  * A <code>DomainConsistencyPredicate</code> is the persistent domain entity
@@ -125,14 +129,19 @@ public abstract class DomainConsistencyPredicate extends DomainConsistencyPredic
     public abstract void checkOverridingMethods(DomainMetaClass metaClass);
 
     /**
-     * Executes this consistency predicate for all objects in the given <code>List</code>.
-     * For each object, after the execution, this method creates a {@link DomainDependenceRecord} based on
-     * the dependencies of that object.
+     * Executes this consistency predicate for all the existing objects of the given {@link DomainMetaClass}. For each object,
+     * after the execution, this method creates a {@link DomainDependenceRecord} based on the dependencies of that object.<br>
+     * <br>
+     * The objects are split into chunks of consecutive keys, of half the batch size defined in the
+     * {@link ConsistencyPredicateSupport}. The predicate is executed for the chunks by a {@link ChunkedExecution} with
+     * {@link ConsistencyPredicatesConfig#getConsistencyPredicateThreads()} threads. The DomainDependenceRecords of each chunk are
+     * then created by the calling thread, in key order, and committed together with the last key processed, so that a later
+     * initialization can resume after it if this one is interrupted.
      * 
      * @param metaClass
      *            the {@link DomainMetaClass} of {@link DomainObject} for which to execute this predicate.
      */
-    protected void executeConsistencyPredicateForExistingDomainObjects(DomainMetaClass metaClass) {
+    protected void executeConsistencyPredicateForExistingDomainObjects(final DomainMetaClass metaClass) {
         checkFrameworkNotInitialized();
         BPlusTree<DomainMetaObject> metaObjects = metaClass.getExistingDomainMetaObjects();
         if (metaObjects.isEmpty() || getPredicate() == null) {
@@ -141,36 +150,109 @@ public abstract class DomainConsistencyPredicate extends DomainConsistencyPredic
         logger.info("Executing startup consistency predicate: " + getPredicate().getName() + " for the class: "
                 + metaClass.getDomainClass().getSimpleName());
 
-        int count = 0;
-        for (DomainMetaObject existingMetaObject : metaObjects) {
-            count++;
-            if ((count % (ConsistencyPredicateSupport.getInstance().getBatchSize() / 2)) == 0) {
-                // Commits the current, and starts a new write transaction.
-                // This is necessary to split the load of the mass creation of DomainDependenceRecords among several transactions.
-                // Each transaction processes a maximum of objects in order to avoid OutOfMemoryExceptions.
-                // This limit is half the batch size defined in the ConsistencyPredicate Support class.
-                // Because this method checks for repeated OwnDependenceRecords of each meta object being checked, there is no problem with
-                // processing only an incomplete part of the objects of the given class.
+        final Comparable resumeKey = getResumeKey(metaClass);
+        if (resumeKey != null) {
+            logger.info("Resuming after the " + metaClass.getDomainClass().getSimpleName() + " object with key " + resumeKey);
+        }
+        final int total = metaObjects.size();
+        int chunkSize = ConsistencyPredicateSupport.getInstance().getBatchSize() / 2;
+
+        // The worker threads must see everything done so far by this one (e.g. this predicate, if it is new).  They are given
+        // the transaction manager, because they must not go through FenixFramework, which is still being initialized.
+        DomainFenixFrameworkRoot.checkpointTransaction();
+
+        ChunkedExecution<DomainMetaObject, ChunkResult> execution =
+                new ChunkedExecution<DomainMetaObject, ChunkResult>(metaObjects, chunkSize,
+                        ConsistencyPredicatesConfig.consistencyPredicateThreads(), FenixFramework.getTransactionManager());
+        execution.execute(resumeKey, new ChunkedExecution.ChunkTask<DomainMetaObject, ChunkResult>() {
+            @Override
+            public ChunkResult execute(Cursor<DomainMetaObject> chunk) {
+                return executeChunk(chunk);
+            }
+        }, new ChunkedExecution.ChunkHandler<ChunkResult>() {
+            private int processed = 0;
+
+            @Override
+            public void handle(ChunkResult result) {
+                for (ObjectResult objectResult : result.objectResults) {
+                    new DomainDependenceRecord(objectResult.metaObject.getDomainObject(), DomainConsistencyPredicate.this,
+                            objectResult.depended, objectResult.consistent);
+                }
+                setBootstrapResumePoint(result.lastMetaObject.getExternalId());
+
+                processed += result.objectCount;
                 logger.info("Transaction finished. Number of processed " + metaClass.getDomainClass().getSimpleName()
-                        + " objects: " + count);
+                        + " objects: " + processed + (resumeKey == null ? " of " + total : " after resuming"));
                 DomainFenixFrameworkRoot.checkpointTransaction();
             }
+        });
+
+        setBootstrapResumePoint(null);
+        DomainFenixFrameworkRoot.checkpointTransaction();
+    }
+
+    /**
+     * Returns the key after which a previous, interrupted, execution of this predicate stopped for the given metaClass, or
+     * <code>null</code> if the execution must start from the first object.
+     */
+    private Comparable getResumeKey(DomainMetaClass metaClass) {
+        String resumePoint = getBootstrapResumePoint();
+        if (resumePoint == null) {
+            return null;
+        }
+        try {
+            DomainMetaObject lastMetaObject = FenixFramework.getDomainObject(resumePoint);
+            if (lastMetaObject.getDomainMetaClass() == metaClass) {
+                return ((AbstractDomainObject) lastMetaObject).getOid();
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Ignoring the invalid resume point " + resumePoint + " of predicate " + getPredicate(), e);
+        }
+        return null;
+    }
+
+    /**
+     * Executes this predicate for the objects of a chunk. The DomainDependenceRecords to create are returned instead of created,
+     * so that, when executed by a worker thread, the transaction of the chunk does not write anything, and therefore never
+     * conflicts with the ones executing the other chunks.
+     */
+    private ChunkResult executeChunk(Cursor<DomainMetaObject> chunk) {
+        ChunkResult result = new ChunkResult();
+        Method predicate = getPredicate();
+        while (chunk.hasNext()) {
+            DomainMetaObject existingMetaObject = chunk.next();
+            result.objectCount++;
+            result.lastMetaObject = existingMetaObject;
 
             // The predicate was already checked during a previous incomplete initialization of this DomainConsistencyPredicate
             if (existingMetaObject.hasOwnDependenceRecord(this)) {
                 continue;
             }
-            Pair pair = executePredicateForOneObject(existingMetaObject.getDomainObject(), getPredicate());
+            Pair pair = executePredicateForOneObject(existingMetaObject.getDomainObject(), predicate);
             // If an object is consistent and only depends on itself, the DomainDependenceRecord is not necessary.
             if (!isConsistent(pair) || !dependsOnlyOnItself(pair)) {
-                new DomainDependenceRecord(existingMetaObject.getDomainObject(), this, (Set<Depended>) pair.first,
-                        (Boolean) pair.second);
+                result.objectResults.add(new ObjectResult(existingMetaObject, (Set<Depended>) pair.first, (Boolean) pair.second));
             }
         }
+        return result;
+    }
 
-        logger.info("Transaction finished. Number of processed " + metaClass.getDomainClass().getSimpleName() + " objects: "
-                + count);
-        DomainFenixFrameworkRoot.checkpointTransaction();
+    private static class ChunkResult {
+        private final List<ObjectResult> objectResults = new ArrayList<ObjectResult>();
+        private int objectCount = 0;
+        private DomainMetaObject lastMetaObject;
+    }
+
+    private static class ObjectResult {
+        private final DomainMetaObject metaObject;
+        private final Set<Depended> depended;
+        private final boolean consistent;
+
+        ObjectResult(DomainMetaObject metaObject, Set<Depended> depended, boolean consistent) {
+            this.metaObject = metaObject;
+            this.depended = depended;
+            this.consistent = consistent;
+        }
     }
 
     public static boolean isConsistent(Pair pair) {
@@ -186,7 +268,8 @@ public abstract class DomainConsistencyPredicate extends DomainConsistencyPredic
      * the only goal of returning information about the consistency of the
      * object, and its dependencies. Even if the predicate returns false, no
      * exception is thrown, and no transaction is aborted.<br>
-     * This method should only be invoked during the initialization of the {@link FenixFramework}.
+     * This method should only be invoked during the initialization of the {@link FenixFramework}, which is checked by its
+     * callers: it may run in worker threads, which would block on the lock held by the initialization.
      * 
      * @param obj
      *            the <code>Object</code> for which to execute the predicate
@@ -197,7 +280,6 @@ public abstract class DomainConsistencyPredicate extends DomainConsistencyPredic
      *         consistent or not
      */
     private Pair executePredicateForOneObject(DomainObject obj, Method predicate) {
-        checkFrameworkNotInitialized();
         // starts a new transaction where the readSet used by the predicate will be collected.
         ConsistencyCheckTransaction tx =
                 ConsistencyPredicateSupport.getInstance().createNewConsistencyCheckTransactionForObject(obj);
@@ -3,7 +3,12 @@ package pt.ist.fenixframework.dml;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class ValueTypeSerializationGenerator extends DefaultCodeGenerator {
 
@@ -12,6 +17,14 @@ public class ValueTypeSerializationGenerator extends DefaultCodeGenerator {
     public static final String SERIALIZER_CLASS_FULL_NAME = SERIALIZER_CLASS_PACKAGE + "." + SERIALIZER_CLASS_SIMPLE_NAME;
     public static final String SERIALIZATION_METHOD_PREFIX = "serialize$";
     public static final String DESERIALIZATION_METHOD_PREFIX = "deSerialize$";
+    public static final String WRITE_METHOD_PREFIX = "write$";
+    public static final String READ_METHOD_PREFIX = "read$";
+    // invoked by the framework (see pt.ist.fenixframework.Config), so it must be kept in sync
+    public static final String REGISTER_EXTERNALIZERS_METHOD_NAME = "registerExternalizers";
+
+    protected static final String CODEC_TYPE = "pt.ist.fenixframework.core.ExternalizationCodec";
+    protected static final String COMPACT_CODEC_TYPE = "pt.ist.fenixframework.core.CompactExternalizationCodec";
+    protected static final String EXTERNALIZER_TYPE = "pt.ist.fenixframework.core.ValueTypeExternalizer";
 
     protected PrintWriter out;
 
@@ -48,6 +61,7 @@ public class ValueTypeSerializationGenerator extends DefaultCodeGenerator {
         printWords(out, "public", "final", "class", SERIALIZER_CLASS_SIMPLE_NAME);
         newBlock(out);
         generateValueTypeSerializations();
+        generateValueTypeExternalizations();
         closeBlock(out);
     }
 
@@ -203,4 +217,206 @@ public class ValueTypeSerializationGenerator extends DefaultCodeGenerator {
         print(out, ");");
         endMethodBody(out);
     }
+
+    /*
+     * Externalization: for each value type, a write$ and read$ method that encode the value directly into the stream used by
+     * the CompactExternalizationCodec, plus a method that registers all of them as ValueTypeExternalizers.  This way, the
+     * value-typed slots are externalized without resorting to Java serialization.
+     */
+
+    protected void generateValueTypeExternalizations() {
+        List<ValueType> externalizable = new ArrayList<ValueType>();
+        for (ValueType vt : getDomainModel().getAllValueTypes()) {
+            if (!(vt.isBuiltin() || vt.isEnum())) {
+                externalizable.add(vt);
+                generateValueTypeWrite(vt);
+                generateValueTypeRead(vt);
+            }
+        }
+        generateRegisterExternalizers(externalizable);
+    }
+
+    protected void generateValueTypeWrite(ValueType vt) {
+        onNewline(out);
+        printMethod(out, "public static final", "void", WRITE_METHOD_PREFIX + makeSafeValueTypeName(vt),
+                makeArg(vt.getFullname(), "obj"), makeArg("java.io.DataOutput", "out"), makeArg(CODEC_TYPE, "codec"));
+        print(out, " throws java.io.IOException");
+        startMethodBody(out);
+        // value types are never primitive, so there is always a presence flag
+        println(out, "out.writeBoolean(obj != null);");
+        print(out, "if (obj == null) return;");
+        for (ExternalizationElement extElem : vt.getExternalizationElements()) {
+            onNewline(out);
+            print(out, makeWriteStatement(extElem.getType(), applyExternalizerTo(extElem, "obj")));
+        }
+        endMethodBody(out);
+    }
+
+    protected String makeWriteStatement(ValueType vt, String expr) {
+        String type = vt.getFullname();
+        if (type.equals("boolean")) {
+            return "out.writeBoolean(" + expr + ");";
+        } else if (type.equals("byte")) {
+            return "out.writeByte(" + expr + ");";
+        } else if (type.equals("char")) {
+            return "out.writeChar(" + expr + ");";
+        } else if (type.equals("short")) {
+            return "out.writeShort(" + expr + ");";
+        } else if (type.equals("int")) {
+            return COMPACT_CODEC_TYPE + ".writeVarInt(" + COMPACT_CODEC_TYPE + ".encodeZigZag((int)" + expr + "), out);";
+        } else if (type.equals("long")) {
+            return COMPACT_CODEC_TYPE + ".writeVarLong(" + COMPACT_CODEC_TYPE + ".encodeZigZag((long)" + expr + "), out);";
+        } else if (type.equals("float")) {
+            return "out.writeFloat(" + expr + ");";
+        } else if (type.equals("double")) {
+            return "out.writeDouble(" + expr + ");";
+        } else if (vt.isBuiltin() || vt.isEnum()) {
+            return "codec.writeObject(" + expr + ", out);";
+        } else {
+            return WRITE_METHOD_PREFIX + makeSafeValueTypeName(vt) + "(" + expr + ", out, codec);";
+        }
+    }
+
+    protected void generateValueTypeRead(ValueType vt) {
+        onNewline(out);
+        printMethod(out, "public static final", vt.getFullname(), READ_METHOD_PREFIX + makeSafeValueTypeName(vt),
+                makeArg("java.io.DataInput", "in"), makeArg(CODEC_TYPE, "codec"));
+        print(out, " throws java.io.IOException");
+        startMethodBody(out);
+        print(out, "if (!in.readBoolean()) return null;");
+
+        List<ExternalizationElement> extElems = vt.getExternalizationElements();
+        StringBuilder args = new StringBuilder();
+        for (ExternalizationElement extElem : extElems) {
+            ValueType extElemVt = extElem.getType();
+            String localName = "$" + makeSlotName(extElem);
+            onNewline(out);
+            printWords(out, extElemVt.getFullname(), localName, "=", makeReadExpression(extElemVt) + ";");
+
+            if (args.length() > 0) {
+                args.append(", ");
+            }
+            args.append(localName);
+        }
+
+        String internalizationMethodName = vt.getInternalizationMethodName();
+        if (internalizationMethodName == null) { // class constructor
+            internalizationMethodName = "new " + vt.getFullname();
+        } else if (!internalizationMethodName.contains(".")) { // static method in the same class
+            internalizationMethodName = vt.getFullname() + "." + internalizationMethodName;
+        }
+        onNewline(out);
+        print(out, "return (" + vt.getFullname() + ")" + internalizationMethodName + "(" + args + ");");
+        endMethodBody(out);
+    }
+
+    protected String makeReadExpression(ValueType vt) {
+        String type = vt.getFullname();
+        if (type.equals("boolean")) {
+            return "in.readBoolean()";
+        } else if (type.equals("byte")) {
+            return "in.readByte()";
+        } else if (type.equals("char")) {
+            return "in.readChar()";
+        } else if (type.equals("short")) {
+            return "in.readShort()";
+        } else if (type.equals("int")) {
+            return COMPACT_CODEC_TYPE + ".decodeZigZag(" + COMPACT_CODEC_TYPE + ".readVarInt(in))";
+        } else if (type.equals("long")) {
+            return COMPACT_CODEC_TYPE + ".decodeZigZag(" + COMPACT_CODEC_TYPE + ".readVarLong(in))";
+        } else if (type.equals("float")) {
+            return "in.readFloat()";
+        } else if (type.equals("double")) {
+            return "in.readDouble()";
+        } else if (vt.isBuiltin() || vt.isEnum()) {
+            // parametric types require cast, so we always cast
+            return "(" + type + ")codec.readObject(in)";
+        } else {
+            return READ_METHOD_PREFIX + makeSafeValueTypeName(vt) + "(in, codec)";
+        }
+    }
+
+    /*
+     * The codec chooses the externalizer of a value by its class alone, so a class can only be registered when a single value
+     * type is declared for it, and no slot uses it with type arguments. Otherwise, the externalizer of one declaration would be
+     * used for the values of the others, or for every instantiation of a parametric type, and would change whenever a
+     * declaration is added. Such classes are left unregistered, so their instances keep being written with Java serialization.
+     */
+    protected void generateRegisterExternalizers(List<ValueType> valueTypes) {
+        Map<String, List<ValueType>> valueTypesByClass = new LinkedHashMap<String, List<ValueType>>();
+        for (ValueType vt : valueTypes) {
+            String className = eraseTypeArguments(vt.getFullname());
+            List<ValueType> sameClass = valueTypesByClass.get(className);
+            if (sameClass == null) {
+                sameClass = new ArrayList<ValueType>();
+                valueTypesByClass.put(className, sameClass);
+            }
+            sameClass.add(vt);
+        }
+        Set<String> parametricClasses = new HashSet<String>();
+        for (DomainClass domClass : getDomainModel().getDomainClasses()) {
+            for (Slot slot : domClass.getSlotsList()) {
+                if (slot.getSlotType() instanceof ParamValueType) {
+                    parametricClasses.add(slot.getSlotType().getBaseType().getFullname());
+                }
+            }
+        }
+
+        onNewline(out);
+        println(out, "@SuppressWarnings({ \"unchecked\", \"rawtypes\" })");
+        printMethod(out, "public static final", "void", REGISTER_EXTERNALIZERS_METHOD_NAME, makeArg(COMPACT_CODEC_TYPE, "codec"));
+        startMethodBody(out);
+        for (Map.Entry<String, List<ValueType>> entry : valueTypesByClass.entrySet()) {
+            List<ValueType> sameClass = entry.getValue();
+            ValueType vt = sameClass.get(0);
+            onNewline(out);
+            if (sameClass.size() > 1 || !entry.getKey().equals(vt.getFullname())) {
+                print(out, "// not registered, as " + entry.getKey() + " is declared by " + describe(sameClass));
+            } else if (parametricClasses.contains(entry.getKey())) {
+                print(out, "// not registered, as " + entry.getKey() + " is used with type arguments");
+            } else {
+                generateRegisterExternalizer(vt);
+            }
+        }
+        endMethodBody(out);
+    }
+
+    protected void generateRegisterExternalizer(ValueType vt) {
+        String safeName = makeSafeValueTypeName(vt);
+        print(out, "codec.registerValueType((Class)" + vt.getFullname() + ".class, new " + EXTERNALIZER_TYPE + "()");
+        newBlock(out);
+        printMethod(out, "public", "void", "writeValue", makeArg("Object", "value"), makeArg("java.io.DataOutput", "out"),
+                makeArg(CODEC_TYPE, "codec"));
+        print(out, " throws java.io.IOException");
+        startMethodBody(out);
+        print(out, WRITE_METHOD_PREFIX + safeName + "((" + vt.getFullname() + ")value, out, codec);");
+        endMethodBody(out);
+        onNewline(out);
+        printMethod(out, "public", "Object", "readValue", makeArg("java.io.DataInput", "in"), makeArg(CODEC_TYPE, "codec"));
+        print(out, " throws java.io.IOException");
+        startMethodBody(out);
+        print(out, "return " + READ_METHOD_PREFIX + safeName + "(in, codec);");
+        endMethodBody(out);
+        closeBlock(out, false);
+        print(out, ");");
+    }
+
+    private static String describe(List<ValueType> valueTypes) {
+        StringBuilder names = new StringBuilder();
+        for (ValueType vt : valueTypes) {
+            if (names.length() > 0) {
+                names.append(", ");
+            }
+            names.append(vt.getDomainName());
+            if (!vt.getFullname().equals(eraseTypeArguments(vt.getFullname()))) {
+                names.append(" (parametric)");
+            }
+        }
+        return names.toString();
+    }
+
+    protected static String eraseTypeArguments(String typeName) {
+        int genericsStart = typeName.indexOf('<');
+        return (genericsStart == -1) ? typeName : typeName.substring(0, genericsStart);
+    }
 }
@@ -24,7 +24,7 @@ tokens {
     DOMAIN_DEFS; CLASS_DEF; EXTENDS_CLAUSE; OBJBLOCK; IMPLEMENTS_CLAUSE;
     RELATION_DEF; SLOT_DEF; RELATION_BLOCK; ROLE; ROLE_NAME; ROLE_OPTIONS;
     MULTIPLICITY; MULTIPLICITY_RANGE; EXTERNAL;
-    INDEXED; ORDERED; VALUE_TYPE; SLOT_OPTIONS; REQUIRED_OPTION;
+    INDEXED; INDEX_PROPERTIES; ORDERED; VALUE_TYPE; SLOT_OPTIONS; REQUIRED_OPTION;
     ENUM_TYPE; PACKAGE; ABSOLUTE_NAME; VALUE_TYPE_BLOCK; EXTERNALIZATION_CLAUSE;
     EXTERNALIZATION_ELEMENT; INTERNALIZATION_CLAUSE; TYPE;
     WILDCARD; WILDCARD_EXTENDS; WILDCARD_SUPER;
@@ -260,15 +260,26 @@ roleOptions
     ;
 
 roleOption!
+{
+    AST ordered = null;
+}
     :
         "multiplicity" range:multiplicityRange
         {#roleOption = #([MULTIPLICITY, "MULTIPLICITY"], range);}
-    |   "indexed" "by" ip:identifier ( CARDINAL LPAREN ( card:multiplicityUpperOnly )? RPAREN )? 
-        {#roleOption = #([INDEXED,"INDEXED"], ip, card);}
+    |   "indexed" "by" ip:indexProperties ( "ordered" { ordered = #[ORDERED,"ORDERED"]; } )?
+            ( CARDINAL LPAREN ( card:multiplicityUpperOnly )? RPAREN )? 
+        {#roleOption = #([INDEXED,"INDEXED"], ip, ordered, card);}
     |   "ordered"
         {#roleOption = #([ORDERED,"ORDERED"]);}
     ;
 
+// One property, or several for a composite index
+indexProperties
+    :
+        IDENT ( COMMA! IDENT )*
+        {#indexProperties = #([INDEX_PROPERTIES, "INDEX_PROPERTIES"], #indexProperties);}
+    ;
+
 multiplicityRange!
     :
         lower:INT_NUMBER MULT_RANGE upper:multiplicityUpperOnly
@@ -239,6 +239,8 @@ roleOptions[Role roleDef]
 roleOption[Role roleDef]
 {
     int lower, upper, card;
+    List props;
+    boolean ordered = false;
 }
     : #(MULTIPLICITY 
             (   #(MULTIPLICITY_RANGE 
@@ -250,10 +252,20 @@ roleOption[Role roleDef]
                 { roleDef.setMultiplicity(0, upper); }
             )
         )
-    | #(INDEXED name:IDENT card=indexCard { roleDef.setIndexProperty(name.getText()); roleDef.setIndexCardinality(card); } )
+    | #(INDEXED props=indexProperties ( ORDERED { ordered = true; } )? card=indexCard
+            {
+                roleDef.setIndexProperties(props);
+                roleDef.setIndexOrdered(ordered);
+                roleDef.setIndexCardinality(card);
+            }
+        )
     | #(ORDERED { roleDef.setOrdered(true); } )
     ;
 
+indexProperties returns [List names = new ArrayList()]
+    : #(INDEX_PROPERTIES ( id:IDENT { names.add(id.getText()); } )+ )
+    ;
+
 indexCard returns [int bound = 1]
     :
     	( STAR
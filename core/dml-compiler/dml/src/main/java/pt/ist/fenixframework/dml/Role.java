@@ -1,7 +1,9 @@
 package pt.ist.fenixframework.dml;
 
 import java.io.Serializable;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.List;
 
 public class Role implements Serializable {
     public static final int MULTIPLICITY_MANY = -1;
@@ -28,7 +30,8 @@ public class Role implements Serializable {
     private int multiplicityLower = 0;
     private int multiplicityUpper = 1;
     private DomainRelation relation;
-    private String indexProperty;
+    private List<String> indexProperties;
+    private boolean indexOrdered = false;
     private boolean ordered = false;
     private int indexCardinality;
 
@@ -75,11 +78,37 @@ public class Role implements Serializable {
     }
 
     public void setIndexProperty(String propName) {
-        this.indexProperty = propName;
+        setIndexProperties(Collections.singletonList(propName));
     }
 
+    /**
+     * Indexes this role by the given properties. With more than one property, the index is composite: its keys are the
+     * {@link pt.ist.fenixframework.dml.runtime.CompositeKey}s of the values of the properties, in the given order.
+     */
+    public void setIndexProperties(List<String> propNames) {
+        this.indexProperties = Collections.unmodifiableList(propNames);
+    }
+
+    /** Returns the (first, for composite indexes) property that indexes this role, or <code>null</code> if it is not indexed */
     public String getIndexProperty() {
-        return indexProperty;
+        return isIndexed() ? indexProperties.get(0) : null;
+    }
+
+    public List<String> getIndexProperties() {
+        return isIndexed() ? indexProperties : Collections.<String> emptyList();
+    }
+
+    public boolean isCompositeIndex() {
+        return isIndexed() && indexProperties.size() > 1;
+    }
+
+    /** Whether the index can also be searched by ranges of keys (which requires an ordered collection) */
+    public void setIndexOrdered(boolean indexOrdered) {
+        this.indexOrdered = indexOrdered;
+    }
+
+    public boolean isIndexOrdered() {
+        return indexOrdered;
     }
 
     public void setIndexCardinality(int cardinality) {
@@ -91,7 +120,7 @@ public class Role implements Serializable {
     }
 
     public boolean isIndexed() {
-        return getIndexProperty() != null;
+        return indexProperties != null;
     }
 
     public void setOrdered(boolean ordered) {
@@ -0,0 +1,64 @@
+package pt.ist.fenixframework.dml.runtime;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * The key of a composite index: the values of several properties, compared in order (lexicographically). A <code>null</code>
+ * value comes before any other value.
+ */
+@SuppressWarnings({ "rawtypes", "unchecked" })
+public final class CompositeKey implements Comparable<CompositeKey>, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Comparable[] values;
+
+    public CompositeKey(Comparable... values) {
+        this.values = values.clone();
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    public Comparable get(int index) {
+        return values[index];
+    }
+
+    @Override
+    public int compareTo(CompositeKey other) {
+        int length = Math.min(values.length, other.values.length);
+        for (int i = 0; i < length; i++) {
+            Comparable mine = values[i];
+            Comparable theirs = other.values[i];
+            int comparison;
+            if (mine == null) {
+                comparison = (theirs == null) ? 0 : -1;
+            } else if (theirs == null) {
+                comparison = 1;
+            } else {
+                comparison = mine.compareTo(theirs);
+            }
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        return values.length - other.values.length;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return (obj instanceof CompositeKey) && Arrays.equals(values, ((CompositeKey) obj).values);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(values);
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(values);
+    }
+}
@@ -17,8 +17,15 @@ public interface DomainBasedMap<T extends Serializable> extends DomainObject, It
 
     public boolean contains(Comparable key);
 
+    /**
+     * Returns the number of values in this map. Implementations should keep this count in the map itself, so that relations can
+     * be measured without loading their elements.
+     */
     public int size();
 
+    /** Returns <code>true</code> if this map contains no values. As with {@link #size()}, this should not load the elements. */
+    public boolean isEmpty();
+
     @Override
     public Iterator<T> iterator();
 
@@ -1,7 +1,9 @@
 package pt.ist.fenixframework.dml.runtime;
 
 import java.util.AbstractSet;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 
 import org.slf4j.Logger;
@@ -9,6 +11,7 @@ import org.slf4j.LoggerFactory;
 
 import pt.ist.fenixframework.DomainObject;
 import pt.ist.fenixframework.core.AbstractDomainObject;
+import pt.ist.fenixframework.dml.runtime.SortedDomainBasedMap.Cursor;
 
 public class RelationAwareSet<E1 extends AbstractDomainObject, E2 extends AbstractDomainObject> extends AbstractSet<E2> implements
         Set<E2>, RelationBaseSet<E2> {
@@ -120,6 +123,11 @@ public class RelationAwareSet<E1 extends AbstractDomainObject, E2 extends Abstra
         return getInternalMap().size();
     }
 
+    @Override
+    public boolean isEmpty() {
+        return getInternalMap().isEmpty();
+    }
+
     public E2 get(Comparable<?> key) {
         return getInternalMap().get(key);
     }
@@ -138,6 +146,86 @@ public class RelationAwareSet<E1 extends AbstractDomainObject, E2 extends Abstra
         return new RelationAwareIterator(getInternalMap());
     }
 
+    /*
+     * Ordered access.  These require the internalMap to be a SortedDomainBasedMap, as are the B+Trees and the SkipList.  The
+     * keys are the ones given by the mapKey function (by default, the objects' OIDs).
+     */
+
+    /**
+     * Returns a cursor over the elements whose keys are within <code>[fromKey, toKey)</code>, in ascending key order.
+     * 
+     * @throws UnsupportedOperationException if the internalMap does not keep its elements ordered
+     */
+    public Cursor<E2> subMap(Comparable<?> fromKey, Comparable<?> toKey) {
+        return getSortedInternalMap().cursor(fromKey, true, toKey, false);
+    }
+
+    /**
+     * Returns a cursor over the elements whose keys are less than <code>toKey</code>, in ascending key order.
+     * 
+     * @see #subMap(Comparable, Comparable)
+     */
+    public Cursor<E2> headMap(Comparable<?> toKey) {
+        return getSortedInternalMap().cursor(null, false, toKey, false);
+    }
+
+    /**
+     * Returns a cursor over the elements whose keys are greater than or equal to <code>fromKey</code>, in ascending key order.
+     * This is how to resume paging from the last key seen.
+     * 
+     * @see #subMap(Comparable, Comparable)
+     */
+    public Cursor<E2> tailMap(Comparable<?> fromKey) {
+        return getSortedInternalMap().cursor(fromKey, true, null, false);
+    }
+
+    /**
+     * Returns the elements whose keys are within <code>[lowKey, highKey]</code>, in ascending key order. This is what the
+     * <code>...Between</code> methods of ordered indexes use.
+     * 
+     * @see #subMap(Comparable, Comparable)
+     */
+    public List<E2> getBetween(Comparable<?> lowKey, Comparable<?> highKey) {
+        List<E2> result = new ArrayList<E2>();
+        Cursor<E2> cursor = getSortedInternalMap().cursor(lowKey, true, highKey, true);
+        while (cursor.hasNext()) {
+            result.add(cursor.next());
+        }
+        return result;
+    }
+
+    /**
+     * Returns a cursor over all the elements, in ascending key order, which can be moved with {@link Cursor#seek(Comparable)}.
+     * 
+     * @see #subMap(Comparable, Comparable)
+     */
+    public Cursor<E2> cursor() {
+        return getSortedInternalMap().cursor(null, false, null, false);
+    }
+
+    /**
+     * Returns a cursor over all the elements, in descending key order.
+     * 
+     * @see #subMap(Comparable, Comparable)
+     */
+    public Cursor<E2> descendingCursor() {
+        return getSortedInternalMap().descendingCursor(null, false, null, false);
+    }
+
+    /**
+     * Provide access to the internalMap for the ordered access methods.
+     * 
+     * @throws UnsupportedOperationException if the internalMap does not keep its elements ordered
+     */
+    protected SortedDomainBasedMap<E2> getSortedInternalMap() {
+        DomainBasedMap<E2> map = getInternalMap();
+        if (map instanceof SortedDomainBasedMap) {
+            return (SortedDomainBasedMap<E2>) map;
+        }
+        throw new UnsupportedOperationException("The collection of this relation (" + map.getClass().getName()
+                + ") does not keep its elements ordered");
+    }
+
     @Override
     public boolean add(E2 o) {
         return relation.add(owner, o);
@@ -0,0 +1,53 @@
+package pt.ist.fenixframework.dml.runtime;
+
+import java.io.Serializable;
+import java.util.Iterator;
+
+/**
+ * A {@link DomainBasedMap} that keeps its entries ordered by key, and that can therefore iterate over a range of keys
+ * without walking through the whole collection.
+ *
+ * Ranges are given by a lower and an upper bound, either of which may be <code>null</code> to leave that side unbounded. The
+ * bounds are the same for ascending and for descending cursors: a descending cursor starts at the upper bound.
+ */
+public interface SortedDomainBasedMap<T extends Serializable> extends DomainBasedMap<T> {
+
+    /**
+     * Returns a cursor over the values whose keys are within the given range, in ascending key order.
+     *
+     * @param lowKey The lower bound, or <code>null</code> to start at the first key
+     * @param lowInclusive Whether the lower bound itself is within the range
+     * @param highKey The upper bound, or <code>null</code> to end at the last key
+     * @param highInclusive Whether the upper bound itself is within the range
+     */
+    public Cursor<T> cursor(Comparable lowKey, boolean lowInclusive, Comparable highKey, boolean highInclusive);
+
+    /**
+     * Returns a cursor over the values whose keys are within the given range, in descending key order.
+     *
+     * @see #cursor(Comparable, boolean, Comparable, boolean)
+     */
+    public Cursor<T> descendingCursor(Comparable lowKey, boolean lowInclusive, Comparable highKey, boolean highInclusive);
+
+    /**
+     * An {@link Iterator} over a range of a {@link SortedDomainBasedMap}, which can be repositioned. Cursors do not support
+     * {@link Iterator#remove()}. Like any other iterator over a domain collection, a cursor must only be used within the
+     * transaction that created it.
+     */
+    public interface Cursor<T> extends Iterator<T> {
+
+        /**
+         * Returns the key of the value that was last returned by {@link #next()}.
+         *
+         * @throws IllegalStateException if <code>next()</code> was not yet invoked
+         */
+        public Comparable getKey();
+
+        /**
+         * Repositions this cursor, so that the next value it returns is the one with the given key or, if there is no such key,
+         * the one with the closest key after it (before it, for descending cursors). The cursor never leaves its range: seeking
+         * to a key before the range moves it to the start of the range.
+         */
+        public void seek(Comparable key);
+    }
+}
@@ -57,6 +57,11 @@ public class StubDomainBasedMap<T extends Serializable> implements DomainBasedMa
         throw STUB_EXCEPTION;
     }
 
+    @Override
+    public boolean isEmpty() {
+        throw STUB_EXCEPTION;
+    }
+
     @Override
     public Iterator<T> iterator() {
         throw STUB_EXCEPTION;
@@ -0,0 +1,211 @@
+package pt.ist.fenixframework.hibernatesearch;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.hibernate.search.backend.spi.WorkType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import pt.ist.fenixframework.DomainObject;
+import pt.ist.fenixframework.util.FenixFrameworkThread;
+
+/**
+ * Updates the full-text index in the background, after transactions commit, so that indexing is not part of the commit path.
+ *
+ * The objects created and modified by each committed transaction are queued, and repeated changes to the same object are
+ * coalesced into a single unit of work. A dedicated thread indexes the queued objects in batches of up to
+ * <code>maxBatchSize</code> objects, each batch within its own transaction, so that the index gets the latest committed state
+ * of each object. A batch is indexed as soon as it is full, or when its oldest object has been waiting for <code>maxLag</code>
+ * milliseconds. Batches are indexed one at a time, in order, so an older state of an object never replaces a newer one.
+ *
+ * The objects of a batch that fails to be indexed are queued again, and the indexing thread only retries them after
+ * <code>maxLag</code> milliseconds (at least {@link #MIN_RETRY_DELAY}). A {@link #flush()} retries them at once, and fails if
+ * they still cannot be indexed.
+ */
+class AsyncIndexer {
+
+    private static final Logger logger = LoggerFactory.getLogger(AsyncIndexer.class);
+
+    public static final int DEFAULT_MAX_BATCH_SIZE = 500;
+    public static final long DEFAULT_MAX_LAG = 1000;
+    public static final long MIN_RETRY_DELAY = 1000;
+
+    private final int maxBatchSize;
+    private final long maxLag;
+    private final IndexingThread indexingThread;
+
+    // held while draining and indexing a batch
+    private final Object indexingLock = new Object();
+
+    // all fields below are guarded by this instance's monitor
+    private final LinkedHashMap<DomainObject, WorkType> queue = new LinkedHashMap<DomainObject, WorkType>();
+    // when the oldest object in the queue was enqueued
+    private long oldestEnqueueTime;
+    // after a failure, the indexing thread does not index again until this time
+    private long retryTime = 0;
+    private boolean stopped = false;
+
+    AsyncIndexer(int maxBatchSize, long maxLag) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be positive: " + maxBatchSize);
+        }
+        if (maxLag < 0) {
+            throw new IllegalArgumentException("maxLag cannot be negative: " + maxLag);
+        }
+        this.maxBatchSize = maxBatchSize;
+        this.maxLag = maxLag;
+        this.indexingThread = new IndexingThread();
+        this.indexingThread.start();
+    }
+
+    // invoked after a transaction commits, with the objects it created and modified
+    synchronized void enqueue(Collection<DomainObject> newObjects, Collection<DomainObject> modifiedObjects) {
+        boolean wasEmpty = this.queue.isEmpty();
+        for (DomainObject obj : newObjects) {
+            if (HibernateSearchSupport.isIndexed(obj)) {
+                this.queue.put(obj, WorkType.ADD);
+            }
+        }
+        for (DomainObject obj : modifiedObjects) {
+            // an object that is yet to be added will be added with its latest state
+            if (HibernateSearchSupport.isIndexed(obj) && this.queue.get(obj) != WorkType.ADD) {
+                this.queue.put(obj, WorkType.UPDATE);
+            }
+        }
+
+        if (wasEmpty && !this.queue.isEmpty()) {
+            this.oldestEnqueueTime = System.currentTimeMillis();
+            notifyAll();
+        } else if (this.queue.size() >= this.maxBatchSize) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Indexes all the objects queued so far, and returns only when they are in the index. Must not be invoked within a
+     * transaction.
+     *
+     * @throws RuntimeException If some batch fails to be indexed. Its objects remain queued.
+     */
+    void flush() {
+        while (indexNextBatch()) {
+            // until the queue is empty
+        }
+    }
+
+    /** Stops the indexing thread, and then indexes whatever is still queued. */
+    void stop() {
+        synchronized (this) {
+            this.stopped = true;
+            notifyAll();
+        }
+        try {
+            this.indexingThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            logger.error("Stopped with objects that could not be indexed", e);
+        }
+    }
+
+    // Returns whether there was anything to index.  If the batch fails, its objects are queued again, and the failure is thrown
+    private boolean indexNextBatch() {
+        synchronized (this.indexingLock) {
+            Map<DomainObject, WorkType> batch = drainBatch();
+            if (batch.isEmpty()) {
+                return false;
+            }
+
+            try {
+                HibernateSearchSupport.indexBatch(batch);
+                logger.debug("Indexed a batch of {} objects", batch.size());
+            } catch (RuntimeException e) {
+                logger.error("Failed to index a batch of {} objects. They will be retried", batch.size(), e);
+                requeue(batch);
+                throw e;
+            }
+            return true;
+        }
+    }
+
+    // puts the objects of a failed batch back in front of the queue, unless they were changed again meanwhile
+    private synchronized void requeue(Map<DomainObject, WorkType> batch) {
+        LinkedHashMap<DomainObject, WorkType> newQueue = new LinkedHashMap<DomainObject, WorkType>(batch);
+        for (Map.Entry<DomainObject, WorkType> entry : this.queue.entrySet()) {
+            // a failed addition is still an addition
+            if (newQueue.get(entry.getKey()) != WorkType.ADD) {
+                newQueue.put(entry.getKey(), entry.getValue());
+            }
+        }
+        this.queue.clear();
+        this.queue.putAll(newQueue);
+
+        this.oldestEnqueueTime = System.currentTimeMillis();
+        this.retryTime = this.oldestEnqueueTime + Math.max(this.maxLag, MIN_RETRY_DELAY);
+    }
+
+    private synchronized Map<DomainObject, WorkType> drainBatch() {
+        Map<DomainObject, WorkType> batch = new LinkedHashMap<DomainObject, WorkType>();
+        Iterator<Map.Entry<DomainObject, WorkType>> iter = this.queue.entrySet().iterator();
+        while (iter.hasNext() && batch.size() < this.maxBatchSize) {
+            Map.Entry<DomainObject, WorkType> entry = iter.next();
+            batch.put(entry.getKey(), entry.getValue());
+            iter.remove();
+        }
+        // oldestEnqueueTime is kept for the objects left behind: being younger, they are just indexed sooner than needed
+        return batch;
+    }
+
+    // Waits until there is a full batch, or until the oldest object reaches maxLag.  Returns false once stopped.
+    private synchronized boolean awaitBatch() throws InterruptedException {
+        while (!this.stopped) {
+            long untilRetry = this.retryTime - System.currentTimeMillis();
+            if (untilRetry > 0) {
+                wait(untilRetry);
+                continue;
+            }
+            if (this.queue.size() >= this.maxBatchSize) {
+                return true;
+            }
+            if (this.queue.isEmpty()) {
+                wait();
+            } else {
+                long remaining = this.oldestEnqueueTime + this.maxLag - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return true;
+                }
+                wait(remaining);
+            }
+        }
+        return false;
+    }
+
+    private class IndexingThread extends FenixFrameworkThread {
+
+        IndexingThread() {
+            super("FenixFramework async indexer");
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (awaitBatch()) {
+                    try {
+                        indexNextBatch();
+                    } catch (RuntimeException e) {
+                        // already logged, and the objects were queued again
+                    }
+                }
+            } catch (InterruptedException e) {
+                logger.warn("Async indexer interrupted. Queued objects will only be indexed on flush");
+            }
+        }
+    }
+}
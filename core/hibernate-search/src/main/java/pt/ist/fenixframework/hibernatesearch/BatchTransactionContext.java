@@ -0,0 +1,43 @@
+package pt.ist.fenixframework.hibernatesearch;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+
+import org.hibernate.search.backend.TransactionContext;
+
+/**
+ * A {@link TransactionContext} that gathers all the work given to Hibernate Search while indexing a batch of objects, and hands
+ * it over at once, when the batch is complete.
+ */
+class BatchTransactionContext implements TransactionContext {
+
+    private final List<Synchronization> synchronizations = new ArrayList<Synchronization>();
+
+    @Override
+    public Object getTransactionIdentifier() {
+        return this;
+    }
+
+    @Override
+    public boolean isTransactionInProgress() {
+        return true;
+    }
+
+    @Override
+    public void registerSynchronization(Synchronization synchronization) {
+        synchronizations.add(synchronization);
+    }
+
+    /** Applies the work of the batch to the index */
+    void complete() {
+        for (Synchronization synchronization : synchronizations) {
+            synchronization.beforeCompletion();
+        }
+        for (Synchronization synchronization : synchronizations) {
+            synchronization.afterCompletion(Status.STATUS_COMMITTED);
+        }
+    }
+}
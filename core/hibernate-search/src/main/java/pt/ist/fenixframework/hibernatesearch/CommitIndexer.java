@@ -1,9 +1,16 @@
 package pt.ist.fenixframework.hibernatesearch;
 
+import java.util.ArrayList;
+import java.util.Collection;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+
 import org.hibernate.search.backend.TransactionContext;
 import org.hibernate.search.backend.spi.WorkType;
 
 import pt.ist.fenixframework.CommitListener;
+import pt.ist.fenixframework.DomainObject;
 import pt.ist.fenixframework.Transaction;
 import pt.ist.fenixframework.txintrospector.TxIntrospector;
 
@@ -18,16 +25,32 @@ import pt.ist.fenixframework.txintrospector.TxIntrospector;
  * After a transaction commits or aborts, this class also signals the result to
  * hibernate-search, so that the index additions/changes for the transaction are
  * persisted or dropped.
+ * 
+ * When indexing is asynchronous, the new and changed objects are instead handed
+ * to the {@link AsyncIndexer} after the transaction commits, and are indexed
+ * later, in the background.
  */
 class CommitIndexer implements CommitListener {
 
+    // null when the index is updated within each commit
+    private final AsyncIndexer asyncIndexer;
+
+    CommitIndexer(AsyncIndexer asyncIndexer) {
+        this.asyncIndexer = asyncIndexer;
+    }
+
     @Override
     public void beforeCommit(Transaction transaction) {
 
-        TransactionContext context = new HibernateSearchTransactionContext(transaction);
-
         TxIntrospector introspector = transaction.getTxIntrospector();
 
+        if (asyncIndexer != null) {
+            enqueueAfterCommit(transaction, introspector);
+            return;
+        }
+
+        TransactionContext context = new HibernateSearchTransactionContext(transaction);
+
         HibernateSearchSupport.updateIndex(context, introspector.getNewObjects(), WorkType.ADD);
         HibernateSearchSupport.updateIndex(context, introspector.getModifiedObjects(), WorkType.UPDATE);
 
@@ -37,4 +60,29 @@ class CommitIndexer implements CommitListener {
     public void afterCommit(Transaction transaction) {
 
     }
+
+    private void enqueueAfterCommit(Transaction transaction, TxIntrospector introspector) {
+        final Collection<DomainObject> newObjects = new ArrayList<DomainObject>(introspector.getNewObjects());
+        final Collection<DomainObject> modifiedObjects = new ArrayList<DomainObject>(introspector.getModifiedObjects());
+        if (newObjects.isEmpty() && modifiedObjects.isEmpty()) {
+            return;
+        }
+
+        try {
+            transaction.registerSynchronization(new Synchronization() {
+                @Override
+                public void beforeCompletion() {
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == Status.STATUS_COMMITTED) {
+                        asyncIndexer.enqueue(newObjects, modifiedObjects);
+                    }
+                }
+            });
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
 }
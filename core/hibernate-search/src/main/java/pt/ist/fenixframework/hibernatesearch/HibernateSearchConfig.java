@@ -7,6 +7,7 @@ import java.util.Properties;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import pt.ist.fenixframework.ConfigError;
 import pt.ist.fenixframework.FenixFramework;
 import pt.ist.fenixframework.dap.FFDAPConfig;
 import pt.ist.fenixframework.txintrospector.TxStats;
@@ -21,6 +22,28 @@ public abstract class HibernateSearchConfig extends FFDAPConfig {
      */
     public static final String CONFIG_FILE = "fenix-framework-hibernate-search.properties";
 
+    /**
+     * This <strong>optional</strong> parameter makes the full-text index be updated asynchronously. When enabled, the objects
+     * created and modified by each transaction are indexed in the background after it commits, instead of within the commit,
+     * so searches may not immediately see the latest changes (see {@link HibernateSearchSupport#flushIndexing()}). The default
+     * value for this parameter is <code>false</code>.
+     */
+    protected boolean asyncIndexing = false;
+
+    /**
+     * This <strong>optional</strong> parameter specifies the maximum number of objects indexed together, within a single
+     * transaction, by the asynchronous indexing. Only used when <code>asyncIndexing</code> is enabled. The default value for
+     * this parameter is <code>500</code>.
+     */
+    protected int asyncIndexingMaxBatchSize = AsyncIndexer.DEFAULT_MAX_BATCH_SIZE;
+
+    /**
+     * This <strong>optional</strong> parameter specifies, in milliseconds, how long a change may wait before the asynchronous
+     * indexing starts indexing it, when there are not enough changes to fill a batch. Only used when <code>asyncIndexing</code>
+     * is enabled. The default value for this parameter is <code>1000</code>.
+     */
+    protected long asyncIndexingMaxLag = AsyncIndexer.DEFAULT_MAX_LAG;
+
     @Override
     protected void init() {
         super.init();
@@ -48,8 +71,13 @@ public abstract class HibernateSearchConfig extends FFDAPConfig {
 
         HibernateSearchSupport.initializeSearchFactory(properties);
 
+        AsyncIndexer asyncIndexer = null;
+        if (asyncIndexing) {
+            asyncIndexer = HibernateSearchSupport.startAsyncIndexing(asyncIndexingMaxBatchSize, asyncIndexingMaxLag);
+        }
+
         // Register our listener
-        FenixFramework.getTransactionManager().addCommitListener(new CommitIndexer());
+        FenixFramework.getTransactionManager().addCommitListener(new CommitIndexer(asyncIndexer));
 
     }
 
@@ -60,9 +88,30 @@ public abstract class HibernateSearchConfig extends FFDAPConfig {
     @Override
     public void shutdown() {
         if (HibernateSearchSupport.getSearchFactory() != null) {
+            HibernateSearchSupport.stopAsyncIndexing();
             HibernateSearchSupport.getSearchFactory().close();
         }
 
         super.shutdown();
     }
+
+    protected void asyncIndexingFromString(String value) {
+        asyncIndexing = Boolean.parseBoolean(value);
+    }
+
+    protected void asyncIndexingMaxBatchSizeFromString(String value) {
+        try {
+            asyncIndexingMaxBatchSize = Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new ConfigError(e);
+        }
+    }
+
+    protected void asyncIndexingMaxLagFromString(String value) {
+        try {
+            asyncIndexingMaxLag = Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new ConfigError(e);
+        }
+    }
 }
@@ -3,6 +3,7 @@ package pt.ist.fenixframework.hibernatesearch;
 import java.lang.annotation.ElementType;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 
@@ -15,6 +16,7 @@ import org.hibernate.search.spi.SearchFactoryBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import pt.ist.fenixframework.CallableWithoutException;
 import pt.ist.fenixframework.DomainObject;
 import pt.ist.fenixframework.FenixFramework;
 import pt.ist.fenixframework.core.AbstractDomainObject;
@@ -31,6 +33,8 @@ public class HibernateSearchSupport {
 
     private static final Set<Class<?>> INDEXED_CLASSES = new HashSet<Class<?>>(getIndexedDomainClasses());
     private static SearchFactoryImplementor searchFactory;
+    // null when the index is updated within each commit
+    private static volatile AsyncIndexer asyncIndexer;
 
     /**
      * Returns the SearchFactory instance. Null when HibernateSearchSupport is disabled.
@@ -52,10 +56,59 @@ public class HibernateSearchSupport {
         searchFactory = new SearchFactoryBuilder().configuration(configuration).buildSearchFactory();
     }
 
+    /**
+     * Returns only when the changes of all the transactions committed so far are in the index. This is only needed when the
+     * index is updated asynchronously (see {@link HibernateSearchConfig#asyncIndexing}), e.g. for a test to search for what it
+     * has just written, and does nothing otherwise. Must not be invoked within a transaction.
+     * 
+     * @throws RuntimeException If some of the changes could not be indexed. They will be retried later.
+     */
+    public static void flushIndexing() {
+        AsyncIndexer indexer = asyncIndexer;
+        if (indexer != null) {
+            indexer.flush();
+        }
+    }
+
+    static AsyncIndexer startAsyncIndexing(int maxBatchSize, long maxLag) {
+        if (asyncIndexer != null) {
+            throw new RuntimeException("Tried to start already started asynchronous indexing");
+        }
+        asyncIndexer = new AsyncIndexer(maxBatchSize, maxLag);
+        return asyncIndexer;
+    }
+
+    static void stopAsyncIndexing() {
+        AsyncIndexer indexer = asyncIndexer;
+        if (indexer != null) {
+            indexer.stop();
+            asyncIndexer = null;
+        }
+    }
+
+    static boolean isIndexed(DomainObject obj) {
+        return INDEXED_CLASSES.contains(obj.getClass());
+    }
+
+    // Indexes the current state of the given objects, all within the same transaction
+    static void indexBatch(final Map<DomainObject, WorkType> batch) {
+        FenixFramework.getTransactionManager().withTransaction(new CallableWithoutException<Void>() {
+            @Override
+            public Void call() {
+                BatchTransactionContext context = new BatchTransactionContext();
+                for (Map.Entry<DomainObject, WorkType> entry : batch.entrySet()) {
+                    searchFactory.getWorker().performWork(new Work<DomainObject>(entry.getKey(), entry.getValue()), context);
+                }
+                context.complete();
+                return null;
+            }
+        });
+    }
+
     protected static void updateIndex(TransactionContext context, Collection<DomainObject> objects, WorkType workType) {
         try {
             for (DomainObject obj : objects) {
-                if (!INDEXED_CLASSES.contains(obj.getClass()))
+                if (!isIndexed(obj))
                     continue;
                 searchFactory.getWorker().performWork(new Work<DomainObject>(obj, workType), context);
             }
@@ -1,7 +1,10 @@
 package pt.ist.fenixframework.dml;
 
 import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
 
+import pt.ist.fenixframework.dml.runtime.CompositeKey;
 import pt.ist.fenixframework.dml.runtime.DomainBasedMap;
 
 /**
@@ -13,15 +16,21 @@ import pt.ist.fenixframework.dml.runtime.DomainBasedMap;
  * 
  * <li>Adds a static method to allow an index search by the field</li>
  * 
+ * <li>For composite indexes (<code>indexed by a, b</code>), keys the index with a {@link CompositeKey} of the fields, and takes
+ * one argument per field in the search method</li>
+ * 
+ * <li>For ordered indexes (<code>indexed by a ordered</code>), also adds a <code>...Between</code> method, to search by an
+ * (inclusive) range of keys</li>
+ * 
  * </ul>
  * 
  * @author nmld
  */
 public class IndexesCodeGenerator extends TxIntrospectorCodeGenerator {
 
-    // Unfortunately, depending on a DML entity cannot be done explicitly because LinkedList extends a _Base class which 
-    // will not be compiled when this code generator is invoked (ultimately, to compile the LinkedList itself)
-    private static final String LINKED_LIST_FULL_CLASS = "pt.ist.fenixframework.adt.linkedlist.LinkedList";
+    // Unfortunately, depending on a DML entity cannot be done explicitly because BPlusTree extends a _Base class which 
+    // will not be compiled when this code generator is invoked (ultimately, to compile the BPlusTree itself)
+    private static final String BPLUS_TREE_FULL_CLASS = "pt.ist.fenixframework.adt.bplustree.BPlusTree";
 
     public IndexesCodeGenerator(CompilerArgs compArgs, DomainModel domainModel) {
         super(compArgs, domainModel);
@@ -29,7 +38,12 @@ public class IndexesCodeGenerator extends TxIntrospectorCodeGenerator {
 
     @Override
     protected void generateStaticKeyFunctionForRole(Role role, PrintWriter out) {
-        if (role.isIndexed()) {
+        if (role.isCompositeIndex()) {
+            onNewline(out);
+            getIndexedSlots(role); // fail early for unknown fields
+            println(out, generateCompositeKeyFunction(role));
+            onNewline(out);
+        } else if (role.isIndexed()) {
             onNewline(out);
             Slot indexedSlot = getIndexedSlot(role);
             String keyField = role.getIndexProperty();
@@ -59,41 +73,132 @@ public class IndexesCodeGenerator extends TxIntrospectorCodeGenerator {
 
     protected void generateRoleSlotMethodsMultStarIndexed(Role role, PrintWriter out, String methodModifiers,
             String capitalizedSlotName, String slotAccessExpression, String typeName, String slotName) {
-        Slot indexedSlot = getIndexedSlot(role);
-        String keyField = role.getIndexProperty();
+        List<Slot> indexedSlots = getIndexedSlots(role);
         String retType = role.getType().getFullName();
-        String methodNameSufix = "";
+        String methodName = "get" + capitalize(role.getName()) + "By" + getIndexedFieldsName(role);
         boolean haveMany = role.getIndexCardinality() == Role.MULTIPLICITY_MANY;
         if (haveMany) {
             retType = makeGenericType("java.util.Set", retType);
         }
         onNewline(out);
-        printMethod(out, "public", retType, "get" + capitalize(role.getName()) + "By" + capitalize(keyField) + methodNameSufix,
-                indexedSlot.getSlotType().getFullname() + " key");
+        printMethod(out, "public", retType, methodName, getKeyArguments(role, indexedSlots, ""));
         startMethodBody(out);
-        printWords(out, "return", getSearchForKey(role, haveMany ? getCollectionToUse() : retType));
+        printWords(out, "return", getSearchForKey(role, getKeyExpression(role, "")));
         print(out, ";");
         endMethodBody(out);
+
+        if (role.isIndexOrdered()) {
+            List<String> arguments = new ArrayList<String>();
+            for (String argument : getKeyArguments(role, indexedSlots, "low")) {
+                arguments.add(argument);
+            }
+            for (String argument : getKeyArguments(role, indexedSlots, "high")) {
+                arguments.add(argument);
+            }
+
+            onNewline(out);
+            printMethod(out, "public", makeGenericType("java.util.List", role.getType().getFullName()), methodName + "Between",
+                    arguments.toArray(new String[arguments.size()]));
+            startMethodBody(out);
+            printWords(out, "return", "((" + getRelationAwareTypeFor(role) + ") get" + capitalize(role.getName())
+                    + "Set()).getBetween(" + getKeyExpression(role, "low") + ", " + getKeyExpression(role, "high") + ")");
+            print(out, ";");
+            endMethodBody(out);
+        }
     }
 
     private Slot getIndexedSlot(Role role) {
-        Slot indexedSlot = role.getType().findSlot(role.getIndexProperty());
+        return getIndexedSlot(role, role.getIndexProperty());
+    }
+
+    private Slot getIndexedSlot(Role role, String property) {
+        Slot indexedSlot = role.getType().findSlot(property);
         if (indexedSlot == null) { // indexed field doesn't exist
-            throw new Error("Unknown indexed field: " + role.getIndexProperty());
+            throw new Error("Unknown indexed field: " + property);
         }
         return indexedSlot;
     }
 
-    private String getSearchForKey(Role role, String retType) {
+    private List<Slot> getIndexedSlots(Role role) {
+        List<Slot> slots = new ArrayList<Slot>();
+        for (String property : role.getIndexProperties()) {
+            slots.add(getIndexedSlot(role, property));
+        }
+        return slots;
+    }
+
+    // e.g. "Name" or, for composite indexes, "NameAndAge"
+    private String getIndexedFieldsName(Role role) {
+        StringBuilder name = new StringBuilder();
+        for (String property : role.getIndexProperties()) {
+            if (name.length() > 0) {
+                name.append("And");
+            }
+            name.append(capitalize(property));
+        }
+        return name.toString();
+    }
+
+    // The name of the argument that holds the given field of the key.  Single field indexes keep the "key" argument.
+    private String getKeyArgumentName(Role role, String property, String prefix) {
+        if (!role.isCompositeIndex()) {
+            return prefix.isEmpty() ? "key" : prefix;
+        }
+        return prefix.isEmpty() ? property : prefix + capitalize(property);
+    }
+
+    private String[] getKeyArguments(Role role, List<Slot> indexedSlots, String prefix) {
+        String[] arguments = new String[indexedSlots.size()];
+        for (int i = 0; i < arguments.length; i++) {
+            Slot slot = indexedSlots.get(i);
+            arguments[i] = slot.getSlotType().getFullname() + " " + getKeyArgumentName(role, slot.getName(), prefix);
+        }
+        return arguments;
+    }
+
+    private String getKeyExpression(Role role, String prefix) {
+        if (!role.isCompositeIndex()) {
+            return getKeyArgumentName(role, role.getIndexProperty(), prefix);
+        }
+        StringBuilder expression = new StringBuilder("new " + CompositeKey.class.getName() + "(");
+        String separator = "";
+        for (String property : role.getIndexProperties()) {
+            expression.append(separator).append(getKeyArgumentName(role, property, prefix));
+            separator = ", ";
+        }
+        return expression.append(")").toString();
+    }
+
+    private String generateCompositeKeyFunction(Role role) {
+        String valueType = role.getType().getFullName();
+        String keyFunctionType =
+                makeGenericType("pt.ist.fenixframework.dml.runtime.KeyFunction", CompositeKey.class.getName(), valueType);
+
+        StringBuilder values = new StringBuilder();
+        for (String property : role.getIndexProperties()) {
+            if (values.length() > 0) {
+                values.append(", ");
+            }
+            values.append("value.get").append(capitalize(property)).append("()");
+        }
+
+        return "private static " + keyFunctionType + " keyFunction$$" + role.getName() + " = new " + keyFunctionType
+                + "() { public " + CompositeKey.class.getName() + " getKey(" + valueType + " value) { return new "
+                + CompositeKey.class.getName() + "(" + values + "); } public boolean allowMultipleKeys() {return "
+                + (role.getIndexCardinality() == Role.MULTIPLICITY_MANY) + "; }};";
+    }
+
+    private String getSearchForKey(Role role, String keyExpression) {
         boolean indexMult = role.isIndexed() && role.getIndexCardinality() == Role.MULTIPLICITY_MANY;
         String fetchMethod = "get" + (indexMult ? "Values" : "");
-        return "((" + getRelationAwareTypeFor(role) + ") get" + capitalize(role.getName()) + "Set())." + fetchMethod + "(key)";
+        return "((" + getRelationAwareTypeFor(role) + ") get" + capitalize(role.getName()) + "Set())." + fetchMethod + "("
+                + keyExpression + ")";
     }
 
     @Override
     protected String getDefaultCollectionFor(Role role) {
         if (role.isIndexed() && role.getIndexCardinality() == Role.MULTIPLICITY_MANY) {
-            return makeGenericType(getCollectionToUse(), makeGenericType(LINKED_LIST_FULL_CLASS, role.getType().getFullName()));
+            return makeGenericType(getCollectionToUse(), makeGenericType(BPLUS_TREE_FULL_CLASS, role.getType().getFullName()));
         } else {
             return super.getDefaultCollectionFor(role);
         }
@@ -103,7 +208,7 @@ public class IndexesCodeGenerator extends TxIntrospectorCodeGenerator {
     protected String getDefaultCollectionGetterFor(Role role) {
         if (role.isIndexed() && role.getIndexCardinality() == Role.MULTIPLICITY_MANY) {
             return makeGenericType(DomainBasedMap.Getter.class.getCanonicalName(),
-                    makeGenericType(LINKED_LIST_FULL_CLASS, getTypeFullName(role.getType())));
+                    makeGenericType(BPLUS_TREE_FULL_CLASS, getTypeFullName(role.getType())));
         } else {
             return super.getDefaultCollectionGetterFor(role);
         }
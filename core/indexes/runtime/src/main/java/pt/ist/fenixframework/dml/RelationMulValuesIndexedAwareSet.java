@@ -1,38 +1,54 @@
 package pt.ist.fenixframework.dml;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Set;
 
-import pt.ist.fenixframework.adt.linkedlist.LinkedList;
+import pt.ist.fenixframework.adt.bplustree.BPlusTree;
 import pt.ist.fenixframework.core.AbstractDomainObject;
 import pt.ist.fenixframework.dml.runtime.DomainBasedMap;
 import pt.ist.fenixframework.dml.runtime.KeyFunction;
 import pt.ist.fenixframework.dml.runtime.Relation;
 import pt.ist.fenixframework.dml.runtime.RelationAwareSet;
+import pt.ist.fenixframework.dml.runtime.SortedDomainBasedMap;
+import pt.ist.fenixframework.dml.runtime.SortedDomainBasedMap.Cursor;
 import pt.ist.fenixframework.indexes.UnmodifiableDomainBaseSet;
 
+/**
+ * The set of objects of an indexed relation role whose index allows many objects per key. The objects that share a key are
+ * kept in a {@link BPlusTree}, ordered by OID, so adding, removing or looking for one of them is logarithmic on the
+ * number of objects with that key.
+ *
+ * Relations stored before these groups were B+Trees may still hold other {@link DomainBasedMap}s (namely LinkedLists) for the
+ * existing keys. These keep working, and only the groups created from then on are B+Trees.
+ *
+ * When the map of the groups is itself a {@link BPlusTree}, it also keeps the number of elements of the whole set, so that
+ * {@link #size()} and {@link #isEmpty()} load neither the groups nor the nodes of the map.
+ */
 public class RelationMulValuesIndexedAwareSet<E1 extends AbstractDomainObject, E2 extends AbstractDomainObject> extends
         RelationAwareSet<E1, E2> {
 
     // All accesses to the internalMap should go through the getInternalMap() method!
-    private DomainBasedMap<LinkedList<E2>> multiValueMap;
-    protected final DomainBasedMap.Getter<LinkedList<E2>> multiValueMapGetter;
+    private DomainBasedMap<DomainBasedMap<E2>> multiValueMap;
+    protected final DomainBasedMap.Getter<? extends DomainBasedMap<E2>> multiValueMapGetter;
 
     public RelationMulValuesIndexedAwareSet(E1 owner, Relation<E1, E2> relation, KeyFunction<? extends Comparable<?>, E2> mapKey,
-            DomainBasedMap<LinkedList<E2>> multiValueMap, DomainBasedMap.Getter<LinkedList<E2>> multiValueMapGetter) {
+            DomainBasedMap<? extends DomainBasedMap<E2>> multiValueMap,
+            DomainBasedMap.Getter<? extends DomainBasedMap<E2>> multiValueMapGetter) {
         super(owner, relation, (DomainBasedMap<E2>) null, mapKey);
-        this.multiValueMap = multiValueMap;
+        this.multiValueMap = (DomainBasedMap<DomainBasedMap<E2>>) multiValueMap;
         this.multiValueMapGetter = multiValueMapGetter;
     }
 
-    public RelationMulValuesIndexedAwareSet(E1 owner, Relation<E1, E2> relation, DomainBasedMap<LinkedList<E2>> multiValueMap,
-            KeyFunction<? extends Comparable<?>, E2> mapKey) {
+    public RelationMulValuesIndexedAwareSet(E1 owner, Relation<E1, E2> relation,
+            DomainBasedMap<? extends DomainBasedMap<E2>> multiValueMap, KeyFunction<? extends Comparable<?>, E2> mapKey) {
         this(owner, relation, mapKey, multiValueMap, null);
     }
 
     public RelationMulValuesIndexedAwareSet(E1 owner, Relation<E1, E2> relation,
-            DomainBasedMap.Getter<LinkedList<E2>> multiValueMapGetter, KeyFunction<? extends Comparable<?>, E2> mapKey) {
+            DomainBasedMap.Getter<? extends DomainBasedMap<E2>> multiValueMapGetter, KeyFunction<? extends Comparable<?>, E2> mapKey) {
         this(owner, relation, mapKey, null, multiValueMapGetter);
     }
 
@@ -43,8 +59,8 @@ public class RelationMulValuesIndexedAwareSet<E1 extends AbstractDomainObject, E
      * @return The reference to the map to use
      */
     // This method replicates behavior equivalent to that of the getInternalMap() in the super class.  Please see comments there.  
-    protected DomainBasedMap<LinkedList<E2>> getMultiValueMap() {
-        DomainBasedMap<LinkedList<E2>> localRef = multiValueMap;
+    protected DomainBasedMap<DomainBasedMap<E2>> getMultiValueMap() {
+        DomainBasedMap<DomainBasedMap<E2>> localRef = multiValueMap;
         if (localRef == null) {
             localRef = reloadMultiValueMap();
             // here we assume that reloadMultiValueMap will always return the same instance, so at most we're just setting the
@@ -55,27 +71,59 @@ public class RelationMulValuesIndexedAwareSet<E1 extends AbstractDomainObject, E
     }
 
     // This method replicates behavior equivalent to that of the reloadInternalMap() in the super class.  Please see comments there.  
-    private DomainBasedMap<LinkedList<E2>> reloadMultiValueMap() {
-        return multiValueMapGetter.get();
+    private DomainBasedMap<DomainBasedMap<E2>> reloadMultiValueMap() {
+        return (DomainBasedMap<DomainBasedMap<E2>>) multiValueMapGetter.get();
     }
 
     @Override
     public boolean justAdd(E2 elem) {
         DomainBasedMap<E2> subMap = checkIfExists(mapKey.getKey(elem));
-        return subMap.putIfMissing(elem.getOid(), elem);
+        boolean added = subMap.putIfMissing(elem.getOid(), elem);
+        if (added) {
+            adjustElementCount(1);
+        }
+        return added;
     }
 
     @Override
     public boolean justRemove(E2 elem) {
-        DomainBasedMap<E2> subMap = checkIfExists(mapKey.getKey(elem));
-        return subMap.remove(elem.getOid());
+        DomainBasedMap<E2> subMap = getMultiValueMap().get(mapKey.getKey(elem));
+        boolean removed = subMap != null && subMap.remove(elem.getOid());
+        if (removed) {
+            adjustElementCount(-1);
+        }
+        return removed;
+    }
+
+    // Returns the number of elements kept in the multiValueMap, or null if it does not keep it
+    private Integer getElementCount() {
+        DomainBasedMap<DomainBasedMap<E2>> map = getMultiValueMap();
+        return (map instanceof BPlusTree) ? ((BPlusTree) map).getGroupedElementCount() : null;
+    }
+
+    // Must be invoked after an element is added or removed.  Maps created before the count was kept get it on their first change.
+    private void adjustElementCount(int delta) {
+        DomainBasedMap<DomainBasedMap<E2>> map = getMultiValueMap();
+        if (map instanceof BPlusTree) {
+            BPlusTree tree = (BPlusTree) map;
+            Integer count = tree.getGroupedElementCount();
+            tree.setGroupedElementCount((count != null) ? count + delta : countElements());
+        }
+    }
+
+    private int countElements() {
+        int sum = 0;
+        for (DomainBasedMap<E2> subMap : getMultiValueMap()) {
+            sum += subMap.size();
+        }
+        return sum;
     }
 
     protected DomainBasedMap<E2> checkIfExists(Comparable<?> key) {
-        LinkedList<E2> subMap = getMultiValueMap().get(key);
+        DomainBasedMap<E2> subMap = getMultiValueMap().get(key);
         if (subMap == null) {
             // Note that this Collection is attached here, we can make it dynamic, but is it worth it?
-            subMap = new LinkedList<E2>();
+            subMap = new BPlusTree<E2>();
             getMultiValueMap().put(key, subMap);
         }
         return subMap;
@@ -86,16 +134,47 @@ public class RelationMulValuesIndexedAwareSet<E1 extends AbstractDomainObject, E
         throw new UnsupportedOperationException();
     }
 
+    @Override
+    protected SortedDomainBasedMap<E2> getSortedInternalMap() {
+        throw new UnsupportedOperationException();
+    }
+
     public Set<E2> getValues(Comparable<?> key) {
         return new UnmodifiableDomainBaseSet<E2>(getMultiValueMap().get(key));
     }
 
+    /**
+     * Returns the elements whose keys are within <code>[lowKey, highKey]</code>, in ascending key order (and, for the same key,
+     * in OID order).
+     * 
+     * @throws UnsupportedOperationException if the multiValueMap does not keep its keys ordered
+     */
+    @Override
+    public List<E2> getBetween(Comparable<?> lowKey, Comparable<?> highKey) {
+        DomainBasedMap<DomainBasedMap<E2>> map = getMultiValueMap();
+        if (!(map instanceof SortedDomainBasedMap)) {
+            throw new UnsupportedOperationException("The collection of this relation (" + map.getClass().getName()
+                    + ") does not keep its elements ordered");
+        }
+
+        List<E2> result = new ArrayList<E2>();
+        Cursor<DomainBasedMap<E2>> cursor =
+                ((SortedDomainBasedMap<DomainBasedMap<E2>>) map).cursor(lowKey, true, highKey, true);
+        while (cursor.hasNext()) {
+            for (E2 elem : cursor.next()) {
+                result.add(elem);
+            }
+        }
+        return result;
+    }
+
     @Override
     public boolean contains(Object o) {
         if (o instanceof AbstractDomainObject) {
             E2 obj = (E2) o;
-            DomainBasedMap<E2> subMap = checkIfExists(mapKey.getKey(obj));
-            return subMap.contains(obj.getOid());
+            // a lookup must not create the group for its key
+            DomainBasedMap<E2> subMap = getMultiValueMap().get(mapKey.getKey(obj));
+            return subMap != null && subMap.contains(obj.getOid());
         } else {
             return false;
         }
@@ -103,11 +182,23 @@ public class RelationMulValuesIndexedAwareSet<E1 extends AbstractDomainObject, E
 
     @Override
     public int size() {
-        int sum = 0;
+        Integer count = getElementCount();
+        return (count != null) ? count : countElements();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        Integer count = getElementCount();
+        if (count != null) {
+            return count == 0;
+        }
+        // the group of a key is kept after its last element is removed, so an empty group does not mean an empty set
         for (DomainBasedMap<E2> subMap : getMultiValueMap()) {
-            sum += subMap.size();
+            if (!subMap.isEmpty()) {
+                return false;
+            }
         }
-        return sum;
+        return true;
     }
 
     @Override
@@ -116,12 +207,12 @@ public class RelationMulValuesIndexedAwareSet<E1 extends AbstractDomainObject, E
     }
 
     protected class RelationMulValuesIndexedAwareIterator implements Iterator<E2> {
-        private final Iterator<LinkedList<E2>> keyIterator;
+        private final Iterator<DomainBasedMap<E2>> keyIterator;
         private Iterator<E2> iterator;
         private E2 current = null;
         private boolean canRemove = false;
 
-        RelationMulValuesIndexedAwareIterator(DomainBasedMap<LinkedList<E2>> multiValueMap) {
+        RelationMulValuesIndexedAwareIterator(DomainBasedMap<DomainBasedMap<E2>> multiValueMap) {
             this.keyIterator = multiValueMap.iterator();
             this.iterator = new EmptyIterator();
         }
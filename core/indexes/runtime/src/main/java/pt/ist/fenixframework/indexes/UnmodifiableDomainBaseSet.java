@@ -56,7 +56,7 @@ public class UnmodifiableDomainBaseSet<T extends AbstractDomainObject> implement
 
     @Override
     public boolean isEmpty() {
-        return !delegate.iterator().hasNext();
+        return delegate.isEmpty();
     }
 
     @Override
@@ -131,6 +131,11 @@ public class UnmodifiableDomainBaseSet<T extends AbstractDomainObject> implement
             return 0;
         }
 
+        @Override
+        public boolean isEmpty() {
+            return true;
+        }
+
         @Override
         public Iterator<T> iterator() {
             return new Iterator<T>() {
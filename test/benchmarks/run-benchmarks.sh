@@ -0,0 +1,12 @@
+#!/bin/bash
+#
+# Builds and runs the benchmarks for each backend, writing one JMH JSON report per backend to target/reports.  Any arguments
+# are passed to JMH, e.g. a benchmark regexp, or "-f 1 -wi 3 -i 5" for a quick run.
+
+REPORTS=target/reports
+mkdir -p $REPORTS
+
+for profile in mem jvstm-mem jvstm-infinispan; do
+    \mvn clean package -P$profile -DskipTests && \
+        java -jar target/benchmarks-*.jar -rf json -rff $REPORTS/jmh-$profile.json "$@" || exit 1
+done
@@ -0,0 +1,88 @@
+package pt.ist.fenixframework.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import pt.ist.fenixframework.CallableWithoutException;
+import pt.ist.fenixframework.FenixFramework;
+import pt.ist.fenixframework.adt.bplustree.BPlusTree;
+import pt.ist.fenixframework.adt.bplustree.BPlusTreeArray;
+import pt.ist.fenixframework.dml.runtime.DomainBasedMap;
+
+/**
+ * Inserts keys into the B+Tree implementations, each insertion in its own transaction, and fills new trees in a single
+ * transaction.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class BPlusTreeBenchmark {
+
+    @Param({ "BPlusTree", "BPlusTreeArray" })
+    public String treeType;
+
+    // the number of keys inserted when filling a new tree
+    @Param({ "1000" })
+    public int fillSize;
+
+    private DomainBasedMap<String> tree;
+    private final Random random = new Random(42);
+
+    @Setup(Level.Iteration)
+    public void createTree() {
+        tree = Transactions.write(new CallableWithoutException<DomainBasedMap<String>>() {
+            @Override
+            public DomainBasedMap<String> call() {
+                return newTree();
+            }
+        });
+    }
+
+    @TearDown(Level.Trial)
+    public void shutdown() {
+        FenixFramework.shutdown();
+    }
+
+    private DomainBasedMap<String> newTree() {
+        if (treeType.equals("BPlusTreeArray")) {
+            return new BPlusTreeArray<String>();
+        }
+        return new BPlusTree<String>();
+    }
+
+    @Benchmark
+    public boolean insert() {
+        final long key = random.nextLong();
+        return Transactions.write(new CallableWithoutException<Boolean>() {
+            @Override
+            public Boolean call() {
+                return tree.putIfMissing(key, "value");
+            }
+        });
+    }
+
+    @Benchmark
+    public int fillNewTree() {
+        return Transactions.write(new CallableWithoutException<Integer>() {
+            @Override
+            public Integer call() {
+                DomainBasedMap<String> newTree = newTree();
+                for (int i = 0; i < fillSize; i++) {
+                    newTree.putIfMissing(random.nextLong(), "value");
+                }
+                return newTree.size();
+            }
+        });
+    }
+}
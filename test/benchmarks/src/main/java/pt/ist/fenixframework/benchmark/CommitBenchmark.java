@@ -0,0 +1,87 @@
+package pt.ist.fenixframework.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import pt.ist.fenixframework.CallableWithoutException;
+import pt.ist.fenixframework.FenixFramework;
+import pt.ist.fenixframework.benchmark.domain.Counter;
+
+/**
+ * Commits read-write transactions, which in the JVSTM-based backends goes through <code>PersistentTransaction.doCommit</code>
+ * and the repository. Each thread updates its own counters, so that transactions do not conflict; run with <code>-t</code> to
+ * measure how commits scale.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class CommitBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Framework {
+        @Setup(Level.Trial)
+        public void initialize() {
+            FenixFramework.getDomainRoot();
+        }
+
+        @TearDown(Level.Trial)
+        public void shutdown() {
+            FenixFramework.shutdown();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Counters {
+        // the number of boxes written by each transaction
+        @Param({ "1", "16" })
+        public int writesPerTransaction;
+
+        Counter[] counters;
+
+        @Setup(Level.Trial)
+        public void createCounters(Framework framework) {
+            counters = Transactions.write(new CallableWithoutException<Counter[]>() {
+                @Override
+                public Counter[] call() {
+                    Counter[] counters = new Counter[writesPerTransaction];
+                    for (int i = 0; i < writesPerTransaction; i++) {
+                        counters[i] = new Counter();
+                    }
+                    return counters;
+                }
+            });
+        }
+    }
+
+    @Benchmark
+    public Object commitWrites(final Counters counters) {
+        return Transactions.write(new CallableWithoutException<Object>() {
+            @Override
+            public Object call() {
+                for (Counter counter : counters.counters) {
+                    counter.inc();
+                }
+                return null;
+            }
+        });
+    }
+
+    @Benchmark
+    public Object commitNewObject(Framework framework) {
+        return Transactions.write(new CallableWithoutException<Object>() {
+            @Override
+            public Object call() {
+                return new Counter();
+            }
+        });
+    }
+}
@@ -0,0 +1,82 @@
+package pt.ist.fenixframework.benchmark;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import pt.ist.fenixframework.core.CompactExternalizationCodec;
+import pt.ist.fenixframework.core.Externalization;
+import pt.ist.fenixframework.core.ExternalizationCodec;
+import pt.ist.fenixframework.core.JavaSerializationCodec;
+
+/**
+ * Externalizes and internalizes typical slot values with each of the {@link ExternalizationCodec}s. It does not need a running
+ * framework.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class ExternalizationBenchmark {
+
+    public enum Kind {
+        SMALL, MEDIUM
+    }
+
+    @Param({ "compact", "java" })
+    public String codec;
+
+    @Param({ "int", "long", "string", "enum", "serializable" })
+    public String valueType;
+
+    private ExternalizationCodec previousCodec;
+    private Object value;
+    private byte[] externalized;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        previousCodec = Externalization.getCodec();
+        Externalization.setCodec(codec.equals("java") ? new JavaSerializationCodec() : new CompactExternalizationCodec());
+
+        value = createValue();
+        externalized = Externalization.externalizeObject(value);
+    }
+
+    @TearDown(Level.Trial)
+    public void restoreCodec() {
+        Externalization.setCodec(previousCodec);
+    }
+
+    private Object createValue() {
+        if (valueType.equals("int")) {
+            return 4242;
+        } else if (valueType.equals("long")) {
+            return 1234567890123L;
+        } else if (valueType.equals("string")) {
+            return "The quick brown fox jumps over the lazy dog";
+        } else if (valueType.equals("enum")) {
+            return Kind.MEDIUM;
+        } else {
+            return new BigDecimal("12345.6789");
+        }
+    }
+
+    @Benchmark
+    public byte[] externalize() {
+        return Externalization.externalizeObject(value);
+    }
+
+    @Benchmark
+    public Object internalize() {
+        return Externalization.internalizeObject(externalized);
+    }
+}
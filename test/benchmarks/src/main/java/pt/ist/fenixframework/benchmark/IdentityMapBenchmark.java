@@ -0,0 +1,81 @@
+package pt.ist.fenixframework.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import pt.ist.fenixframework.CallableWithoutException;
+import pt.ist.fenixframework.DomainObject;
+import pt.ist.fenixframework.FenixFramework;
+import pt.ist.fenixframework.benchmark.domain.Counter;
+import pt.ist.fenixframework.core.AbstractDomainObject;
+import pt.ist.fenixframework.core.SharedIdentityMap;
+
+/**
+ * Looks up cached domain objects, both directly in the {@link SharedIdentityMap} and through
+ * {@link FenixFramework#getDomainObject(String)}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class IdentityMapBenchmark {
+
+    // must be a power of two
+    @Param({ "65536" })
+    public int numObjects;
+
+    Object[] oids;
+    String[] externalIds;
+    // kept reachable, so that the identity map does not drop them
+    Counter[] objects;
+
+    @Setup(Level.Trial)
+    public void createObjects() {
+        objects = Transactions.write(new CallableWithoutException<Counter[]>() {
+            @Override
+            public Counter[] call() {
+                Counter[] objects = new Counter[numObjects];
+                for (int i = 0; i < numObjects; i++) {
+                    objects[i] = new Counter();
+                }
+                return objects;
+            }
+        });
+
+        oids = new Object[numObjects];
+        externalIds = new String[numObjects];
+        for (int i = 0; i < numObjects; i++) {
+            oids[i] = ((AbstractDomainObject) objects[i]).getOid();
+            externalIds[i] = objects[i].getExternalId();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void shutdown() {
+        FenixFramework.shutdown();
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next = 0;
+    }
+
+    @Benchmark
+    public AbstractDomainObject lookup(Cursor cursor) {
+        return SharedIdentityMap.getIdentityMap().lookup(oids[cursor.next++ & (numObjects - 1)]);
+    }
+
+    @Benchmark
+    public DomainObject getDomainObject(Cursor cursor) {
+        return FenixFramework.getDomainObject(externalIds[cursor.next++ & (numObjects - 1)]);
+    }
+}
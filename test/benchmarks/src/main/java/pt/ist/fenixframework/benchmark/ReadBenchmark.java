@@ -0,0 +1,92 @@
+package pt.ist.fenixframework.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import pt.ist.fenixframework.CallableWithoutException;
+import pt.ist.fenixframework.FenixFramework;
+import pt.ist.fenixframework.benchmark.domain.Item;
+
+/**
+ * Reads slots of domain objects, which in the JVSTM-based backends goes through <code>VBox.get</code>.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ReadBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Items {
+        // must be a power of two
+        @Param({ "1024" })
+        public int numItems;
+
+        Item[] items;
+
+        @Setup(Level.Trial)
+        public void createItems() {
+            items = Transactions.write(new CallableWithoutException<Item[]>() {
+                @Override
+                public Item[] call() {
+                    Item[] items = new Item[numItems];
+                    for (int i = 0; i < numItems; i++) {
+                        items[i] = new Item("item" + i, i, i * 100L);
+                    }
+                    return items;
+                }
+            });
+        }
+
+        @TearDown(Level.Trial)
+        public void shutdown() {
+            FenixFramework.shutdown();
+        }
+    }
+
+    /**
+     * Keeps a read-only transaction open in the benchmark thread, so that only the reads are measured.
+     */
+    @State(Scope.Thread)
+    public static class OpenTransaction {
+        int next = 0;
+
+        @Setup(Level.Iteration)
+        public void begin() throws Exception {
+            FenixFramework.getTransactionManager().begin(true);
+        }
+
+        @TearDown(Level.Iteration)
+        public void commit() throws Exception {
+            FenixFramework.getTransactionManager().commit();
+        }
+    }
+
+    @Benchmark
+    public long readSlotsInTransaction(Items items, OpenTransaction tx) {
+        Item item = items.items[tx.next++ & (items.numItems - 1)];
+        return item.checksum();
+    }
+
+    @Benchmark
+    public long readOnlyTransaction(final Items items) {
+        return Transactions.read(new CallableWithoutException<Long>() {
+            @Override
+            public Long call() {
+                long sum = 0;
+                for (int i = 0; i < 16; i++) {
+                    sum += items.items[i].checksum();
+                }
+                return sum;
+            }
+        });
+    }
+}
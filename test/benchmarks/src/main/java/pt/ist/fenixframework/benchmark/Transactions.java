@@ -0,0 +1,73 @@
+package pt.ist.fenixframework.benchmark;
+
+import java.lang.annotation.Annotation;
+import java.util.concurrent.Callable;
+
+import pt.ist.fenixframework.Atomic;
+import pt.ist.fenixframework.Atomic.TxMode;
+import pt.ist.fenixframework.CallableWithoutException;
+import pt.ist.fenixframework.FenixFramework;
+
+/**
+ * Runs the benchmarked code in transactions. The benchmarks do not use <code>@Atomic</code> methods, so that they do not depend
+ * on the atomic annotations post-processing, and so that the transaction mode is explicit.
+ */
+public final class Transactions {
+
+    private static final Atomic WRITE = new ModeAtomic(TxMode.WRITE);
+    private static final Atomic READ = new ModeAtomic(TxMode.READ);
+
+    private Transactions() {
+    }
+
+    public static <T> T write(CallableWithoutException<T> command) {
+        return run(command, WRITE);
+    }
+
+    public static <T> T read(CallableWithoutException<T> command) {
+        return run(command, READ);
+    }
+
+    private static <T> T run(Callable<T> command, Atomic atomic) {
+        try {
+            return FenixFramework.getTransactionManager().withTransaction(command, atomic);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new Error(e);
+        }
+    }
+
+    private static final class ModeAtomic implements Atomic {
+        private final TxMode mode;
+
+        ModeAtomic(TxMode mode) {
+            this.mode = mode;
+        }
+
+        @Override
+        public TxMode mode() {
+            return mode;
+        }
+
+        @Override
+        public boolean flattenNested() {
+            return true;
+        }
+
+        @Override
+        public int maxRetries() {
+            return USE_DEFAULT;
+        }
+
+        @Override
+        public int serializeAfter() {
+            return USE_DEFAULT;
+        }
+
+        @Override
+        public Class<? extends Annotation> annotationType() {
+            return Atomic.class;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package pt.ist.fenixframework.benchmark.domain;
+
+public class Counter extends Counter_Base {
+
+    public Counter() {
+        super();
+        setValue(0);
+    }
+
+    public void inc() {
+        setValue(getValue() + 1);
+    }
+}
@@ -0,0 +1,19 @@
+package pt.ist.fenixframework.benchmark.domain;
+
+public class Item extends Item_Base {
+
+    public Item(String name, int quantity, long amount) {
+        super();
+        setName(name);
+        setQuantity(quantity);
+        setAmount(amount);
+        setAvailable(true);
+    }
+
+    /**
+     * Reads every slot of this item.
+     */
+    public long checksum() {
+        return getName().length() + getQuantity() + getAmount() + (getAvailable() ? 1 : 0);
+    }
+}
@@ -0,0 +1,112 @@
+package pt.ist.fenixframework;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import pt.ist.fenixframework.core.CompactExternalizationCodec;
+import test.backend.jvstm.domain.CompositeValueType;
+import test.backend.jvstm.domain.ParametricValueType;
+
+/**
+ * Checks the externalizers generated for the value types of the test domain: each value type is written as its externalization
+ * elements and read back, including the value types that are written as other value types. Only the classes declared by a
+ * single value type, and not used with type arguments, may be registered in the codec, as the codec knows the class of a value,
+ * not the value type it was declared as. The others must be written just as if no externalizer had been registered.
+ */
+public class ValueTypeSerializerTest {
+
+    private CompactExternalizationCodec codec;
+    private CompactExternalizationCodec unregisteredCodec;
+
+    @Before
+    public void setUp() {
+        this.codec = new CompactExternalizationCodec();
+        ValueTypeSerializer.registerExternalizers(this.codec);
+        this.unregisteredCodec = new CompactExternalizationCodec();
+    }
+
+    @Test
+    public void testWriteAndRead() throws IOException {
+        CompositeValueType composite = CompositeValueType.fromComponents(new BigDecimal("-12.345"), "kg");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ValueTypeSerializer.write$CompositeValueType(composite, new DataOutputStream(bytes), codec);
+        assertEquals(composite, ValueTypeSerializer.read$CompositeValueType(input(bytes), codec));
+
+        // the value is written as its unscaled BigInteger, which is written as its sign and bytes
+        CompositeValueType unscaled = CompositeValueType.fromComponents(new BigDecimal("6789"), "m");
+        bytes.reset();
+        ValueTypeSerializer.write$OtherCompositeValueType(unscaled, new DataOutputStream(bytes), codec);
+        assertEquals(unscaled, ValueTypeSerializer.read$OtherCompositeValueType(input(bytes), codec));
+
+        ParametricValueType<BigDecimal, String> parametric = new ParametricValueType<BigDecimal, String>(BigDecimal.ONE, "s");
+        bytes.reset();
+        ValueTypeSerializer.write$PVTWithBigDecimalAndString(parametric, new DataOutputStream(bytes), codec);
+        assertEquals(parametric, ValueTypeSerializer.read$PVTWithBigDecimalAndString(input(bytes), codec));
+
+        // a null value, and a value whose components are null
+        bytes.reset();
+        ValueTypeSerializer.write$CompositeValueType(null, new DataOutputStream(bytes), codec);
+        assertNull(ValueTypeSerializer.read$CompositeValueType(input(bytes), codec));
+
+        CompositeValueType empty = CompositeValueType.fromComponents(null, null);
+        bytes.reset();
+        ValueTypeSerializer.write$CompositeValueType(empty, new DataOutputStream(bytes), codec);
+        assertEquals(empty, ValueTypeSerializer.read$CompositeValueType(input(bytes), codec));
+    }
+
+    @Test
+    public void testRegisteredClass() throws IOException {
+        // BigInteger is declared once, so it is written by its externalizer
+        BigInteger value = new BigInteger("123456789012345678901234567890");
+        byte[] registered = encode(codec, value);
+        assertTrue(registered.length < encode(unregisteredCodec, value).length);
+        assertEquals(value, codec.readObject(new DataInputStream(new ByteArrayInputStream(registered))));
+    }
+
+    @Test
+    public void testClassesThatAreNotRegistered() throws IOException {
+        // BigDecimal is declared by three value types, each written differently
+        BigDecimal value = new BigDecimal("12345.6789");
+        byte[] bytes = encode(codec, value);
+        assertArrayEquals(encode(unregisteredCodec, value), bytes);
+        assertEquals(value, codec.readObject(new DataInputStream(new ByteArrayInputStream(bytes))));
+
+        // CompositeValueType is declared by three value types, and ParametricValueType is used with type arguments; as neither
+        // is serializable, they cannot be written by the codec
+        assertNotWritten(CompositeValueType.fromComponents(value, "kg"));
+        assertNotWritten(new ParametricValueType<BigDecimal, String>(value, "kg"));
+    }
+
+    private void assertNotWritten(Object value) throws IOException {
+        try {
+            encode(codec, value);
+            fail("wrote a " + value.getClass().getName() + " with the externalizer of one of its value types");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
+    private static byte[] encode(CompactExternalizationCodec codec, Object value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        codec.writeObject(value, new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+
+    private static DataInputStream input(ByteArrayOutputStream bytes) {
+        return new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+}
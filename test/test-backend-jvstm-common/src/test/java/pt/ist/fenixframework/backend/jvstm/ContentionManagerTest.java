@@ -0,0 +1,249 @@
+package pt.ist.fenixframework.backend.jvstm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.annotation.Annotation;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import pt.ist.fenixframework.Atomic;
+import pt.ist.fenixframework.Atomic.TxMode;
+import pt.ist.fenixframework.CallableWithoutException;
+import pt.ist.fenixframework.ConfigError;
+import pt.ist.fenixframework.FenixFramework;
+import pt.ist.fenixframework.backend.jvstm.ContentionManager.Decision;
+import test.backend.jvstm.domain.Counter;
+
+/**
+ * Checks the decisions of the {@link ExponentialBackoffContentionManager}, that by default it neither waits nor limits the
+ * restarts of conflicting transactions, and that the {@link JVSTMTransactionManager} follows its decisions. The conflicts are
+ * forced by incrementing a counter in another thread while a transaction that read it is running. This test is in the package
+ * of the transaction manager to reach its configuration.
+ */
+public class ContentionManagerTest {
+
+    // how long to wait for an increment that should be held back by a serialized transaction
+    private static final long HELD_BACK_MILLIS = 200;
+
+    private JVSTMTransactionManager transactionManager;
+    private ContentionManager previousContentionManager;
+    private Counter counter;
+
+    @Before
+    public void setUp() {
+        this.counter = createCounter();
+        this.transactionManager = (JVSTMTransactionManager) FenixFramework.getTransactionManager();
+        this.previousContentionManager = transactionManager.getContentionManager();
+    }
+
+    @After
+    public void tearDown() {
+        transactionManager.setContentionManager(previousContentionManager);
+    }
+
+    @Test
+    public void testDecisions() {
+        ContentionManager contentionManager = new ExponentialBackoffContentionManager(0, 0, 3, 2);
+        Atomic atomic = atomic(Atomic.USE_DEFAULT, Atomic.USE_DEFAULT);
+
+        assertEquals(Decision.RETRY, contentionManager.onConflict(atomic, 1));
+        assertEquals(Decision.RETRY_SERIALIZED, contentionManager.onConflict(atomic, 2));
+        assertEquals(Decision.RETRY_SERIALIZED, contentionManager.onConflict(atomic, 3));
+        assertEquals(Decision.GIVE_UP, contentionManager.onConflict(atomic, 4));
+    }
+
+    @Test
+    public void testAtomicOverrides() {
+        ContentionManager contentionManager = new ExponentialBackoffContentionManager(0, 0, 3, 2);
+
+        Atomic neverSerialized = atomic(1, Atomic.UNLIMITED);
+        assertEquals(Decision.RETRY, contentionManager.onConflict(neverSerialized, 1));
+        assertEquals(Decision.GIVE_UP, contentionManager.onConflict(neverSerialized, 2));
+
+        Atomic serializedAtOnce = atomic(Atomic.USE_DEFAULT, 1);
+        assertEquals(Decision.RETRY_SERIALIZED, contentionManager.onConflict(serializedAtOnce, 1));
+        assertEquals(Decision.GIVE_UP, contentionManager.onConflict(serializedAtOnce, 4));
+
+        Atomic unlimited = atomic(Atomic.UNLIMITED, Atomic.USE_DEFAULT);
+        assertEquals(Decision.RETRY_SERIALIZED, contentionManager.onConflict(unlimited, 1000));
+    }
+
+    @Test
+    public void testDefaultConfiguration() {
+        JVSTMConfig config = new JVSTMConfig();
+        assertEquals(0, config.getBackoffMinDelay());
+        assertEquals(-1, config.getMaxRetries());
+        assertEquals(-1, config.getSerializeAfterAborts());
+
+        // conflicting transactions are always restarted right away, as when there was no contention management
+        ContentionManager contentionManager = config.getContentionManager();
+        Atomic atomic = atomic(Atomic.USE_DEFAULT, Atomic.USE_DEFAULT);
+        long start = System.nanoTime();
+        for (int aborts = 1; aborts <= 1000; aborts++) {
+            assertEquals(Decision.RETRY, contentionManager.onConflict(atomic, aborts));
+        }
+        assertTrue("waited before restarting", System.nanoTime() - start < 1000000000L);
+    }
+
+    @Test
+    public void testConfiguration() {
+        JVSTMConfig config = new JVSTMConfig();
+        config.backoffMinDelayFromString("50");
+        config.maxRetriesFromString("100");
+        config.serializeAfterAbortsFromString("16");
+        assertEquals(50, config.getBackoffMinDelay());
+
+        ContentionManager contentionManager = config.getContentionManager();
+        Atomic atomic = atomic(Atomic.USE_DEFAULT, Atomic.USE_DEFAULT);
+        assertEquals(Decision.RETRY, contentionManager.onConflict(atomic, 1));
+        assertEquals(Decision.RETRY_SERIALIZED, contentionManager.onConflict(atomic, 16));
+        assertEquals(Decision.GIVE_UP, contentionManager.onConflict(atomic, 101));
+
+        try {
+            config.serializeAfterAbortsFromString("often");
+            fail("accepted a non-numeric serializeAfterAborts");
+        } catch (ConfigError e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testRestartsByDefault() throws Exception {
+        transactionManager.setContentionManager(new JVSTMConfig().getContentionManager());
+        long serialized = transactionManager.getTotalSerialized();
+
+        assertEquals(Integer.valueOf(4), transactionManager.withTransaction(new ConflictingIncrement(3, false),
+                atomic(Atomic.USE_DEFAULT, Atomic.USE_DEFAULT)));
+        assertEquals(3, transactionManager.getLastAbortCount());
+        assertEquals(serialized, transactionManager.getTotalSerialized());
+        assertEquals(4, getCounterValue(counter));
+    }
+
+    @Test
+    public void testEscalationToSerialized() throws Exception {
+        transactionManager.setContentionManager(new ExponentialBackoffContentionManager(0, 0, -1, 2));
+        long serialized = transactionManager.getTotalSerialized();
+
+        // the third execution runs serialized, so the increment started while it runs is held back until it commits, instead
+        // of making it abort once more
+        ConflictingIncrement command = new ConflictingIncrement(2, true);
+        assertEquals(Integer.valueOf(3), transactionManager.withTransaction(command, atomic(Atomic.USE_DEFAULT,
+                Atomic.USE_DEFAULT)));
+        assertEquals(2, transactionManager.getLastAbortCount());
+        assertEquals(serialized + 1, transactionManager.getTotalSerialized());
+
+        command.heldBack.join();
+        assertEquals(4, getCounterValue(counter));
+    }
+
+    @Test
+    public void testGiveUp() throws Exception {
+        transactionManager.setContentionManager(new ExponentialBackoffContentionManager(0, 0, -1, -1));
+        long giveUps = transactionManager.getTotalGiveUps();
+
+        try {
+            transactionManager.withTransaction(new ConflictingIncrement(2, false), atomic(1, Atomic.USE_DEFAULT));
+            fail("did not give up after too many conflicts");
+        } catch (TooManyAbortsException e) {
+            assertEquals(2, e.getAborts());
+        }
+        assertEquals(giveUps + 1, transactionManager.getTotalGiveUps());
+
+        // only the conflicting increments were committed
+        assertEquals(2, getCounterValue(counter));
+    }
+
+    /**
+     * Increments the counter, after it is incremented by another transaction in each of its first executions, so that these
+     * fail to commit. The following execution may start one more increment in another thread, and wait for it a while.
+     */
+    private class ConflictingIncrement implements CallableWithoutException<Integer> {
+        private final int conflicts;
+        private final boolean startHeldBack;
+        private int executions = 0;
+        Thread heldBack;
+
+        ConflictingIncrement(int conflicts, boolean startHeldBack) {
+            this.conflicts = conflicts;
+            this.startHeldBack = startHeldBack;
+        }
+
+        @Override
+        public Integer call() {
+            int value = counter.getValue();
+            executions++;
+            try {
+                if (executions <= conflicts) {
+                    Thread conflicting = startIncrement();
+                    conflicting.join();
+                } else if (startHeldBack && heldBack == null) {
+                    heldBack = startIncrement();
+                    heldBack.join(HELD_BACK_MILLIS);
+                }
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            counter.setValue(value + 1);
+            return value + 1;
+        }
+    }
+
+    private Thread startIncrement() {
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                increment(counter);
+            }
+        };
+        thread.start();
+        return thread;
+    }
+
+    @Atomic(mode = TxMode.WRITE)
+    private void increment(Counter c) {
+        c.inc();
+    }
+
+    @Atomic(mode = TxMode.WRITE)
+    private Counter createCounter() {
+        return new Counter();
+    }
+
+    @Atomic
+    private int getCounterValue(Counter c) {
+        return c.getValue();
+    }
+
+    private static Atomic atomic(final int maxRetries, final int serializeAfter) {
+        return new Atomic() {
+            @Override
+            public TxMode mode() {
+                return TxMode.WRITE;
+            }
+
+            @Override
+            public boolean flattenNested() {
+                return true;
+            }
+
+            @Override
+            public int maxRetries() {
+                return maxRetries;
+            }
+
+            @Override
+            public int serializeAfter() {
+                return serializeAfter;
+            }
+
+            @Override
+            public Class<? extends Annotation> annotationType() {
+                return Atomic.class;
+            }
+        };
+    }
+}
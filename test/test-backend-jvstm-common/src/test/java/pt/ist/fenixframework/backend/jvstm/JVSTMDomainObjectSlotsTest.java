@@ -0,0 +1,78 @@
+package pt.ist.fenixframework.backend.jvstm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import pt.ist.fenixframework.Atomic;
+import pt.ist.fenixframework.Atomic.TxMode;
+import pt.ist.fenixframework.backend.jvstm.pstm.VersionedSubject;
+import pt.ist.fenixframework.core.DomainObjectAllocator;
+import test.backend.jvstm.domain.BuiltInTypes;
+
+/**
+ * Checks how the slots of a domain object are found: all of them, in slot index order, as the transactions fault them in
+ * together, and each one by its name, as the remote commits are applied. The lookups by name are repeated, because the fields
+ * found are kept for the next lookups.
+ */
+public class JVSTMDomainObjectSlotsTest {
+
+    // the slots of BuiltInTypes, in the order in which they are declared
+    private static final String[] SLOT_NAMES = { "slotBooleanPrimitive", "slotBytePrimitive", "slotCharPrimitive",
+            "slotShortPrimitive", "slotIntPrimitive", "slotFloatPrimitive", "slotLongPrimitive", "slotDoublePrimitive",
+            "slotBoolean", "slotByte", "slotCharacter", "slotShort", "slotInteger", "slotFloat", "slotLong", "slotDouble",
+            "slotString", "slotBytearray", "slotDatetime", "slotLocaldate", "slotLocaltime", "slotPartial", "slotSerializable" };
+
+    public static class SlotlessObject extends JVSTMDomainObject {
+        public SlotlessObject(DomainObjectAllocator.OID oid) {
+            super(oid);
+        }
+    }
+
+    @Test
+    public void testSlots() {
+        BuiltInTypes obj = createObject();
+
+        List<VersionedSubject> expected = new ArrayList<VersionedSubject>();
+        for (String slotName : SLOT_NAMES) {
+            expected.add(obj.getSlotNamed(slotName));
+        }
+        // the slots of the relations with the DomainRoot, which have no name on this side, have no box
+        assertEquals(expected, obj.getSlots());
+        for (int i = 0; i < SLOT_NAMES.length; i++) {
+            assertSame(expected.get(i), obj.getSlotAt(i));
+        }
+    }
+
+    @Test
+    public void testSlotNamed() {
+        BuiltInTypes obj = createObject();
+        BuiltInTypes other = createObject();
+
+        for (int attempt = 0; attempt < 2; attempt++) {
+            for (int i = 0; i < SLOT_NAMES.length; i++) {
+                assertSame(obj.getSlotAt(i), obj.getSlotNamed(SLOT_NAMES[i]));
+                assertSame(other.getSlotAt(i), other.getSlotNamed(SLOT_NAMES[i]));
+            }
+            assertNull(obj.getSlotNamed("noSuchSlot"));
+        }
+    }
+
+    @Test
+    public void testNoSlots() {
+        SlotlessObject obj = (SlotlessObject) DomainObjectAllocator.allocateObject(SlotlessObject.class, 1L);
+        assertTrue(obj.getSlots().isEmpty());
+        assertNull(obj.getSlotNamed("slotString"));
+    }
+
+    @Atomic(mode = TxMode.WRITE)
+    private BuiltInTypes createObject() {
+        return new BuiltInTypes();
+    }
+}
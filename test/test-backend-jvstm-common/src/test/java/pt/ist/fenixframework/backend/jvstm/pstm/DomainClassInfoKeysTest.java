@@ -0,0 +1,156 @@
+package pt.ist.fenixframework.backend.jvstm.pstm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import pt.ist.fenixframework.backend.jvstm.repository.NoRepository;
+
+/**
+ * Checks how {@link DomainClassInfo} hands out object keys: concurrent threads must never get the same key, each block of keys
+ * must be reserved in the repository once, and after a restart, which starts over from the counter stored in the repository, no
+ * key handed out before may be handed out again. The counters are stored in a repository that only keeps them in memory. This
+ * test is in the package of the class info to reach its key generation.
+ */
+public class DomainClassInfoKeysTest {
+
+    private static final int BLOCK_SIZE = 10;
+    private static final int THREADS = 8;
+    private static final int KEYS_PER_THREAD = 1000;
+
+    private CounterRepository repository;
+
+    @Before
+    public void setUp() {
+        DomainClassInfo.setOidBlockSize(BLOCK_SIZE);
+        this.repository = new CounterRepository();
+    }
+
+    @After
+    public void tearDown() {
+        DomainClassInfo.setOidBlockSize(DomainClassInfo.DEFAULT_OID_BLOCK_SIZE);
+    }
+
+    @Test
+    public void testConcurrentReservation() throws InterruptedException {
+        final DomainClassInfo info = newInfo();
+        final Set<Integer> keys = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+        final AtomicInteger duplicates = new AtomicInteger();
+        final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+        final CountDownLatch start = new CountDownLatch(1);
+
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < THREADS; t++) {
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < KEYS_PER_THREAD; i++) {
+                            if (!keys.add(info.nextKey(repository))) {
+                                duplicates.incrementAndGet();
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failures.add(e);
+                    }
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertTrue(failures.toString(), failures.isEmpty());
+        assertEquals(0, duplicates.get());
+
+        // the keys are consecutive, and every block reserved was used up, having been reserved only once
+        int count = THREADS * KEYS_PER_THREAD;
+        assertEquals(count, keys.size());
+        assertEquals(1, (int) Collections.min(keys));
+        assertEquals(count, (int) Collections.max(keys));
+        assertEquals(count / BLOCK_SIZE, repository.stores.get());
+        assertEquals(count, repository.getMaxCounterForClass(info));
+        assertEquals(count, info.getLastKey());
+    }
+
+    @Test
+    public void testKeysAreNotReusedAfterRestart() throws Exception {
+        DomainClassInfo info = newInfo();
+        int lastUsed = 0;
+        for (int i = 0; i < BLOCK_SIZE + BLOCK_SIZE / 2; i++) {
+            lastUsed = info.nextKey(repository);
+        }
+        // the rest of the second block is never handed out
+        assertEquals(2 * BLOCK_SIZE, repository.getMaxCounterForClass(info));
+
+        // a restart creates new class infos, which start from the stored counter
+        DomainClassInfo restarted = newInfo();
+        int first = restarted.nextKey(repository);
+        assertTrue(first > lastUsed);
+        assertEquals(2 * BLOCK_SIZE + 1, first);
+        assertEquals(3 * BLOCK_SIZE, repository.getMaxCounterForClass(restarted));
+
+        // and so does a restart with a larger block size
+        DomainClassInfo.setOidBlockSize(3 * BLOCK_SIZE);
+        assertEquals(3 * BLOCK_SIZE + 1, newInfo().nextKey(repository));
+        assertEquals(6 * BLOCK_SIZE, repository.getMaxCounterForClass(restarted));
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testDeprecatedUpdateStoresTheCounter() throws Exception {
+        DomainClassInfo info = newInfo();
+        repository.updateMaxCounterForClass(info, 42);
+        assertEquals(42, repository.getMaxCounterForClass(info));
+        assertEquals(1, repository.stores.get());
+
+        // a smaller counter does not replace the stored one
+        repository.updateMaxCounterForClass(info, 7);
+        assertEquals(42, repository.getMaxCounterForClass(info));
+        assertEquals(43, newInfo().nextKey(repository));
+    }
+
+    // a class info for the same class, as created each time the server starts
+    private static DomainClassInfo newInfo() {
+        return new DomainClassInfo("test.KeyedClass", null, 1);
+    }
+
+    /**
+     * Keeps the counters in memory, by class name, so that they outlive the class infos.
+     */
+    static class CounterRepository extends NoRepository {
+        private final Map<String, Integer> counters = new HashMap<String, Integer>();
+        final AtomicInteger stores = new AtomicInteger();
+
+        @Override
+        public synchronized int getMaxCounterForClass(DomainClassInfo domainClassInfo) {
+            Integer counter = counters.get(domainClassInfo.domainClassName);
+            return (counter == null) ? -1 : counter;
+        }
+
+        @Override
+        public synchronized void storeMaxCounterForClass(DomainClassInfo domainClassInfo, int maxCounter) {
+            stores.incrementAndGet();
+            if (maxCounter > getMaxCounterForClass(domainClassInfo)) {
+                counters.put(domainClassInfo.domainClassName, maxCounter);
+            }
+        }
+    }
+}
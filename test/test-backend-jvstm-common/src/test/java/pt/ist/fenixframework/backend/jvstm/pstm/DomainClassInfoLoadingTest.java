@@ -0,0 +1,39 @@
+package pt.ist.fenixframework.backend.jvstm.pstm;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import pt.ist.fenixframework.dml.DomainClass;
+import pt.ist.fenixframework.dml.DomainModel;
+
+/**
+ * Checks that {@link DomainClassInfo#loadDomainClasses(DomainModel)}, which runs in another thread while a node joins its
+ * cluster, loads the classes of the domain model without running their static initializers, and skips the classes that do not
+ * exist, which are only reported when the class infos are initialized.
+ */
+public class DomainClassInfoLoadingTest {
+
+    static volatile boolean initialized = false;
+
+    public static class StaticallyInitialized {
+        static {
+            initialized = true;
+        }
+    }
+
+    @Test
+    public void testClassesAreNotInitialized() throws ClassNotFoundException {
+        DomainModel domainModel = new DomainModel();
+        domainModel.addClass(new DomainClass(null, StaticallyInitialized.class.getName(), null, null));
+        domainModel.addClass(new DomainClass(null, "test.NoSuchDomainClass", null, null));
+
+        DomainClassInfo.loadDomainClasses(domainModel);
+        assertFalse(initialized);
+
+        // the class was found, and initializing it runs its static initializer
+        Class.forName(StaticallyInitialized.class.getName());
+        assertTrue(initialized);
+    }
+}
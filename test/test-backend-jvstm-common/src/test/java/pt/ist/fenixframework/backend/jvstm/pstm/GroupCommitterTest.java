@@ -0,0 +1,238 @@
+package pt.ist.fenixframework.backend.jvstm.pstm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.CountDownLatch;
+
+import jvstm.Transaction;
+
+import org.junit.Test;
+
+import pt.ist.fenixframework.backend.jvstm.repository.CommittedWriteSet;
+import pt.ist.fenixframework.backend.jvstm.repository.NoRepository;
+import pt.ist.fenixframework.core.TransactionError;
+
+/**
+ * Checks that the {@link GroupCommitter} persists the queued write-sets in batches and in transaction number order, that it
+ * keeps the waiting transactions from finishing before the write-sets they may have read are durable, and that a failed flush
+ * fails every transaction that may depend on it. The write-sets are handed to a repository that only records them. This test is
+ * in the package of the group committer to reach it.
+ */
+public class GroupCommitterTest {
+
+    private static final Object NULL_VALUE = new Object();
+
+    @Test
+    public void testBatching() throws Exception {
+        RecordingRepository repository = new RecordingRepository();
+        final GroupCommitter committer = new GroupCommitter(repository, 128);
+        List<Integer> durable = Collections.synchronizedList(new ArrayList<Integer>());
+
+        // the first flush is held until the following write-sets are queued, so that these are flushed together
+        repository.block();
+        enqueue(committer, durable, 1);
+        Thread leader = awaitInOtherThread(committer, 1);
+        repository.awaitBlocked();
+
+        List<Thread> followers = new ArrayList<Thread>();
+        for (int txNumber = 2; txNumber <= 4; txNumber++) {
+            enqueue(committer, durable, txNumber);
+            followers.add(awaitInOtherThread(committer, txNumber));
+        }
+        repository.unblock();
+
+        leader.join();
+        for (Thread follower : followers) {
+            follower.join();
+        }
+        assertEquals(Arrays.asList(Arrays.asList(1), Arrays.asList(2, 3, 4)), repository.batches);
+        assertEquals(Arrays.asList(1, 2, 3, 4), durable);
+    }
+
+    @Test
+    public void testOrdering() {
+        RecordingRepository repository = new RecordingRepository();
+        GroupCommitter committer = new GroupCommitter(repository, 2);
+        List<Integer> durable = new ArrayList<Integer>();
+
+        for (int txNumber = 1; txNumber <= 5; txNumber++) {
+            enqueue(committer, durable, txNumber);
+        }
+        // waiting for the last write-set flushes all of the previous ones, in order
+        committer.awaitDurable(5);
+
+        assertEquals(Arrays.asList(Arrays.asList(1, 2), Arrays.asList(3, 4), Arrays.asList(5)), repository.batches);
+        assertEquals(Arrays.asList(1, 2, 3, 4, 5), durable);
+    }
+
+    @Test
+    public void testReadersWaitForTheVersionRead() {
+        RecordingRepository repository = new RecordingRepository();
+        GroupCommitter committer = new GroupCommitter(repository, 1);
+        List<Integer> durable = new ArrayList<Integer>();
+
+        enqueue(committer, durable, 1);
+        enqueue(committer, durable, 2);
+
+        // a transaction that read an older version does not wait
+        committer.awaitDurable(0);
+        assertTrue(repository.batches.isEmpty());
+
+        // one that read the first commit waits only for it
+        committer.awaitDurable(1);
+        assertEquals(Arrays.asList(Arrays.asList(1)), repository.batches);
+        assertEquals(Arrays.asList(1), durable);
+    }
+
+    @Test
+    public void testWriteSetIsCopied() {
+        RecordingRepository repository = new RecordingRepository();
+        GroupCommitter committer = new GroupCommitter(repository, 128);
+
+        jvstm.VBox box = StandaloneVBox.makeNew("box", true);
+        Map<jvstm.VBox, Object> boxesWritten = new HashMap<jvstm.VBox, Object>();
+        boxesWritten.put(box, "committed");
+        committer.enqueue(new RecordingTransaction(new ArrayList<Integer>()), boxesWritten.entrySet(), 1, NULL_VALUE);
+
+        // the transaction reuses its write-set before the flush
+        boxesWritten.put(box, "changed later");
+        boxesWritten.clear();
+        committer.awaitDurable(1);
+
+        Entry<jvstm.VBox, Object> change = repository.writeSets.get(0).getChanges().iterator().next();
+        assertEquals(box, change.getKey());
+        assertEquals("committed", change.getValue());
+    }
+
+    @Test
+    public void testFailedFlush() {
+        RecordingRepository repository = new RecordingRepository();
+        GroupCommitter committer = new GroupCommitter(repository, 1);
+        List<Integer> durable = new ArrayList<Integer>();
+
+        enqueue(committer, durable, 1);
+        committer.awaitDurable(1);
+
+        repository.failure = new RuntimeException("flush failed");
+        enqueue(committer, durable, 2);
+        enqueue(committer, durable, 3);
+        try {
+            committer.awaitDurable(3);
+            fail("a transaction committed on top of a failed flush was reported as durable");
+        } catch (TransactionError e) {
+            assertEquals(repository.failure, e.getCause());
+        }
+
+        // the write-set queued after the failed one was discarded, rather than persisted
+        assertEquals(Arrays.asList(Arrays.asList(1), Arrays.asList(2)), repository.batches);
+        assertEquals(Arrays.asList(1), durable);
+
+        // transactions that read the failed commit fail, unlike those that read an earlier version
+        committer.awaitDurable(1);
+        try {
+            committer.awaitDurable(2);
+            fail("a transaction that read a failed commit was reported as durable");
+        } catch (TransactionError e) {
+            // expected
+        }
+
+        // and no more write-sets are accepted
+        try {
+            enqueue(committer, durable, 4);
+            fail("accepted a write-set after a failed flush");
+        } catch (TransactionError e) {
+            // expected
+        }
+    }
+
+    private static void enqueue(GroupCommitter committer, List<Integer> durable, int txNumber) {
+        committer.enqueue(new RecordingTransaction(durable), Collections.<Entry<jvstm.VBox, Object>> emptySet(), txNumber,
+                NULL_VALUE);
+    }
+
+    private static Thread awaitInOtherThread(final GroupCommitter committer, final int txNumber) {
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                committer.awaitDurable(txNumber);
+            }
+        };
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * A transaction that only records when it becomes durable.
+     */
+    static class RecordingTransaction extends PersistentTransaction {
+        private final List<Integer> durable;
+
+        RecordingTransaction(List<Integer> durable) {
+            super(Transaction.mostRecentRecord);
+            this.durable = durable;
+        }
+
+        @Override
+        protected void afterDurable(int txNumber) {
+            durable.add(txNumber);
+        }
+    }
+
+    /**
+     * Records the transaction numbers of each batch it is asked to persist. It may hold a flush until it is told to go on, or
+     * fail it.
+     */
+    static class RecordingRepository extends NoRepository {
+        final List<List<Integer>> batches = Collections.synchronizedList(new ArrayList<List<Integer>>());
+        final List<CommittedWriteSet> writeSets = Collections.synchronizedList(new ArrayList<CommittedWriteSet>());
+        volatile RuntimeException failure = null;
+        private volatile CountDownLatch blocked = null;
+        private volatile CountDownLatch held = null;
+
+        void block() {
+            this.blocked = new CountDownLatch(1);
+            this.held = new CountDownLatch(1);
+        }
+
+        void awaitBlocked() throws InterruptedException {
+            this.blocked.await();
+        }
+
+        void unblock() {
+            this.held.countDown();
+        }
+
+        @Override
+        public void persistChanges(List<CommittedWriteSet> writeSets, Object nullObject) {
+            List<Integer> batch = new ArrayList<Integer>();
+            for (CommittedWriteSet writeSet : writeSets) {
+                batch.add(writeSet.getTxNumber());
+            }
+            this.batches.add(batch);
+            this.writeSets.addAll(writeSets);
+
+            if (this.held != null) {
+                CountDownLatch current = this.held;
+                this.held = null;
+                this.blocked.countDown();
+                try {
+                    current.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            if (this.failure != null) {
+                throw this.failure;
+            }
+        }
+    }
+}
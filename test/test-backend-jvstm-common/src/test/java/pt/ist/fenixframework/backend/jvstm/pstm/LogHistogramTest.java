@@ -0,0 +1,127 @@
+package pt.ist.fenixframework.backend.jvstm.pstm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Checks the bucketing of the {@link LogHistogram}: each value must be counted in the bucket whose bounds contain it, and the
+ * percentiles computed from the buckets must be upper bounds, at most twice the real value. The values recorded by several
+ * threads must all be counted, and each snapshot must only count the values recorded since the previous one. This test is in
+ * the package of the histogram to reach its bucketing.
+ */
+public class LogHistogramTest {
+
+    private static final int THREADS = 8;
+    private static final int VALUES_PER_THREAD = 10000;
+
+    @Test
+    public void testBuckets() {
+        assertEquals(0, LogHistogram.bucketFor(0));
+        assertEquals(1, LogHistogram.bucketFor(1));
+        assertEquals(2, LogHistogram.bucketFor(2));
+        assertEquals(2, LogHistogram.bucketFor(3));
+        assertEquals(3, LogHistogram.bucketFor(4));
+        assertEquals(10, LogHistogram.bucketFor(1000));
+        assertEquals(63, LogHistogram.bucketFor(Long.MAX_VALUE));
+
+        // each bucket ends right before the next one starts
+        assertEquals(0, LogHistogram.bucketUpperBound(0));
+        for (int bucket = 1; bucket < 63; bucket++) {
+            long upperBound = LogHistogram.bucketUpperBound(bucket);
+            assertEquals(bucket, LogHistogram.bucketFor(upperBound));
+            assertEquals(bucket + 1, LogHistogram.bucketFor(upperBound + 1));
+            assertEquals(bucket, LogHistogram.bucketFor((upperBound + 1) / 2));
+        }
+        assertEquals(Long.MAX_VALUE, LogHistogram.bucketUpperBound(63));
+    }
+
+    @Test
+    public void testSnapshot() {
+        LogHistogram histogram = new LogHistogram();
+        for (int value = 1; value <= 1000; value++) {
+            histogram.record(value);
+        }
+        // negative values are counted as 0
+        histogram.record(-5);
+
+        LogHistogram.Snapshot snapshot = histogram.getAndReset();
+        assertEquals(1001, snapshot.getCount());
+        assertEquals(500500, snapshot.getSum());
+        assertEquals(0, snapshot.getMin());
+        assertEquals(1000, snapshot.getMax());
+        assertEquals(500500.0 / 1001, snapshot.getMean(), 0.0001);
+        assertEquals(1, snapshot.getBucketCount(0));
+        assertEquals(1, snapshot.getBucketCount(1));
+        assertEquals(256, snapshot.getBucketCount(9));
+        // up to the largest value recorded, rather than up to the bucket's upper bound, 1023
+        assertEquals(1000 - 511, snapshot.getBucketCount(10));
+
+        // value i is the (i + 1)th smallest
+        for (int percentile = 1; percentile <= 100; percentile++) {
+            long real = (long) Math.ceil(1001 * percentile / 100.0) - 1;
+            long bound = snapshot.getPercentile(percentile);
+            assertTrue(percentile + ": " + bound + " < " + real, bound >= real);
+            assertTrue(percentile + ": " + bound + " > 2 * " + real, bound <= Math.max(1, 2 * real));
+        }
+        assertEquals(1000, snapshot.getPercentile(100));
+
+        TransactionStatistics.CounterStats stats = snapshot.toCounterStats();
+        assertEquals(0, stats.getMinValue());
+        assertEquals(1000, stats.getMaxValue());
+        assertEquals(500500, stats.getValueSum());
+    }
+
+    @Test
+    public void testReset() {
+        LogHistogram histogram = new LogHistogram();
+        histogram.record(7);
+        histogram.getAndReset();
+
+        LogHistogram.Snapshot empty = histogram.getAndReset();
+        assertEquals(0, empty.getCount());
+        assertEquals(0, empty.getSum());
+        assertEquals(0, empty.getMin());
+        assertEquals(0, empty.getMax());
+        assertEquals(0, empty.getPercentile(99));
+        assertEquals(0.0, empty.getMean(), 0);
+
+        // the extremes start over as well
+        histogram.record(3);
+        LogHistogram.Snapshot next = histogram.getAndReset();
+        assertEquals(3, next.getMin());
+        assertEquals(3, next.getMax());
+    }
+
+    @Test
+    public void testConcurrentRecords() throws InterruptedException {
+        final LogHistogram histogram = new LogHistogram();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < THREADS; t++) {
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    for (int value = 0; value < VALUES_PER_THREAD; value++) {
+                        histogram.record(value);
+                    }
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        LogHistogram.Snapshot snapshot = histogram.getAndReset();
+        assertEquals(THREADS * VALUES_PER_THREAD, snapshot.getCount());
+        assertEquals(THREADS * ((long) VALUES_PER_THREAD * (VALUES_PER_THREAD - 1) / 2), snapshot.getSum());
+        assertEquals(THREADS, snapshot.getBucketCount(0));
+        assertEquals(0, snapshot.getMin());
+        assertEquals(VALUES_PER_THREAD - 1, snapshot.getMax());
+    }
+}
@@ -0,0 +1,184 @@
+package pt.ist.fenixframework.backend.jvstm.pstm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import pt.ist.fenixframework.backend.jvstm.JVSTMDomainObject;
+import pt.ist.fenixframework.core.DomainObjectAllocator;
+
+/**
+ * Checks the {@link VBoxIndex} with objects that are only referenced by the test, so that they can be collected when the test
+ * drops them. Each index has a single segment, so that the positions of the oids in its table can be predicted. This test is in
+ * the package of the index to reach its hash function.
+ */
+public class VBoxIndexTest {
+
+    // the initial capacity of each segment's table
+    private static final int CAPACITY = 64;
+
+    // how many times to ask for a garbage collection before giving up on a dropped object being collected
+    private static final int MAX_GC_ATTEMPTS = 100;
+
+    public static class IndexedObject extends JVSTMDomainObject {
+        public IndexedObject(DomainObjectAllocator.OID oid) {
+            super(oid);
+        }
+    }
+
+    private static IndexedObject newObject(long oid) {
+        return (IndexedObject) DomainObjectAllocator.allocateObject(IndexedObject.class, oid);
+    }
+
+    @Test
+    public void testRegisterAndLookup() {
+        VBoxIndex index = new VBoxIndex(4);
+        List<IndexedObject> objects = new ArrayList<IndexedObject>();
+        for (long oid = 1; oid <= 100; oid++) {
+            IndexedObject obj = newObject(oid);
+            objects.add(obj);
+            index.register(obj);
+        }
+        assertEquals(100, index.size());
+
+        for (IndexedObject obj : objects) {
+            assertSame(obj, index.lookupObject(obj.getOid()));
+        }
+        assertNull(index.lookupObject(0));
+        assertNull(index.lookupObject(101));
+        assertNull(index.lookup(101, 0));
+
+        // registering the same object again changes nothing
+        index.register(objects.get(0));
+        assertEquals(100, index.size());
+        assertSame(objects.get(0), index.lookupObject(1));
+    }
+
+    @Test
+    public void testResize() {
+        VBoxIndex index = new VBoxIndex(1);
+        List<IndexedObject> objects = new ArrayList<IndexedObject>();
+        // oids of the same class that differ in their lower bits, as the framework assigns them
+        long base = 0x12345L << 32;
+        for (int i = 0; i < CAPACITY * 40; i++) {
+            IndexedObject obj = newObject(base + i);
+            objects.add(obj);
+            index.register(obj);
+        }
+        assertEquals(objects.size(), index.size());
+
+        for (IndexedObject obj : objects) {
+            assertSame(obj, index.lookupObject(obj.getOid()));
+        }
+        assertNull(index.lookupObject(base + objects.size()));
+    }
+
+    @Test
+    public void testRemovalWrapsAround() {
+        VBoxIndex index = new VBoxIndex(1);
+
+        // a run of entries that starts at the last position of the table and continues from the first one
+        long[] oids = oidsWithHome(CAPACITY - 1, 4, 1);
+        long[] wrapped = oidsWithHome(0, 2, oids[oids.length - 1] + 1);
+        List<IndexedObject> kept = new ArrayList<IndexedObject>();
+
+        IndexedObject dropped = newObject(oids[0]);
+        index.register(dropped);
+        for (int i = 1; i < oids.length; i++) {
+            kept.add(newObject(oids[i]));
+        }
+        for (long oid : wrapped) {
+            kept.add(newObject(oid));
+        }
+        for (IndexedObject obj : kept) {
+            index.register(obj);
+        }
+        assertEquals(kept.size() + 1, index.size());
+
+        // removing the entry at the end of the table moves back the entries that wrapped around
+        dropped = null;
+        awaitExpunged(index, kept);
+
+        for (IndexedObject obj : kept) {
+            assertSame(obj, index.lookupObject(obj.getOid()));
+        }
+        assertNull(index.lookupObject(oids[0]));
+    }
+
+    @Test
+    public void testExpungeStaleEntries() {
+        VBoxIndex index = new VBoxIndex(1);
+        List<IndexedObject> kept = new ArrayList<IndexedObject>();
+        List<IndexedObject> dropped = new ArrayList<IndexedObject>();
+        for (long oid = 1; oid <= 40; oid++) {
+            IndexedObject obj = newObject(oid);
+            index.register(obj);
+            if (oid % 2 == 0) {
+                kept.add(obj);
+            } else {
+                dropped.add(obj);
+            }
+        }
+        assertEquals(40, index.size());
+
+        dropped.clear();
+        awaitExpunged(index, kept);
+
+        for (IndexedObject obj : kept) {
+            assertSame(obj, index.lookupObject(obj.getOid()));
+        }
+        for (long oid = 1; oid <= 40; oid += 2) {
+            assertNull(index.lookupObject(oid));
+        }
+
+        // an oid whose object was collected may be registered again
+        IndexedObject again = newObject(1);
+        index.register(again);
+        assertSame(again, index.lookupObject(1));
+    }
+
+    // the given number of oids, starting the search at the given oid, whose home position in a new segment is the given one
+    private static long[] oidsWithHome(int position, int count, long from) {
+        long[] oids = new long[count];
+        int found = 0;
+        for (long oid = from; found < count; oid++) {
+            if ((VBoxIndex.hash(oid) & (CAPACITY - 1)) == position) {
+                oids[found++] = oid;
+            }
+        }
+        return oids;
+    }
+
+    /*
+     * Stale entries are only removed when an object is registered into their segment, so this registers new objects, which are
+     * kept as well, until only the kept objects remain in the index.
+     */
+    private static void awaitExpunged(VBoxIndex index, List<IndexedObject> kept) {
+        // these oids are after all of those used by the tests, and have their home away from the run being tested
+        long triggerOid = 1L << 40;
+        for (int attempt = 0; attempt < MAX_GC_ATTEMPTS; attempt++) {
+            System.gc();
+            long[] oids = oidsWithHome(CAPACITY / 2, 1, triggerOid);
+            triggerOid = oids[0] + 1;
+            IndexedObject trigger = newObject(oids[0]);
+            kept.add(trigger);
+            index.register(trigger);
+            if (index.size() == kept.size()) {
+                return;
+            }
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        fail("The dropped objects were not collected");
+    }
+}
@@ -0,0 +1,285 @@
+package pt.ist.fenixframework.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import pt.ist.fenixframework.Atomic;
+import pt.ist.fenixframework.Atomic.TxMode;
+import pt.ist.fenixframework.DomainObject;
+import pt.ist.fenixframework.backend.OID;
+import pt.ist.fenixframework.backend.jvstm.JVSTMConfig;
+import test.backend.jvstm.domain.Counter;
+
+/**
+ * Checks that every kind of value written by the {@link CompactExternalizationCodec} is read back, including the edge cases of
+ * its variable-length numbers, and that {@link Externalization} keeps Java serialization as the default, while reading the data
+ * written by either codec, as well as data stored by previous versions of the framework.
+ */
+public class CompactExternalizationCodecTest {
+
+    private ExternalizationCodec previousCodec;
+    private ExternalizationCodec previousCompactCodec;
+    private CompactExternalizationCodec codec;
+
+    @Before
+    public void setUp() {
+        this.previousCodec = Externalization.getCodec();
+        this.previousCompactCodec = Externalization.getRegisteredCodec(CompactExternalizationCodec.FORMAT_ID);
+        this.codec = new CompactExternalizationCodec();
+        this.codec.registerValueType(Point.class, new PointExternalizer());
+    }
+
+    @After
+    public void tearDown() {
+        // selecting the test's codec also registered it for reading, in place of the framework's one
+        Externalization.registerCodec(previousCompactCodec);
+        Externalization.setCodec(previousCodec);
+    }
+
+    @Test
+    public void testJavaSerializationIsTheDefault() {
+        assertTrue(new JVSTMConfig().getExternalizationCodec() instanceof JavaSerializationCodec);
+        assertTrue(Externalization.getCodec() instanceof JavaSerializationCodec);
+
+        // written exactly as before codecs existed: a plain Java serialization stream
+        byte[] bytes = Externalization.externalizeObject("value");
+        assertArrayEquals(Externalization.externalizeSerializable("value"), bytes);
+    }
+
+    @Test
+    public void testBuiltInTypes() throws IOException {
+        assertNull(roundTrip(null));
+        assertNull(roundTrip(Externalization.NULL_OBJECT));
+        assertEquals(Boolean.TRUE, roundTrip(true));
+        assertEquals(Boolean.FALSE, roundTrip(false));
+        assertEquals(Byte.valueOf((byte) -7), roundTrip((byte) -7));
+        assertEquals(Short.valueOf(Short.MIN_VALUE), roundTrip(Short.MIN_VALUE));
+        assertEquals(Character.valueOf('\u00e7'), roundTrip('\u00e7'));
+        assertEquals(Integer.valueOf(-42), roundTrip(-42));
+        assertEquals(Long.valueOf(1234567890123L), roundTrip(1234567890123L));
+        assertEquals(Float.valueOf(1.5f), roundTrip(1.5f));
+        assertEquals(Double.valueOf(Double.NaN), roundTrip(Double.NaN));
+        assertEquals("", roundTrip(""));
+        assertEquals("a\u00e7\u00e3o \u20ac", roundTrip("a\u00e7\u00e3o \u20ac"));
+        assertArrayEquals(new byte[] { 0, -1, 127 }, (byte[]) roundTrip(new byte[] { 0, -1, 127 }));
+        assertSame(TimeUnit.SECONDS, roundTrip(TimeUnit.SECONDS));
+        assertEquals(new OID(Counter.class, "42"), roundTrip(new OID(Counter.class, "42")));
+    }
+
+    @Test
+    public void testValueTypes() throws IOException {
+        // with an externalizer, only the class name and the components are written
+        Point point = new Point(3, -4);
+        assertEquals(point, roundTrip(point));
+        assertTrue(encode(point).length < Externalization.externalizeSerializable(point).length);
+
+        // without one, the value is embedded as a Java serialization stream
+        assertEquals(new BigDecimal("12345.6789"), roundTrip(new BigDecimal("12345.6789")));
+
+        // a value type that is neither registered nor serializable cannot be written
+        try {
+            encode(new Object());
+            fail("wrote an object that is neither a registered value type nor serializable");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testDomainObjects() {
+        final Counter counter = createCounter();
+        assertDomainObjectRoundTrip(counter, counter);
+
+        // a domain object whose oid is not a long is written as its external id
+        DomainObject byExternalId = new DomainObject() {
+            @Override
+            public String getExternalId() {
+                return counter.getExternalId();
+            }
+        };
+        assertDomainObjectRoundTrip(byExternalId, counter);
+    }
+
+    @Test
+    public void testVarInts() throws IOException {
+        int[] ints = { 0, 1, -1, 63, -64, 64, -65, 127, 128, 16383, 16384, Integer.MAX_VALUE, Integer.MIN_VALUE };
+        for (int value : ints) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            CompactExternalizationCodec.writeVarInt(CompactExternalizationCodec.encodeZigZag(value), new DataOutputStream(bytes));
+            assertEquals(value, CompactExternalizationCodec.decodeZigZag(CompactExternalizationCodec.readVarInt(input(bytes))));
+
+            // without zig-zag encoding, negative numbers take the five bytes needed by their sign bit
+            bytes.reset();
+            CompactExternalizationCodec.writeVarInt(value, new DataOutputStream(bytes));
+            assertEquals(value, CompactExternalizationCodec.readVarInt(input(bytes)));
+            assertEquals(value < 0 ? 5 : varIntSize(value), bytes.size());
+        }
+
+        long[] longs = { 0L, -1L, 1L << 35, -(1L << 35), Integer.MAX_VALUE + 1L, Long.MAX_VALUE, Long.MIN_VALUE };
+        for (long value : longs) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            CompactExternalizationCodec
+                    .writeVarLong(CompactExternalizationCodec.encodeZigZag(value), new DataOutputStream(bytes));
+            assertEquals(value, CompactExternalizationCodec.decodeZigZag(CompactExternalizationCodec.readVarLong(input(bytes))));
+
+            bytes.reset();
+            CompactExternalizationCodec.writeVarLong(value, new DataOutputStream(bytes));
+            assertEquals(value, CompactExternalizationCodec.readVarLong(input(bytes)));
+            if (value < 0) {
+                assertEquals(10, bytes.size());
+            }
+        }
+
+        // small magnitudes take one byte, whatever their sign
+        assertEquals(1, CompactExternalizationCodec.encodeZigZag(-1));
+        assertEquals(2, CompactExternalizationCodec.encodeZigZag(1));
+        assertEquals(2, encode(-1).length);
+        assertEquals(2, encode(63).length);
+    }
+
+    @Test
+    public void testMalformedVarInts() throws IOException {
+        byte[] tooLong = { (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0 };
+        try {
+            CompactExternalizationCodec.readVarInt(new DataInputStream(new ByteArrayInputStream(tooLong)));
+            fail("read a variable-length int with more than five bytes");
+        } catch (ExternalizationException e) {
+            // expected
+        }
+
+        byte[] tooLongForLong = new byte[11];
+        Arrays.fill(tooLongForLong, 0, 10, (byte) 0x80);
+        try {
+            CompactExternalizationCodec.readVarLong(new DataInputStream(new ByteArrayInputStream(tooLongForLong)));
+            fail("read a variable-length long with more than ten bytes");
+        } catch (ExternalizationException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testLegacyData() {
+        // values stored by previous versions of the framework, which always used Java serialization
+        byte[] legacyValue = Externalization.externalizeSerializable(new BigDecimal("1.5"));
+        byte[] legacyNull = Externalization.externalizeSerializable(Externalization.NULL_OBJECT);
+
+        Externalization.setCodec(codec);
+        assertEquals(new BigDecimal("1.5"), Externalization.internalizeObject(legacyValue));
+        assertNull(Externalization.internalizeObject(legacyNull));
+
+        Externalization.setCodec(new JavaSerializationCodec());
+        assertEquals(new BigDecimal("1.5"), Externalization.internalizeObject(legacyValue));
+        assertNull(Externalization.internalizeObject(legacyNull));
+    }
+
+    @Test
+    public void testSwitchingCodecs() {
+        Externalization.setCodec(codec);
+        byte[] compact = Externalization.externalizeObject(1234567890123L);
+        byte[] point = Externalization.externalizeObject(new Point(1, 2));
+
+        // data written by the compact codec remains readable after switching back to the default
+        Externalization.setCodec(new JavaSerializationCodec());
+        byte[] java = Externalization.externalizeObject(1234567890123L);
+        assertTrue(compact.length < java.length);
+        assertEquals(Long.valueOf(1234567890123L), Externalization.internalizeObject(compact));
+        assertEquals(new Point(1, 2), Externalization.internalizeObject(point));
+
+        Externalization.setCodec(codec);
+        assertEquals(Long.valueOf(1234567890123L), Externalization.internalizeObject(java));
+    }
+
+    @Atomic(mode = TxMode.WRITE)
+    private Counter createCounter() {
+        return new Counter();
+    }
+
+    @Atomic(mode = TxMode.READ)
+    private void assertDomainObjectRoundTrip(DomainObject written, Counter expected) {
+        try {
+            assertSame(expected, roundTrip(written));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private Object roundTrip(Object value) throws IOException {
+        return codec.readObject(new DataInputStream(new ByteArrayInputStream(encode(value))));
+    }
+
+    private byte[] encode(Object value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        codec.writeObject(value, new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+
+    private static DataInput input(ByteArrayOutputStream bytes) {
+        return new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    private static int varIntSize(int value) {
+        int size = 1;
+        while ((value >>>= 7) != 0) {
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * A value type with an externalizer.
+     */
+    static class Point implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        final int x;
+        final int y;
+
+        Point(int x, int y) {
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return (o instanceof Point) && ((Point) o).x == x && ((Point) o).y == y;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * x + y;
+        }
+    }
+
+    static class PointExternalizer implements ValueTypeExternalizer<Point> {
+        @Override
+        public void writeValue(Point value, DataOutput out, ExternalizationCodec codec) throws IOException {
+            codec.writeObject(value.x, out);
+            codec.writeObject(value.y, out);
+        }
+
+        @Override
+        public Point readValue(DataInput in, ExternalizationCodec codec) throws IOException {
+            return new Point((Integer) codec.readObject(in), (Integer) codec.readObject(in));
+        }
+    }
+}
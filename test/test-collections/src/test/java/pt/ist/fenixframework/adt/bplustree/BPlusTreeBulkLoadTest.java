@@ -0,0 +1,178 @@
+package pt.ist.fenixframework.adt.bplustree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import pt.ist.fenixframework.Atomic;
+import pt.ist.fenixframework.FenixFramework;
+import pt.ist.fenixframework.adt.bplustree.BPlusTreeStructureTest.Shape;
+import pt.ist.fenixframework.adt.bplustree.BPlusTreeStructureTest.Trees;
+
+/**
+ * Checks that bulk loading builds {@link BPlusTree}s and {@link BPlusTreeArray}s whose nodes are within their size bounds and
+ * evenly filled, and that the trees keep their shape as they are changed afterwards. The trees are checked with the same
+ * {@link Trees} as in {@link BPlusTreeStructureTest}.
+ */
+@RunWith(JUnit4.class)
+public class BPlusTreeBulkLoadTest {
+
+    // empty, a single entry, a single full leaf, two leaves, the largest tree with a single inner node, and the first trees with
+    // two levels of inner nodes
+    private static final int[] SIZES = { 0, 1, BPlusTree.MAX_NUMBER_OF_ELEMENTS, BPlusTree.MAX_NUMBER_OF_ELEMENTS + 1, 1000,
+            BPlusTree.MAX_NUMBER_OF_ELEMENTS * BPlusTree.MAX_NUMBER_OF_ELEMENTS,
+            BPlusTree.MAX_NUMBER_OF_ELEMENTS * BPlusTree.MAX_NUMBER_OF_ELEMENTS + 1, 60000 };
+
+    // how many keys apart are the checks of the whole trees while they are emptied
+    private static final int CHECK_INTERVAL = 2000;
+
+    @AfterClass
+    public static void shutdown() {
+        FenixFramework.shutdown();
+    }
+
+    @Test
+    @Atomic
+    public void testNodeSizes() {
+        for (int size : SIZES) {
+            Trees trees = new Trees();
+            trees.bulkLoad(evenKeys(size));
+            Shape shape = trees.check();
+
+            int leaves = Math.max(1, (size + BPlusTree.MAX_NUMBER_OF_ELEMENTS - 1) / BPlusTree.MAX_NUMBER_OF_ELEMENTS);
+            List<Integer> leafSizes = new ArrayList<Integer>();
+            collectLeafSizes(shape, leafSizes);
+            assertEquals("leaves of " + size, leaves, leafSizes.size());
+            for (int leafSize : leafSizes) {
+                assertTrue("uneven leaves of " + size + ": " + leafSizes, leafSize == size / leaves
+                        || leafSize == size / leaves + 1);
+            }
+
+            int depth = leaves == 1 ? 1 : (leaves <= BPlusTree.MAX_NUMBER_OF_ELEMENTS ? 2 : 3);
+            assertEquals("depth of " + size, depth, shape.depth());
+        }
+    }
+
+    @Test
+    @Atomic
+    public void testChangesAfterBulkLoad() {
+        for (int size : SIZES) {
+            Trees trees = new Trees();
+            trees.bulkLoad(evenKeys(size));
+
+            // fill in the gaps at the start, which splits the first leaves, and then empty them, which merges them again
+            int changed = Math.min(size, 2 * BPlusTree.MAX_NUMBER_OF_ELEMENTS);
+            for (int key = 1; key < 2 * changed; key += 2) {
+                trees.insert(key);
+            }
+            trees.check();
+            for (int key = 0; key < 2 * changed; key++) {
+                trees.remove(key);
+            }
+            trees.check();
+
+            // and take the rest out from the end
+            for (int key = 2 * size - 2; key >= 2 * changed; key -= 2) {
+                trees.remove(key);
+                if (key % CHECK_INTERVAL == 0) {
+                    trees.check();
+                }
+            }
+            Shape shape = trees.check();
+            assertTrue(shape.isLeaf());
+            assertTrue(shape.keys.isEmpty());
+        }
+    }
+
+    @Test
+    @Atomic
+    public void testBulkLoadIntoNonEmptyTree() {
+        Trees trees = new Trees();
+        trees.insert(-1);
+        trees.bulkLoad(evenKeys(1000));
+        trees.check();
+    }
+
+    @Test
+    @Atomic
+    public void testUnsortedKeys() {
+        List<Map.Entry<Integer, Integer>> entries = new ArrayList<Map.Entry<Integer, Integer>>();
+        entries.add(new AbstractMap.SimpleEntry<Integer, Integer>(1, 1));
+        entries.add(new AbstractMap.SimpleEntry<Integer, Integer>(3, 3));
+        entries.add(new AbstractMap.SimpleEntry<Integer, Integer>(3, 3));
+
+        BPlusTree<Integer> tree = new BPlusTree<Integer>();
+        try {
+            tree.bulkLoad(entries);
+            fail("bulk loaded a repeated key into a BPlusTree");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertTrue(tree.isEmpty());
+
+        BPlusTreeArray<Integer> treeArray = new BPlusTreeArray<Integer>();
+        try {
+            treeArray.bulkLoad(entries);
+            fail("bulk loaded a repeated key into a BPlusTreeArray");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertTrue(treeArray.isEmpty());
+    }
+
+    @Test
+    @Atomic
+    public void testNullValues() {
+        SortedMap<Integer, Integer> entries = evenKeys(10);
+        entries.put(5, null);
+
+        BPlusTree<Integer> tree = new BPlusTree<Integer>();
+        try {
+            tree.bulkLoad(entries);
+            fail("bulk loaded a null value into a BPlusTree");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        assertTrue(tree.isEmpty());
+
+        BPlusTreeArray<Integer> treeArray = new BPlusTreeArray<Integer>();
+        try {
+            treeArray.bulkLoad(entries);
+            fail("bulk loaded a null value into a BPlusTreeArray");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        assertTrue(treeArray.isEmpty());
+    }
+
+    // the given number of even keys, from 0, so that odd keys can be inserted between them
+    private static SortedMap<Integer, Integer> evenKeys(int size) {
+        SortedMap<Integer, Integer> entries = new TreeMap<Integer, Integer>();
+        for (int i = 0; i < size; i++) {
+            entries.put(2 * i, 2 * i);
+        }
+        return entries;
+    }
+
+    private static void collectLeafSizes(Shape shape, List<Integer> leafSizes) {
+        if (shape.isLeaf()) {
+            leafSizes.add(shape.keys.size());
+        } else {
+            for (Shape child : shape.children) {
+                collectLeafSizes(child, leafSizes);
+            }
+        }
+    }
+}
@@ -0,0 +1,408 @@
+package pt.ist.fenixframework.adt.bplustree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import pt.ist.fenixframework.Atomic;
+import pt.ist.fenixframework.FenixFramework;
+
+/**
+ * Checks the shape of the B+Trees as their nodes are split, merged and rotated: the number of entries of each node, the split
+ * keys, and the parent and sibling links. The {@link BPlusTree}, whose nodes keep their entries in {@link SortedEntries}, must
+ * take exactly the same shape as the {@link BPlusTreeArray}, which still runs the original algorithm. This test is in the
+ * package of the B+Trees to reach the package-private parts of the nodes.
+ */
+@RunWith(JUnit4.class)
+public class BPlusTreeStructureTest {
+
+    // enough keys, inserted in random order, for the root of the trees to split into inner nodes
+    private static final int RANDOM_KEYS = 50000;
+
+    // enough keys, inserted in order, for the root of the trees to split into inner nodes
+    private static final int SEQUENTIAL_KEYS = 25000;
+
+    // how many operations to run between the checks of the whole trees
+    private static final int CHECK_INTERVAL = 1000;
+
+    @AfterClass
+    public static void shutdown() {
+        FenixFramework.shutdown();
+    }
+
+    @Test
+    @Atomic
+    public void testLeafSplit() {
+        Trees trees = new Trees();
+        for (int key = 0; key < BPlusTree.MAX_NUMBER_OF_ELEMENTS; key++) {
+            trees.insert(key);
+        }
+        Shape shape = trees.check();
+        assertTrue(shape.isLeaf());
+        assertEquals(BPlusTree.MAX_NUMBER_OF_ELEMENTS, shape.keys.size());
+
+        // one more key splits the leaf in the middle
+        trees.insert(BPlusTree.MAX_NUMBER_OF_ELEMENTS);
+        shape = trees.check();
+        assertTrue(trees.tree.getRoot() instanceof InnerNode);
+        assertEquals(keys(101), shape.keys);
+        assertEquals(keys(0, 101), shape.children.get(0).keys);
+        assertEquals(keys(101, 202), shape.children.get(1).keys);
+    }
+
+    @Test
+    @Atomic
+    public void testLeafMoveFromRightAndMerge() {
+        Trees trees = twoFullLeaves();
+
+        // the first leaf is left with 100 keys, which is still enough
+        trees.remove(0);
+        Shape shape = trees.check();
+        assertEquals(keys(1, 101), shape.children.get(0).keys);
+
+        // and then it takes the smallest key of its right sibling
+        trees.remove(1);
+        shape = trees.check();
+        assertEquals(keys(102), shape.keys);
+        assertEquals(keys(2, 102), shape.children.get(0).keys);
+        assertEquals(keys(102, 202), shape.children.get(1).keys);
+
+        // now that neither leaf has keys to spare, they are merged, and the merged leaf becomes the root
+        trees.remove(2);
+        shape = trees.check();
+        assertTrue(trees.tree.getRoot() instanceof LeafNode);
+        assertEquals(keys(3, 202), shape.keys);
+    }
+
+    @Test
+    @Atomic
+    public void testLeafMoveFromLeft() {
+        Trees trees = twoFullLeaves();
+
+        // the last leaf takes the biggest key of its left sibling
+        trees.remove(201);
+        trees.remove(200);
+        Shape shape = trees.check();
+        assertEquals(keys(100), shape.keys);
+        assertEquals(keys(0, 100), shape.children.get(0).keys);
+        assertEquals(keys(100, 200), shape.children.get(1).keys);
+    }
+
+    @Test
+    @Atomic
+    public void testSequentialOperations() {
+        Trees trees = new Trees();
+        for (int key = 0; key < SEQUENTIAL_KEYS; key++) {
+            trees.insert(key);
+            if (key % CHECK_INTERVAL == 0) {
+                trees.check();
+            }
+        }
+        assertEquals(3, trees.check().depth());
+
+        // removing from the start underflows the first nodes of each level, which merge or rotate with their right siblings
+        for (int key = 0; key < SEQUENTIAL_KEYS; key++) {
+            trees.remove(key);
+            if (key % CHECK_INTERVAL == 0) {
+                trees.check();
+            }
+        }
+        Shape shape = trees.check();
+        assertTrue(shape.isLeaf());
+        assertTrue(shape.keys.isEmpty());
+    }
+
+    @Test
+    @Atomic
+    public void testRandomOperations() {
+        Random random = new Random(1);
+        Trees trees = new Trees();
+        for (int i = 0; trees.reference.size() < RANDOM_KEYS; i++) {
+            trees.insert(random.nextInt(2 * RANDOM_KEYS));
+            if (i % CHECK_INTERVAL == 0) {
+                trees.check();
+            }
+        }
+        assertEquals(3, trees.check().depth());
+
+        // mostly removals, with some insertions in between, until the trees are empty
+        for (int i = 0; !trees.reference.isEmpty(); i++) {
+            int key = random.nextInt(2 * RANDOM_KEYS);
+            if (random.nextInt(4) == 0) {
+                trees.insert(key);
+            } else {
+                Integer existing = trees.reference.ceilingKey(key);
+                trees.remove(existing != null ? existing : trees.reference.lastKey());
+            }
+            if (i % CHECK_INTERVAL == 0) {
+                trees.check();
+            }
+        }
+        Shape shape = trees.check();
+        assertTrue(shape.isLeaf());
+        assertTrue(shape.keys.isEmpty());
+    }
+
+    // a tree whose root has two leaves of 101 keys each: 0 to 100, and 101 to 201
+    private static Trees twoFullLeaves() {
+        Trees trees = new Trees();
+        for (int key = 0; key <= BPlusTree.MAX_NUMBER_OF_ELEMENTS; key++) {
+            trees.insert(key);
+        }
+        Shape shape = trees.check();
+        assertEquals(2, shape.children.size());
+        return trees;
+    }
+
+    // the keys from 'from' (inclusive) to 'to' (exclusive)
+    private static List<Comparable> keys(int from, int to) {
+        List<Comparable> keys = new ArrayList<Comparable>();
+        for (int key = from; key < to; key++) {
+            keys.add(key);
+        }
+        return keys;
+    }
+
+    private static List<Comparable> keys(int key) {
+        return keys(key, key + 1);
+    }
+
+    /**
+     * The same operations, applied to both B+Trees and to a {@link TreeMap}. Keys that are already there are not inserted again,
+     * because a {@link DoubleArray} does not replace the value of an existing key.
+     */
+    static class Trees {
+        final BPlusTree<Integer> tree = new BPlusTree<Integer>();
+        final BPlusTreeArray<Integer> treeArray = new BPlusTreeArray<Integer>();
+        final TreeMap<Integer, Integer> reference = new TreeMap<Integer, Integer>();
+
+        void insert(int key) {
+            if (reference.containsKey(key)) {
+                return;
+            }
+            Integer value = key;
+            reference.put(key, value);
+            assertTrue(tree.insert(key, value));
+            assertTrue(treeArray.insert(key, value));
+        }
+
+        // the trees are built bottom-up only if they are empty. The entries must not be in the trees yet
+        void bulkLoad(SortedMap<Integer, Integer> entries) {
+            reference.putAll(entries);
+            tree.bulkLoad(entries);
+            treeArray.bulkLoad(entries);
+        }
+
+        void remove(int key) {
+            boolean existed = reference.remove(key) != null;
+            assertEquals(existed, tree.removeKey(key));
+            assertEquals(existed, treeArray.removeKey(key));
+        }
+
+        // checks the shape and contents of both trees, and returns the shape of the BPlusTree
+        Shape check() {
+            Shape shape = checkShape(tree);
+            assertEquals(shape.toString(), checkShape(treeArray).toString());
+            assertEquals(reference.size(), tree.size());
+            assertEquals(reference.size(), treeArray.size());
+            return shape;
+        }
+
+        Shape checkShape(BPlusTree<Integer> tree) {
+            List<LeafNode> leaves = new ArrayList<LeafNode>();
+            Shape shape = Shape.of(tree.getRoot(), null, leaves);
+            checkNode(shape, true, null, null, shape.depth());
+
+            // the leaves are linked in order
+            LeafNode leaf = tree.getRoot().firstLeaf();
+            assertNull(leaf.getPrevious());
+            for (int i = 0; i < leaves.size(); i++) {
+                assertSame(leaves.get(i), leaf);
+                leaf = leaf.getNext();
+                if (leaf != null) {
+                    assertSame(leaves.get(i), leaf.getPrevious());
+                }
+            }
+            assertNull(leaf);
+
+            checkEntries(tree.iterator(), shape);
+            return shape;
+        }
+
+        Shape checkShape(BPlusTreeArray<Integer> tree) {
+            List<LeafNodeArray> leaves = new ArrayList<LeafNodeArray>();
+            Shape shape = Shape.of(tree.getRoot(), null, leaves);
+            checkNode(shape, true, null, null, shape.depth());
+
+            LeafNodeArray leaf = tree.getRoot().firstLeaf();
+            assertNull(leaf.getPrevious());
+            for (int i = 0; i < leaves.size(); i++) {
+                assertSame(leaves.get(i), leaf);
+                leaf = leaf.getNext();
+                if (leaf != null) {
+                    assertSame(leaves.get(i), leaf.getPrevious());
+                }
+            }
+            assertNull(leaf);
+
+            checkEntries(tree.iterator(), shape);
+            return shape;
+        }
+
+        // the tree iterates the values of the reference, in order, and they are the ones in its leaves
+        void checkEntries(Iterator values, Shape shape) {
+            List<Comparable> leafKeys = new ArrayList<Comparable>();
+            shape.collectLeafKeys(leafKeys);
+            assertEquals(new ArrayList<Integer>(reference.keySet()), leafKeys);
+
+            for (Map.Entry<Integer, Integer> entry : reference.entrySet()) {
+                assertSame(entry.getValue(), values.next());
+            }
+            assertFalse(values.hasNext());
+        }
+    }
+
+    /*
+     * Checks the bounds on the size of each node, and that its keys are sorted and within the range given by its parent: at
+     * least 'low' (if not null) and less than 'high' (if not null). Every leaf must be at the given depth.
+     */
+    static void checkNode(Shape node, boolean isRoot, Comparable low, Comparable high, int depth) {
+        for (int i = 0; i < node.keys.size(); i++) {
+            Comparable key = node.keys.get(i);
+            if (i > 0) {
+                assertTrue("keys out of order: " + node, node.keys.get(i - 1).compareTo(key) < 0);
+            }
+            assertTrue("key " + key + " below " + low, low == null || low.compareTo(key) <= 0);
+            assertTrue("key " + key + " not below " + high, high == null || key.compareTo(high) < 0);
+        }
+
+        if (node.isLeaf()) {
+            assertEquals("leaf depth", 1, depth);
+            assertTrue("leaf too big: " + node.keys.size(), node.keys.size() <= BPlusTree.MAX_NUMBER_OF_ELEMENTS);
+            assertTrue("leaf too small: " + node.keys.size(), isRoot || node.keys.size() >= BPlusTree.LOWER_BOUND);
+            return;
+        }
+
+        int subNodes = node.children.size();
+        assertTrue("inner node too big: " + subNodes, subNodes <= BPlusTree.MAX_NUMBER_OF_ELEMENTS);
+        assertTrue("inner node too small: " + subNodes, subNodes >= (isRoot ? 2 : BPlusTree.LOWER_BOUND_WITH_LAST_KEY));
+        for (int i = 0; i < subNodes; i++) {
+            Comparable childLow = i == 0 ? low : node.keys.get(i - 1);
+            Comparable childHigh = i == subNodes - 1 ? high : node.keys.get(i);
+            checkNode(node.children.get(i), false, childLow, childHigh, depth - 1);
+        }
+    }
+
+    /**
+     * The keys of a node, and the shapes of its sub-nodes, taken from either kind of B+Tree. The keys of an inner node are its
+     * split keys, without the LAST_KEY.
+     */
+    static class Shape {
+        final List<Comparable> keys = new ArrayList<Comparable>();
+        // null in leaves
+        final List<Shape> children;
+
+        private Shape(boolean leaf) {
+            this.children = leaf ? null : new ArrayList<Shape>();
+        }
+
+        // the shape of the given node, checking its parent, and collecting its leaves in order
+        static Shape of(AbstractNode node, InnerNode parent, List<LeafNode> leaves) {
+            assertSame(parent, node.getParent());
+            if (node instanceof LeafNode) {
+                LeafNode leaf = (LeafNode) node;
+                Shape shape = new Shape(true);
+                shape.keys.addAll(leaf.getEntries().keys());
+                leaves.add(leaf);
+                return shape;
+            }
+
+            InnerNode inner = (InnerNode) node;
+            SortedEntries<AbstractNode> subNodes = inner.getSubNodes();
+            assertSame(BPlusTree.LAST_KEY, subNodes.lastKey());
+            Shape shape = new Shape(false);
+            for (int i = 0; i < subNodes.size(); i++) {
+                if (i < subNodes.size() - 1) {
+                    shape.keys.add(subNodes.keyAt(i));
+                }
+                shape.children.add(of(subNodes.valueAt(i), inner, leaves));
+            }
+            return shape;
+        }
+
+        static Shape of(AbstractNodeArray node, InnerNodeArray parent, List<LeafNodeArray> leaves) {
+            assertSame(parent, node.getParent());
+            if (node instanceof LeafNodeArray) {
+                LeafNodeArray leaf = (LeafNodeArray) node;
+                DoubleArray entries = leaf.getEntries();
+                Shape shape = new Shape(true);
+                for (int i = 0; i < entries.length(); i++) {
+                    shape.keys.add(entries.keys[i]);
+                }
+                leaves.add(leaf);
+                return shape;
+            }
+
+            InnerNodeArray inner = (InnerNodeArray) node;
+            DoubleArray<AbstractNodeArray> subNodes = inner.getSubNodes();
+            int last = subNodes.length() - 1;
+            assertSame(BPlusTreeArray.LAST_KEY, subNodes.keys[last]);
+            Shape shape = new Shape(false);
+            for (int i = 0; i <= last; i++) {
+                if (i < last) {
+                    shape.keys.add(subNodes.keys[i]);
+                }
+                shape.children.add(of(subNodes.values[i], inner, leaves));
+            }
+            return shape;
+        }
+
+        boolean isLeaf() {
+            return children == null;
+        }
+
+        int depth() {
+            return isLeaf() ? 1 : 1 + children.get(0).depth();
+        }
+
+        void collectLeafKeys(List<Comparable> leafKeys) {
+            if (isLeaf()) {
+                leafKeys.addAll(keys);
+            } else {
+                for (Shape child : children) {
+                    child.collectLeafKeys(leafKeys);
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            if (isLeaf()) {
+                return keys.toString();
+            }
+            StringBuilder str = new StringBuilder("{");
+            for (int i = 0; i < children.size(); i++) {
+                if (i > 0) {
+                    str.append(' ').append(keys.get(i - 1)).append(' ');
+                }
+                str.append(children.get(i));
+            }
+            return str.append('}').toString();
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package pt.ist.fenixframework.adt.bplustree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import pt.ist.fenixframework.Atomic;
+import pt.ist.fenixframework.FenixFramework;
+
+/**
+ * Checks the deltas of {@link SortedEntries}, and how a {@link DeltaLeafNode} splits its entries into a base and a delta. This
+ * test is in the package of the B+Trees to reach the package-private parts of the nodes.
+ */
+@RunWith(JUnit4.class)
+public class DeltaLeafNodeTest {
+
+    @AfterClass
+    public static void shutdown() {
+        FenixFramework.shutdown();
+    }
+
+    @Test
+    public void testDeltaFrom() {
+        SortedEntries<String> base = entries(new int[] { 1, 2, 3, 5 }, new String[] { "a", "b", "c", "e" });
+        SortedEntries<String> changed =
+                entries(new int[] { 0, 2, 3, 5, 6 }, new String[] { "z", base.valueAt(1), "C", base.valueAt(3), "f" });
+
+        // 0 and 6 were added, 1 was removed and 3 was changed
+        SortedEntries<String> delta = changed.deltaFrom(base);
+        assertEquals(keys(0, 1, 3, 6), delta.keys());
+        assertEquals("z", delta.valueAt(0));
+        assertNull(delta.valueAt(1));
+        assertEquals("C", delta.valueAt(2));
+        assertEquals("f", delta.valueAt(3));
+
+        assertEntriesEqual(changed, base.applyDelta(delta));
+    }
+
+    @Test
+    public void testDeltaComparesValuesByIdentity() {
+        SortedEntries<String> base = entries(new int[] { 1 }, new String[] { "a" });
+        SortedEntries<String> equalValue = entries(new int[] { 1 }, new String[] { new String("a") });
+
+        assertEquals(1, equalValue.deltaFrom(base).size());
+        assertTrue(base.deltaFrom(base).isEmpty());
+    }
+
+    @Test
+    public void testDeltaOfEmptyEntries() {
+        SortedEntries<String> empty = SortedEntries.empty();
+        SortedEntries<String> entries = entries(new int[] { 1, 2 }, new String[] { "a", "b" });
+
+        // from nothing, the delta holds all the entries
+        assertEntriesEqual(entries, entries.deltaFrom(empty));
+        assertEntriesEqual(entries, empty.applyDelta(entries.deltaFrom(empty)));
+
+        // removing everything
+        SortedEntries<String> removeAll = empty.deltaFrom(entries);
+        assertEquals(keys(1, 2), removeAll.keys());
+        assertTrue(entries.applyDelta(removeAll).isEmpty());
+
+        // an empty delta changes nothing
+        assertSame(entries, entries.applyDelta(empty));
+    }
+
+    @Test
+    public void testDeltaRoundTrip() {
+        Random random = new Random(1);
+        for (int round = 0; round < 200; round++) {
+            SortedEntries<Integer> base = randomEntries(random);
+            SortedEntries<Integer> changed = randomEntries(random);
+            assertEntriesEqual(changed, base.applyDelta(changed.deltaFrom(base)));
+        }
+    }
+
+    @Test
+    @Atomic
+    public void testCompaction() {
+        DeltaBPlusTree<Integer> tree = new DeltaBPlusTree<Integer>();
+        DeltaLeafNode leaf = (DeltaLeafNode) tree.getRoot();
+        assertTrue(leaf.getBaseEntries().isEmpty());
+        assertTrue(leaf.getEntriesDelta().isEmpty());
+
+        // the delta grows up to its maximum size
+        for (int i = 0; i < DeltaLeafNode.MAX_DELTA_SIZE; i++) {
+            assertTrue(tree.insert(i, i));
+        }
+        assertTrue(leaf.getBaseEntries().isEmpty());
+        assertEquals(DeltaLeafNode.MAX_DELTA_SIZE, leaf.getEntriesDelta().size());
+
+        // and one more change compacts it
+        assertTrue(tree.insert(DeltaLeafNode.MAX_DELTA_SIZE, DeltaLeafNode.MAX_DELTA_SIZE));
+        assertEquals(DeltaLeafNode.MAX_DELTA_SIZE + 1, leaf.getBaseEntries().size());
+        assertTrue(leaf.getEntriesDelta().isEmpty());
+
+        // later changes go to the delta again, including removals
+        assertTrue(tree.insert(0, -1));
+        assertTrue(tree.removeKey(1));
+        assertEquals(2, leaf.getEntriesDelta().size());
+        assertNull(leaf.getEntriesDelta().get(1));
+        assertEquals(DeltaLeafNode.MAX_DELTA_SIZE + 1, leaf.getBaseEntries().size());
+
+        assertEquals(-1, tree.get(0));
+        assertNull(tree.get(1));
+        assertEquals(2, tree.get(2));
+        assertEquals(DeltaLeafNode.MAX_DELTA_SIZE, tree.size());
+    }
+
+    @Test
+    @Atomic
+    public void testSplitLeavesStartCompacted() {
+        DeltaBPlusTree<Integer> tree = new DeltaBPlusTree<Integer>();
+        for (int i = 0; i <= BPlusTree.MAX_NUMBER_OF_ELEMENTS; i++) {
+            tree.insert(i, i);
+        }
+
+        // the leaves created by the split hold all their entries in the base
+        LeafNode leaf = tree.getRoot().firstLeaf();
+        int count = 0;
+        while (leaf != null) {
+            DeltaLeafNode deltaLeaf = (DeltaLeafNode) leaf;
+            assertTrue(deltaLeaf.getEntriesDelta().isEmpty());
+            assertEquals(deltaLeaf.getBaseEntries().size(), deltaLeaf.getEntries().size());
+            count += deltaLeaf.getEntries().size();
+            leaf = leaf.getNext();
+        }
+        assertEquals(BPlusTree.MAX_NUMBER_OF_ELEMENTS + 1, count);
+    }
+
+    private static SortedEntries<String> entries(int[] keys, String[] values) {
+        Comparable[] keyArray = new Comparable[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            keyArray[i] = keys[i];
+        }
+        return new SortedEntries<String>(keyArray, values);
+    }
+
+    // up to 20 keys out of 0..29, whose values are taken from a small pool, so that some are kept and some are replaced
+    private static SortedEntries<Integer> randomEntries(Random random) {
+        TreeMap<Comparable, Integer> map = new TreeMap<Comparable, Integer>();
+        int size = random.nextInt(21);
+        for (int i = 0; i < size; i++) {
+            map.put(random.nextInt(30), VALUES[random.nextInt(VALUES.length)]);
+        }
+        return SortedEntries.fromMap(map);
+    }
+
+    private static final Integer[] VALUES = { 1000, 2000, 3000 };
+
+    private static List<Comparable> keys(int... keys) {
+        List<Comparable> list = new ArrayList<Comparable>();
+        for (int key : keys) {
+            list.add(key);
+        }
+        return list;
+    }
+
+    private static void assertEntriesEqual(SortedEntries<? extends Serializable> expected,
+            SortedEntries<? extends Serializable> actual) {
+        assertEquals(expected.keys(), actual.keys());
+        assertEquals(expected.values(), actual.values());
+    }
+}
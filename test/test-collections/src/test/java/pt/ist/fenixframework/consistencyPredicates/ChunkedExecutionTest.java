@@ -0,0 +1,196 @@
+package pt.ist.fenixframework.consistencyPredicates;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import pt.ist.fenixframework.Atomic;
+import pt.ist.fenixframework.Atomic.TxMode;
+import pt.ist.fenixframework.CallableWithoutException;
+import pt.ist.fenixframework.FenixFramework;
+import pt.ist.fenixframework.adt.bplustree.BPlusTree;
+import pt.ist.fenixframework.consistencyPredicates.ChunkedExecution.ChunkHandler;
+import pt.ist.fenixframework.consistencyPredicates.ChunkedExecution.ChunkTask;
+import pt.ist.fenixframework.dml.runtime.SortedDomainBasedMap.Cursor;
+
+/**
+ * Checks the {@link ChunkedExecution} with which new consistency predicates are executed for the existing objects during the
+ * initialization of the framework: that every entry is handed to the calling thread once, in key order, that the chunks are
+ * executed by the workers or by the calling thread as expected, and that the execution does not deadlock when it runs within
+ * a static initializer, as it does when the framework is initialized by convention. This test is in the package of the
+ * execution to reach it.
+ */
+@RunWith(JUnit4.class)
+public class ChunkedExecutionTest {
+
+    private static final int SIZE = 1000;
+    private static final int CHUNK_SIZE = 64;
+    private static final int THREADS = 4;
+
+    // the tree used by StaticInitialization, which is set before that class is initialized
+    static BPlusTree<Integer> initializerTree;
+
+    @AfterClass
+    public static void shutdown() {
+        FenixFramework.shutdown();
+    }
+
+    @Test
+    public void testWorkers() {
+        BPlusTree<Integer> tree = createTree(SIZE);
+        Chunks chunks = execute(tree, null, THREADS);
+
+        assertEquals(keys(0, SIZE), chunks.keys);
+        assertChunkSizes(chunks, SIZE);
+        for (Thread thread : chunks.threads) {
+            assertFalse(Thread.currentThread() == thread);
+        }
+    }
+
+    @Test
+    public void testResume() {
+        BPlusTree<Integer> tree = createTree(SIZE);
+        Chunks chunks = execute(tree, 499, THREADS);
+
+        assertEquals(keys(500, SIZE), chunks.keys);
+        assertChunkSizes(chunks, SIZE - 500);
+    }
+
+    @Test
+    public void testSingleThread() {
+        BPlusTree<Integer> tree = createTree(SIZE);
+        Chunks chunks = execute(tree, null, 1);
+
+        assertEquals(keys(0, SIZE), chunks.keys);
+        assertChunkSizes(chunks, SIZE);
+        for (Thread thread : chunks.threads) {
+            assertSame(Thread.currentThread(), thread);
+        }
+    }
+
+    @Test
+    public void testEmpty() {
+        BPlusTree<Integer> tree = createTree(0);
+        assertTrue(execute(tree, null, THREADS).sizes.isEmpty());
+        assertTrue(execute(createTree(10), 9, THREADS).sizes.isEmpty());
+    }
+
+    @Test(timeout = 60000)
+    public void testStaticInitialization() {
+        initializerTree = createTree(SIZE);
+
+        // the workers would block on the initialization of the class, while it waits for them
+        Chunks chunks = StaticInitialization.CHUNKS;
+        assertEquals(keys(0, SIZE), chunks.keys);
+        assertChunkSizes(chunks, SIZE);
+        for (Thread thread : chunks.threads) {
+            assertSame(StaticInitialization.INITIALIZING_THREAD, thread);
+        }
+    }
+
+    /**
+     * Executes the chunks from its static initializer, with a task that uses this class, as the consistency predicates use the
+     * FenixFramework class when they are executed from its static initializer.
+     */
+    static class StaticInitialization {
+        static final Thread INITIALIZING_THREAD = Thread.currentThread();
+        static final Chunks CHUNKS = FenixFramework.getTransactionManager().withTransaction(
+                new CallableWithoutException<Chunks>() {
+                    @Override
+                    public Chunks call() {
+                        final Chunks chunks = new Chunks();
+                        new ChunkedExecution<Integer, ChunkRun>(initializerTree, CHUNK_SIZE, THREADS, FenixFramework
+                                .getTransactionManager()).execute(null, new ChunkTask<Integer, ChunkRun>() {
+                            @Override
+                            public ChunkRun execute(Cursor<Integer> chunk) {
+                                return StaticInitialization.collect(chunk);
+                            }
+                        }, chunks);
+                        return chunks;
+                    }
+                });
+
+        static ChunkRun collect(Cursor<Integer> chunk) {
+            return ChunkRun.collect(chunk);
+        }
+    }
+
+    /**
+     * The keys of a chunk, and the thread that executed it.
+     */
+    static class ChunkRun {
+        final List<Integer> keys = new ArrayList<Integer>();
+        final Thread thread = Thread.currentThread();
+
+        static ChunkRun collect(Cursor<Integer> chunk) {
+            ChunkRun run = new ChunkRun();
+            while (chunk.hasNext()) {
+                chunk.next();
+                run.keys.add((Integer) chunk.getKey());
+            }
+            return run;
+        }
+    }
+
+    /**
+     * Collects the keys of the chunks handed to the calling thread, and which threads executed them.
+     */
+    static class Chunks implements ChunkHandler<ChunkRun> {
+        final List<Integer> keys = new ArrayList<Integer>();
+        final List<Integer> sizes = new ArrayList<Integer>();
+        final List<Thread> threads = new ArrayList<Thread>();
+
+        @Override
+        public void handle(ChunkRun run) {
+            keys.addAll(run.keys);
+            sizes.add(run.keys.size());
+            threads.add(run.thread);
+        }
+    }
+
+    @Atomic(mode = TxMode.READ)
+    private Chunks execute(BPlusTree<Integer> tree, Integer afterKey, int threads) {
+        Chunks chunks = new Chunks();
+        new ChunkedExecution<Integer, ChunkRun>(tree, CHUNK_SIZE, threads, FenixFramework.getTransactionManager()).execute(
+                afterKey, new ChunkTask<Integer, ChunkRun>() {
+                    @Override
+                    public ChunkRun execute(Cursor<Integer> chunk) {
+                        return ChunkRun.collect(chunk);
+                    }
+                }, chunks);
+        return chunks;
+    }
+
+    @Atomic(mode = TxMode.WRITE)
+    private BPlusTree<Integer> createTree(int size) {
+        BPlusTree<Integer> tree = new BPlusTree<Integer>();
+        for (int i = 0; i < size; i++) {
+            tree.insert(i, i);
+        }
+        return tree;
+    }
+
+    private static void assertChunkSizes(Chunks chunks, int size) {
+        assertEquals((size + CHUNK_SIZE - 1) / CHUNK_SIZE, chunks.sizes.size());
+        for (int i = 0; i < chunks.sizes.size() - 1; i++) {
+            assertEquals(CHUNK_SIZE, chunks.sizes.get(i).intValue());
+        }
+    }
+
+    private static List<Integer> keys(int from, int to) {
+        List<Integer> keys = new ArrayList<Integer>();
+        for (int i = from; i < to; i++) {
+            keys.add(i);
+        }
+        return keys;
+    }
+}
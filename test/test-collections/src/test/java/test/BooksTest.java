@@ -1,5 +1,6 @@
 package test;
 
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.util.HashSet;
@@ -83,6 +84,9 @@ public class BooksTest {
         assertTrue(books.size() == NUMBER_ELEMENTS);
         assertTrue(authors.size() == NUMBER_ELEMENTS);
         assertTrue(publishers.size() == NUMBER_ELEMENTS);
+        assertFalse(books.isEmpty());
+        assertFalse(authors.isEmpty());
+        assertFalse(publishers.isEmpty());
 
         int[] countBook = initArrayCount();
         for (Book book : books) {
@@ -0,0 +1,291 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import pt.ist.fenixframework.Atomic;
+import pt.ist.fenixframework.DomainRoot;
+import pt.ist.fenixframework.FenixFramework;
+import pt.ist.fenixframework.adt.bplustree.BPlusTree;
+import pt.ist.fenixframework.adt.bplustree.BPlusTreeArray;
+import pt.ist.fenixframework.adt.linkedlist.LinkedList;
+import pt.ist.fenixframework.adt.skiplist.SkipList;
+import pt.ist.fenixframework.dml.runtime.DomainBasedMap;
+import pt.ist.fenixframework.dml.runtime.KeyFunction;
+import pt.ist.fenixframework.dml.runtime.RelationAwareSet;
+import pt.ist.fenixframework.dml.runtime.SortedDomainBasedMap;
+import pt.ist.fenixframework.dml.runtime.SortedDomainBasedMap.Cursor;
+
+/**
+ * Checks the range cursors of the {@link SortedDomainBasedMap}s, and the ordered access of the {@link RelationAwareSet}, against
+ * the same ranges computed over a sorted list of the keys.
+ */
+@RunWith(JUnit4.class)
+public class RangeCursorTest {
+
+    // enough elements for the B+Trees to have several leaves
+    public static final int NUMBER_ELEMENTS = 1000;
+
+    // the keys in the maps are the even numbers from 0 to LAST_KEY, so that the odd bounds fall between keys
+    public static final int LAST_KEY = 2 * (NUMBER_ELEMENTS - 1);
+
+    // bounds before, at, between and after the keys
+    private static final Integer[] BOUNDS = { null, -5, 0, 1, 2, 301, 302, 999, 1000, LAST_KEY - 1, LAST_KEY, LAST_KEY + 7 };
+
+    private static final KeyFunction<Integer, Book> BOOK_ID = new KeyFunction<Integer, Book>() {
+        @Override
+        public Integer getKey(Book book) {
+            return book.getId();
+        }
+
+        @Override
+        public boolean allowMultipleKeys() {
+            return false;
+        }
+    };
+
+    @AfterClass
+    public static void shutdown() {
+        FenixFramework.shutdown();
+    }
+
+    @Test
+    @Atomic
+    public void testBPlusTree() {
+        checkCursors(fill(new BPlusTree<Integer>()));
+    }
+
+    @Test
+    @Atomic
+    public void testBPlusTreeArray() {
+        checkCursors(fill(new BPlusTreeArray<Integer>()));
+    }
+
+    @Test
+    @Atomic
+    public void testSkipList() {
+        checkCursors(fill(new SkipList<Integer>()));
+    }
+
+    @Test
+    @Atomic
+    public void testEmptyMaps() {
+        checkEmpty(new BPlusTree<Integer>());
+        checkEmpty(new BPlusTreeArray<Integer>());
+        checkEmpty(new SkipList<Integer>());
+    }
+
+    @Test
+    @Atomic
+    public void testRelationAwareSet() {
+        BPlusTree<Book> tree = new BPlusTree<Book>();
+        RelationAwareSet<DomainRoot, Book> books = new RelationAwareSet<DomainRoot, Book>(null, null, tree, BOOK_ID);
+        for (int key : shuffledKeys()) {
+            assertTrue(books.justAdd(new Book(key, key)));
+        }
+
+        assertEquals(expected(null, false, 302, false, false), ids(books.headMap(302)));
+        assertEquals(expected(301, true, null, false, false), ids(books.tailMap(301)));
+        assertEquals(expected(0, true, 999, false, false), ids(books.subMap(0, 999)));
+        assertEquals(expected(302, true, 302, false, false), ids(books.subMap(302, 302)));
+        assertEquals(expected(null, false, null, false, false), ids(books.cursor()));
+        assertEquals(expected(null, false, null, false, true), ids(books.descendingCursor()));
+
+        // paging: resume from the key after the last one seen
+        Cursor<Book> page = books.subMap(0, 20);
+        Book last = null;
+        while (page.hasNext()) {
+            last = page.next();
+        }
+        assertEquals(18, last.getId());
+        assertEquals(18, page.getKey());
+        assertEquals(20, books.tailMap(last.getId() + 1).next().getId());
+
+        Cursor<Book> cursor = books.cursor();
+        cursor.seek(1001);
+        assertEquals(1002, cursor.next().getId());
+        cursor.seek(LAST_KEY + 1);
+        assertFalse(cursor.hasNext());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    @Atomic
+    public void testRelationAwareSetNotOrdered() {
+        DomainBasedMap<Book> list = new LinkedList<Book>();
+        new RelationAwareSet<DomainRoot, Book>(null, null, list, BOOK_ID).cursor();
+    }
+
+    private static <M extends SortedDomainBasedMap<Integer>> M fill(M map) {
+        for (int key : shuffledKeys()) {
+            assertTrue(map.putIfMissing(key, key));
+        }
+        assertEquals(NUMBER_ELEMENTS, map.size());
+        return map;
+    }
+
+    private static List<Integer> shuffledKeys() {
+        List<Integer> keys = new ArrayList<Integer>();
+        for (int key = 0; key <= LAST_KEY; key += 2) {
+            keys.add(key);
+        }
+        Collections.shuffle(keys, new Random(1));
+        return keys;
+    }
+
+    private static void checkCursors(SortedDomainBasedMap<Integer> map) {
+        // every combination of bounds and inclusiveness, including empty and inverted ranges
+        for (Integer low : BOUNDS) {
+            for (Integer high : BOUNDS) {
+                for (int inclusive = 0; inclusive < 4; inclusive++) {
+                    boolean lowInclusive = (inclusive & 1) != 0;
+                    boolean highInclusive = (inclusive & 2) != 0;
+                    String range = (lowInclusive ? "[" : "(") + low + ", " + high + (highInclusive ? "]" : ")");
+
+                    assertEquals(range, expected(low, lowInclusive, high, highInclusive, false),
+                            drain(map.cursor(low, lowInclusive, high, highInclusive)));
+                    assertEquals("descending " + range, expected(low, lowInclusive, high, highInclusive, true),
+                            drain(map.descendingCursor(low, lowInclusive, high, highInclusive)));
+                }
+            }
+        }
+
+        checkEnd(map.cursor(300, true, 304, false), 300, 302);
+        checkEnd(map.descendingCursor(300, false, 304, true), 304, 302);
+        checkSeek(map);
+        checkDescendingSeek(map);
+    }
+
+    private static void checkEnd(Cursor<Integer> cursor, int first, int second) {
+        try {
+            cursor.getKey();
+            fail("getKey() before next()");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertEquals(Integer.valueOf(first), cursor.next());
+        assertEquals(Integer.valueOf(second), cursor.next());
+        assertFalse(cursor.hasNext());
+        try {
+            cursor.next();
+            fail("next() after the end of the range");
+        } catch (NoSuchElementException e) {
+            // expected
+        }
+        assertEquals(second, cursor.getKey());
+    }
+
+    private static void checkSeek(SortedDomainBasedMap<Integer> map) {
+        Cursor<Integer> cursor = map.cursor(100, true, 1000, true);
+        assertEquals(Integer.valueOf(100), cursor.next());
+
+        // forwards, to an existing and to a missing key
+        cursor.seek(500);
+        assertEquals(Integer.valueOf(500), cursor.next());
+        cursor.seek(601);
+        assertEquals(Integer.valueOf(602), cursor.next());
+        assertEquals(Integer.valueOf(604), cursor.next());
+
+        // backwards
+        cursor.seek(200);
+        assertEquals(Integer.valueOf(200), cursor.next());
+
+        // before the range moves the cursor to the start of the range
+        cursor.seek(-10);
+        assertEquals(Integer.valueOf(100), cursor.next());
+
+        // past the end of the range, and past the end of the map
+        cursor.seek(1001);
+        assertFalse(cursor.hasNext());
+        cursor.seek(LAST_KEY + 1);
+        assertFalse(cursor.hasNext());
+
+        // seeking before the first next()
+        cursor = map.cursor(null, false, null, false);
+        cursor.seek(LAST_KEY);
+        assertEquals(Integer.valueOf(LAST_KEY), cursor.next());
+        assertFalse(cursor.hasNext());
+    }
+
+    private static void checkDescendingSeek(SortedDomainBasedMap<Integer> map) {
+        Cursor<Integer> cursor = map.descendingCursor(100, false, 1000, false);
+        assertEquals(Integer.valueOf(998), cursor.next());
+
+        cursor.seek(500);
+        assertEquals(Integer.valueOf(500), cursor.next());
+        cursor.seek(601);
+        assertEquals(Integer.valueOf(600), cursor.next());
+        assertEquals(Integer.valueOf(598), cursor.next());
+
+        // after the range moves the cursor to the start of the range, which is its upper end
+        cursor.seek(LAST_KEY + 10);
+        assertEquals(Integer.valueOf(998), cursor.next());
+
+        // past the end of the range, and past the end of the map
+        cursor.seek(100);
+        assertFalse(cursor.hasNext());
+        cursor.seek(-1);
+        assertFalse(cursor.hasNext());
+    }
+
+    private static void checkEmpty(SortedDomainBasedMap<Integer> map) {
+        assertFalse(map.cursor(null, false, null, false).hasNext());
+        assertFalse(map.descendingCursor(null, false, null, false).hasNext());
+        assertFalse(map.cursor(0, true, 10, true).hasNext());
+        assertFalse(map.descendingCursor(0, true, 10, true).hasNext());
+
+        Cursor<Integer> cursor = map.cursor(null, false, null, false);
+        cursor.seek(5);
+        assertFalse(cursor.hasNext());
+    }
+
+    // the keys of the maps within the given range, computed without the maps
+    private static List<Integer> expected(Integer low, boolean lowInclusive, Integer high, boolean highInclusive,
+            boolean descending) {
+        List<Integer> keys = new ArrayList<Integer>();
+        for (int key = 0; key <= LAST_KEY; key += 2) {
+            boolean aboveLow = low == null || key > low || (lowInclusive && key == low);
+            boolean belowHigh = high == null || key < high || (highInclusive && key == high);
+            if (aboveLow && belowHigh) {
+                keys.add(key);
+            }
+        }
+        if (descending) {
+            Collections.reverse(keys);
+        }
+        return keys;
+    }
+
+    // the values in the maps are their keys
+    private static List<Integer> drain(Cursor<Integer> cursor) {
+        List<Integer> values = new ArrayList<Integer>();
+        while (cursor.hasNext()) {
+            Integer value = cursor.next();
+            assertEquals(value, cursor.getKey());
+            values.add(value);
+        }
+        return values;
+    }
+
+    private static List<Integer> ids(Cursor<Book> cursor) {
+        List<Integer> ids = new ArrayList<Integer>();
+        while (cursor.hasNext()) {
+            Book book = cursor.next();
+            assertEquals(book.getId(), cursor.getKey());
+            ids.add(book.getId());
+        }
+        return ids;
+    }
+}
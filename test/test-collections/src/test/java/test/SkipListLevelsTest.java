@@ -0,0 +1,98 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import pt.ist.fenixframework.Atomic;
+import pt.ist.fenixframework.FenixFramework;
+import pt.ist.fenixframework.adt.skiplist.SkipList;
+import pt.ist.fenixframework.adt.skiplist.SkipListNode;
+
+/**
+ * Checks that the levels of the nodes of a {@link SkipList} follow a geometric distribution: the number of nodes that reach
+ * level <code>l</code> must be close to <code>n * p^l</code>.
+ */
+@RunWith(JUnit4.class)
+public class SkipListLevelsTest {
+
+    public static final int NUMBER_ELEMENTS = 5000;
+    // how many standard deviations the count of each level may be away from the expected count
+    public static final double TOLERANCE = 6;
+
+    @AfterClass
+    public static void shutdown() {
+        FenixFramework.shutdown();
+    }
+
+    @Test
+    @Atomic
+    public void testDefaultProbability() {
+        SkipList<Integer> list = new SkipList<Integer>();
+        assertEquals(SkipList.DEFAULT_PROBABILITY, list.getProbability(), 0);
+        checkLevels(list, 1);
+    }
+
+    @Test
+    @Atomic
+    public void testGivenProbability() {
+        SkipList<Integer> list = new SkipList<Integer>(0.5);
+        assertEquals(0.5, list.getProbability(), 0);
+        checkLevels(list, 2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    @Atomic
+    public void testInvalidProbability() {
+        new SkipList<Integer>(1);
+    }
+
+    private static void checkLevels(SkipList<Integer> list, long seed) {
+        List<Integer> keys = new ArrayList<Integer>();
+        for (int i = 0; i < NUMBER_ELEMENTS; i++) {
+            keys.add(i);
+        }
+        Collections.shuffle(keys, new Random(seed));
+        for (Integer key : keys) {
+            assertTrue(list.insert(key, key));
+        }
+
+        // reaching[l] = the number of nodes that reach level l
+        int[] reaching = new int[64];
+        SkipListNode node = list.getHead().getForward(0);
+        while (node.getForward(0) != null) {
+            int level = node.getForward().forward.length - 1;
+            for (int l = 0; l <= level; l++) {
+                reaching[l]++;
+            }
+            node = node.getForward(0);
+        }
+        assertEquals(NUMBER_ELEMENTS, reaching[0]);
+
+        double probability = list.getProbability();
+        for (int l = 1; l < reaching.length; l++) {
+            double p = Math.pow(probability, l);
+            double expected = NUMBER_ELEMENTS * p;
+            double deviation = Math.sqrt(NUMBER_ELEMENTS * p * (1 - p));
+            assertTrue("level " + l + ": " + reaching[l] + " nodes, expected " + expected,
+                    Math.abs(reaching[l] - expected) <= TOLERANCE * deviation + 1);
+        }
+
+        // the elements are still found, in order
+        Iterator<Integer> iter = list.iterator();
+        for (int i = 0; i < NUMBER_ELEMENTS; i++) {
+            assertEquals(Integer.valueOf(i), iter.next());
+            assertEquals(Integer.valueOf(i), list.get(i));
+        }
+    }
+}
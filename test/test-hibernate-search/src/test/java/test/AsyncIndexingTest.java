@@ -0,0 +1,87 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collection;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import pt.ist.fenixframework.Atomic;
+import pt.ist.fenixframework.DomainObject;
+import pt.ist.fenixframework.FenixFramework;
+import pt.ist.fenixframework.hibernatesearch.HibernateSearchSupport;
+
+/**
+ * With asynchronous indexing, the changes of committed transactions are only searchable once they are indexed in the
+ * background, or once {@link HibernateSearchSupport#flushIndexing()} returns. The maximum lag is set so high that, during the
+ * test, only the flush indexes them.
+ */
+@RunWith(JUnit4.class)
+public class AsyncIndexingTest {
+
+    // each test class runs in a JVM of its own, so this is set before the framework initializes
+    static {
+        System.setProperty("fenixframework.asyncIndexing", "true");
+        System.setProperty("fenixframework.asyncIndexingMaxLag", "3600000");
+    }
+
+    private static final String NOSFERATU = "Nosferatu";
+    private static final String CARMILLA = "Carmilla";
+
+    @Test
+    public void testFlushIndexesNewObjects() {
+        createBook(NOSFERATU);
+        assertEquals(0, searchBooks(NOSFERATU).size());
+
+        HibernateSearchSupport.flushIndexing();
+
+        Collection<DomainObject> queryResults = searchBooks(NOSFERATU);
+        assertEquals(1, queryResults.size());
+        assertTrue(queryResults.contains(HibernateSearchBooksTest.getBookByName(NOSFERATU)));
+    }
+
+    @Test
+    public void testFlushIndexesModifiedObjects() {
+        createBook(CARMILLA);
+        HibernateSearchSupport.flushIndexing();
+
+        renameBook(CARMILLA, CARMILLA + " Returns");
+        // the index still has the previous name
+        assertEquals(1, searchBooks(CARMILLA).size());
+        assertEquals(0, searchBooks("returns").size());
+
+        HibernateSearchSupport.flushIndexing();
+
+        assertEquals(1, searchBooks("returns").size());
+    }
+
+    @Test
+    public void testFlushWithNothingQueued() {
+        HibernateSearchSupport.flushIndexing();
+        HibernateSearchSupport.flushIndexing();
+    }
+
+    @Atomic
+    public static void createBook(String bookName) {
+        FenixFramework.getDomainRoot().addTheBook(new VampireBook(bookName, 1.0, true));
+    }
+
+    @Atomic
+    public static void renameBook(String bookName, String newBookName) {
+        HibernateSearchBooksTest.getBookByName(bookName).setBookName(newBookName);
+    }
+
+    @Atomic
+    public static Collection<DomainObject> searchBooks(String word) {
+        return HibernateSearchBooksTest.performQuery(VampireBook.class, "bookName", word.toLowerCase());
+    }
+
+    @AfterClass
+    public static void shutdown() {
+        FenixFramework.shutdown();
+    }
+}
@@ -0,0 +1,226 @@
+package pt.ist.fenixframework.dml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Set;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import pt.ist.fenixframework.Atomic;
+import pt.ist.fenixframework.Atomic.TxMode;
+import pt.ist.fenixframework.FenixFramework;
+import pt.ist.fenixframework.adt.bplustree.BPlusTree;
+import pt.ist.fenixframework.adt.linkedlist.LinkedList;
+import pt.ist.fenixframework.dml.runtime.DomainBasedMap;
+import test.Author;
+import test.Book;
+import test.VampireBook;
+
+/**
+ * Checks the set of the authors of a book, whose index by name allows many authors per name: its size must follow the elements
+ * added and removed, also in later transactions and in sets stored before their size was kept. The authors of each name are
+ * kept in a group, which is a B+Tree, or a LinkedList in sets stored before the groups were B+Trees; the generated search by
+ * name, and adding, removing and looking for an author, must work with both, and looking for or removing an author must not
+ * create a group for its name. This test is in the package of the set to reach its map of groups.
+ */
+@RunWith(JUnit4.class)
+public class RelationMulValuesIndexedAwareSetTest {
+
+    @AfterClass
+    public static void shutdown() {
+        FenixFramework.shutdown();
+    }
+
+    @Test
+    public void testSize() {
+        Book book = createBook();
+        Author first = createAuthor("Same", 1);
+        Author second = createAuthor("Same", 2);
+        Author other = createAuthor("Other", 3);
+        assertSize(book, 0);
+
+        addAuthors(book, first, second, other);
+        assertSize(book, 3);
+        assertEquals(Integer.valueOf(3), getStoredCount(book));
+
+        // adding an element that is already there changes nothing
+        addAuthors(book, first);
+        assertSize(book, 3);
+
+        removeAuthors(book, first);
+        assertSize(book, 2);
+        removeAuthors(book, second);
+        assertSize(book, 1);
+
+        // the groups of both names are kept after their last element is removed
+        removeAuthors(book, other);
+        assertSize(book, 0);
+
+        // removing an element that is not there changes nothing
+        removeAuthors(book, other);
+        assertSize(book, 0);
+
+        addAuthors(book, other);
+        assertSize(book, 1);
+    }
+
+    @Test
+    public void testSizeOfSetsStoredBeforeTheCountWasKept() {
+        Book book = createBook();
+        addAuthors(book, createAuthor("Same", 1), createAuthor("Same", 2));
+        forgetStoredCount(book);
+
+        assertSize(book, 2);
+        assertNull(getStoredCount(book));
+
+        // the count is kept again from the first change on
+        addAuthors(book, createAuthor("Other", 3));
+        assertEquals(Integer.valueOf(3), getStoredCount(book));
+        assertSize(book, 3);
+    }
+
+    @Test
+    public void testGroups() {
+        Book book = createBook();
+        Author first = createAuthor("Same", 1);
+        Author second = createAuthor("Same", 2);
+        Author other = createAuthor("Other", 3);
+        addAuthors(book, first, second, other);
+
+        assertGroup(book, "Same", BPlusTree.class, first, second);
+        assertGroup(book, "Other", BPlusTree.class, other);
+        assertNoGroup(book, "Nobody");
+
+        removeAuthors(book, first);
+        assertGroup(book, "Same", BPlusTree.class, second);
+        assertFalse(contains(book, first));
+        assertSize(book, 2);
+    }
+
+    @Test
+    public void testLinkedListGroups() {
+        Book book = createBook();
+        Author first = createAuthor("Legacy", 1);
+        Author second = createAuthor("Legacy", 2);
+        Author other = createAuthor("Other", 3);
+        addLinkedListGroup(book, "Legacy");
+
+        // the existing group is used, and a new one is only created for a new name
+        addAuthors(book, first, second, other);
+        assertGroup(book, "Legacy", LinkedList.class, first, second);
+        assertGroup(book, "Other", BPlusTree.class, other);
+        assertSize(book, 3);
+
+        removeAuthors(book, first);
+        assertGroup(book, "Legacy", LinkedList.class, second);
+        assertFalse(contains(book, first));
+        assertSize(book, 2);
+    }
+
+    @Test
+    public void testLookupsDoNotCreateGroups() {
+        Book book = createBook();
+        Author member = createAuthor("Member", 1);
+        Author stranger = createAuthor("Stranger", 2);
+        addAuthors(book, member);
+
+        assertFalse(contains(book, stranger));
+        assertNoGroup(book, "Stranger");
+
+        // removing an author that is not there
+        removeAuthors(book, stranger);
+        assertNoGroup(book, "Stranger");
+        assertSize(book, 1);
+    }
+
+    @Atomic(mode = TxMode.WRITE)
+    private Book createBook() {
+        return new VampireBook("Book", 1.0, false);
+    }
+
+    @Atomic(mode = TxMode.WRITE)
+    private Author createAuthor(String name, int age) {
+        return new Author(name, age);
+    }
+
+    @Atomic(mode = TxMode.WRITE)
+    private void addAuthors(Book book, Author... authors) {
+        for (Author author : authors) {
+            book.addAuthor(author);
+        }
+    }
+
+    @Atomic(mode = TxMode.WRITE)
+    private void removeAuthors(Book book, Author... authors) {
+        for (Author author : authors) {
+            book.removeAuthor(author);
+        }
+    }
+
+    @Atomic(mode = TxMode.READ)
+    private void assertSize(Book book, int size) {
+        assertEquals(size, book.getAuthorSet().size());
+        assertEquals(size == 0, book.getAuthorSet().isEmpty());
+
+        int iterated = 0;
+        for (Author author : book.getAuthorSet()) {
+            assertTrue(book.getAuthorSet().contains(author));
+            iterated++;
+        }
+        assertEquals(size, iterated);
+    }
+
+    @Atomic(mode = TxMode.READ)
+    private boolean contains(Book book, Author author) {
+        return book.getAuthorSet().contains(author);
+    }
+
+    @Atomic(mode = TxMode.READ)
+    private void assertGroup(Book book, String name, Class<?> groupType, Author... authors) {
+        DomainBasedMap<?> group = (DomainBasedMap<?>) getGroups(book).get(name);
+        assertTrue(groupType.isInstance(group));
+        assertEquals(authors.length, group.size());
+
+        Set<Author> found = book.getAuthorByName(name);
+        assertEquals(authors.length, found.size());
+        for (Author author : authors) {
+            assertTrue(group.contains(author.getOid()));
+            assertTrue(found.contains(author));
+            assertTrue(book.getAuthorSet().contains(author));
+        }
+    }
+
+    @Atomic(mode = TxMode.READ)
+    private void assertNoGroup(Book book, String name) {
+        assertNull(getGroups(book).get(name));
+        assertTrue(book.getAuthorByName(name).isEmpty());
+    }
+
+    // as stored before the groups were B+Trees
+    @Atomic(mode = TxMode.WRITE)
+    private void addLinkedListGroup(Book book, String name) {
+        getGroups(book).put(name, new LinkedList<Author>());
+    }
+
+    @Atomic(mode = TxMode.READ)
+    private Integer getStoredCount(Book book) {
+        return getGroups(book).getGroupedElementCount();
+    }
+
+    @Atomic(mode = TxMode.WRITE)
+    private void forgetStoredCount(Book book) {
+        BPlusTree groups = getGroups(book);
+        assertFalse(groups.getGroupedElementCount() == null);
+        groups.setGroupedElementCount(null);
+    }
+
+    private static BPlusTree getGroups(Book book) {
+        return (BPlusTree) ((RelationMulValuesIndexedAwareSet<Book, Author>) book.getAuthorSet()).getMultiValueMap();
+    }
+}
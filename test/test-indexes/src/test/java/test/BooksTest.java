@@ -2,6 +2,7 @@ package test;
 
 import static org.junit.Assert.assertTrue;
 
+import java.util.List;
 import java.util.Set;
 
 import org.junit.After;
@@ -130,6 +131,38 @@ public class BooksTest {
         assertTrue(little.getPublishedBookByBookName(FEW_MOON) == null);
     }
 
+    @Test
+    @Atomic
+    public void test04() {
+        DomainRoot domainRoot = FenixFramework.getDomainRoot();
+
+        assertTrue(domainRoot.getCatalogAuthorByNameAndAge(BRAM_STOKER, 125).equals(getAuthorByNameAndAge(BRAM_STOKER, 125)));
+        assertTrue(domainRoot.getCatalogAuthorByNameAndAge(BRAM_STOKER, 60).equals(getAuthorByNameAndAge(BRAM_STOKER, 60)));
+        assertTrue(domainRoot.getCatalogAuthorByNameAndAge(BRAM_STOKER, 83) == null);
+        assertTrue(domainRoot.getCatalogAuthorByNameAndAge(STEPH, 83).equals(getAuthorByName(STEPH)));
+    }
+
+    @Test
+    @Atomic
+    public void test05() {
+        DomainRoot domainRoot = FenixFramework.getDomainRoot();
+
+        Set<Book> cheap = domainRoot.getPricedBookByPrice(0.42);
+        assertTrue(cheap.size() == 1);
+        assertTrue(cheap.contains(getBookByName(TWOLIGHTS)));
+
+        List<Book> underOne = domainRoot.getPricedBookByPriceBetween(0, 1);
+        assertTrue(underOne.size() == 2);
+        assertTrue(underOne.get(0).equals(getBookByName(TWOLIGHTS)));
+        assertTrue(underOne.get(1).equals(getBookByName(FEW_MOON)));
+
+        List<Book> all = domainRoot.getPricedBookByPriceBetween(0.42, 12.42);
+        assertTrue(all.size() == 3);
+        assertTrue(all.get(2).equals(getBookByName(DRACULA)));
+
+        assertTrue(domainRoot.getPricedBookByPriceBetween(1, 12).isEmpty());
+    }
+
     @Before
     @Atomic
     public void init() {
@@ -173,6 +206,15 @@ public class BooksTest {
 
         // VampireBook to VampireBook
         twolights.setSequel(fewMoons);
+
+        // Composite and ordered indexes
+        domainRoot.addCatalogAuthor(steph);
+        domainRoot.addCatalogAuthor(meh);
+        domainRoot.addCatalogAuthor(bStoker);
+        domainRoot.addCatalogAuthor(bStokerSon);
+        domainRoot.addPricedBook(twolights);
+        domainRoot.addPricedBook(fewMoons);
+        domainRoot.addPricedBook(dracula);
     }
 
     @After
@@ -191,6 +233,14 @@ public class BooksTest {
         for (Publisher publisher : domainRoot.getThePublisherSet()) {
             domainRoot.removeThePublisher(publisher);
         }
+
+        for (Author author : domainRoot.getCatalogAuthorSet()) {
+            domainRoot.removeCatalogAuthor(author);
+        }
+
+        for (Book book : domainRoot.getPricedBookSet()) {
+            domainRoot.removePricedBook(book);
+        }
     }
 
     @Atomic